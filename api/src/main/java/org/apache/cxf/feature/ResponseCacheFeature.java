@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.feature;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.annotations.Idempotent;
+import org.apache.cxf.common.injection.NoJSR250Annotations;
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.interceptor.ResponseCache;
+import org.apache.cxf.interceptor.ResponseCacheInInterceptor;
+import org.apache.cxf.interceptor.ResponseCacheOutInterceptor;
+import org.apache.cxf.service.invoker.MethodDispatcher;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.service.model.MessagePartInfo;
+
+/**
+ * Answers repeated identical requests for idempotent operations of a
+ * server from a cache of the serialized responses, skipping the
+ * databinding and the invocation.  Requests are identical if their
+ * bodies are, ignoring namespace prefixes, attribute order and whitespace
+ * between elements.  Requests with SOAP headers, attachments or
+ * credentials are not cached.
+ * <p>
+ * The cache is looked up before any authentication or authorization
+ * interceptor runs.  Don't use this feature on endpoints whose responses
+ * depend on the caller, unless the caller is only known from the
+ * credentials that turn the cache off (HTTP authorization, the user
+ * principal of the transport or a TLS client certificate).
+ * <p>
+ * An operation is cached if its method is annotated with
+ * {@link Idempotent}, if its name is one of the configured operations, or
+ * if its BindingOperationInfo has the {@link #CACHEABLE} property set to
+ * true.
+ * <pre>
+ * <![CDATA[
+    <jaxws:endpoint ...>
+      <jaxws:features>
+       <bean class="org.apache.cxf.feature.ResponseCacheFeature">
+         <property name="operations">
+           <list>
+             <value>getQuote</value>
+           </list>
+         </property>
+         <property name="timeToLive" value="30000"/>
+       </bean>
+      </jaxws:features>
+    </jaxws:endpoint>
+  ]]>
+  </pre>
+ */
+@NoJSR250Annotations
+public class ResponseCacheFeature extends AbstractFeature {
+    public static final String CACHEABLE = ResponseCacheFeature.class.getName() + ".CACHEABLE";
+    
+    private static final Logger LOG = LogUtils.getLogger(ResponseCacheFeature.class);
+    
+    private Set<String> operations = new HashSet<String>();
+    private int maxEntries = 1000;
+    private long timeToLive = 60000;
+    private int maxRequestSize = 64 * 1024;
+    private int maxResponseSize = 256 * 1024;
+    private ResponseCache cache;
+    
+    @Override
+    public void initialize(Server server, Bus bus) {
+        Endpoint endpoint = server.getEndpoint();
+        Set<QName> elements = new HashSet<QName>();
+        MethodDispatcher md = (MethodDispatcher)endpoint.getService().get(MethodDispatcher.class.getName());
+        for (BindingOperationInfo bop : endpoint.getEndpointInfo().getBinding().getOperations()) {
+            if (isCacheable(bop, md)) {
+                elements.add(getOperationElement(bop));
+            }
+        }
+        if (elements.isEmpty()) {
+            LOG.log(Level.FINE, "No cacheable operations for " + endpoint.getEndpointInfo().getName());
+            return;
+        }
+        cache = new ResponseCache(maxEntries, timeToLive);
+        endpoint.getInInterceptors().add(new ResponseCacheInInterceptor(cache, elements, maxRequestSize));
+        endpoint.getOutInterceptors().add(new ResponseCacheOutInterceptor(cache, maxResponseSize));
+    }
+    
+    private boolean isCacheable(BindingOperationInfo bop, MethodDispatcher md) {
+        if (operations.contains(bop.getName().getLocalPart())
+            || Boolean.TRUE.equals(bop.getProperty(CACHEABLE))) {
+            return true;
+        }
+        Method m = md == null ? null : md.getMethod(bop);
+        return m != null && m.isAnnotationPresent(Idempotent.class);
+    }
+    
+    /**
+     * @return the first element in the body of a request for the operation
+     */
+    private static QName getOperationElement(BindingOperationInfo bop) {
+        Collection<MessagePartInfo> parts = bop.getOperationInfo().getInput().getMessageParts();
+        if (!parts.isEmpty()) {
+            MessagePartInfo part = parts.iterator().next();
+            if (part.isElement()) {
+                return part.getElementQName();
+            }
+        }
+        //rpc, the parts are in an element named after the operation
+        return bop.getName();
+    }
+    
+    /**
+     * @return the cache of the server, null before the feature was
+     *         initialized or if the server has no cacheable operations
+     */
+    public ResponseCache getCache() {
+        return cache;
+    }
+    
+    /**
+     * Sets the names of the operations that are cached, in addition to the
+     * ones annotated with {@link Idempotent}.
+     */
+    public void setOperations(Collection<String> names) {
+        operations = new HashSet<String>(names);
+    }
+    
+    public Collection<String> getOperations() {
+        return operations;
+    }
+    
+    /**
+     * Sets the number of responses the cache holds at most, the default is 1000.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+    
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    /**
+     * Sets the milliseconds a response is served from the cache, the default is 60000.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+    
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+    
+    /**
+     * Sets the size in bytes of the largest request that is cached, the default is 64K.
+     */
+    public void setMaxRequestSize(int maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+    
+    public int getMaxRequestSize() {
+        return maxRequestSize;
+    }
+    
+    /**
+     * Sets the size in bytes of the largest response that is cached, the default is 256K.
+     */
+    public void setMaxResponseSize(int maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+    
+    public int getMaxResponseSize() {
+        return maxResponseSize;
+    }
+}
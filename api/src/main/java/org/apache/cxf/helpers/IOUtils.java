@@ -30,6 +30,7 @@ import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.nio.charset.Charset;
 
+import org.apache.cxf.io.BufferPool;
 import org.apache.cxf.io.CopyingOutputStream;
 
 public final class IOUtils {
@@ -142,6 +143,14 @@ public final class IOUtils {
 
     public static int copy(final InputStream input, final OutputStream output,
             int bufferSize) throws IOException {
+        return copy(input, output, bufferSize, BufferPool.getDefault());
+    }
+
+    /**
+     * Copies the stream with a buffer taken from the pool.
+     */
+    public static int copy(final InputStream input, final OutputStream output,
+            int bufferSize, BufferPool pool) throws IOException {
         int avail = input.available();
         if (avail > 262144) {
             avail = 262144;
@@ -149,19 +158,23 @@ public final class IOUtils {
         if (avail > bufferSize) {
             bufferSize = avail;
         }
-        final byte[] buffer = new byte[bufferSize];
-        int n = 0;
-        n = input.read(buffer);
-        int total = 0;
-        while (-1 != n) {
-            if (n == 0) {
-                throw new IOException("0 bytes read in violation of InputStream.read(byte[])");
-            }
-            output.write(buffer, 0, n);
-            total += n;
+        final byte[] buffer = pool.acquire(bufferSize);
+        try {
+            int n = 0;
             n = input.read(buffer);
+            int total = 0;
+            while (-1 != n) {
+                if (n == 0) {
+                    throw new IOException("0 bytes read in violation of InputStream.read(byte[])");
+                }
+                output.write(buffer, 0, n);
+                total += n;
+                n = input.read(buffer);
+            }
+            return total;
+        } finally {
+            pool.release(buffer);
         }
-        return total;
     }
 
     public static void copy(final Reader input, final Writer output,
@@ -269,9 +282,14 @@ public final class IOUtils {
         if (i > 65536) {
             i = 65536;
         }
-        byte bytes[] = new byte[i];
-        while (in.read(bytes) != -1) {
-            //nothing - just discarding
+        BufferPool pool = BufferPool.getDefault();
+        byte bytes[] = pool.acquire(i);
+        try {
+            while (in.read(bytes) != -1) {
+                //nothing - just discarding
+            }
+        } finally {
+            pool.release(bytes);
         }
     }
 
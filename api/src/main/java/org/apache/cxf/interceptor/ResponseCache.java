@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.interceptor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of serialized responses.  Entries expire after the time
+ * to live, the least recently used entry is dropped when the cache is full.
+ */
+public class ResponseCache {
+    private final int maxEntries;
+    private final long timeToLive;
+    private final Map<String, Entry> entries;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    /**
+     * @param maxEntries the number of responses the cache holds at most
+     * @param timeToLive milliseconds a response is served from the cache
+     */
+    public ResponseCache(final int maxEntries, long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        entries = new LinkedHashMap<String, ResponseCache.Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResponseCache.Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * @return the response cached for the key, null if there is none or it expired
+     */
+    public Entry get(String key) {
+        Entry e;
+        synchronized (entries) {
+            e = entries.get(key);
+            if (e != null && e.expires <= System.currentTimeMillis()) {
+                entries.remove(key);
+                e = null;
+            }
+        }
+        if (e == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return e;
+    }
+    
+    public void put(String key, byte[] bytes, String contentType) {
+        Entry e = new Entry(bytes, contentType, System.currentTimeMillis() + timeToLive);
+        synchronized (entries) {
+            entries.put(key, e);
+        }
+    }
+    
+    /**
+     * Removes the expired responses.
+     */
+    public void purge() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+                if (it.next().expires <= now) {
+                    it.remove();
+                }
+            }
+        }
+    }
+    
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+    
+    /**
+     * @return the number of requests that were answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    /**
+     * @return the number of cacheable requests that had no response in the cache
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    public static final class Entry {
+        private final byte[] bytes;
+        private final String contentType;
+        private final long expires;
+        
+        Entry(byte[] bytes, String contentType, long expires) {
+            this.bytes = bytes;
+            this.contentType = contentType;
+            this.expires = expires;
+        }
+        
+        public byte[] getBytes() {
+            return bytes;
+        }
+        
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.interceptor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.configuration.security.AuthorizationPolicy;
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.security.SecurityContext;
+import org.apache.cxf.security.transport.TLSSessionInfo;
+import org.apache.cxf.staxutils.CanonicalHashReader;
+import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.cxf.transport.Conduit;
+
+/**
+ * Answers requests for cacheable operations from a {@link ResponseCache}.
+ * The request is hashed with a {@link CanonicalHashReader} before the
+ * {@link StaxInInterceptor} parses it.  The bytes the hashing reads are
+ * kept and handed on to the StaxInInterceptor with the rest of the
+ * request.  A request for an operation that isn't cached is only read up
+ * to the first element in its body.  A cached response is written to the
+ * back channel and the chain is aborted, skipping the databinding and the
+ * invocation.  Otherwise the key of the request is put on the exchange for
+ * the {@link ResponseCacheOutInterceptor}, which caches the response.
+ * <p>
+ * Requests with SOAP headers, attachments or credentials (HTTP
+ * authorization, a user principal or a TLS client certificate), and
+ * requests larger than the limit, are not cached.  The lookup runs before
+ * any authentication or authorization interceptor, so don't use it on
+ * endpoints that authorize callers in the SOAP body or in a later phase.
+ */
+public class ResponseCacheInInterceptor extends AbstractPhaseInterceptor<Message> {
+    public static final String CACHE_KEY = ResponseCacheInInterceptor.class.getName() + ".CACHE_KEY";
+    
+    private static final Logger LOG = LogUtils.getL7dLogger(ResponseCacheInInterceptor.class);
+    
+    private static final String SOAP11_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String SOAP12_ENVELOPE_NS = "http://www.w3.org/2003/05/soap-envelope";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final ResponseCache cache;
+    private final Set<QName> operationElements;
+    private final int limit;
+    
+    /**
+     * @param cache the responses
+     * @param operationElements the first elements of the bodies of the cacheable operations
+     * @param limit the size in bytes of the largest request that is cached
+     */
+    public ResponseCacheInInterceptor(ResponseCache cache, Set<QName> operationElements, int limit) {
+        super(Phase.POST_STREAM);
+        addBefore(StaxInInterceptor.class.getName());
+        this.cache = cache;
+        this.operationElements = operationElements;
+        this.limit = limit;
+    }
+    
+    public void handleMessage(Message message) throws Fault {
+        if (isGET(message) || message.getContent(XMLStreamReader.class) != null
+            || hasCredentials(message)) {
+            return;
+        }
+        InputStream is = message.getContent(InputStream.class);
+        String ct = (String)message.get(Message.CONTENT_TYPE);
+        if (is == null || ct == null || ct.indexOf("xml") == -1 || ct.startsWith("multipart/")) {
+            return;
+        }
+        
+        RecordingInputStream recorder = new RecordingInputStream(is, limit);
+        String key;
+        try {
+            key = createKey(recorder, (String)message.get(Message.ENCODING));
+        } finally {
+            message.setContent(InputStream.class, recorder.replay());
+        }
+        if (key == null) {
+            return;
+        }
+        
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            message.getExchange().put(CACHE_KEY, key);
+        } else {
+            sendCachedResponse(message, entry);
+        }
+    }
+    
+    /**
+     * @return true if the response may depend on who sent the request
+     */
+    private static boolean hasCredentials(Message message) {
+        SecurityContext sc = message.get(SecurityContext.class);
+        if (message.get(AuthorizationPolicy.class) != null
+            || (sc != null && sc.getUserPrincipal() != null)) {
+            return true;
+        }
+        TLSSessionInfo tls = message.get(TLSSessionInfo.class);
+        if (tls != null && tls.getPeerCertificates() != null && tls.getPeerCertificates().length > 0) {
+            return true;
+        }
+        Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>)message.get(Message.PROTOCOL_HEADERS));
+        return headers != null && headers.containsKey("Authorization");
+    }
+    
+    /**
+     * @return the key of the request, null if it isn't a request for a
+     *         cacheable operation or has SOAP headers
+     */
+    String createKey(InputStream is, String encoding) {
+        CanonicalHashReader reader = new CanonicalHashReader(StaxUtils.createXMLStreamReader(is, encoding));
+        try {
+            reader.nextTag();
+            String ns = reader.getNamespaceURI();
+            if ("Envelope".equals(reader.getLocalName())
+                && (SOAP11_ENVELOPE_NS.equals(ns) || SOAP12_ENVELOPE_NS.equals(ns))) {
+                reader.nextTag();
+                if ("Header".equals(reader.getLocalName()) && ns.equals(reader.getNamespaceURI())) {
+                    if (reader.nextTag() == XMLStreamReader.START_ELEMENT) {
+                        //the response may depend on the headers (WS-Addressing, WS-Security...)
+                        return null;
+                    }
+                    reader.nextTag();
+                }
+                if (reader.getEventType() != XMLStreamReader.START_ELEMENT
+                    || !"Body".equals(reader.getLocalName())
+                    || reader.nextTag() != XMLStreamReader.START_ELEMENT) {
+                    return null;
+                }
+            }
+            if (!operationElements.contains(reader.getName())) {
+                return null;
+            }
+            //the key is the hash of the operation element, not of the envelope
+            reader.restart();
+            int depth = reader.getDepth();
+            while (reader.next() != XMLStreamReader.END_ELEMENT || reader.getDepth() >= depth) {
+                //read to the end of the operation element
+            }
+            return toKey(reader.digest());
+        } catch (XMLStreamException e) {
+            //larger than the limit or not well formed, the StaxInInterceptor reports the latter
+            LOG.log(Level.FINE, "Could not hash the request", e);
+            return null;
+        } finally {
+            StaxUtils.close(reader);
+        }
+    }
+    
+    private static String toKey(byte[] hash) {
+        char[] key = new char[hash.length * 2];
+        for (int x = 0; x < hash.length; x++) {
+            key[x * 2] = HEX[(hash[x] >> 4) & 0xF];
+            key[x * 2 + 1] = HEX[hash[x] & 0xF];
+        }
+        return new String(key);
+    }
+    
+    private void sendCachedResponse(Message message, ResponseCache.Entry entry) {
+        Exchange exchange = message.getExchange();
+        try {
+            Conduit c = exchange.getDestination().getBackChannel(message, null, null);
+            Message mout = new MessageImpl();
+            mout.setExchange(exchange);
+            exchange.setOutMessage(mout);
+            mout.put(Message.CONTENT_TYPE, entry.getContentType());
+            c.prepare(mout);
+            OutputStream os = mout.getContent(OutputStream.class);
+            message.getInterceptorChain().abort();
+            os.write(entry.getBytes());
+            os.flush();
+            os.close();
+        } catch (IOException e) {
+            //likely the client closed the connection, nothing to report to it
+            LOG.log(Level.FINE, "Failure writing the cached response", e);
+        } finally {
+            exchange.setOutMessage(null);
+        }
+    }
+    
+    /**
+     * Keeps the bytes read from the request, and ends the stream once the
+     * limit is reached, so the hashing stops.  The request can be read again
+     * through {@link #replay()}.
+     */
+    private static final class RecordingInputStream extends FilterInputStream {
+        private final LoadingByteArrayOutputStream bout = new LoadingByteArrayOutputStream();
+        private final int limit;
+        
+        RecordingInputStream(InputStream in, int limit) {
+            super(in);
+            this.limit = limit;
+        }
+        
+        public int read() throws IOException {
+            if (bout.size() >= limit) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                bout.write(b);
+            }
+            return b;
+        }
+        
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = Math.min(len, limit - bout.size());
+            if (n <= 0) {
+                return len == 0 ? 0 : -1;
+            }
+            n = in.read(b, off, n);
+            if (n > 0) {
+                bout.write(b, off, n);
+            }
+            return n;
+        }
+        
+        public long skip(long n) throws IOException {
+            // the skipped bytes are kept too
+            byte[] b = new byte[(int)Math.min(n, 512)];
+            long skipped = 0;
+            int count = 0;
+            while (skipped < n && count != -1) {
+                count = read(b, 0, (int)Math.min(n - skipped, b.length));
+                if (count > 0) {
+                    skipped += count;
+                }
+            }
+            return skipped;
+        }
+        
+        public int available() throws IOException {
+            return Math.min(in.available(), Math.max(0, limit - bout.size()));
+        }
+        
+        public boolean markSupported() {
+            return false;
+        }
+        
+        public void close() {
+            // the request is read again from replay()
+        }
+        
+        /**
+         * @return the bytes read so far followed by the rest of the request
+         */
+        InputStream replay() {
+            return new SequenceInputStream(bout.createInputStream(), in);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.interceptor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.io.CacheAndWriteOutputStream;
+import org.apache.cxf.io.CachedOutputStream;
+import org.apache.cxf.io.CachedOutputStreamCallback;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * Caches the response of a request the {@link ResponseCacheInInterceptor}
+ * found no cached response for.  The bytes are cached as they are written
+ * to the transport, faults and responses larger than the limit are not
+ * cached.
+ */
+public class ResponseCacheOutInterceptor extends AbstractPhaseInterceptor<Message> {
+    private static final Logger LOG = LogUtils.getL7dLogger(ResponseCacheOutInterceptor.class);
+    
+    private final ResponseCache cache;
+    private final int limit;
+    
+    /**
+     * @param cache the responses
+     * @param limit the size in bytes of the largest response that is cached
+     */
+    public ResponseCacheOutInterceptor(ResponseCache cache, int limit) {
+        super(Phase.PRE_STREAM);
+        this.cache = cache;
+        this.limit = limit;
+    }
+    
+    public void handleMessage(Message message) throws Fault {
+        String key = (String)message.getExchange().get(ResponseCacheInInterceptor.CACHE_KEY);
+        OutputStream os = message.getContent(OutputStream.class);
+        if (key == null || os == null || message != message.getExchange().getOutMessage()) {
+            return;
+        }
+        CacheAndWriteOutputStream newOut = new CacheAndWriteOutputStream(os);
+        newOut.setThreshold(limit);
+        message.setContent(OutputStream.class, newOut);
+        newOut.registerCallback(new CacheCallback(message, key));
+    }
+    
+    private class CacheCallback implements CachedOutputStreamCallback {
+        private final Message message;
+        private final String key;
+        
+        CacheCallback(Message message, String key) {
+            this.message = message;
+            this.key = key;
+        }
+        
+        public void onFlush(CachedOutputStream cos) {
+        }
+        
+        public void onClose(CachedOutputStream cos) {
+            Integer responseCode = (Integer)message.get(Message.RESPONSE_CODE);
+            if (cos.size() > limit
+                || message.getContent(Exception.class) != null
+                || (responseCode != null && responseCode != 200)) {
+                return;
+            }
+            try {
+                cache.put(key, cos.getBytes(), (String)message.get(Message.CONTENT_TYPE));
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Could not cache the response", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.Bus;
+
+/**
+ * A pool of byte arrays for the buffers used to copy streams. The arrays come in size classes,
+ * powers of two from {@link #MIN_BUFFER_SIZE} to {@link #MAX_BUFFER_SIZE}. Every thread keeps one
+ * array of each of the smaller classes, the other released arrays are shared by all the threads
+ * until the pool holds {@link #setMaxPooledBytes(long) its maximum}.
+ * 
+ * The pool of a bus is its BufferPool extension, code without a bus uses {@link #getDefault()}.
+ * An array must not be used once it is released.
+ */
+public class BufferPool {
+    public static final int MIN_BUFFER_SIZE = 1024;
+    public static final int MAX_BUFFER_SIZE = 256 * 1024;
+    
+    private static final int SIZE_CLASSES = 9;
+    // The larger arrays are only kept in the shared pools.
+    private static final int THREAD_LOCAL_CLASSES = 7;
+    
+    private static final BufferPool DEFAULT_POOL = new BufferPool();
+    
+    private final List<Queue<byte[]>> shared = new ArrayList<Queue<byte[]>>(SIZE_CLASSES);
+    private final ThreadLocal<byte[][]> local = new ThreadLocal<byte[][]>() {
+        protected byte[][] initialValue() {
+            return new byte[THREAD_LOCAL_CLASSES][];
+        }
+    };
+    private long maxPooledBytes = 16L * 1024 * 1024;
+    
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong outstandingBytes = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public BufferPool() {
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            shared.add(new ConcurrentLinkedQueue<byte[]>());
+        }
+    }
+    
+    /**
+     * @return the pool used by code that has no bus
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT_POOL;
+    }
+    
+    /**
+     * @return the pool of the bus, the default pool if the bus has none
+     */
+    public static BufferPool getInstance(Bus bus) {
+        BufferPool pool = bus == null ? null : bus.getExtension(BufferPool.class);
+        return pool == null ? DEFAULT_POOL : pool;
+    }
+    
+    /**
+     * @param maxBytes the maximum number of bytes held by the shared pools
+     */
+    public void setMaxPooledBytes(long maxBytes) {
+        maxPooledBytes = maxBytes;
+    }
+    
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+    
+    /**
+     * @param minSize the minimum length of the array
+     * @return an array of at least the size, its content is undefined 
+     */
+    public byte[] acquire(int minSize) {
+        if (minSize > MAX_BUFFER_SIZE) {
+            missCount.incrementAndGet();
+            return new byte[minSize];
+        }
+        int sizeClass = getSizeClass(minSize);
+        byte[] buffer = null;
+        if (sizeClass < THREAD_LOCAL_CLASSES) {
+            byte[][] slots = local.get();
+            buffer = slots[sizeClass];
+            slots[sizeClass] = null;
+        }
+        if (buffer == null) {
+            buffer = shared.get(sizeClass).poll();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-buffer.length);
+            }
+        }
+        if (buffer == null) {
+            missCount.incrementAndGet();
+            buffer = new byte[MIN_BUFFER_SIZE << sizeClass];
+        } else {
+            hitCount.incrementAndGet();
+        }
+        outstandingBytes.addAndGet(buffer.length);
+        return buffer;
+    }
+    
+    /**
+     * Returns an array taken from the pool, arrays of other sizes are ignored.
+     */
+    public void release(byte[] buffer) {
+        int length = buffer.length;
+        if (length < MIN_BUFFER_SIZE || length > MAX_BUFFER_SIZE || Integer.bitCount(length) != 1) {
+            return;
+        }
+        outstandingBytes.addAndGet(-length);
+        int sizeClass = getSizeClass(length);
+        if (sizeClass < THREAD_LOCAL_CLASSES) {
+            byte[][] slots = local.get();
+            if (slots[sizeClass] == null) {
+                slots[sizeClass] = buffer;
+                return;
+            }
+        }
+        if (pooledBytes.addAndGet(length) <= maxPooledBytes) {
+            shared.get(sizeClass).offer(buffer);
+        } else {
+            pooledBytes.addAndGet(-length);
+        }
+    }
+    
+    private static int getSizeClass(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        // log2 of the size rounded up to a power of two, 1024 is class 0
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - 10;
+    }
+    
+    /**
+     * @return the number of arrays that were taken from the pool
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    /**
+     * @return the number of arrays that had to be allocated
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+    /**
+     * @return the bytes of the arrays that are acquired and not released yet
+     */
+    public long getOutstandingBytes() {
+        return outstandingBytes.get();
+    }
+    
+    /**
+     * @return the bytes of the arrays held by the shared pools
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the remaining bytes of a list of buffers, in order, without copying them first.
+ */
+class ByteBufferInputStream extends InputStream {
+    private List<ByteBuffer> buffers;
+    private int index;
+    
+    ByteBufferInputStream(List<ByteBuffer> buffers) {
+        this.buffers = buffers;
+    }
+
+    private ByteBuffer current() {
+        while (index < buffers.size()) {
+            ByteBuffer buffer = buffers.get(index);
+            if (buffer.hasRemaining()) {
+                return buffer;
+            }
+            index++;
+        }
+        return null;
+    }
+    
+    public int read() throws IOException {
+        ByteBuffer buffer = current();
+        return buffer == null ? -1 : buffer.get() & 0xff;
+    }
+    
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = current();
+        if (buffer == null) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+    
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        ByteBuffer buffer = current();
+        while (buffer != null && skipped < n) {
+            int count = (int)Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            skipped += count;
+            buffer = current();
+        }
+        return skipped;
+    }
+    
+    /**
+     * Drops the buffers, a mapping of a file is released once it is no longer referenced.
+     */
+    public void close() throws IOException {
+        buffers = Collections.emptyList();
+        index = 0;
+    }
+    
+    public int available() throws IOException {
+        long available = 0;
+        for (int i = index; i < buffers.size(); i++) {
+            available += buffers.get(i).remaining();
+        }
+        return (int)Math.min(available, Integer.MAX_VALUE);
+    }
+}
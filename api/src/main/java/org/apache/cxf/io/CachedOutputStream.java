@@ -32,13 +32,17 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
@@ -54,10 +58,23 @@ import org.apache.cxf.helpers.IOUtils;
 import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
 
 public class CachedOutputStream extends OutputStream {
+    /**
+     * Keeps the content in a heap array until the threshold is reached, the default.
+     */
+    public static final String HEAP_BUFFER_STRATEGY = "heap";
+    /**
+     * Keeps the content in pooled direct buffer segments until the threshold is reached, 
+     * then spills it to a temp file that is read through a memory mapping.
+     */
+    public static final String DIRECT_BUFFER_STRATEGY = "direct";
+    
     private static final File DEFAULT_TEMP_DIR;
+    // A file can't be deleted on Windows while a mapping of it is still referenced.
+    private static final boolean MAP_TEMP_FILES;
     private static int defaultThreshold;
     private static long defaultMaxSize;
     private static String defaultCipherTransformation;
+    private static String defaultBufferStrategy;
     static {
         
         String s = SystemPropertyAction.getPropertyOrNull("org.apache.cxf.io.CachedOutputStream.OutputDirectory");
@@ -72,9 +89,13 @@ public class CachedOutputStream extends OutputStream {
             DEFAULT_TEMP_DIR = null;
         }
 
+        String os = SystemPropertyAction.getProperty("os.name", "");
+        MAP_TEMP_FILES = os.toLowerCase(Locale.US).indexOf("windows") == -1;
+
         setDefaultThreshold(-1);
         setDefaultMaxSize(-1);
         setDefaultCipherTransformation(null);
+        setDefaultBufferStrategy(null);
     }
 
     protected boolean outputLocked;
@@ -94,6 +115,9 @@ public class CachedOutputStream extends OutputStream {
     private String cipherTransformation = defaultCipherTransformation;
     private Cipher enccipher;
     private Cipher deccipher;
+    private String bufferStrategy = defaultBufferStrategy;
+    // Null unless the direct buffer strategy is used.
+    private DirectBufferPool directBufferPool;
 
     private List<CachedOutputStreamCallback> callbacks;
     
@@ -111,9 +135,9 @@ public class CachedOutputStream extends OutputStream {
 
     public CachedOutputStream(long threshold) {
         this.threshold = threshold; 
-        currentStream = new LoadingByteArrayOutputStream(2048);
         inmem = true;
         readBusProperties();
+        currentStream = createMemoryStream(2048);
     }
 
     private void readBusProperties() {
@@ -131,8 +155,23 @@ public class CachedOutputStream extends OutputStream {
             if (v != null) {
                 cipherTransformation = v;
             }
+            v = getBusProperty(b, "bus.io.CachedOutputStream.BufferStrategy", null);
+            if (v != null) {
+                bufferStrategy = v;
+            }
+        }
+        if (DIRECT_BUFFER_STRATEGY.equals(bufferStrategy)) {
+            // The budget of the pool is shared by all the streams of the bus.
+            directBufferPool = DirectBufferPool.getInstance(b);
         }
     }
+    
+    private OutputStream createMemoryStream(int initialSize) {
+        if (directBufferPool != null) {
+            return new DirectBufferOutputStream(directBufferPool);
+        }
+        return new LoadingByteArrayOutputStream(initialSize);
+    }
 
     private static String getBusProperty(Bus b, String key, String dflt) {
         String v = (String)b.getProperty(key);
@@ -225,6 +264,11 @@ public class CachedOutputStream extends OutputStream {
         }
         doClose();
         currentStream.close();
+        if (currentStream instanceof DirectBufferOutputStream
+            && ((DirectBufferOutputStream)currentStream).isRead()) {
+            // Like the temp file, the segments are kept until the input streams are closed.
+            ((DirectBufferOutputStream)currentStream).release();
+        }
         maybeDeleteTempFile(currentStream);
         postClose();
     }
@@ -266,6 +310,12 @@ public class CachedOutputStream extends OutputStream {
                     if (copyOldContent && byteOut.size() > 0) {
                         byteOut.writeTo(out);
                     }
+                } else if (currentStream instanceof DirectBufferOutputStream) {
+                    DirectBufferOutputStream directOut = (DirectBufferOutputStream) currentStream;
+                    if (copyOldContent && directOut.size() > 0) {
+                        directOut.writeTo(out);
+                    }
+                    directOut.release();
                 } else if (currentStream instanceof PipedOutputStream) {
                     PipedOutputStream pipeOut = (PipedOutputStream) currentStream;
                     IOUtils.copyAndCloseInput(new PipedInputStream(pipeOut), out);
@@ -301,6 +351,8 @@ public class CachedOutputStream extends OutputStream {
         if (inmem) {
             if (currentStream instanceof ByteArrayOutputStream) {
                 return ((ByteArrayOutputStream)currentStream).toByteArray();
+            } else if (currentStream instanceof DirectBufferOutputStream) {
+                return ((DirectBufferOutputStream)currentStream).toByteArray();
             } else {
                 throw new IOException("Unknown format of currentStream");
             }
@@ -316,6 +368,8 @@ public class CachedOutputStream extends OutputStream {
         if (inmem) {
             if (currentStream instanceof ByteArrayOutputStream) {
                 ((ByteArrayOutputStream)currentStream).writeTo(out);
+            } else if (currentStream instanceof DirectBufferOutputStream) {
+                ((DirectBufferOutputStream)currentStream).writeTo(out);
             } else {
                 throw new IOException("Unknown format of currentStream");
             }
@@ -346,6 +400,9 @@ public class CachedOutputStream extends OutputStream {
             } else if (currentStream instanceof ByteArrayOutputStream) {
                 byte bytes[] = ((ByteArrayOutputStream)currentStream).toByteArray();
                 out.append(IOUtils.newStringFromBytes(bytes, charsetName, 0, (int)limit));
+            } else if (currentStream instanceof DirectBufferOutputStream) {
+                byte bytes[] = ((DirectBufferOutputStream)currentStream).toByteArray((int)limit);
+                out.append(IOUtils.newStringFromBytes(bytes, charsetName));
             } else {
                 throw new IOException("Unknown format of currentStream");
             }
@@ -395,6 +452,9 @@ public class CachedOutputStream extends OutputStream {
             } else if (currentStream instanceof ByteArrayOutputStream) {
                 byte[] bytes = ((ByteArrayOutputStream)currentStream).toByteArray();
                 out.append(IOUtils.newStringFromBytes(bytes, charsetName));
+            } else if (currentStream instanceof DirectBufferOutputStream) {
+                byte[] bytes = ((DirectBufferOutputStream)currentStream).toByteArray();
+                out.append(IOUtils.newStringFromBytes(bytes, charsetName));
             } else {
                 throw new IOException("Unknown format of currentStream");
             }
@@ -454,7 +514,9 @@ public class CachedOutputStream extends OutputStream {
         if (maxSize > 0 && totalLength > maxSize) {
             throw new CacheSizeExceededException();
         }
-        if (inmem && totalLength > threshold && currentStream instanceof ByteArrayOutputStream) {
+        if (inmem && totalLength > threshold 
+            && (currentStream instanceof ByteArrayOutputStream 
+                || currentStream instanceof DirectBufferOutputStream)) {
             createFileOutputStream();
         }       
     }
@@ -490,7 +552,7 @@ public class CachedOutputStream extends OutputStream {
         if (tempFileFailed) {
             return;
         }
-        ByteArrayOutputStream bout = (ByteArrayOutputStream)currentStream;
+        OutputStream bout = currentStream;
         try {
             if (outputDir == null) {
                 tempFile = FileUtils.createTempFile("cos", "tmp");
@@ -498,8 +560,22 @@ public class CachedOutputStream extends OutputStream {
                 tempFile = FileUtils.createTempFile("cos", "tmp", outputDir, false);
             }
             
-            currentStream = createOutputStream(tempFile);
-            bout.writeTo(currentStream);
+            if (bout instanceof DirectBufferOutputStream) {
+                DirectBufferOutputStream directOut = (DirectBufferOutputStream)bout;
+                if (cipherTransformation == null) {
+                    // The direct segments are written to the file without a copy.
+                    FileOutputStream fout = new FileOutputStream(tempFile);
+                    currentStream = new BufferedOutputStream(fout);
+                    directOut.writeTo(fout.getChannel());
+                } else {
+                    currentStream = createOutputStream(tempFile);
+                    directOut.writeTo(currentStream);
+                }
+                directOut.release();
+            } else {
+                currentStream = createOutputStream(tempFile);
+                ((ByteArrayOutputStream)bout).writeTo(currentStream);
+            }
             inmem = false;
             streamList.add(currentStream);
         } catch (Exception ex) {
@@ -521,7 +597,9 @@ public class CachedOutputStream extends OutputStream {
 
     public InputStream getInputStream() throws IOException {
         flush();
-        if (inmem) {
+        if (inmem ? currentStream instanceof DirectBufferOutputStream : isMapped()) {
+            return createBufferInputStream();
+        } else if (inmem) {
             if (currentStream instanceof LoadingByteArrayOutputStream) {
                 return ((LoadingByteArrayOutputStream) currentStream).createInputStream();
             } else if (currentStream instanceof ByteArrayOutputStream) {
@@ -563,6 +641,29 @@ public class CachedOutputStream extends OutputStream {
         }
     }
     
+    /**
+     * Reads the direct segments in place, or the temp file through a memory mapping.
+     */
+    private InputStream createBufferInputStream() throws IOException {
+        InputStream in;
+        if (inmem) {
+            in = ((DirectBufferOutputStream) currentStream).createInputStream();
+        } else {
+            in = new ByteBufferInputStream(mapFile(tempFile)) {
+                boolean closed;
+                public void close() throws IOException {
+                    if (!closed) {
+                        super.close();
+                        maybeDeleteTempFile(this);
+                    }
+                    closed = true;
+                }
+            };
+            streamList.add(in);
+        }
+        return in;
+    }
+    
     private synchronized void deleteTempFile() {
         if (tempFile != null) {
             File file = tempFile;
@@ -582,7 +683,7 @@ public class CachedOutputStream extends OutputStream {
                 }
             }
             deleteTempFile();
-            currentStream = new LoadingByteArrayOutputStream(1024);
+            currentStream = createMemoryStream(1024);
             inmem = true;
         }
     }
@@ -601,6 +702,19 @@ public class CachedOutputStream extends OutputStream {
     public void setCipherTransformation(String cipherTransformation) {
         this.cipherTransformation = cipherTransformation;
     }
+
+    /**
+     * Keeps the content in the segments of the pool instead of a heap array, the spilled temp
+     * file is read through a memory mapping. Only has an effect before anything is written.
+     * 
+     * @param pool the pool of direct buffer segments, null for a heap array
+     */
+    public void setDirectBufferPool(DirectBufferPool pool) {
+        if (totalLength == 0 && inmem && currentStream instanceof LoadingByteArrayOutputStream) {
+            directBufferPool = pool;
+            currentStream = createMemoryStream(2048);
+        }
+    }
     
     public static void setDefaultMaxSize(long l) {
         if (l == -1) {
@@ -622,6 +736,13 @@ public class CachedOutputStream extends OutputStream {
         defaultThreshold = i;
         
     }
+    public static void setDefaultBufferStrategy(String n) {
+        if (n == null) {
+            n = SystemPropertyAction.getProperty("org.apache.cxf.io.CachedOutputStream.BufferStrategy",
+                                                 HEAP_BUFFER_STRATEGY);
+        }
+        defaultBufferStrategy = n;
+    }
     public static void setDefaultCipherTransformation(String n) {
         if (n == null) {
             n = SystemPropertyAction.getPropertyOrNull("org.apache.cxf.io.CachedOutputStream.CipherTransformation");
@@ -676,7 +797,31 @@ public class CachedOutputStream extends OutputStream {
         return out;
     }
 
+    private boolean isMapped() {
+        return MAP_TEMP_FILES && directBufferPool != null && cipherTransformation == null;
+    }
+    
+    private static List<ByteBuffer> mapFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // The mappings stay valid once the channel is closed.
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+            for (long pos = 0; pos < length; pos += Integer.MAX_VALUE) {
+                buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, pos, 
+                                        Math.min(Integer.MAX_VALUE, length - pos)));
+            }
+            return buffers;
+        } finally {
+            raf.close();
+        }
+    }
+
     private InputStream createInputStream(File file) throws IOException {
+        if (isMapped()) {
+            return new ByteBufferInputStream(mapFile(file));
+        }
         InputStream in = new FileInputStream(file);
         if (cipherTransformation != null) {
             in = new CipherInputStream(in, deccipher) {
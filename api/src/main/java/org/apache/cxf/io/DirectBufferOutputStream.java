@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cxf.helpers.IOUtils;
+
+/**
+ * An output stream that keeps its content in fixed size segments taken from a 
+ * {@link DirectBufferPool}, the content is never copied to grow the buffer. Input streams 
+ * created by {@link #createInputStream()} read the segments directly.
+ * 
+ * Note: once an InputStream is created, the output stream should no longer be written.
+ * The segments are returned to the pool by {@link #release()}, if the stream is dropped instead
+ * they are returned once it is garbage collected.
+ */
+public class DirectBufferOutputStream extends OutputStream {
+    private final DirectBufferPool pool;
+    private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+    private final Reference<Object> handle;
+    private ByteBuffer current;
+    private long size;
+    private boolean read;
+    private boolean released;
+    private int openReaders;
+    
+    public DirectBufferOutputStream(DirectBufferPool pool) {
+        this.pool = pool;
+        handle = pool.register(this, segments);
+    }
+
+    public void write(int b) throws IOException {
+        if (current == null || !current.hasRemaining()) {
+            nextSegment();
+        }
+        current.put((byte)b);
+        size++;
+    }
+    
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (current == null || !current.hasRemaining()) {
+                nextSegment();
+            }
+            int n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+    
+    private void nextSegment() {
+        current = pool.acquire();
+        segments.add(current);
+    }
+    
+    public long size() {
+        return size;
+    }
+    
+    /**
+     * Writes the content to the stream, one segment at a time.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        BufferPool buffers = BufferPool.getDefault();
+        byte[] transfer = null;
+        try {
+            for (ByteBuffer segment : getContent()) {
+                if (segment.hasArray()) {
+                    out.write(segment.array(), segment.arrayOffset(), segment.remaining());
+                    continue;
+                }
+                if (transfer == null) {
+                    transfer = buffers.acquire(Math.min(pool.getSegmentSize(), IOUtils.DEFAULT_BUFFER_SIZE));
+                }
+                while (segment.hasRemaining()) {
+                    int n = Math.min(transfer.length, segment.remaining());
+                    segment.get(transfer, 0, n);
+                    out.write(transfer, 0, n);
+                }
+            }
+        } finally {
+            if (transfer != null) {
+                buffers.release(transfer);
+            }
+        }
+    }
+    
+    /**
+     * Writes the content to the channel, the direct segments are written without a copy.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        for (ByteBuffer segment : getContent()) {
+            while (segment.hasRemaining()) {
+                channel.write(segment);
+            }
+        }
+    }
+    
+    public byte[] toByteArray() {
+        return toByteArray(Integer.MAX_VALUE);
+    }
+    
+    /**
+     * @param limit the maximum number of bytes to return
+     */
+    public byte[] toByteArray(int limit) {
+        byte[] bytes = new byte[(int)Math.min(size, limit)];
+        int off = 0;
+        for (ByteBuffer segment : getContent()) {
+            int n = Math.min(bytes.length - off, segment.remaining());
+            segment.get(bytes, off, n);
+            off += n;
+            if (off == bytes.length) {
+                break;
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * @return a stream that reads the content written so far from the segments
+     */
+    public synchronized InputStream createInputStream() {
+        read = true;
+        openReaders++;
+        return new ByteBufferInputStream(getContent()) {
+            boolean closed;
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    super.close();
+                    readerClosed();
+                }
+            }
+            public String toString() {
+                return IOUtils.newStringFromBytes(DirectBufferOutputStream.this.toByteArray());
+            }
+        };
+    }
+    
+    /**
+     * @return true if an input stream was created
+     */
+    public synchronized boolean isRead() {
+        return read;
+    }
+    
+    /**
+     * Returns the segments to the pool once the input streams are closed, the stream is empty
+     * afterwards and must not be written. The segments of input streams that are never closed are
+     * returned once they are garbage collected.
+     */
+    public synchronized void release() {
+        released = true;
+        if (openReaders == 0) {
+            recycle();
+        }
+    }
+    
+    private synchronized void readerClosed() {
+        openReaders--;
+        if (released && openReaders == 0) {
+            recycle();
+        }
+    }
+    
+    private void recycle() {
+        pool.release(handle);
+        segments.clear();
+        current = null;
+        size = 0;
+    }
+    
+    /**
+     * @return views of the written part of every segment
+     */
+    private List<ByteBuffer> getContent() {
+        List<ByteBuffer> content = new ArrayList<ByteBuffer>(segments.size());
+        for (ByteBuffer segment : segments) {
+            ByteBuffer view = segment.duplicate();
+            view.flip();
+            content.add(view);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.io;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.Bus;
+
+/**
+ * A pool of fixed size direct buffers used as the segments of {@link DirectBufferOutputStream}.
+ * The direct memory allocated by the pool never exceeds its budget, once the budget is used
+ * the streams fall back to heap segments. One pool is shared by all the streams of a bus so the
+ * budget applies to the whole bus.
+ * 
+ * Segments are returned to the pool when their stream is released. The segments of a stream that
+ * is dropped without being released are returned once the stream is garbage collected.
+ */
+public class DirectBufferPool {
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024;
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+    
+    private static final DirectBufferPool DEFAULT_POOL = new DirectBufferPool();
+
+    private final int segmentSize;
+    private final long budget;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong inUse = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    
+    // The segments of the streams that aren't released yet, by a reference to their stream.
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    private final Set<Segments> owners = 
+        Collections.newSetFromMap(new ConcurrentHashMap<Segments, Boolean>());
+
+    private static final class Segments extends WeakReference<Object> {
+        private final List<ByteBuffer> buffers;
+        
+        Segments(Object owner, List<ByteBuffer> buffers, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.buffers = buffers;
+        }
+    }
+    
+    public DirectBufferPool() {
+        this(DEFAULT_SEGMENT_SIZE, DEFAULT_BUDGET);
+    }
+    
+    /**
+     * @param segmentSize the capacity of every segment
+     * @param budget the maximum number of bytes of direct memory allocated by the pool
+     */
+    public DirectBufferPool(int segmentSize, long budget) {
+        this.segmentSize = segmentSize;
+        this.budget = budget;
+    }
+    
+    /**
+     * Returns the pool shared by the streams of the bus, created on first use with the sizes
+     * of the bus properties <code>bus.io.CachedOutputStream.DirectSegmentSize</code> and 
+     * <code>bus.io.CachedOutputStream.DirectMemoryBudget</code>.
+     */
+    public static DirectBufferPool getInstance(Bus bus) {
+        if (bus == null) {
+            return DEFAULT_POOL;
+        }
+        synchronized (bus) {
+            DirectBufferPool pool = bus.getExtension(DirectBufferPool.class);
+            if (pool == null) {
+                Object size = bus.getProperty("bus.io.CachedOutputStream.DirectSegmentSize");
+                Object limit = bus.getProperty("bus.io.CachedOutputStream.DirectMemoryBudget");
+                pool = new DirectBufferPool(size == null ? DEFAULT_SEGMENT_SIZE 
+                                                : Integer.parseInt(size.toString()),
+                                            limit == null ? DEFAULT_BUDGET 
+                                                : Long.parseLong(limit.toString()));
+                bus.setExtension(pool, DirectBufferPool.class);
+            }
+            return pool;
+        }
+    }
+    
+    /**
+     * @return a cleared segment, a heap buffer if the budget is used
+     */
+    public ByteBuffer acquire() {
+        reclaim();
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            if (allocated.addAndGet(segmentSize) <= budget) {
+                buffer = ByteBuffer.allocateDirect(segmentSize);
+            } else {
+                allocated.addAndGet(-segmentSize);
+                fallbackCount.incrementAndGet();
+                return ByteBuffer.allocate(segmentSize);
+            }
+        }
+        inUse.addAndGet(segmentSize);
+        buffer.clear();
+        return buffer;
+    }
+    
+    /**
+     * Returns a segment to the pool, heap segments are left to the garbage collector.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == segmentSize) {
+            inUse.addAndGet(-segmentSize);
+            free.offer(buffer);
+        }
+    }
+    
+    /**
+     * Tracks the segments of a stream so they are returned to the pool if the stream is dropped.
+     * 
+     * @return the handle to pass to {@link #release(Reference)} when the stream releases them
+     */
+    Reference<Object> register(Object owner, List<ByteBuffer> buffers) {
+        Segments segments = new Segments(owner, buffers, collected);
+        owners.add(segments);
+        return segments;
+    }
+    
+    /**
+     * Returns the segments of a stream to the pool.
+     */
+    void release(Reference<Object> handle) {
+        if (owners.remove(handle)) {
+            handle.clear();
+            for (ByteBuffer buffer : ((Segments)handle).buffers) {
+                release(buffer);
+            }
+        }
+    }
+    
+    private void reclaim() {
+        for (Reference<?> ref = collected.poll(); ref != null; ref = collected.poll()) {
+            Segments segments = (Segments)ref;
+            if (owners.remove(segments)) {
+                for (ByteBuffer buffer : segments.buffers) {
+                    release(buffer);
+                }
+            }
+        }
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+    
+    public long getBudget() {
+        return budget;
+    }
+    
+    /**
+     * @return the bytes of direct memory allocated by the pool
+     */
+    public long getAllocatedBytes() {
+        return allocated.get();
+    }
+    
+    /**
+     * @return the bytes of the direct segments that are held by streams
+     */
+    public long getInUseBytes() {
+        return inUse.get();
+    }
+    
+    /**
+     * @return the number of heap segments handed out because the budget was used
+     */
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+}
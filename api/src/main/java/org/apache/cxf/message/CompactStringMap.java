@@ -0,0 +1,556 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.message;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.binding.Binding;
+import org.apache.cxf.endpoint.ConduitSelector;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.service.Service;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.service.model.OperationInfo;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.Destination;
+
+/**
+ * A {@link StringMap} that doesn't allocate an entry object per property.
+ * The keys that nearly every message or exchange holds have a fixed slot,
+ * the other entries are stored in an open addressing table of key/value
+ * pairs.
+ * <p>
+ * It doesn't extend HashMap, so the default methods that later JDKs add
+ * to Map work through its own get, put and entrySet.  {@link StringMapImpl},
+ * and so MessageImpl and ExchangeImpl, stay HashMaps as code compiled
+ * against them expects.
+ */
+public class CompactStringMap extends AbstractMap<String, Object>
+    implements StringMap, Cloneable, Serializable {
+    
+    private static final long serialVersionUID = 2796384315247101957L;
+    
+    private static final String[] KNOWN_KEYS = {
+        Message.CONTENT_TYPE,
+        Message.ACCEPT_CONTENT_TYPE,
+        Message.ENCODING,
+        Message.PROTOCOL_HEADERS,
+        Message.RESPONSE_CODE,
+        Message.REQUESTOR_ROLE,
+        Message.INBOUND_MESSAGE,
+        Message.HTTP_REQUEST_METHOD,
+        Message.REQUEST_URI,
+        Message.ENDPOINT_ADDRESS,
+        Message.PARTIAL_RESPONSE_MESSAGE,
+        Bus.class.getName(),
+        Binding.class.getName(),
+        BindingOperationInfo.class.getName(),
+        Conduit.class.getName(),
+        ConduitSelector.class.getName(),
+        Destination.class.getName(),
+        Endpoint.class.getName(),
+        Exception.class.getName(),
+        OperationInfo.class.getName(),
+        Service.class.getName()
+    };
+    
+    // open addressing index of KNOWN_KEYS, KNOWN_INDEX[i] is the key at
+    // KNOWN_SLOTS[i] and KNOWN_HASHES[i] its hash code
+    private static final int KNOWN_MASK = 63;
+    private static final String[] KNOWN_INDEX = new String[KNOWN_MASK + 1];
+    private static final int[] KNOWN_HASHES = new int[KNOWN_MASK + 1];
+    private static final int[] KNOWN_SLOTS = new int[KNOWN_MASK + 1];
+    
+    private static final int INITIAL_CAPACITY = 16;
+    
+    // stands for a null key in the table and a null value in a known slot
+    private static final Object NULL = new Object();
+    // marks a removed entry of the table
+    private static final Object REMOVED = new Object();
+    
+    static {
+        for (int x = 0; x < KNOWN_KEYS.length; x++) {
+            int h = KNOWN_KEYS[x].hashCode();
+            int i = spread(h) & KNOWN_MASK;
+            while (KNOWN_INDEX[i] != null) {
+                i = (i + 1) & KNOWN_MASK;
+            }
+            KNOWN_INDEX[i] = KNOWN_KEYS[x];
+            KNOWN_HASHES[i] = h;
+            KNOWN_SLOTS[i] = x;
+        }
+    }
+    
+    // values of the known keys, NULL for a null value, null if not present
+    private transient Object[] known;
+    // pairs of keys and values, key at 2 * i and value at 2 * i + 1
+    private transient Object[] table;
+    // number of table entries that hold a key or REMOVED
+    private transient int used;
+    private transient int size;
+    private transient int modCount;
+    private transient Set<Map.Entry<String, Object>> entrySet;
+    private transient Set<String> keySet;
+    private transient Collection<Object> values;
+    
+    public CompactStringMap() {
+    }
+    public CompactStringMap(Map<String, Object> i) {
+        if (i instanceof CompactStringMap) {
+            CompactStringMap src = (CompactStringMap)i;
+            known = src.known == null ? null : src.known.clone();
+            table = src.table == null ? null : src.table.clone();
+            used = src.used;
+            size = src.size;
+        } else {
+            for (Map.Entry<String, Object> e : i.entrySet()) {
+                doPut(e.getKey(), e.getValue());
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <T> T get(Class<T> key) {
+        return (T)get(key.getName());
+    }
+
+    public <T> void put(Class<T> key, T value) {
+        put(key.getName(), value);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public boolean containsKey(Object key) {
+        int slot = knownSlot(key);
+        if (slot >= 0) {
+            return known != null && known[slot] != null;
+        }
+        return find(key) >= 0;
+    }
+    
+    public boolean containsValue(Object value) {
+        for (Object v : values()) {
+            if (value == null ? v == null : value.equals(v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public Object get(Object key) {
+        int slot = knownSlot(key);
+        if (slot >= 0) {
+            return known == null ? null : unmask(known[slot]);
+        }
+        int i = find(key);
+        return i < 0 ? null : table[i + 1];
+    }
+    
+    public Object put(String key, Object value) {
+        return doPut(key, value);
+    }
+    
+    public Object remove(Object key) {
+        int slot = knownSlot(key);
+        if (slot >= 0) {
+            if (known == null || known[slot] == null) {
+                return null;
+            }
+            return removeKnown(slot);
+        }
+        int i = find(key);
+        return i < 0 ? null : removeAt(i);
+    }
+    
+    public void clear() {
+        if (size > 0 || used > 0) {
+            known = null;
+            table = null;
+            used = 0;
+            size = 0;
+            modCount++;
+        }
+    }
+    
+    public CompactStringMap clone() {
+        CompactStringMap m;
+        try {
+            m = (CompactStringMap)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+        m.known = known == null ? null : known.clone();
+        m.table = table == null ? null : table.clone();
+        m.entrySet = null;
+        m.keySet = null;
+        m.values = null;
+        return m;
+    }
+    
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+    
+    public Set<String> keySet() {
+        if (keySet == null) {
+            keySet = new KeySet();
+        }
+        return keySet;
+    }
+    
+    public Collection<Object> values() {
+        if (values == null) {
+            values = new Values();
+        }
+        return values;
+    }
+    
+    private Object doPut(String key, Object value) {
+        int slot = knownSlot(key);
+        if (slot >= 0) {
+            if (known == null) {
+                known = new Object[KNOWN_KEYS.length];
+            }
+            Object old = known[slot];
+            known[slot] = value == null ? NULL : value;
+            if (old == null) {
+                size++;
+                modCount++;
+            }
+            return unmask(old);
+        }
+        
+        Object k = key == null ? NULL : key;
+        if (table == null) {
+            table = new Object[INITIAL_CAPACITY * 2];
+        }
+        int mask = table.length / 2 - 1;
+        int i = spread(k.hashCode()) & mask;
+        int free = -1;
+        Object cur;
+        while ((cur = table[i * 2]) != null) {
+            if (cur == REMOVED) {
+                if (free < 0) {
+                    free = i;
+                }
+            } else if (cur == k || cur.equals(k)) {
+                Object old = table[i * 2 + 1];
+                table[i * 2 + 1] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        if (free >= 0) {
+            i = free;
+        } else {
+            used++;
+        }
+        table[i * 2] = k;
+        table[i * 2 + 1] = value;
+        size++;
+        modCount++;
+        if (used * 2 > mask + 1) {
+            rehash();
+        }
+        return null;
+    }
+    
+    /**
+     * @return the index in the table of the key, -1 if not present
+     */
+    private int find(Object key) {
+        if (table == null) {
+            return -1;
+        }
+        Object k = key == null ? NULL : key;
+        int mask = table.length / 2 - 1;
+        int i = spread(k.hashCode()) & mask;
+        Object cur;
+        while ((cur = table[i * 2]) != null) {
+            if (cur == k || (cur != REMOVED && cur.equals(k))) {
+                return i * 2;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+    
+    private Object removeKnown(int slot) {
+        Object old = known[slot];
+        known[slot] = null;
+        size--;
+        modCount++;
+        return unmask(old);
+    }
+    
+    private Object removeAt(int i) {
+        Object old = table[i + 1];
+        table[i] = REMOVED;
+        table[i + 1] = null;
+        size--;
+        modCount++;
+        return old;
+    }
+    
+    private void rehash() {
+        Object[] old = table;
+        int live = 0;
+        for (int x = 0; x < old.length; x += 2) {
+            if (old[x] != null && old[x] != REMOVED) {
+                live++;
+            }
+        }
+        // grow unless most of the used entries were removed
+        int capacity = old.length / 2;
+        while (live * 3 > capacity) {
+            capacity *= 2;
+        }
+        table = new Object[capacity * 2];
+        used = live;
+        int mask = capacity - 1;
+        for (int x = 0; x < old.length; x += 2) {
+            Object k = old[x];
+            if (k != null && k != REMOVED) {
+                int i = spread(k.hashCode()) & mask;
+                while (table[i * 2] != null) {
+                    i = (i + 1) & mask;
+                }
+                table[i * 2] = k;
+                table[i * 2 + 1] = old[x + 1];
+            }
+        }
+    }
+    
+    private static int knownSlot(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int h = key.hashCode();
+        int i = spread(h) & KNOWN_MASK;
+        String k;
+        while ((k = KNOWN_INDEX[i]) != null) {
+            if (k == key || (KNOWN_HASHES[i] == h && k.equals(key))) {
+                return KNOWN_SLOTS[i];
+            }
+            i = (i + 1) & KNOWN_MASK;
+        }
+        return -1;
+    }
+    
+    private static int spread(int h) {
+        // the low bits select the index, mix in the high bits
+        return h ^ (h >>> 16);
+    }
+    
+    private static Object unmask(Object o) {
+        return o == NULL ? null : o;
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (Map.Entry<String, Object> e : entrySet()) {
+            out.writeObject(e.getKey());
+            out.writeObject(e.getValue());
+        }
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        for (int x = 0; x < n; x++) {
+            doPut((String)in.readObject(), in.readObject());
+        }
+    }
+    
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public void clear() {
+            CompactStringMap.this.clear();
+        }
+    }
+    
+    private final class KeySet extends AbstractSet<String> {
+        public Iterator<String> iterator() {
+            final EntryIterator it = new EntryIterator();
+            return new Iterator<String>() {
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+                public String next() {
+                    return it.next().getKey();
+                }
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+        public boolean remove(Object o) {
+            if (containsKey(o)) {
+                CompactStringMap.this.remove(o);
+                return true;
+            }
+            return false;
+        }
+        public void clear() {
+            CompactStringMap.this.clear();
+        }
+    }
+    
+    private final class Values extends AbstractCollection<Object> {
+        public Iterator<Object> iterator() {
+            final EntryIterator it = new EntryIterator();
+            return new Iterator<Object>() {
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+                public Object next() {
+                    return it.next().getValue();
+                }
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+        public int size() {
+            return size;
+        }
+        public void clear() {
+            CompactStringMap.this.clear();
+        }
+    }
+    
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        // positions below KNOWN_KEYS.length are known slots, the ones
+        // above are the table entries
+        private int next;
+        private int current = -1;
+        private int expectedModCount = modCount;
+        
+        EntryIterator() {
+            advance();
+        }
+        
+        private void advance() {
+            int k = KNOWN_KEYS.length;
+            while (next < k && (known == null || known[next] == null)) {
+                next++;
+            }
+            if (next >= k) {
+                int x = next - k;
+                int length = table == null ? 0 : table.length / 2;
+                while (x < length && (table[x * 2] == null || table[x * 2] == REMOVED)) {
+                    x++;
+                }
+                next = k + x;
+            }
+        }
+        
+        private boolean isEnd(int pos) {
+            int k = KNOWN_KEYS.length;
+            return pos >= k && (table == null || pos - k >= table.length / 2);
+        }
+        
+        public boolean hasNext() {
+            return !isEnd(next);
+        }
+        
+        public Map.Entry<String, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (isEnd(next)) {
+                throw new NoSuchElementException();
+            }
+            current = next++;
+            advance();
+            int k = KNOWN_KEYS.length;
+            if (current < k) {
+                return new PropertyEntry(KNOWN_KEYS[current], unmask(known[current]));
+            }
+            int i = (current - k) * 2;
+            Object key = table[i];
+            return new PropertyEntry(key == NULL ? null : (String)key, table[i + 1]);
+        }
+        
+        public void remove() {
+            if (current < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            int k = KNOWN_KEYS.length;
+            if (current < k) {
+                removeKnown(current);
+            } else {
+                // removal leaves a REMOVED marker, the entries don't move
+                removeAt((current - k) * 2);
+            }
+            current = -1;
+            expectedModCount = modCount;
+        }
+    }
+    
+    private final class PropertyEntry extends AbstractMap.SimpleEntry<String, Object> {
+        private static final long serialVersionUID = 1L;
+        
+        PropertyEntry(String key, Object value) {
+            super(key, value);
+        }
+        
+        public Object setValue(Object value) {
+            super.setValue(value);
+            return doPut(getKey(), value);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.phase;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.workqueue.LatencyHistogram;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of the interceptors of an endpoint, and of the
+ * phases they run in. A PhaseInterceptorChain profiles a message when the endpoint of its exchange
+ * holds an enabled profiler under {@link #PROFILER_PROPERTY}.
+ * <p>
+ * The CPU time and allocated bytes are measured when the JVM supports it, the wall time always.
+ * The statistics can be dumped in the collapsed stack format of flame graph tools, one line per
+ * interceptor with the endpoint, phase and interceptor id as the frames.
+ */
+public class InterceptorProfiler {
+    public static final String PROFILER_PROPERTY = InterceptorProfiler.class.getName();
+    
+    public static final String WALL_TIME = "wall";
+    public static final String CPU_TIME = "cpu";
+    public static final String ALLOCATED_BYTES = "alloc";
+    
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final Method ALLOCATED_BYTES_METHOD;
+    private static final long ALLOCATION_OVERHEAD;
+    static {
+        Method m = null;
+        try {
+            // com.sun.management.ThreadMXBean, not every JVM has it
+            Class<?> cls = Class.forName("com.sun.management.ThreadMXBean");
+            m = cls.getMethod("getThreadAllocatedBytes", Long.TYPE);
+            if (!cls.isInstance(THREADS)
+                || (Long)m.invoke(THREADS, Thread.currentThread().getId()) < 0) {
+                m = null;
+            }
+        } catch (Throwable t) {
+            m = null;
+        }
+        ALLOCATED_BYTES_METHOD = m;
+        // the reflective call allocates as well, measure it to leave it out
+        long overhead = 0;
+        if (m != null) {
+            for (int i = 0; i < 20; i++) {
+                getAllocatedBytes();
+            }
+            long first = getAllocatedBytes();
+            long second = getAllocatedBytes();
+            overhead = Math.max(0, second - first);
+        }
+        ALLOCATION_OVERHEAD = overhead;
+    }
+    
+    private final String name;
+    private volatile boolean enabled = true;
+    private final boolean cpuTime;
+    private final ConcurrentMap<String, PhaseStatistics> phases 
+        = new ConcurrentHashMap<String, PhaseStatistics>();
+
+    public InterceptorProfiler(String name) {
+        this.name = name;
+        boolean cpu = false;
+        try {
+            cpu = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+        } catch (UnsupportedOperationException ex) {
+            cpu = false;
+        }
+        cpuTime = cpu;
+    }
+    
+    /**
+     * @return the enabled profiler of the endpoint of the message exchange, null if there is none
+     */
+    public static InterceptorProfiler getProfiler(Message message) {
+        Exchange exchange = message == null ? null : message.getExchange();
+        Endpoint endpoint = exchange == null ? null : exchange.getEndpoint();
+        if (endpoint == null) {
+            return null;
+        }
+        InterceptorProfiler profiler = (InterceptorProfiler)endpoint.get(PROFILER_PROPERTY);
+        return profiler != null && profiler.enabled ? profiler : null;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public boolean isCpuTimeSupported() {
+        return cpuTime;
+    }
+    
+    public boolean isAllocatedBytesSupported() {
+        return ALLOCATED_BYTES_METHOD != null;
+    }
+    
+    /**
+     * @return the statistics of the phases by phase name
+     */
+    public Map<String, PhaseStatistics> getPhases() {
+        return phases;
+    }
+    
+    public void reset() {
+        phases.clear();
+    }
+    
+    /**
+     * Starts the profile of a run of an interceptor chain.
+     */
+    public Run start() {
+        return new Run();
+    }
+    
+    long cpuTime() {
+        return cpuTime ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+    
+    private static long getAllocatedBytes() {
+        if (ALLOCATED_BYTES_METHOD == null) {
+            return 0;
+        }
+        try {
+            return (Long)ALLOCATED_BYTES_METHOD.invoke(THREADS, Thread.currentThread().getId());
+        } catch (Exception ex) {
+            return 0;
+        }
+    }
+    
+    long allocatedBytes() {
+        return getAllocatedBytes();
+    }
+    
+    private PhaseStatistics getPhase(String phase) {
+        PhaseStatistics stats = phases.get(phase);
+        if (stats == null) {
+            stats = new PhaseStatistics();
+            PhaseStatistics old = phases.putIfAbsent(phase, stats);
+            if (old != null) {
+                stats = old;
+            }
+        }
+        return stats;
+    }
+    
+    /**
+     * Writes the statistics in the collapsed stack format, a line per interceptor with the frames 
+     * separated by ';' and the total of the metric.
+     * 
+     * @param metric {@link #WALL_TIME} or {@link #CPU_TIME} in microseconds, or {@link #ALLOCATED_BYTES}
+     */
+    public String toCollapsedStacks(String metric) {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<String, PhaseStatistics> phase : phases.entrySet()) {
+            for (Map.Entry<String, Statistics> interceptor : phase.getValue().interceptors.entrySet()) {
+                Statistics stats = interceptor.getValue();
+                long value;
+                if (CPU_TIME.equals(metric)) {
+                    value = stats.cpuTime.getTotalNanos() / 1000;
+                } else if (ALLOCATED_BYTES.equals(metric)) {
+                    value = stats.allocatedBytes.get();
+                } else {
+                    value = stats.wallTime.getTotalNanos() / 1000;
+                }
+                if (value > 0) {
+                    buf.append(frame(name)).append(';').append(frame(phase.getKey())).append(';');
+                    buf.append(frame(interceptor.getKey())).append(' ').append(value).append('\n');
+                }
+            }
+        }
+        return buf.toString();
+    }
+    
+    private static String frame(String s) {
+        return s.replace(';', '_').replace(' ', '_');
+    }
+    
+    /**
+     * @return a line per phase and per interceptor with the number of calls, the mean, 99th percentile
+     *         and max wall time, the mean CPU time in microseconds and the mean allocated bytes
+     */
+    public String toSummary() {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<String, PhaseStatistics> phase : phases.entrySet()) {
+            summarize(buf, phase.getKey(), phase.getValue().total);
+            for (Map.Entry<String, Statistics> interceptor : phase.getValue().interceptors.entrySet()) {
+                summarize(buf, "  " + interceptor.getKey(), interceptor.getValue());
+            }
+        }
+        return buf.toString();
+    }
+    
+    private static void summarize(StringBuilder buf, String label, Statistics stats) {
+        long count = stats.wallTime.getCount();
+        buf.append(label);
+        buf.append(" calls=").append(count);
+        buf.append(" wall.mean=").append(stats.wallTime.getMeanNanos() / 1000);
+        buf.append(" wall.p99=").append(stats.wallTime.getPercentileNanos(99) / 1000);
+        buf.append(" wall.max=").append(stats.wallTime.getMaxNanos() / 1000);
+        buf.append(" cpu.mean=").append(stats.cpuTime.getMeanNanos() / 1000);
+        buf.append(" alloc.mean=").append(count == 0 ? 0 : stats.allocatedBytes.get() / count);
+        buf.append('\n');
+    }
+    
+    /**
+     * The statistics of an interceptor or a phase.
+     */
+    public static class Statistics {
+        final LatencyHistogram wallTime = new LatencyHistogram();
+        final LatencyHistogram cpuTime = new LatencyHistogram();
+        final AtomicLong allocatedBytes = new AtomicLong();
+        
+        void record(long wall, long cpu, long allocated) {
+            wallTime.record(wall);
+            cpuTime.record(cpu);
+            allocatedBytes.addAndGet(Math.max(0, allocated));
+        }
+        
+        public LatencyHistogram getWallTime() {
+            return wallTime;
+        }
+        
+        public LatencyHistogram getCpuTime() {
+            return cpuTime;
+        }
+        
+        public long getAllocatedBytes() {
+            return allocatedBytes.get();
+        }
+    }
+    
+    /**
+     * The statistics of a phase and of the interceptors by interceptor id.
+     */
+    public static class PhaseStatistics {
+        final Statistics total = new Statistics();
+        final ConcurrentMap<String, Statistics> interceptors = new ConcurrentHashMap<String, Statistics>();
+        
+        public Statistics getTotal() {
+            return total;
+        }
+        
+        public Map<String, Statistics> getInterceptors() {
+            return interceptors;
+        }
+        
+        Statistics getInterceptor(String id) {
+            Statistics stats = interceptors.get(id);
+            if (stats == null) {
+                stats = new Statistics();
+                Statistics old = interceptors.putIfAbsent(id, stats);
+                if (old != null) {
+                    stats = old;
+                }
+            }
+            return stats;
+        }
+    }
+    
+    /**
+     * The profile of one run of a chain. The times of a phase last until the first interceptor of the
+     * next phase starts or the run ends, its allocated bytes are those of its interceptors.
+     */
+    public final class Run {
+        private PhaseStatistics phase;
+        private String phaseName;
+        private long phaseWall;
+        private long phaseCpu;
+        private long phaseAllocated;
+        
+        Run() {
+        }
+        
+        public void invoke(String phaseId, PhaseInterceptor<Message> interceptor, Message message) {
+            if (!phaseId.equals(phaseName)) {
+                endPhase();
+                phaseName = phaseId;
+                phase = getPhase(phaseId);
+                phaseWall = System.nanoTime();
+                phaseCpu = cpuTime();
+                phaseAllocated = 0;
+            }
+            long wall = System.nanoTime();
+            long cpu = cpuTime();
+            long allocated = allocatedBytes();
+            try {
+                interceptor.handleMessage(message);
+            } finally {
+                long allocatedAfter = allocatedBytes();
+                allocated = Math.max(0, allocatedAfter - allocated - ALLOCATION_OVERHEAD);
+                phaseAllocated += allocated;
+                phase.getInterceptor(interceptor.getId())
+                    .record(System.nanoTime() - wall, cpuTime() - cpu, allocated);
+            }
+        }
+        
+        public void end() {
+            endPhase();
+            phase = null;
+            phaseName = null;
+        }
+        
+        private void endPhase() {
+            if (phase != null) {
+                phase.total.record(System.nanoTime() - phaseWall, cpuTime() - phaseCpu, phaseAllocated);
+            }
+        }
+    }
+}
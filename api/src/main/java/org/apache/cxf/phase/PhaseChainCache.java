@@ -35,6 +35,9 @@ import org.apache.cxf.message.Message;
  * phases supplied in the get() methods of this class are defined by default
  * within org.apache.cxf.phase.PhaseManagerImpl.  For an example of this class 
  * in use, check the sourcecode of org.apache.cxf.endpoint.ClientImpl.
+ * <p>
+ * The returned chains share the interceptors of the cached chain and only
+ * copy them when interceptors are added to or removed from the chain.
  */
 public final class PhaseChainCache {
     AtomicReference<ChainHolder> lastData = new AtomicReference<ChainHolder>();
@@ -80,6 +80,11 @@ public class PhaseInterceptorChain implements InterceptorChain {
     // Note no hasBefores[] is needed because implementation adds subsequent
     // interceptors to the end of the list by default.
     private boolean hasAfters[];
+    // shared indicates that heads, tails, hasAfters and the holders they refer
+    // to are shared with the chain this one was cloned from (or with its
+    // clones).  Shared holders are never modified, the chain copies them
+    // before the first interceptor is added or removed.
+    private boolean shared;
 
     
     private State state;
@@ -105,30 +110,17 @@ public class PhaseInterceptorChain implements InterceptorChain {
         nameMap = src.nameMap;
         phases = src.phases;
         
-        int length = phases.length;
-        hasAfters = new boolean[length];
-        System.arraycopy(src.hasAfters, 0, hasAfters, 0, length);
-        
-        heads = new InterceptorHolder[length];
-        tails = new InterceptorHolder[length];
-        
-        InterceptorHolder last = null;
-        for (int x = 0; x < length; x++) {
-            InterceptorHolder ih = src.heads[x];
-            while (ih != null
-                && ih.phaseIdx == x) {
-                InterceptorHolder ih2 = new InterceptorHolder(ih);
-                ih2.prev = last;
-                if (last != null) {
-                    last.next = ih2;
-                }
-                if (heads[x] == null) {
-                    heads[x] = ih2;
-                }
-                tails[x] = ih2;
-                last = ih2;
-                ih = ih.next;
-            }
+        //the holders are not modified while shared, just repoint
+        //and copy them when either chain is modified
+        heads = src.heads;
+        tails = src.tails;
+        hasAfters = src.hasAfters;
+        shared = true;
+        if (src.iterator != null) {
+            //src is running, its iterator may refer to a removed holder
+            unshare(null);
+        } else if (!src.shared) {
+            src.shared = true;
         }
     }
     
@@ -253,6 +245,8 @@ public class PhaseInterceptorChain implements InterceptorChain {
         updateIterator();
 
         Message oldMessage = CURRENT_MESSAGE.get();
+        InterceptorProfiler profiler = InterceptorProfiler.getProfiler(message);
+        InterceptorProfiler.Run profile = profiler == null ? null : profiler.start();
         try {
             CURRENT_MESSAGE.set(message);
             if (oldMessage != null 
@@ -263,12 +257,18 @@ public class PhaseInterceptorChain implements InterceptorChain {
             }
             while (state == State.EXECUTING && iterator.hasNext()) {
                 try {
-                    Interceptor<Message> currentInterceptor = (Interceptor<Message>)iterator.next();
+                    InterceptorHolder holder = iterator.nextInterceptorHolder();
+                    PhaseInterceptor<Message> currentInterceptor 
+                        = (PhaseInterceptor<Message>)holder.interceptor;
                     if (isFineLogging) {
                         LOG.fine("Invoking handleMessage on interceptor " + currentInterceptor);
                     }
                     //System.out.println("-----------" + currentInterceptor);
-                    currentInterceptor.handleMessage(message);
+                    if (profile == null) {
+                        currentInterceptor.handleMessage(message);
+                    } else {
+                        profile.invoke(phases[holder.phaseIdx].getName(), currentInterceptor, message);
+                    }
                     if (state == State.SUSPENDED) {
                          // throw the exception to make sure thread exit without interrupt
                         throw new SuspendedInvocationException();
@@ -339,6 +339,9 @@ public class PhaseInterceptorChain implements InterceptorChain {
             }
             return state == State.COMPLETE;
         } finally {
+            if (profile != null) {
+                profile.end();
+            }
             CURRENT_MESSAGE.set(oldMessage);
         }
     }
@@ -453,6 +456,9 @@ public class PhaseInterceptorChain implements InterceptorChain {
         while (it.hasNext()) {
             InterceptorHolder holder = it.nextInterceptorHolder();
             if (holder.interceptor == i) {
+                if (shared) {
+                    holder = unshare(holder);
+                }
                 remove(holder);
                 return;
             }
@@ -498,10 +504,66 @@ public class PhaseInterceptorChain implements InterceptorChain {
         }
     }
     
+    /**
+     * Copies the holders shared with other chains so this chain can be
+     * modified.  The iterator is moved to the copy of its current holder.
+     * 
+     * @param holder a shared holder the caller still refers to, may be null
+     * @return the copy of the given holder
+     */
+    private InterceptorHolder unshare(InterceptorHolder holder) {
+        int length = phases.length;
+        InterceptorHolder srcHeads[] = heads;
+        boolean srcHasAfters[] = hasAfters;
+        
+        hasAfters = new boolean[length];
+        System.arraycopy(srcHasAfters, 0, hasAfters, 0, length);
+        heads = new InterceptorHolder[length];
+        tails = new InterceptorHolder[length];
+        
+        InterceptorHolder copy = null;
+        InterceptorHolder iteratorCopy = null;
+        InterceptorHolder last = null;
+        for (int x = 0; x < length; x++) {
+            InterceptorHolder ih = srcHeads[x];
+            while (ih != null
+                && ih.phaseIdx == x) {
+                InterceptorHolder ih2 = new InterceptorHolder(ih);
+                ih2.prev = last;
+                if (last != null) {
+                    last.next = ih2;
+                }
+                if (heads[x] == null) {
+                    heads[x] = ih2;
+                }
+                if (ih == holder) {
+                    copy = ih2;
+                }
+                if (iterator != null && ih == iterator.prev) {
+                    iteratorCopy = ih2;
+                }
+                tails[x] = ih2;
+                last = ih2;
+                ih = ih.next;
+            }
+        }
+        shared = false;
+        
+        if (iterator != null) {
+            iterator.heads = heads;
+            iterator.prev = iteratorCopy;
+            iterator.first = iterator.findFirst();
+        }
+        return copy;
+    }
+    
     private void insertInterceptor(int phase, PhaseInterceptor<? extends Message> interc, boolean force) {
         InterceptorHolder ih = new InterceptorHolder(interc, phase);
         if (heads[phase] == null) {
             // no interceptors yet in this phase
+            if (shared) {
+                unshare(null);
+            }
             heads[phase] = ih;
             tails[phase] = ih;
             hasAfters[phase] = !interc.getAfter().isEmpty();
@@ -593,6 +655,10 @@ public class PhaseInterceptorChain implements InterceptorChain {
                 //System.out.print("Skipped: " + phase.toString());
                 //System.out.println("         " + interc.getId());
             }
+            if (shared) {
+                // lastAfter is only needed for the search above
+                firstBefore = unshare(firstBefore);
+            }
             hasAfters[phase] |= !afterList.isEmpty();
             
             if (firstBefore == null
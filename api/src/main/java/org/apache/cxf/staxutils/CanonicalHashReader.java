@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.staxutils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Computes a hash of the XML read through it, without building a DOM.
+ * The hash is that of a canonical form of the events, so documents that
+ * only differ in:
+ * <ul>
+ * <li>namespace prefixes and declarations, including the prefixes of
+ * xsi:type values</li>
+ * <li>the order of the attributes</li>
+ * <li>whitespace-only text between elements; the text of an element
+ * without child elements is hashed exactly, whitespace included</li>
+ * <li>the splitting of text into events, CDATA sections and character
+ * references</li>
+ * <li>comments and processing instructions</li>
+ * </ul>
+ * have the same hash.  The events are hashed as the reader moves past
+ * them, the event the wrapped reader is on when this reader is created
+ * is not, unless {@link #restart()} is called.  Events after the end of
+ * the element the wrapped reader was in aren't hashed either.
+ */
+public class CanonicalHashReader extends DepthXMLStreamReader {
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+    
+    private static final byte START = 1;
+    private static final byte END = 2;
+    private static final byte TEXT = 3;
+    
+    private final MessageDigest digest;
+    private final byte[] buffer = new byte[256];
+    private int count;
+    private final StringBuilder text = new StringBuilder();
+    // true if the last element event was a start element, so the text
+    // read since is the content of an element without child elements
+    private boolean leaf;
+    private int[] order = new int[8];
+
+    public CanonicalHashReader(XMLStreamReader reader) {
+        this(reader, DEFAULT_ALGORITHM);
+    }
+    
+    public CanonicalHashReader(XMLStreamReader reader, String algorithm) {
+        super(reader);
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+    
+    /**
+     * Completes the hash of the events read so far and resets it.
+     * @return the hash
+     */
+    public byte[] digest() {
+        flushText(false);
+        flush();
+        return digest.digest();
+    }
+    
+    /**
+     * Discards the hash of the events read so far, the hash starts again
+     * with the current event if it is a start element.
+     */
+    public void restart() {
+        count = 0;
+        text.setLength(0);
+        digest.reset();
+        leaf = getEventType() == START_ELEMENT;
+        if (leaf) {
+            writeStart();
+        }
+    }
+    
+    @Override
+    public int next() throws XMLStreamException {
+        int event = super.next();
+        if (getDepth() < 0) {
+            return event;
+        }
+        switch (event) {
+        case START_ELEMENT:
+            flushText(false);
+            writeStart();
+            leaf = true;
+            break;
+        case END_ELEMENT:
+            flushText(leaf);
+            writeByte(END);
+            leaf = false;
+            break;
+        case CHARACTERS:
+        case CDATA:
+        case SPACE:
+            text.append(getTextCharacters(), getTextStart(), getTextLength());
+            break;
+        case ENTITY_REFERENCE:
+            text.append(getText());
+            break;
+        default:
+            break;
+        }
+        return event;
+    }
+    
+    @Override
+    public String getElementText() throws XMLStreamException {
+        String s = super.getElementText();
+        if (getDepth() >= 0) {
+            text.append(s);
+            flushText(true);
+            writeByte(END);
+            leaf = false;
+        }
+        return s;
+    }
+    
+    private void writeStart() {
+        writeByte(START);
+        writeString(nonNull(getNamespaceURI()));
+        writeString(getLocalName());
+        int n = getAttributeCount();
+        writeInt(n);
+        if (n == 0) {
+            return;
+        }
+        if (order.length < n) {
+            order = new int[n];
+        }
+        // sort the attributes by namespace and local name
+        for (int x = 0; x < n; x++) {
+            int y = x;
+            while (y > 0 && compareAttributes(order[y - 1], x) > 0) {
+                order[y] = order[y - 1];
+                y--;
+            }
+            order[y] = x;
+        }
+        for (int x = 0; x < n; x++) {
+            int i = order[x];
+            String ns = getAttributeNamespace(i);
+            String local = getAttributeLocalName(i);
+            String value = getAttributeValue(i);
+            writeString(nonNull(ns));
+            writeString(local);
+            if (XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(ns) && "type".equals(local)) {
+                int idx = value.indexOf(':');
+                String prefix = idx == -1 ? XMLConstants.DEFAULT_NS_PREFIX : value.substring(0, idx);
+                writeString(nonNull(getNamespaceURI(prefix)));
+                writeString(value.substring(idx + 1));
+            } else {
+                writeString(value);
+            }
+        }
+    }
+    
+    private int compareAttributes(int a, int b) {
+        int c = nonNull(getAttributeNamespace(a)).compareTo(nonNull(getAttributeNamespace(b)));
+        if (c == 0) {
+            c = getAttributeLocalName(a).compareTo(getAttributeLocalName(b));
+        }
+        return c;
+    }
+    
+    /**
+     * @param content true if the text is the content of an element without
+     *        child elements, it is hashed even if it is only whitespace
+     */
+    private void flushText(boolean content) {
+        int length = text.length();
+        if (length > 0 && (content || !isWhitespace(text))) {
+            writeByte(TEXT);
+            writeInt(length);
+            for (int x = 0; x < length; x++) {
+                writeChar(text.charAt(x));
+            }
+        }
+        text.setLength(0);
+    }
+    
+    private void writeString(String s) {
+        int length = s.length();
+        writeInt(length);
+        for (int x = 0; x < length; x++) {
+            writeChar(s.charAt(x));
+        }
+    }
+    
+    private void writeInt(int i) {
+        writeByte((byte)(i >>> 24));
+        writeByte((byte)(i >>> 16));
+        writeByte((byte)(i >>> 8));
+        writeByte((byte)i);
+    }
+    
+    private void writeChar(char c) {
+        writeByte((byte)(c >>> 8));
+        writeByte((byte)c);
+    }
+    
+    private void writeByte(byte b) {
+        if (count == buffer.length) {
+            flush();
+        }
+        buffer[count++] = b;
+    }
+    
+    private void flush() {
+        digest.update(buffer, 0, count);
+        count = 0;
+    }
+    
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+    
+    private static boolean isWhitespace(CharSequence s) {
+        for (int x = 0; x < s.length(); x++) {
+            char c = s.charAt(x);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
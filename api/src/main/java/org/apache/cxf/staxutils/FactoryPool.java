@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.staxutils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool of the StAX factories of implementations that aren't thread safe.
+ * A factory is taken from the pool for the creation of one reader or
+ * writer and returned afterwards, a new one is created when the pool is
+ * empty.
+ * <p>
+ * The pool has three modes:
+ * <ul>
+ * <li>queue: a bounded queue shared by all threads, every poll and offer
+ * takes its lock.</li>
+ * <li>striped: the factories are spread over slots that are taken and
+ * returned with a compare and set, a thread starts at the slot of its id
+ * so threads rarely touch the same slot.  This is the default.</li>
+ * <li>thread: every thread keeps its own factory for the life of the
+ * thread.</li>
+ * </ul>
+ */
+abstract class FactoryPool<T> {
+    static final String MODE_QUEUE = "queue";
+    static final String MODE_STRIPED = "striped";
+    static final String MODE_THREAD = "thread";
+    
+    // slots are 16 references apart so that two of them don't share a cache line
+    private static final int SLOT_SPACING = 16;
+    // number of slots a thread tries before it creates or drops a factory
+    private static final int PROBES = 4;
+    
+    private final BlockingQueue<T> queue;
+    private final AtomicReferenceArray<T> slots;
+    private final int slotMask;
+    private final ThreadLocal<T> threadFactory;
+    
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+    
+    FactoryPool(String mode, int size) {
+        if (MODE_QUEUE.equals(mode)) {
+            queue = new ArrayBlockingQueue<T>(size);
+            slots = null;
+            slotMask = 0;
+            threadFactory = null;
+        } else if (MODE_THREAD.equals(mode)) {
+            queue = null;
+            slots = null;
+            slotMask = 0;
+            threadFactory = new ThreadLocal<T>();
+        } else {
+            int n = 1;
+            while (n < size) {
+                n <<= 1;
+            }
+            queue = null;
+            slots = new AtomicReferenceArray<T>(n * SLOT_SPACING);
+            slotMask = n - 1;
+            threadFactory = null;
+        }
+    }
+    
+    /**
+     * Creates a factory when the pool has none for the calling thread.
+     */
+    protected abstract T create();
+    
+    public T poll() {
+        T f = null;
+        if (queue != null) {
+            f = queue.poll();
+        } else if (threadFactory != null) {
+            f = threadFactory.get();
+            threadFactory.set(null);
+        } else {
+            int i = firstSlot();
+            for (int x = 0; x < PROBES && f == null; x++) {
+                int idx = ((i + x) & slotMask) * SLOT_SPACING;
+                f = slots.get(idx);
+                if (f != null && !slots.compareAndSet(idx, f, null)) {
+                    f = null;
+                }
+            }
+        }
+        if (f == null) {
+            misses.incrementAndGet();
+            f = create();
+        }
+        return f;
+    }
+    
+    public void offer(T f) {
+        boolean pooled = false;
+        if (queue != null) {
+            pooled = queue.offer(f);
+        } else if (threadFactory != null) {
+            threadFactory.set(f);
+            pooled = true;
+        } else {
+            int i = firstSlot();
+            for (int x = 0; x < PROBES && !pooled; x++) {
+                int idx = ((i + x) & slotMask) * SLOT_SPACING;
+                pooled = slots.get(idx) == null && slots.compareAndSet(idx, null, f);
+            }
+        }
+        if (!pooled) {
+            drops.incrementAndGet();
+        }
+    }
+    
+    /**
+     * @return the number of factories that were created because the pool had none
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    /**
+     * @return the number of factories that were dropped because the pool was full
+     */
+    public long getDrops() {
+        return drops.get();
+    }
+    
+    private static int firstSlot() {
+        long id = Thread.currentThread().getId();
+        int h = (int)(id ^ (id >>> 32));
+        return h ^ (h >>> 16);
+    }
+}
@@ -30,8 +30,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Stack;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.logging.Logger;
 
 import javax.xml.namespace.NamespaceContext;
@@ -90,12 +88,14 @@ public final class StaxUtils {
         "org.apache.cxf.staxutils.innerElementCountThreshold";
     private static final String INNER_ELEMENT_LEVEL_SYSTEM_PROP = 
         "org.apache.cxf.staxutils.innerElementLevelThreshold";
+    private static final String POOL_MODE_SYSTEM_PROP = 
+        "org.apache.cxf.staxutils.pool-mode";
     
     private static final Logger LOG = LogUtils.getL7dLogger(StaxUtils.class);
     
-    private static final BlockingQueue<XMLInputFactory> NS_AWARE_INPUT_FACTORY_POOL;
+    private static final FactoryPool<XMLInputFactory> NS_AWARE_INPUT_FACTORY_POOL;
     private static final XMLInputFactory SAFE_INPUT_FACTORY;
-    private static final BlockingQueue<XMLOutputFactory> OUTPUT_FACTORY_POOL;
+    private static final FactoryPool<XMLOutputFactory> OUTPUT_FACTORY_POOL;
     private static final XMLOutputFactory SAFE_OUTPUT_FACTORY;
     
     private static final String XML_NS = "http://www.w3.org/2000/xmlns/";
@@ -122,8 +122,22 @@ public final class StaxUtils {
         if (i <= 0) {
             i = 20;
         }
-        NS_AWARE_INPUT_FACTORY_POOL = new ArrayBlockingQueue<XMLInputFactory>(i);
-        OUTPUT_FACTORY_POOL = new ArrayBlockingQueue<XMLOutputFactory>(i);
+        String mode = FactoryPool.MODE_STRIPED;
+        try {
+            mode = SystemPropertyAction.getProperty(POOL_MODE_SYSTEM_PROP, mode);
+        } catch (Throwable t) {
+            //ignore 
+        }
+        NS_AWARE_INPUT_FACTORY_POOL = new FactoryPool<XMLInputFactory>(mode, i) {
+            protected XMLInputFactory create() {
+                return createXMLInputFactory(true);
+            }
+        };
+        OUTPUT_FACTORY_POOL = new FactoryPool<XMLOutputFactory>(mode, i) {
+            protected XMLOutputFactory create() {
+                return XMLOutputFactory.newInstance();
+            }
+        };
         try {
             String s =  SystemPropertyAction.getProperty(INNER_ELEMENT_LEVEL_SYSTEM_PROP, "-1");
             innerElementLevelThreshold = Integer.parseInt(s);
@@ -196,11 +210,7 @@ public final class StaxUtils {
         if (SAFE_INPUT_FACTORY != null) {
             return SAFE_INPUT_FACTORY;
         }
-        XMLInputFactory f = NS_AWARE_INPUT_FACTORY_POOL.poll();
-        if (f == null) {
-            f = createXMLInputFactory(true);
-        }
-        return f;
+        return NS_AWARE_INPUT_FACTORY_POOL.poll();
     }
     
     private static void returnXMLInputFactory(XMLInputFactory factory) {
@@ -213,11 +223,7 @@ public final class StaxUtils {
         if (SAFE_OUTPUT_FACTORY != null) {
             return SAFE_OUTPUT_FACTORY;
         }
-        XMLOutputFactory f = OUTPUT_FACTORY_POOL.poll();
-        if (f == null) {
-            f = XMLOutputFactory.newInstance();
-        }
-        return f;
+        return OUTPUT_FACTORY_POOL.poll();
     }
     
     private static void returnXMLOutputFactory(XMLOutputFactory factory) {
@@ -226,6 +232,28 @@ public final class StaxUtils {
         }
     }
     
+    /**
+     * The StAX factories of implementations that aren't thread safe are
+     * pooled, a factory is created when the pool has none for the thread.
+     * The pool is configured with the system properties
+     * org.apache.cxf.staxutils.pool-size and
+     * org.apache.cxf.staxutils.pool-mode (striped, thread or queue).
+     * @return the number of input factories that were created because the
+     *         pool was empty, 0 if the factory is thread safe and not pooled
+     */
+    public static long getInputFactoryPoolMisses() {
+        return NS_AWARE_INPUT_FACTORY_POOL.getMisses();
+    }
+    
+    /**
+     * @return the number of output factories that were created because the
+     *         pool was empty, 0 if the factory is thread safe and not pooled
+     * @see #getInputFactoryPoolMisses()
+     */
+    public static long getOutputFactoryPoolMisses() {
+        return OUTPUT_FACTORY_POOL.getMisses();
+    }
+    
     /**
      * Return a new factory so that the caller can set sticky parameters.
      * @param nsAware
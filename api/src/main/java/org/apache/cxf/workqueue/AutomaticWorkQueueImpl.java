@@ -79,6 +79,8 @@ public class AutomaticWorkQueueImpl implements AutomaticWorkQueue {
     boolean shared;
     int sharedCount;
     
+    final WorkQueueMetrics metrics = new WorkQueueMetrics();
+    
     private List<PropertyChangeListener> changeListenerList;
     
     public AutomaticWorkQueueImpl() {
@@ -415,12 +417,23 @@ public class AutomaticWorkQueueImpl implements AutomaticWorkQueue {
     }
     
     public void execute(final Runnable command) {
+        try {
+            submit(wrap(command));
+        } catch (RejectedExecutionException ree) {
+            metrics.rejected();
+            throw ree;
+        }
+    }
+    
+    private Runnable wrap(final Runnable command) {
         //Grab the context classloader of this thread.   We'll make sure we use that 
         //on the thread the runnable actually runs on.
         
         final ClassLoader loader = Thread.currentThread().getContextClassLoader();
-        Runnable r = new Runnable() {
+        final long submitted = System.nanoTime();
+        return new Runnable() {
             public void run() {
+                long started = metrics.started(submitted);
                 ClassLoaderHolder orig = ClassLoaderUtils.setThreadContextClassloader(loader);
                 try {
                     command.run();
@@ -428,9 +441,13 @@ public class AutomaticWorkQueueImpl implements AutomaticWorkQueue {
                     if (orig != null) {
                         orig.reset();
                     }
+                    metrics.finished(started);
                 }
             }
         };
+    }
+    
+    private void submit(Runnable r) {
         //The ThreadPoolExecutor in the JDK doesn't expand the number
         //of threads until the queue is full.   However, we would 
         //prefer the number of threads to expand immediately and 
@@ -465,14 +482,17 @@ public class AutomaticWorkQueueImpl implements AutomaticWorkQueue {
     
     // WorkQueue interface
     public void execute(Runnable work, long timeout) {
+        Runnable r = wrap(work);
         try {
-            execute(work);
+            submit(r);
         } catch (RejectedExecutionException ree) {
             try {
-                if (!getExecutor().getQueue().offer(work, timeout, TimeUnit.MILLISECONDS)) {
+                if (!getExecutor().getQueue().offer(r, timeout, TimeUnit.MILLISECONDS)) {
+                    metrics.rejected();
                     throw ree;
                 }
             } catch (InterruptedException ie) {
+                metrics.rejected();
                 throw ree;
             }
         }    
@@ -596,6 +616,14 @@ public class AutomaticWorkQueueImpl implements AutomaticWorkQueue {
         }
         return executor.getActiveCount();
     }
+    
+    /**
+     * @return the wait and execution times of the work items, and the rejection counts
+     */
+    public WorkQueueMetrics getMetrics() {
+        return metrics;
+    }
+    
     public void update(Dictionary<String, String> config) {
         String s = config.get("highWaterMark");
         if (s != null) {
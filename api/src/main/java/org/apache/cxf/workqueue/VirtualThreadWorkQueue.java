@@ -0,0 +1,324 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.workqueue;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.classloader.ClassLoaderUtils;
+import org.apache.cxf.common.classloader.ClassLoaderUtils.ClassLoaderHolder;
+import org.apache.cxf.common.injection.NoJSR250Annotations;
+import org.apache.cxf.common.logging.LogUtils;
+
+/**
+ * An AutomaticWorkQueue that runs every work item on a thread of its own instead of queueing it
+ * for a bounded pool. The threads are virtual threads when the runtime supports them, otherwise
+ * pooled daemon threads. The number of work items that run at the same time is limited by
+ * {@link #setMaxConcurrency(int)}, a work item beyond the limit is rejected like a work item
+ * that doesn't fit in the queue of an {@link AutomaticWorkQueueImpl}.
+ */
+@NoJSR250Annotations
+public class VirtualThreadWorkQueue implements AutomaticWorkQueue {
+    static final int DEFAULT_MAX_CONCURRENCY = 10000;
+    private static final Logger LOG =
+        LogUtils.getL7dLogger(VirtualThreadWorkQueue.class);
+
+    String name = "default";
+    volatile boolean shutdown;
+    // set by shutdown(false), work items that haven't started are dropped
+    volatile boolean discard;
+    
+    final Permits permits;
+    int maxConcurrency;
+    final AtomicInteger threadNumber = new AtomicInteger(1);
+    final WorkQueueMetrics metrics = new WorkQueueMetrics();
+    
+    boolean virtual;
+    Executor executor;
+    ScheduledThreadPoolExecutor scheduler;
+    
+    public VirtualThreadWorkQueue() {
+        this(DEFAULT_MAX_CONCURRENCY, "default");
+    }
+    public VirtualThreadWorkQueue(String name) {
+        this(DEFAULT_MAX_CONCURRENCY, name);
+    }
+    public VirtualThreadWorkQueue(int maxConcurrency, String name) {
+        this.maxConcurrency = maxConcurrency < 0 ? Integer.MAX_VALUE : maxConcurrency;
+        this.name = name;
+        permits = new Permits(this.maxConcurrency);
+        executor = createVirtualThreadExecutor();
+        virtual = executor != null;
+        if (executor == null) {
+            LOG.fine("Virtual threads aren't supported, the " + name + " work queue uses pooled threads");
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                                              new SynchronousQueue<Runnable>(),
+                                              new DaemonThreadFactory());
+        }
+    }
+    
+    static class Permits extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        Permits(int permits) {
+            super(permits);
+        }
+        
+        void reduce(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+    
+    class DaemonThreadFactory implements ThreadFactory {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-workqueue-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+    
+    /**
+     * @return true if the runtime has virtual threads, otherwise the work items of a
+     * VirtualThreadWorkQueue run on an unbounded pool of platform threads
+     */
+    public static boolean isSupported() {
+        return createVirtualThreadFactory("") != null;
+    }
+    
+    private static ThreadFactory createVirtualThreadFactory(String prefix) {
+        try {
+            // Thread.ofVirtual().name(prefix, start).factory(), the runtime may not have it
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method nameMethod = builderClass.getMethod("name", String.class, Long.TYPE);
+            builder = nameMethod.invoke(builder, prefix, 1L);
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+    
+    private Executor createVirtualThreadExecutor() {
+        final ThreadFactory factory = createVirtualThreadFactory(name + "-workqueue-");
+        if (factory == null) {
+            return null;
+        }
+        return new Executor() {
+            public void execute(Runnable r) {
+                factory.newThread(r).start();
+            }
+        };
+    }
+    
+    public void setName(String s) {
+        name = s;
+    }
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return true if the work items run on virtual threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+    
+    /**
+     * Sets the number of work items that may run at the same time, -1 for no limit.
+     */
+    public synchronized void setMaxConcurrency(int max) {
+        int newMax = max < 0 ? Integer.MAX_VALUE : max;
+        if (newMax > maxConcurrency) {
+            permits.release(newMax - maxConcurrency);
+        } else if (newMax < maxConcurrency) {
+            permits.reduce(maxConcurrency - newMax);
+        }
+        maxConcurrency = newMax;
+    }
+    public synchronized int getMaxConcurrency() {
+        return maxConcurrency == Integer.MAX_VALUE ? -1 : maxConcurrency;
+    }
+    
+    /**
+     * @return the number of work items that are running
+     */
+    public synchronized int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+    
+    /**
+     * @return the wait and execution times of the work items, and the rejection counts
+     */
+    public WorkQueueMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(super.toString());
+        buf.append(" [active: ");
+        buf.append(getActiveCount());
+        buf.append(", max concurrency: ");
+        buf.append(getMaxConcurrency());
+        buf.append(", virtual: ");
+        buf.append(virtual);
+        buf.append("]");
+        return buf.toString();
+    }
+    
+    public void execute(Runnable work) {
+        if (work == null) {
+            throw new NullPointerException();
+        }
+        long submitted = System.nanoTime();
+        if (shutdown || !permits.tryAcquire()) {
+            metrics.rejected();
+            throw new RejectedExecutionException();
+        }
+        start(work, submitted);
+    }
+    
+    // WorkQueue interface
+    public void execute(Runnable work, long timeout) {
+        if (work == null) {
+            throw new NullPointerException();
+        }
+        long submitted = System.nanoTime();
+        try {
+            if (shutdown || !permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                metrics.rejected();
+                throw new RejectedExecutionException();
+            }
+        } catch (InterruptedException ie) {
+            metrics.rejected();
+            throw new RejectedExecutionException(ie);
+        }
+        if (shutdown) {
+            // shut down while waiting for a permit
+            permits.release();
+            metrics.rejected();
+            throw new RejectedExecutionException();
+        }
+        start(work, submitted);
+    }
+    
+    private void start(final Runnable work, final long submitted) {
+        //Run the work with the context classloader of this thread
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        Runnable r = new Runnable() {
+            public void run() {
+                if (discard) {
+                    permits.release();
+                    return;
+                }
+                long started = metrics.started(submitted);
+                ClassLoaderHolder orig = ClassLoaderUtils.setThreadContextClassloader(loader);
+                try {
+                    work.run();
+                } finally {
+                    if (orig != null) {
+                        orig.reset();
+                    }
+                    metrics.finished(started);
+                    permits.release();
+                }
+            }
+        };
+        try {
+            executor.execute(r);
+        } catch (RuntimeException ex) {
+            metrics.rejected();
+            permits.release();
+            throw ex;
+        } catch (Error ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public synchronized void schedule(final Runnable work, final long delay) {
+        if (shutdown) {
+            metrics.rejected();
+            throw new RejectedExecutionException();
+        }
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory()) {
+                protected void terminated() {
+                    // the scheduled work items are done, they needed the executor
+                    shutdownExecutor();
+                }
+            };
+        }
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                // accepted before a shutdown, so it runs even if the queue was shut down since
+                try {
+                    if (!permits.tryAcquire()) {
+                        metrics.rejected();
+                        throw new RejectedExecutionException();
+                    }
+                    start(work, System.nanoTime());
+                } catch (Exception ex) {
+                    LOG.log(Level.WARNING, "Executing the scheduled task with exception: " + ex);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    // AutomaticWorkQueue interface
+    
+    /**
+     * Stops accepting work items, the running work items aren't interrupted. If
+     * processRemainingWorkItems is true the scheduled work items still run when they are due,
+     * otherwise they are dropped, like the work items that were executed but haven't started yet.
+     */
+    public synchronized void shutdown(boolean processRemainingWorkItems) {
+        shutdown = true;
+        discard = !processRemainingWorkItems;
+        if (scheduler == null) {
+            shutdownExecutor();
+        } else if (processRemainingWorkItems) {
+            scheduler.shutdown();
+        } else {
+            scheduler.shutdownNow();
+        }
+    }
+    
+    void shutdownExecutor() {
+        if (executor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor)executor).shutdown();
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+}
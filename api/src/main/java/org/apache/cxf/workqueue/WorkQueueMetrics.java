@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.workqueue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of a work queue: how long the work items wait before they start, how long they run,
+ * how many run and how many were rejected. Recording takes no locks, a work item only needs the time
+ * it was submitted.
+ */
+public class WorkQueueMetrics {
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram executionTime = new LatencyHistogram();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Records the start of a work item.
+     * 
+     * @param submitted the System.nanoTime() when the work item was submitted
+     * @return the System.nanoTime() of the start, for {@link #finished(long)}
+     */
+    public long started(long submitted) {
+        long now = System.nanoTime();
+        waitTime.record(now - submitted);
+        activeCount.incrementAndGet();
+        return now;
+    }
+    
+    /**
+     * Records the end of a work item.
+     * 
+     * @param started the System.nanoTime() returned by {@link #started(long)}
+     */
+    public void finished(long started) {
+        activeCount.decrementAndGet();
+        executionTime.record(System.nanoTime() - started);
+    }
+    
+    public void rejected() {
+        rejectedCount.incrementAndGet();
+    }
+    
+    /**
+     * @return the times between the submission and the start of the work items
+     */
+    public LatencyHistogram getWaitTime() {
+        return waitTime;
+    }
+    
+    /**
+     * @return the times the work items ran
+     */
+    public LatencyHistogram getExecutionTime() {
+        return executionTime;
+    }
+    
+    /**
+     * @return the number of work items that are running
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+    
+    /**
+     * @return the number of work items that ran
+     */
+    public long getCompletedCount() {
+        return executionTime.getCount();
+    }
+    
+    /**
+     * @return the number of work items that weren't accepted
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+    
+    /**
+     * Clears the recorded times and counts, the active count is kept.
+     */
+    public void reset() {
+        waitTime.reset();
+        executionTime.reset();
+        rejectedCount.set(0);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.interceptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.configuration.security.AuthorizationPolicy;
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResponseCacheInInterceptorTest extends Assert {
+    private static final String ENV_START =
+        "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">";
+    private static final String ENV_END = "</soap:Envelope>";
+
+    private ResponseCacheInInterceptor interceptor = new ResponseCacheInInterceptor(
+        new ResponseCache(10, 60000), Collections.singleton(new QName("urn:q", "getQuote")), 1024);
+
+    @Test
+    public void testKey() throws Exception {
+        String key = createKey(ENV_START + "<soap:Body><q:getQuote xmlns:q=\"urn:q\"><q:s>A</q:s>"
+                               + "</q:getQuote></soap:Body>" + ENV_END);
+        assertNotNull(key);
+        assertEquals(64, key.length());
+        assertEquals(key, createKey(ENV_START + "<soap:Header/>\n<soap:Body>\n"
+                                    + "<getQuote xmlns=\"urn:q\">\n  <s>A</s>\n</getQuote>"
+                                    + "</soap:Body>" + ENV_END));
+        assertFalse(key.equals(createKey(ENV_START + "<soap:Body><q:getQuote xmlns:q=\"urn:q\"><q:s>B</q:s>"
+                                         + "</q:getQuote></soap:Body>" + ENV_END)));
+    }
+
+    @Test
+    public void testNotCached() throws Exception {
+        assertNull(createKey(ENV_START + "<soap:Header><h xmlns=\"urn:h\"/></soap:Header>"
+                             + "<soap:Body><q:getQuote xmlns:q=\"urn:q\"/></soap:Body>" + ENV_END));
+        assertNull(createKey(ENV_START + "<soap:Body><q:buy xmlns:q=\"urn:q\"/></soap:Body>" + ENV_END));
+        assertNull(createKey(ENV_START + "<soap:Body/>" + ENV_END));
+        assertNull(createKey(ENV_START + "<soap:Body><q:getQuote xmlns:q=\"urn:q\">"));
+    }
+
+    @Test
+    public void testPlainXml() throws Exception {
+        String key = createKey("<q:getQuote xmlns:q=\"urn:q\"><s>A</s></q:getQuote>");
+        assertNotNull(key);
+        assertEquals(key, createKey(ENV_START + "<soap:Body><q:getQuote xmlns:q=\"urn:q\"><s>A</s>"
+                                    + "</q:getQuote></soap:Body>" + ENV_END));
+    }
+
+    @Test
+    public void testHandleMessage() throws Exception {
+        String request = ENV_START + "<soap:Body><q:getQuote xmlns:q=\"urn:q\"><q:s>A</q:s></q:getQuote>"
+            + "</soap:Body>" + ENV_END;
+        Message message = createMessage(request);
+        interceptor.handleMessage(message);
+        assertEquals(createKey(request), message.getExchange().get(ResponseCacheInInterceptor.CACHE_KEY));
+        assertEquals(request, IOUtils.toString(message.getContent(InputStream.class)));
+    }
+
+    @Test
+    public void testNotCacheableIsOnlyPeeked() throws Exception {
+        StringBuilder request = new StringBuilder(ENV_START + "<soap:Body><q:buy xmlns:q=\"urn:q\">");
+        for (int x = 0; x < 1000; x++) {
+            request.append("<item>").append(x).append("</item>");
+        }
+        request.append("</q:buy></soap:Body>").append(ENV_END);
+        Message message = createMessage(request.toString());
+        InputStream original = message.getContent(InputStream.class);
+        interceptor.handleMessage(message);
+        assertNull(message.getExchange().get(ResponseCacheInInterceptor.CACHE_KEY));
+        assertTrue(original.available() > 0);
+        assertEquals(request.toString(), IOUtils.toString(message.getContent(InputStream.class)));
+    }
+
+    @Test
+    public void testLargerThanLimit() throws Exception {
+        StringBuilder request = new StringBuilder(ENV_START + "<soap:Body><q:getQuote xmlns:q=\"urn:q\">");
+        for (int x = 0; x < 1000; x++) {
+            request.append("<q:s>").append(x).append("</q:s>");
+        }
+        request.append("</q:getQuote></soap:Body>").append(ENV_END);
+        Message message = createMessage(request.toString());
+        interceptor.handleMessage(message);
+        assertNull(message.getExchange().get(ResponseCacheInInterceptor.CACHE_KEY));
+        assertEquals(request.toString(), IOUtils.toString(message.getContent(InputStream.class)));
+    }
+
+    @Test
+    public void testCredentials() throws Exception {
+        String request = ENV_START + "<soap:Body><q:getQuote xmlns:q=\"urn:q\"/></soap:Body>" + ENV_END;
+        Message message = createMessage(request);
+        InputStream original = message.getContent(InputStream.class);
+        message.put(AuthorizationPolicy.class, new AuthorizationPolicy());
+        interceptor.handleMessage(message);
+        assertNull(message.getExchange().get(ResponseCacheInInterceptor.CACHE_KEY));
+        assertSame(original, message.getContent(InputStream.class));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        ResponseCache cache = new ResponseCache(2, 60000);
+        cache.put("a", new byte[] {1}, "text/xml");
+        cache.put("b", new byte[] {2}, "text/xml");
+        assertEquals("text/xml", cache.get("a").getContentType());
+        cache.put("c", new byte[] {3}, "text/xml");
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.get("c").getBytes()[0]);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        ResponseCache cache = new ResponseCache(2, 0);
+        cache.put("a", new byte[] {1}, "text/xml");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        cache.put("b", new byte[] {2}, "text/xml");
+        cache.purge();
+        assertEquals(0, cache.size());
+    }
+
+    private static Message createMessage(String xml) throws Exception {
+        Message message = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+        message.setExchange(exchange);
+        exchange.setInMessage(message);
+        message.put(Message.CONTENT_TYPE, "text/xml");
+        message.setContent(InputStream.class, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        return message;
+    }
+
+    private String createKey(String xml) throws Exception {
+        return interceptor.createKey(new ByteArrayInputStream(xml.getBytes("UTF-8")), "UTF-8");
+    }
+}
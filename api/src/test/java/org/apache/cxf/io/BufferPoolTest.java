@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.io;
+
+import org.apache.cxf.Bus;
+import org.easymock.EasyMock;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTest extends Assert {
+
+    @Test
+    public void testSizeClasses() {
+        BufferPool pool = new BufferPool();
+        assertEquals(1024, pool.acquire(1).length);
+        assertEquals(1024, pool.acquire(1024).length);
+        assertEquals(2048, pool.acquire(1025).length);
+        assertEquals(4096, pool.acquire(4096).length);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE, pool.acquire(BufferPool.MAX_BUFFER_SIZE).length);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, pool.acquire(BufferPool.MAX_BUFFER_SIZE + 1).length);
+        assertEquals(6, pool.getMissCount());
+        assertEquals(0, pool.getHitCount());
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        BufferPool pool = new BufferPool();
+        byte[] buffer = pool.acquire(4096);
+        assertEquals(1, pool.getMissCount());
+        assertEquals(4096, pool.getOutstandingBytes());
+        pool.release(buffer);
+        assertEquals(0, pool.getOutstandingBytes());
+        
+        assertSame(buffer, pool.acquire(3000));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        
+        // a larger class doesn't use the smaller arrays
+        pool.release(buffer);
+        assertEquals(8192, pool.acquire(8192).length);
+        assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        final BufferPool pool = new BufferPool();
+        final byte[] large = pool.acquire(BufferPool.MAX_BUFFER_SIZE);
+        final byte[][] small = new byte[2][];
+        Thread t = new Thread() {
+            public void run() {
+                small[0] = pool.acquire(1024);
+                small[1] = pool.acquire(1024);
+                pool.release(small[0]);
+                pool.release(small[1]);
+                pool.release(large);
+            }
+        };
+        t.start();
+        t.join();
+        // one small array is kept by the other thread, the large arrays are always shared
+        assertEquals(BufferPool.MAX_BUFFER_SIZE + 1024, pool.getPooledBytes());
+        assertSame(large, pool.acquire(BufferPool.MAX_BUFFER_SIZE));
+        assertSame(small[1], pool.acquire(1024));
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(2, pool.getHitCount());
+    }
+
+    @Test
+    public void testMaxPooledBytes() {
+        BufferPool pool = new BufferPool();
+        pool.setMaxPooledBytes(BufferPool.MAX_BUFFER_SIZE);
+        byte[] first = pool.acquire(BufferPool.MAX_BUFFER_SIZE);
+        byte[] second = pool.acquire(BufferPool.MAX_BUFFER_SIZE);
+        pool.release(first);
+        pool.release(second);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE, pool.getPooledBytes());
+        assertEquals(0, pool.getOutstandingBytes());
+        assertSame(first, pool.acquire(BufferPool.MAX_BUFFER_SIZE));
+        assertNotSame(second, pool.acquire(BufferPool.MAX_BUFFER_SIZE));
+    }
+
+    @Test
+    public void testForeignArraysAreIgnored() {
+        BufferPool pool = new BufferPool();
+        pool.release(new byte[1000]);
+        pool.release(new byte[BufferPool.MAX_BUFFER_SIZE * 2]);
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(0, pool.getOutstandingBytes());
+        assertEquals(1024, pool.acquire(1000).length);
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void testGetInstance() {
+        assertSame(BufferPool.getDefault(), BufferPool.getInstance(null));
+        
+        BufferPool pool = new BufferPool();
+        Bus bus = EasyMock.createMock(Bus.class);
+        EasyMock.expect(bus.getExtension(BufferPool.class)).andReturn(pool);
+        EasyMock.expect(bus.getExtension(BufferPool.class)).andReturn(null);
+        EasyMock.replay(bus);
+        assertSame(pool, BufferPool.getInstance(bus));
+        assertSame(BufferPool.getDefault(), BufferPool.getInstance(bus));
+        EasyMock.verify(bus);
+    }
+}
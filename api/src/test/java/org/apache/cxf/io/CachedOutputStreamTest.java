@@ -135,6 +135,7 @@ public class CachedOutputStreamTest extends Assert {
             EasyMock.expect(b.getProperty("bus.io.CachedOutputStream.Threshold")).andReturn("4");
             EasyMock.expect(b.getProperty("bus.io.CachedOutputStream.MaxSize")).andReturn(null);
             EasyMock.expect(b.getProperty("bus.io.CachedOutputStream.CipherTransformation")).andReturn(null);
+            EasyMock.expect(b.getProperty("bus.io.CachedOutputStream.BufferStrategy")).andReturn(null);
         
             BusFactory.setThreadDefaultBus(b);
             
@@ -152,6 +153,76 @@ public class CachedOutputStreamTest extends Assert {
         }
     }
     
+    @Test
+    public void testDirectBuffers() throws IOException {
+        DirectBufferPool pool = new DirectBufferPool(16, 1024);
+        CachedOutputStream cos = new CachedOutputStream();
+        cos.setDirectBufferPool(pool);
+        
+        final String text = "Hello World in several segments!";
+        cos.write(text.getBytes("UTF-8"));
+        cos.flush();
+        assertNull("expects no tmp file", cos.getTempFile());
+        assertEquals(32, pool.getInUseBytes());
+        assertEquals(text, new String(cos.getBytes(), "UTF-8"));
+        StringBuilder builder = new StringBuilder();
+        cos.writeCacheTo(builder, 11);
+        assertEquals("Hello World", builder.toString());
+        
+        InputStream in = cos.getInputStream();
+        cos.close();
+        assertEquals("segments are released", 32, pool.getInUseBytes());
+        assertEquals(text, readFromStream(in));
+        assertEquals("segments aren't released", 0, pool.getInUseBytes());
+        
+        // the segments are reused
+        cos = new CachedOutputStream();
+        cos.setDirectBufferPool(pool);
+        cos.write(text.getBytes("UTF-8"));
+        assertEquals(32, pool.getAllocatedBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cos.resetOut(out, true);
+        assertEquals(text, out.toString("UTF-8"));
+        assertEquals(0, pool.getInUseBytes());
+    }
+    
+    @Test
+    public void testDirectBuffersOverBudget() throws IOException {
+        DirectBufferPool pool = new DirectBufferPool(16, 32);
+        CachedOutputStream cos = new CachedOutputStream();
+        cos.setDirectBufferPool(pool);
+        
+        final String text = initTestData(1);
+        cos.write(text.getBytes("UTF-8"));
+        assertEquals(32, pool.getAllocatedBytes());
+        assertTrue(pool.getFallbackCount() > 0);
+        assertEquals(text, readFromStream(cos.getInputStream()));
+        cos.close();
+        assertEquals(0, pool.getInUseBytes());
+    }
+
+    @Test
+    public void testDirectBuffersSpillToMappedFile() throws IOException {
+        DirectBufferPool pool = new DirectBufferPool(16, 1024);
+        CachedOutputStream cos = new CachedOutputStream();
+        cos.setThreshold(40);
+        cos.setDirectBufferPool(pool);
+        
+        final String text = initTestData(1);
+        cos.write(text.getBytes("UTF-8"));
+        cos.flush();
+        File tmpfile = cos.getTempFile();
+        assertNotNull("expects a tmp file", tmpfile);
+        assertEquals("segments aren't released", 0, pool.getInUseBytes());
+        assertEquals(text, new String(cos.getBytes(), "UTF-8"));
+        
+        InputStream in = cos.getInputStream();
+        cos.close();
+        assertTrue("file is deleted", tmpfile.exists());
+        assertEquals(text, readFromStream(in));
+        assertFalse("file is not deleted", tmpfile.exists());
+    }
+    
     private static String readFromStream(InputStream is) throws IOException {
         ByteArrayOutputStream buf = new ByteArrayOutputStream();
         try {
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.transport.Destination;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactStringMapTest extends Assert {
+
+    @Test
+    public void testKnownAndOtherKeys() {
+        CompactStringMap map = new CompactStringMap();
+        assertNull(map.put(Message.CONTENT_TYPE, "text/xml"));
+        assertNull(map.put("custom", "value"));
+        map.put(BindingOperationInfo.class, null);
+        assertEquals(3, map.size());
+        assertEquals("text/xml", map.get(new String(Message.CONTENT_TYPE)));
+        assertEquals("value", map.get("custom"));
+        assertTrue(map.containsKey(BindingOperationInfo.class.getName()));
+        assertNull(map.get(BindingOperationInfo.class));
+        assertFalse(map.containsKey(Destination.class.getName()));
+
+        assertEquals("text/xml", map.put(Message.CONTENT_TYPE, "application/soap+xml"));
+        assertEquals(3, map.size());
+        assertEquals("value", map.remove("custom"));
+        assertNull(map.remove("custom"));
+        assertEquals(2, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(Message.CONTENT_TYPE));
+    }
+
+    @Test
+    public void testNullKey() {
+        CompactStringMap map = new CompactStringMap();
+        map.put((String)null, "value");
+        assertTrue(map.containsKey(null));
+        assertEquals("value", map.get((Object)null));
+        assertEquals("value", map.remove(null));
+        assertFalse(map.containsKey(null));
+    }
+
+    @Test
+    public void testSameContentAsHashMap() {
+        CompactStringMap map = new CompactStringMap();
+        Map<String, Object> expected = new HashMap<String, Object>();
+        for (int x = 0; x < 1000; x++) {
+            map.put("key" + x, x);
+            expected.put("key" + x, x);
+            if (x % 3 == 0) {
+                map.remove("key" + (x / 2));
+                expected.remove("key" + (x / 2));
+            }
+        }
+        map.put(Message.ENCODING, "UTF-8");
+        expected.put(Message.ENCODING, "UTF-8");
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(expected, new CompactStringMap(map));
+        assertEquals(expected, new CompactStringMap(expected));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        CompactStringMap map = new CompactStringMap();
+        for (int x = 0; x < 20; x++) {
+            map.put("key" + x, x);
+        }
+        map.put(Message.RESPONSE_CODE, 200);
+        Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            Map.Entry<String, Object> e = it.next();
+            if (((Integer)e.getValue()) % 2 == 0) {
+                it.remove();
+            } else {
+                e.setValue(-1);
+            }
+            count++;
+        }
+        assertEquals(21, count);
+        assertEquals(10, map.size());
+        for (Object value : map.values()) {
+            assertEquals(-1, value);
+        }
+    }
+
+    @Test
+    public void testMapMethods() {
+        CompactStringMap map = new CompactStringMap();
+        Map<String, Object> other = new HashMap<String, Object>();
+        other.put(Message.ENCODING, "UTF-8");
+        other.put("custom", "value");
+        map.putAll(other);
+        assertTrue(map.containsValue("UTF-8"));
+        assertFalse(map.containsValue("ISO-8859-1"));
+        assertEquals(other.keySet(), map.keySet());
+        assertTrue(map.keySet().remove("custom"));
+        assertEquals(1, map.size());
+
+        assertTrue(map.values().remove("UTF-8"));
+        assertTrue(map.isEmpty());
+        map.put("custom", "value");
+        map.put(Message.ENCODING, "UTF-16");
+
+        CompactStringMap clone = map.clone();
+        assertEquals(map, clone);
+        clone.remove("custom");
+        assertTrue(map.containsKey("custom"));
+        assertEquals(1, clone.size());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        CompactStringMap map = new CompactStringMap();
+        map.put(Message.CONTENT_TYPE, "text/xml");
+        map.put("custom", null);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(map);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        Object copy = in.readObject();
+
+        assertEquals(map, copy);
+        assertTrue(((CompactStringMap)copy).containsKey("custom"));
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.phase;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.easymock.EasyMock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InterceptorProfilerTest extends Assert {
+
+    private PhaseInterceptorChain chain;
+    private InterceptorProfiler profiler;
+    private Message message;
+
+    @Before
+    public void setUp() {
+        SortedSet<Phase> phases = new TreeSet<Phase>();
+        phases.add(new Phase("phase1", 1));
+        phases.add(new Phase("phase2", 2));
+        chain = new PhaseInterceptorChain(phases);
+        chain.add(new SleepingInterceptor("phase1", "p1", 20));
+        chain.add(new SleepingInterceptor("phase1", "p2", 0));
+        chain.add(new SleepingInterceptor("phase2", "p3", 0));
+        
+        profiler = new InterceptorProfiler("endpoint");
+        Endpoint endpoint = EasyMock.createMock(Endpoint.class);
+        EasyMock.expect(endpoint.get(InterceptorProfiler.PROFILER_PROPERTY)).andReturn(profiler).anyTimes();
+        EasyMock.replay(endpoint);
+        
+        message = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+        exchange.put(Endpoint.class, endpoint);
+        message.setExchange(exchange);
+    }
+
+    @Test
+    public void testProfile() {
+        assertTrue(chain.doIntercept(message));
+        
+        assertEquals(2, profiler.getPhases().size());
+        InterceptorProfiler.PhaseStatistics phase1 = profiler.getPhases().get("phase1");
+        assertEquals(2, phase1.getInterceptors().size());
+        assertEquals(1, phase1.getTotal().getWallTime().getCount());
+        InterceptorProfiler.Statistics p1 = phase1.getInterceptors().get("p1");
+        assertEquals(1, p1.getWallTime().getCount());
+        assertTrue(p1.getWallTime().getMaxNanos() >= 20000000L);
+        assertTrue(phase1.getTotal().getWallTime().getMaxNanos() >= p1.getWallTime().getMaxNanos());
+        if (profiler.isAllocatedBytesSupported()) {
+            assertTrue(phase1.getInterceptors().get("p2").getAllocatedBytes() >= 1024 * 1024);
+        }
+        
+        String stacks = profiler.toCollapsedStacks(InterceptorProfiler.WALL_TIME);
+        assertTrue(stacks, stacks.contains("endpoint;phase1;p1 "));
+        assertTrue(stacks, stacks.contains("endpoint;phase2;p3 "));
+        String summary = profiler.toSummary();
+        assertTrue(summary, summary.contains("phase1 calls=1"));
+        assertTrue(summary, summary.contains("  p1 calls=1"));
+        
+        profiler.reset();
+        assertTrue(profiler.getPhases().isEmpty());
+    }
+
+    @Test
+    public void testDisabled() {
+        profiler.setEnabled(false);
+        assertTrue(chain.doIntercept(message));
+        assertTrue(profiler.getPhases().isEmpty());
+    }
+
+    static class SleepingInterceptor extends AbstractPhaseInterceptor<Message> {
+        private long sleep;
+        
+        SleepingInterceptor(String phase, String id, long sleep) {
+            super(id, phase);
+            this.sleep = sleep;
+        }
+        
+        public void handleMessage(Message m) {
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            } else {
+                m.put("bytes", new byte[1024 * 1024]);
+            }
+        }
+    }
+}
@@ -392,6 +392,59 @@ public class PhaseInterceptorChainTest extends Assert {
         assertEquals(1, p3.invoked);
     }
     
+    @Test
+    public void testClonedChainCopiedOnWrite() throws Exception {
+        CountingPhaseInterceptor p1 = new CountingPhaseInterceptor("phase1", "p1");
+        CountingPhaseInterceptor p2 = new CountingPhaseInterceptor("phase2", "p2");
+        CountingPhaseInterceptor p3 = new CountingPhaseInterceptor("phase3", "p3");
+
+        control.replay();
+        chain.add(p1);
+        chain.add(p3);
+        PhaseInterceptorChain clone = chain.cloneChain();
+        clone.add(p2);
+        clone.remove(p1);
+        clone.doIntercept(message);
+        assertEquals(0, p1.invoked);
+        assertEquals(1, p2.invoked);
+        assertEquals(1, p3.invoked);
+
+        chain.doIntercept(message);
+        assertEquals(1, p1.invoked);
+        assertEquals(1, p2.invoked);
+        assertEquals(2, p3.invoked);
+    }
+
+    @Test
+    public void testInsertionInClonedChain() throws Exception {
+        AbstractPhaseInterceptor<Message> p1 = new AbstractPhaseInterceptor<Message>("p1", "phase1") {
+            public void handleMessage(Message m) {
+                m.getInterceptorChain().add(new CountingPhaseInterceptor("phase2", "p2"));
+            }
+        };
+        CountingPhaseInterceptor p3 = new CountingPhaseInterceptor("phase3", "p3");
+        chain.add(p1);
+        chain.add(p3);
+        PhaseInterceptorChain clone = chain.cloneChain();
+
+        message.getInterceptorChain();
+        EasyMock.expectLastCall().andReturn(clone).anyTimes();
+        control.replay();
+
+        assertTrue(clone.doIntercept(message));
+        assertEquals(1, p3.invoked);
+        Iterator<Interceptor<? extends Message>> it = clone.iterator();
+        assertSame(p1, it.next());
+        assertEquals("p2", ((PhaseInterceptor<?>)it.next()).getId());
+        assertSame(p3, it.next());
+        assertFalse(it.hasNext());
+
+        it = chain.iterator();
+        assertSame(p1, it.next());
+        assertSame(p3, it.next());
+        assertFalse(it.hasNext());
+    }
+
     AbstractPhaseInterceptor<Message> setUpPhaseInterceptor(String phase, String id) throws Exception {
         return setUpPhaseInterceptor(phase, id, null, null);
     }
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.staxutils;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CanonicalHashReaderTest extends Assert {
+
+    @Test
+    public void testPrefixes() throws Exception {
+        assertSameHash("<a:x xmlns:a=\"urn:a\"><a:y>1</a:y></a:x>",
+                       "<x xmlns=\"urn:a\"><b:y xmlns:b=\"urn:a\">1</b:y></x>");
+        assertDifferentHash("<a:x xmlns:a=\"urn:a\"/>", "<a:x xmlns:a=\"urn:b\"/>");
+    }
+
+    @Test
+    public void testWhitespaceAndText() throws Exception {
+        assertSameHash("<x><y>1</y><z>ab</z></x>",
+                       "<x>\n  <y>1</y>\n  <!-- c --><z>a<![CDATA[b]]></z>\n</x>");
+        assertDifferentHash("<x><y>1</y></x>", "<x><y>2</y></x>");
+        assertDifferentHash("<x><y>a b</y></x>", "<x><y>ab</y></x>");
+        // the text of an element without child elements is a value, its whitespace counts
+        assertDifferentHash("<x><y>A </y></x>", "<x><y>A</y></x>");
+        assertDifferentHash("<x><y> </y></x>", "<x><y/></x>");
+        assertDifferentHash("<x>a <y/></x>", "<x>a<y/></x>");
+    }
+
+    @Test
+    public void testAttributeOrder() throws Exception {
+        assertSameHash("<x a=\"1\" b=\"2\" xmlns:p=\"urn:p\" p:c=\"3\"/>",
+                       "<x xmlns:q=\"urn:p\" q:c=\"3\" b=\"2\" a=\"1\"/>");
+        assertDifferentHash("<x a=\"1\" b=\"2\"/>", "<x a=\"2\" b=\"1\"/>");
+    }
+
+    @Test
+    public void testXsiType() throws Exception {
+        String xsi = "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"";
+        assertSameHash("<x " + xsi + " xmlns:a=\"urn:t\" xsi:type=\"a:T\"/>",
+                       "<x " + xsi + " xmlns:b=\"urn:t\" xsi:type=\"b:T\"/>");
+        assertDifferentHash("<x " + xsi + " xmlns:a=\"urn:t\" xsi:type=\"a:T\"/>",
+                            "<x " + xsi + " xmlns:a=\"urn:u\" xsi:type=\"a:T\"/>");
+    }
+
+    @Test
+    public void testStructure() throws Exception {
+        assertDifferentHash("<x><y/><z/></x>", "<x><y><z/></y></x>");
+        assertDifferentHash("<x><y>1</y></x>", "<x>1<y/></x>");
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        XMLStreamReader reader = StaxUtils.createXMLStreamReader(new StringReader("<w><x a=\"1\">2</x></w>"));
+        CanonicalHashReader hashReader = new CanonicalHashReader(reader);
+        hashReader.nextTag();
+        hashReader.nextTag();
+        hashReader.restart();
+        assertEquals(XMLStreamReader.CHARACTERS, hashReader.next());
+        assertEquals(XMLStreamReader.END_ELEMENT, hashReader.next());
+        assertEquals("x", hashReader.getLocalName());
+        assertTrue(Arrays.equals(hash("<x a=\"1\">2</x>"), hashReader.digest()));
+    }
+
+    private static byte[] hash(String xml) throws Exception {
+        XMLStreamReader reader = StaxUtils.createXMLStreamReader(new StringReader(xml));
+        CanonicalHashReader hashReader = new CanonicalHashReader(reader);
+        while (hashReader.hasNext()) {
+            hashReader.next();
+        }
+        return hashReader.digest();
+    }
+
+    private static void assertSameHash(String xml1, String xml2) throws Exception {
+        assertTrue(Arrays.equals(hash(xml1), hash(xml2)));
+    }
+
+    private static void assertDifferentHash(String xml1, String xml2) throws Exception {
+        assertFalse(Arrays.equals(hash(xml1), hash(xml2)));
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.staxutils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FactoryPoolTest extends Assert {
+
+    @Test
+    public void testQueue() {
+        doTestReuse(FactoryPool.MODE_QUEUE);
+        assertEquals(1, doTestFull(FactoryPool.MODE_QUEUE));
+    }
+
+    @Test
+    public void testStriped() {
+        doTestReuse(FactoryPool.MODE_STRIPED);
+        assertEquals(1, doTestFull(FactoryPool.MODE_STRIPED));
+    }
+
+    @Test
+    public void testThread() {
+        doTestReuse(FactoryPool.MODE_THREAD);
+        // the second factory replaces the first one of the thread
+        assertEquals(0, doTestFull(FactoryPool.MODE_THREAD));
+    }
+
+    @Test
+    public void testStripedConcurrent() throws Exception {
+        final TestPool pool = new TestPool(FactoryPool.MODE_STRIPED, 4);
+        final AtomicInteger shared = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread() {
+                public void run() {
+                    for (int x = 0; x < 10000; x++) {
+                        AtomicBoolean f = pool.poll();
+                        if (!f.compareAndSet(false, true)) {
+                            shared.incrementAndGet();
+                        }
+                        f.set(false);
+                        pool.offer(f);
+                    }
+                    done.countDown();
+                }
+            } .start();
+        }
+        done.await();
+        assertEquals(0, shared.get());
+        assertEquals(pool.created.get(), pool.getMisses());
+    }
+
+    private void doTestReuse(String mode) {
+        TestPool pool = new TestPool(mode, 4);
+        AtomicBoolean f = pool.poll();
+        assertEquals(1, pool.getMisses());
+        pool.offer(f);
+        assertSame(f, pool.poll());
+        assertEquals(1, pool.getMisses());
+        assertNotSame(f, pool.poll());
+        assertEquals(2, pool.getMisses());
+    }
+
+    private long doTestFull(String mode) {
+        TestPool pool = new TestPool(mode, 1);
+        AtomicBoolean f1 = pool.poll();
+        AtomicBoolean f2 = pool.poll();
+        pool.offer(f1);
+        pool.offer(f2);
+        return pool.getDrops();
+    }
+
+    private static class TestPool extends FactoryPool<AtomicBoolean> {
+        final AtomicInteger created = new AtomicInteger();
+
+        TestPool(String mode, int size) {
+            super(mode, size);
+        }
+
+        protected AtomicBoolean create() {
+            created.incrementAndGet();
+            return new AtomicBoolean();
+        }
+    }
+}
@@ -104,6 +104,44 @@ public class AutomaticWorkQueueTest extends Assert {
             assertEquals(x, 4);
         }
     }
+
+    @Test
+    public void testMetrics() throws Exception {
+        workqueue = new AutomaticWorkQueueImpl(1, 1, 1, 1, DEFAULT_DEQUEUE_TIMEOUT);
+        WorkQueueMetrics metrics = workqueue.getMetrics();
+        
+        BlockingWorkItem blocking = new BlockingWorkItem();
+        BlockingWorkItem queued = new BlockingWorkItem();
+        queued.unblock();
+        workqueue.execute(blocking);
+        for (int i = 0; i < 20 && metrics.getActiveCount() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, metrics.getActiveCount());
+        workqueue.execute(queued);
+        try {
+            workqueue.execute(new BlockingWorkItem(), 10);
+            fail("Should have failed with a RejectedExecutionException as the queue is full");
+        } catch (RejectedExecutionException rex) {
+            // expected
+        }
+        assertEquals(1, metrics.getRejectedCount());
+        
+        Thread.sleep(100);
+        blocking.unblock();
+        for (int i = 0; i < 20 && metrics.getCompletedCount() < 2; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, metrics.getCompletedCount());
+        assertEquals(0, metrics.getActiveCount());
+        // the queued work item waited for the blocking one
+        assertTrue(metrics.getWaitTime().getMaxNanos() >= 100000000L);
+        assertTrue(metrics.getExecutionTime().getMaxNanos() >= 100000000L);
+        
+        metrics.reset();
+        assertEquals(0, metrics.getCompletedCount());
+        assertEquals(0, metrics.getRejectedCount());
+    }
     
     
     @Test
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.workqueue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VirtualThreadWorkQueueTest extends Assert {
+
+    VirtualThreadWorkQueue workqueue;
+    
+    @After
+    public void tearDown() throws Exception {
+        if (workqueue != null) {
+            workqueue.shutdown(true);
+            workqueue = null;
+        }
+    }
+    
+    @Test
+    public void testExecute() throws Exception {
+        workqueue = new VirtualThreadWorkQueue("test");
+        assertEquals("test", workqueue.getName());
+        assertEquals(VirtualThreadWorkQueue.DEFAULT_MAX_CONCURRENCY, workqueue.getMaxConcurrency());
+        
+        final CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            workqueue.execute(new Runnable() {
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSupported() throws Exception {
+        workqueue = new VirtualThreadWorkQueue("test");
+        assertEquals(VirtualThreadWorkQueue.isSupported(), workqueue.isVirtual());
+    }
+
+    @Test
+    public void testMaxConcurrency() throws Exception {
+        workqueue = new VirtualThreadWorkQueue(2, "test");
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(2);
+        Runnable blocking = new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        workqueue.execute(blocking);
+        workqueue.execute(blocking);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, workqueue.getActiveCount());
+        
+        try {
+            workqueue.execute(blocking);
+            fail("Expected RejectedExecutionException not thrown");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+        long start = System.currentTimeMillis();
+        try {
+            workqueue.execute(blocking, 100);
+            fail("Expected RejectedExecutionException not thrown");
+        } catch (RejectedExecutionException ex) {
+            assertTrue(System.currentTimeMillis() - start >= 90);
+        }
+        
+        workqueue.setMaxConcurrency(3);
+        final CountDownLatch done = new CountDownLatch(1);
+        workqueue.execute(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        
+        release.countDown();
+        for (int i = 0; i < 50 && workqueue.getActiveCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, workqueue.getActiveCount());
+    }
+
+    @Test
+    public void testExecuteWaitsForPermit() throws Exception {
+        workqueue = new VirtualThreadWorkQueue(1, "test");
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable work = new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                done.countDown();
+            }
+        };
+        workqueue.execute(work);
+        workqueue.execute(work, 5000);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        workqueue = new VirtualThreadWorkQueue("test");
+        final CountDownLatch done = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+        workqueue.schedule(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        }, 200);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 190);
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        workqueue = new VirtualThreadWorkQueue("test");
+        assertFalse(workqueue.isShutdown());
+        workqueue.shutdown(true);
+        assertTrue(workqueue.isShutdown());
+        try {
+            workqueue.execute(new Runnable() {
+                public void run() {
+                }
+            });
+            fail("Expected RejectedExecutionException not thrown");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testShutdownProcessesScheduledWork() throws Exception {
+        workqueue = new VirtualThreadWorkQueue("test");
+        final CountDownLatch done = new CountDownLatch(1);
+        workqueue.schedule(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        }, 200);
+        workqueue.shutdown(true);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownDiscardsRemainingWork() throws Exception {
+        workqueue = new VirtualThreadWorkQueue(1, "test");
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(1);
+        workqueue.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        workqueue.schedule(new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        }, 100);
+        
+        // a caller waiting for a permit is rejected once the queue is shut down
+        final CountDownLatch rejected = new CountDownLatch(1);
+        Thread waiting = new Thread() {
+            public void run() {
+                try {
+                    workqueue.execute(new Runnable() {
+                        public void run() {
+                            ran.countDown();
+                        }
+                    }, 5000);
+                } catch (RejectedExecutionException ex) {
+                    rejected.countDown();
+                }
+            }
+        };
+        waiting.start();
+        Thread.sleep(100);
+        workqueue.shutdown(false);
+        release.countDown();
+        
+        assertTrue(rejected.await(5, TimeUnit.SECONDS));
+        assertFalse(ran.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, workqueue.getActiveCount());
+    }
+}
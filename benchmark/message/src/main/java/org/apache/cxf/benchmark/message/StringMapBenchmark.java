@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.benchmark.message;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.message.CompactStringMap;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.StringMap;
+import org.apache.cxf.message.StringMapImpl;
+import org.apache.cxf.service.Service;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.Destination;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The properties a message goes through on its way through the interceptors, stored in the HashMap based
+ * StringMapImpl or in CompactStringMap. Each operation creates a map, puts the properties a transport and the
+ * interceptors set, and reads them back the way the interceptors do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StringMapBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    // keys that have no fixed slot in CompactStringMap
+    private static final String[] CUSTOM_KEYS = {
+        "org.apache.cxf.ws.addressing.inbound",
+        "javax.xml.ws.addressing.context.inbound",
+        "org.apache.cxf.headers.Header.list",
+        "org.apache.cxf.message.Message.BASE_PATH",
+        "wrote.envelope.start"
+    };
+
+    @Param({"StringMapImpl", "CompactStringMap" })
+    private String impl;
+
+    @Param({"0", "5" })
+    private int customKeys;
+
+    @Benchmark
+    public void request(Blackhole bh) {
+        StringMap map = "CompactStringMap".equals(impl) ? new CompactStringMap() : new StringMapImpl();
+        map.put(Message.CONTENT_TYPE, "text/xml");
+        map.put(Message.ENCODING, "UTF-8");
+        map.put(Message.PROTOCOL_HEADERS, VALUE);
+        map.put(Message.HTTP_REQUEST_METHOD, "POST");
+        map.put(Message.REQUEST_URI, "/services/echo");
+        map.put(Message.INBOUND_MESSAGE, Boolean.TRUE);
+        map.put(Destination.class.getName(), VALUE);
+        map.put(Conduit.class.getName(), VALUE);
+        map.put(BindingOperationInfo.class.getName(), VALUE);
+        for (int x = 0; x < customKeys; x++) {
+            map.put(CUSTOM_KEYS[x], VALUE);
+        }
+        for (int r = 0; r < 4; r++) {
+            bh.consume(map.get(Message.CONTENT_TYPE));
+            bh.consume(map.get(Message.ENCODING));
+            bh.consume(map.get(Destination.class));
+            bh.consume(map.get(BindingOperationInfo.class));
+            bh.consume(map.get(Bus.class));
+            bh.consume(map.get(Endpoint.class));
+            bh.consume(map.get(Service.class));
+            bh.consume(map.get(Message.REQUESTOR_ROLE));
+            for (int x = 0; x < customKeys; x++) {
+                bh.consume(map.get(CUSTOM_KEYS[x]));
+            }
+        }
+        bh.consume(map);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.benchmark.xmpp;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.transport.xmpp.chat.XMPPTransportFactory;
+import org.apache.cxf.transport.xmpp.loopback.LoopbackXMPPServer;
+import org.jivesoftware.smack.Chat;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.MessageListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Request/response over the chat transport. The transport only has a destination, so the client sends the
+ * SOAP envelope as the body of a chat message and waits for the reply in the same chat. Every benchmark
+ * thread has its own chat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ChatBenchmark {
+
+    @Param({"64", "1024", "16384" })
+    private int payloadSize;
+
+    private XMPPEnvironment env;
+    private XMPPConnection clientConnection;
+    private String request;
+
+    @State(Scope.Thread)
+    public static class ChatState {
+        private final BlockingQueue<String> replies = new LinkedBlockingQueue<String>();
+        private Chat chat;
+
+        @Setup(Level.Trial)
+        public void setUp(ChatBenchmark benchmark) {
+            chat = benchmark.clientConnection.getChatManager()
+                .createChat(benchmark.env.getServiceJid(), new MessageListener() {
+                    public void processMessage(Chat c, Message message) {
+                        replies.add(message.getBody());
+                    }
+                });
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        env = new XMPPEnvironment();
+        LoopbackXMPPServer xmppServer = env.getXmppServer();
+
+        XMPPTransportFactory transport = new XMPPTransportFactory();
+        transport.setServiceName(xmppServer.getDomain());
+        transport.setHost(xmppServer.getHost());
+        transport.setPort(xmppServer.getPort());
+        transport.setUsername(XMPPEnvironment.SERVICE_USER);
+        transport.setPassword(XMPPEnvironment.SERVICE_USER);
+        transport.setBus(env.getBus());
+        env.publish(XMPPTransportFactory.DEFAULT_NAMESPACES.get(0), env.getServiceJid());
+
+        clientConnection = new XMPPConnection(new ConnectionConfiguration(xmppServer.getHost(),
+                                                                          xmppServer.getPort(),
+                                                                          xmppServer.getDomain()));
+        clientConnection.connect();
+        clientConnection.login(XMPPEnvironment.CLIENT_USER, XMPPEnvironment.CLIENT_USER, "chat");
+
+        request = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+                  + "<ns:echo xmlns:ns=\"" + Echo.NAMESPACE + "\"><arg0>"
+                  + XMPPEnvironment.createPayload(payloadSize)
+                  + "</arg0></ns:echo></soap:Body></soap:Envelope>";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clientConnection.disconnect();
+        env.close();
+    }
+
+    @Benchmark
+    public String requestResponse(ChatState state) throws XMPPException, InterruptedException {
+        state.chat.sendMessage(request);
+        String reply = state.replies.poll(XMPPEnvironment.RECEIVE_TIMEOUT, TimeUnit.MILLISECONDS);
+        if (reply == null) {
+            throw new IllegalStateException("No reply received within " + XMPPEnvironment.RECEIVE_TIMEOUT
+                                            + " ms");
+        }
+        return reply;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.benchmark.xmpp;
+
+import javax.jws.Oneway;
+import javax.jws.WebService;
+
+/**
+ * The service called by the benchmarks. The port type has the same name as the service, the PEP transport
+ * uses the port type name for the node of the client and the service name for the node of the service.
+ */
+@WebService(name = "Echo", targetNamespace = Echo.NAMESPACE)
+public interface Echo {
+
+    String NAMESPACE = "urn:cxf:benchmark:xmpp";
+
+    String echo(String text);
+
+    @Oneway
+    void publish(String text);
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.benchmark.xmpp;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jws.WebService;
+
+@WebService(serviceName = "Echo", portName = "EchoPort", targetNamespace = Echo.NAMESPACE,
+            endpointInterface = "org.apache.cxf.benchmark.xmpp.Echo")
+public class EchoImpl implements Echo {
+
+    // A permit for every one way message the service received.
+    private final Semaphore received = new Semaphore(0);
+
+    public String echo(String text) {
+        return text;
+    }
+
+    public void publish(String text) {
+        received.release();
+    }
+
+    /**
+     * Waits until the service received a one way message.
+     * 
+     * @throws IllegalStateException If no message was received within the timeout.
+     */
+    public void awaitPublished(long timeout) throws InterruptedException {
+        if (!received.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("No message received within " + timeout + " ms");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.benchmark.xmpp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.transport.xmpp.connection.XMPPConnectionFactory;
+import org.apache.cxf.transport.xmpp.pubsub.PubSubFixedNameNode;
+import org.apache.cxf.transport.xmpp.pubsub.PubSubTransportFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One way messages over the pubsub transport. The client publishes to a node the service is subscribed to,
+ * an operation ends when the service received the message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class PubSubBenchmark {
+
+    private static final String NODE_NAME = "cxf-benchmark";
+
+    @Param({"64", "1024", "16384" })
+    private int payloadSize;
+
+    private XMPPEnvironment env;
+    private Echo client;
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        env = new XMPPEnvironment();
+        env.register(new PubSubTransportFactory());
+        String transportId = PubSubTransportFactory.DEFAULT_NAMESPACES.get(0);
+        // The service creates the node and subscribes to it, the client publishes to it.
+        env.publish(transportId, NODE_NAME, createNodeFeature(env.getServiceConnections()));
+        client = env.createClient(transportId, NODE_NAME, createNodeFeature(env.getClientConnections()));
+        payload = XMPPEnvironment.createPayload(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        env.close();
+    }
+
+    @Benchmark
+    public void publish() throws InterruptedException {
+        client.publish(payload);
+        env.getImplementor().awaitPublished(XMPPEnvironment.RECEIVE_TIMEOUT);
+    }
+
+    private static PubSubFixedNameNode createNodeFeature(XMPPConnectionFactory connections) {
+        PubSubFixedNameNode feature = new PubSubFixedNameNode();
+        feature.setNodeName(NODE_NAME);
+        feature.setConnectionFactory(connections);
+        return feature;
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.benchmark.xmpp;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.jaxws.JaxWsProxyFactoryBean;
+import org.apache.cxf.jaxws.JaxWsServerFactoryBean;
+import org.apache.cxf.transport.AbstractTransportFactory;
+import org.apache.cxf.transport.xmpp.connection.BasicConnectionFactory;
+import org.apache.cxf.transport.xmpp.connection.XMPPTransportFactory;
+import org.apache.cxf.transport.xmpp.loopback.LoopbackXMPPServer;
+
+/**
+ * A loopback XMPP server, a bus and an XMPP transport factory for a benchmark. Each benchmark has its own
+ * bus, some of the XMPP transports register the same transport ID. The service logs in as
+ * {@link #SERVICE_USER} and the client as {@link #CLIENT_USER}, both use the service name as their resource.
+ */
+public class XMPPEnvironment {
+
+    public static final String SERVICE_USER = "service";
+    public static final String CLIENT_USER = "client";
+    public static final QName SERVICE_NAME = new QName(Echo.NAMESPACE, "Echo");
+
+    // How long a benchmark waits for a one way message to arrive.
+    public static final long RECEIVE_TIMEOUT = 30000;
+
+    private final LoopbackXMPPServer xmppServer = new LoopbackXMPPServer();
+    private final Bus bus = BusFactory.newInstance().createBus();
+    private final BasicConnectionFactory serviceConnections;
+    private final BasicConnectionFactory clientConnections;
+    private final EchoImpl implementor = new EchoImpl();
+    private Server server;
+
+    public XMPPEnvironment() throws IOException {
+        xmppServer.addUser(SERVICE_USER, SERVICE_USER);
+        xmppServer.addUser(CLIENT_USER, CLIENT_USER);
+        xmppServer.start();
+        serviceConnections = createConnectionFactory(SERVICE_USER);
+        clientConnections = createConnectionFactory(CLIENT_USER);
+    }
+
+    public LoopbackXMPPServer getXmppServer() {
+        return xmppServer;
+    }
+
+    public Bus getBus() {
+        return bus;
+    }
+
+    public EchoImpl getImplementor() {
+        return implementor;
+    }
+
+    /**
+     * @return The full JID of the service.
+     */
+    public String getServiceJid() {
+        return SERVICE_USER + "@" + xmppServer.getDomain() + "/" + SERVICE_NAME;
+    }
+
+    public BasicConnectionFactory getServiceConnections() {
+        return serviceConnections;
+    }
+
+    public BasicConnectionFactory getClientConnections() {
+        return clientConnections;
+    }
+
+    /**
+     * Registers a transport factory on the bus of the benchmark, its services log in as the service user and
+     * its clients as the client user.
+     */
+    public <T extends AbstractTransportFactory & XMPPTransportFactory> T register(T factory) {
+        factory.setDestinationConnectionFactory(serviceConnections);
+        factory.setConduitConnectionFactory(clientConnections);
+        factory.setBus(bus);
+        return factory;
+    }
+
+    /**
+     * Publishes the echo service.
+     * 
+     * @param transportId Transport of the service, the transport factory must be registered on the bus.
+     */
+    public void publish(String transportId, String address, AbstractFeature... features) {
+        JaxWsServerFactoryBean factory = new JaxWsServerFactoryBean();
+        factory.setBus(bus);
+        factory.setServiceBean(implementor);
+        factory.setTransportId(transportId);
+        factory.setAddress(address);
+        factory.getFeatures().addAll(Arrays.asList(features));
+        server = factory.create();
+    }
+
+    /**
+     * Creates a client of the echo service.
+     * 
+     * @param transportId Transport of the client, the transport factory must be registered on the bus.
+     */
+    public Echo createClient(String transportId, String address, AbstractFeature... features) {
+        JaxWsProxyFactoryBean factory = new JaxWsProxyFactoryBean();
+        factory.setBus(bus);
+        factory.setServiceName(SERVICE_NAME);
+        factory.setTransportId(transportId);
+        factory.setAddress(address);
+        factory.getFeatures().addAll(Arrays.asList(features));
+        return factory.create(Echo.class);
+    }
+
+    public void close() {
+        if (server != null) {
+            server.destroy();
+        }
+        bus.shutdown(true);
+        xmppServer.stop();
+    }
+
+    /**
+     * @return Text of the length.
+     */
+    public static String createPayload(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char)('a' + i % 26));
+        }
+        return text.toString();
+    }
+
+    private BasicConnectionFactory createConnectionFactory(String user) {
+        BasicConnectionFactory factory = new BasicConnectionFactory();
+        factory.setXmppServiceName(xmppServer.getDomain());
+        factory.setXmppHost(xmppServer.getHost());
+        factory.setXmppPort(xmppServer.getPort());
+        factory.setXmppUsername(user);
+        factory.setXmppPassword(user);
+        factory.setBus(bus);
+        return factory;
+    }
+}
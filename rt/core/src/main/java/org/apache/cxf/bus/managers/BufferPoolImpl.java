@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.bus.managers;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Resource;
+import javax.management.JMException;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.common.injection.NoJSR250Annotations;
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.io.BufferPool;
+import org.apache.cxf.management.InstrumentationManager;
+
+/**
+ * The BufferPool extension of a bus, its metrics are registered with the InstrumentationManager.
+ */
+@NoJSR250Annotations(unlessNull = "bus")
+public class BufferPoolImpl extends BufferPool {
+
+    private static final Logger LOG = LogUtils.getL7dLogger(BufferPoolImpl.class);
+
+    Bus bus;
+
+    public BufferPoolImpl() {
+        
+    }
+    public BufferPoolImpl(Bus b) {
+        setBus(b);
+    }
+
+    public Bus getBus() {
+        return bus;
+    }
+
+    @Resource
+    public final void setBus(Bus bus) {
+        this.bus = bus;
+        if (null != bus) {
+            bus.setExtension(this, BufferPool.class);
+            InstrumentationManager imanager = bus.getExtension(InstrumentationManager.class);
+            if (null != imanager) {
+                try {
+                    imanager.register(new BufferPoolImplMBeanWrapper(this));
+                } catch (JMException jmex) {
+                    LOG.log(Level.WARNING , jmex.getMessage(), jmex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.bus.managers;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.management.ManagedComponent;
+import org.apache.cxf.management.ManagementConstants;
+import org.apache.cxf.management.annotation.ManagedAttribute;
+import org.apache.cxf.management.annotation.ManagedResource;
+
+@ManagedResource(componentName = "BufferPool", 
+                 description = "The CXF pool of I/O buffers", 
+                 currencyTimeLimit = 15, persistPolicy = "OnUpdate", persistPeriod = 200)
+                 
+public class BufferPoolImplMBeanWrapper implements ManagedComponent {    
+    static final String NAME_VALUE = "Bus.BufferPool";
+    static final String TYPE_VALUE = "BufferPool";
+    
+    private BufferPoolImpl pool;
+    private Bus bus;
+    
+    public BufferPoolImplMBeanWrapper(BufferPoolImpl p) {
+        pool = p;
+        bus = p.getBus();
+    }
+    
+    @ManagedAttribute(description = "The number of buffers taken from the pool")
+    public long getHitCount() {
+        return pool.getHitCount();
+    }
+
+    @ManagedAttribute(description = "The number of buffers allocated because the pool had none")
+    public long getMissCount() {
+        return pool.getMissCount();
+    }
+
+    @ManagedAttribute(description = "The bytes of the buffers in use")
+    public long getOutstandingBytes() {
+        return pool.getOutstandingBytes();
+    }
+
+    @ManagedAttribute(description = "The bytes of the buffers held by the shared pools")
+    public long getPooledBytes() {
+        return pool.getPooledBytes();
+    }
+
+    @ManagedAttribute(description = "The maximum bytes held by the shared pools",
+                      persistPolicy = "OnUpdate")
+    public long getMaxPooledBytes() {
+        return pool.getMaxPooledBytes();
+    }
+
+    @ManagedAttribute(description = "The maximum bytes held by the shared pools",
+                      persistPolicy = "OnUpdate")
+    public void setMaxPooledBytes(long maxBytes) {
+        pool.setMaxPooledBytes(maxBytes);
+    }
+      
+    public ObjectName getObjectName() throws JMException {
+        StringBuilder buffer = new StringBuilder();
+
+        buffer.append(ManagementConstants.DEFAULT_DOMAIN_NAME).append(':');
+        buffer.append(ManagementConstants.BUS_ID_PROP).append('=').append(bus.getId()).append(',');
+        buffer.append("BufferPool=").append(NAME_VALUE);
+        buffer.append(',').append(ManagementConstants.TYPE_PROP).append('=').append(TYPE_VALUE).append(',');
+        // Added the instance id to make the ObjectName unique
+        buffer.append(ManagementConstants.INSTANCE_ID_PROP).append('=').append(pool.hashCode());
+        return new ObjectName(buffer.toString());
+    }
+    
+}
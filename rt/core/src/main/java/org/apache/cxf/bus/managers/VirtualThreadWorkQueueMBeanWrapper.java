@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.bus.managers;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.management.ManagedComponent;
+import org.apache.cxf.management.ManagementConstants;
+import org.apache.cxf.management.annotation.ManagedAttribute;
+import org.apache.cxf.management.annotation.ManagedOperation;
+import org.apache.cxf.management.annotation.ManagedResource;
+import org.apache.cxf.workqueue.VirtualThreadWorkQueue;
+import org.apache.cxf.workqueue.WorkQueueManager;
+
+@ManagedResource(componentName = "WorkQueue", 
+                 description = "The CXF work queue that runs work items on their own threads", 
+                 currencyTimeLimit = 15, persistPolicy = "OnUpdate", persistPeriod = 200)
+                 
+public class VirtualThreadWorkQueueMBeanWrapper implements ManagedComponent {    
+    private static final String TYPE_VALUE = "WorkQueues";
+    
+    private VirtualThreadWorkQueue aWorkQueue;
+    private WorkQueueManager manager;
+    
+    public VirtualThreadWorkQueueMBeanWrapper(VirtualThreadWorkQueue wq,
+                                              WorkQueueManager mgr) {
+        aWorkQueue = wq;
+        manager = mgr;
+    }
+
+    @ManagedAttribute(description = "The work items run on virtual threads")
+    public boolean isVirtual() {
+        return aWorkQueue.isVirtual();
+    }
+
+    @ManagedAttribute(description = "The number of work items that may run at the same time",
+                      persistPolicy = "OnUpdate")
+    public int getMaxConcurrency() {
+        return aWorkQueue.getMaxConcurrency();
+    }
+    public void setMaxConcurrency(int max) {
+        aWorkQueue.setMaxConcurrency(max);
+    }
+
+    @ManagedAttribute(description = "The number of threads currently busy")
+    public int getActiveCount() { 
+        return aWorkQueue.getMetrics().getActiveCount(); 
+    }
+
+    @ManagedAttribute(description = "The number of work items that ran")
+    public long getCompletedCount() {
+        return aWorkQueue.getMetrics().getCompletedCount();
+    }
+
+    @ManagedAttribute(description = "The number of work items that weren't accepted")
+    public long getRejectedCount() {
+        return aWorkQueue.getMetrics().getRejectedCount();
+    }
+
+    @ManagedAttribute(description = "The mean time in microseconds work items waited to start")
+    public long getMeanWaitTime() {
+        return aWorkQueue.getMetrics().getWaitTime().getMeanNanos() / 1000;
+    }
+
+    @ManagedAttribute(description = "The longest time in microseconds a work item waited to start")
+    public long getMaxWaitTime() {
+        return aWorkQueue.getMetrics().getWaitTime().getMaxNanos() / 1000;
+    }
+
+    @ManagedAttribute(description = "The time in microseconds 99% of the work items waited to start")
+    public long getWaitTime99thPercentile() {
+        return aWorkQueue.getMetrics().getWaitTime().getPercentileNanos(99) / 1000;
+    }
+
+    @ManagedAttribute(description = "The mean time in microseconds work items ran")
+    public long getMeanExecutionTime() {
+        return aWorkQueue.getMetrics().getExecutionTime().getMeanNanos() / 1000;
+    }
+
+    @ManagedAttribute(description = "The longest time in microseconds a work item ran")
+    public long getMaxExecutionTime() {
+        return aWorkQueue.getMetrics().getExecutionTime().getMaxNanos() / 1000;
+    }
+
+    @ManagedAttribute(description = "The time in microseconds 99% of the work items ran")
+    public long getExecutionTime99thPercentile() {
+        return aWorkQueue.getMetrics().getExecutionTime().getPercentileNanos(99) / 1000;
+    }
+
+    @ManagedOperation(description = "Clears the times and counts of the work items")
+    public void resetMetrics() {
+        aWorkQueue.getMetrics().reset();
+    }
+
+    public ObjectName getObjectName() throws JMException {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(ManagementConstants.DEFAULT_DOMAIN_NAME).append(':');
+        String busId = Bus.DEFAULT_BUS_ID;
+        if (manager instanceof WorkQueueManagerImpl) {
+            busId = ((WorkQueueManagerImpl)manager).getBus().getId();
+        }
+        buffer.append(ManagementConstants.BUS_ID_PROP).append('=').append(busId).append(',');
+        buffer.append(WorkQueueManagerImplMBeanWrapper.TYPE_VALUE).append('=');
+        buffer.append(WorkQueueManagerImplMBeanWrapper.NAME_VALUE).append(',');
+        buffer.append(ManagementConstants.TYPE_PROP).append('=').append(TYPE_VALUE).append(',');
+        buffer.append(ManagementConstants.NAME_PROP).append('=').append(aWorkQueue.getName()).append(',');
+        // Added the instance id to make the ObjectName unique
+        buffer.append(ManagementConstants.INSTANCE_ID_PROP).append('=').append(aWorkQueue.hashCode());
+        return new ObjectName(buffer.toString());
+    }
+
+}
@@ -26,6 +26,7 @@ import org.apache.cxf.Bus;
 import org.apache.cxf.management.ManagedComponent;
 import org.apache.cxf.management.ManagementConstants;
 import org.apache.cxf.management.annotation.ManagedAttribute;
+import org.apache.cxf.management.annotation.ManagedOperation;
 import org.apache.cxf.management.annotation.ManagedResource;
 import org.apache.cxf.workqueue.AutomaticWorkQueueImpl;
 import org.apache.cxf.workqueue.WorkQueueManager;
@@ -70,7 +71,52 @@ public class WorkQueueImplMBeanWrapper implements ManagedComponent {
 
     @ManagedAttribute(description = "The number of threads currently busy")
     public int getActiveCount() { 
-        return aWorkQueue.getActiveCount(); 
+        return aWorkQueue.getMetrics().getActiveCount(); 
+    }
+
+    @ManagedAttribute(description = "The number of work items that ran")
+    public long getCompletedCount() {
+        return aWorkQueue.getMetrics().getCompletedCount();
+    }
+
+    @ManagedAttribute(description = "The number of work items that weren't accepted")
+    public long getRejectedCount() {
+        return aWorkQueue.getMetrics().getRejectedCount();
+    }
+
+    @ManagedAttribute(description = "The mean time in microseconds work items waited to start")
+    public long getMeanWaitTime() {
+        return aWorkQueue.getMetrics().getWaitTime().getMeanNanos() / 1000;
+    }
+
+    @ManagedAttribute(description = "The longest time in microseconds a work item waited to start")
+    public long getMaxWaitTime() {
+        return aWorkQueue.getMetrics().getWaitTime().getMaxNanos() / 1000;
+    }
+
+    @ManagedAttribute(description = "The time in microseconds 99% of the work items waited to start")
+    public long getWaitTime99thPercentile() {
+        return aWorkQueue.getMetrics().getWaitTime().getPercentileNanos(99) / 1000;
+    }
+
+    @ManagedAttribute(description = "The mean time in microseconds work items ran")
+    public long getMeanExecutionTime() {
+        return aWorkQueue.getMetrics().getExecutionTime().getMeanNanos() / 1000;
+    }
+
+    @ManagedAttribute(description = "The longest time in microseconds a work item ran")
+    public long getMaxExecutionTime() {
+        return aWorkQueue.getMetrics().getExecutionTime().getMaxNanos() / 1000;
+    }
+
+    @ManagedAttribute(description = "The time in microseconds 99% of the work items ran")
+    public long getExecutionTime99thPercentile() {
+        return aWorkQueue.getMetrics().getExecutionTime().getPercentileNanos(99) / 1000;
+    }
+
+    @ManagedOperation(description = "Clears the times and counts of the work items")
+    public void resetMetrics() {
+        aWorkQueue.getMetrics().reset();
     }
     
     @ManagedAttribute(description = "The WorkQueue has nothing to do",
@@ -33,14 +33,20 @@ import org.apache.cxf.buslifecycle.BusLifeCycleListener;
 import org.apache.cxf.buslifecycle.BusLifeCycleManager;
 import org.apache.cxf.common.injection.NoJSR250Annotations;
 import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.common.util.PropertyUtils;
 import org.apache.cxf.configuration.ConfiguredBeanLocator;
 import org.apache.cxf.management.InstrumentationManager;
 import org.apache.cxf.workqueue.AutomaticWorkQueue;
 import org.apache.cxf.workqueue.AutomaticWorkQueueImpl;
+import org.apache.cxf.workqueue.VirtualThreadWorkQueue;
 import org.apache.cxf.workqueue.WorkQueueManager;
 
 @NoJSR250Annotations(unlessNull = "bus")
 public class WorkQueueManagerImpl implements WorkQueueManager {
+    /**
+     * Bus property to create the default work queue with virtual threads.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "org.apache.cxf.workqueue.virtualThreads";
 
     private static final Logger LOG =
         LogUtils.getL7dLogger(WorkQueueManagerImpl.class);
@@ -49,6 +55,7 @@ public class WorkQueueManagerImpl implements WorkQueueManager {
         = new ConcurrentHashMap<String, AutomaticWorkQueue>(4, 0.75f, 2);
     
     boolean inShutdown;
+    boolean virtualThreads;
     InstrumentationManager imanager;
     Bus bus;  
     
@@ -98,6 +105,20 @@ public class WorkQueueManagerImpl implements WorkQueueManager {
         }
     }
 
+    /**
+     * Creates the default work queue, unless one is configured, as a VirtualThreadWorkQueue. The
+     * work items then run on virtual threads. If the runtime doesn't support them the default
+     * work queue is a bounded AutomaticWorkQueueImpl as usual.
+     */
+    public void setVirtualThreads(boolean virtual) {
+        virtualThreads = virtual;
+    }
+    
+    public boolean isVirtualThreads() {
+        return virtualThreads 
+            || bus != null && PropertyUtils.isTrue(bus.getProperty(VIRTUAL_THREADS_PROPERTY));
+    }
+
     public synchronized AutomaticWorkQueue getAutomaticWorkQueue() {
         AutomaticWorkQueue defaultQueue = getNamedWorkQueue("default");
         if (defaultQueue == null) {
@@ -190,11 +211,25 @@ public class WorkQueueManagerImpl implements WorkQueueManager {
                     LOG.log(Level.WARNING , jmex.getMessage(), jmex);
                 }
             }
+        } else if (q instanceof VirtualThreadWorkQueue && imanager != null) {
+            try {
+                imanager.register(new VirtualThreadWorkQueueMBeanWrapper((VirtualThreadWorkQueue)q, this));
+            } catch (JMException jmex) {
+                LOG.log(Level.WARNING , jmex.getMessage(), jmex);
+            }
         }
     }
     
     private AutomaticWorkQueue createAutomaticWorkQueue() {        
-        AutomaticWorkQueue q = new AutomaticWorkQueueImpl("default");
+        AutomaticWorkQueue q;
+        if (isVirtualThreads() && VirtualThreadWorkQueue.isSupported()) {
+            q = new VirtualThreadWorkQueue("default");
+        } else {
+            if (isVirtualThreads()) {
+                LOG.log(Level.WARNING, "VIRTUAL_THREADS_NOT_SUPPORTED");
+            }
+            q = new AutomaticWorkQueueImpl("default");
+        }
         addNamedWorkQueue("default", q);
         return q;
     }
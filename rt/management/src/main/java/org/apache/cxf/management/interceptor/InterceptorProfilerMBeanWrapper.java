@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.management.interceptor;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.management.ManagedComponent;
+import org.apache.cxf.management.ManagementConstants;
+import org.apache.cxf.management.annotation.ManagedAttribute;
+import org.apache.cxf.management.annotation.ManagedOperation;
+import org.apache.cxf.management.annotation.ManagedResource;
+import org.apache.cxf.phase.InterceptorProfiler;
+
+@ManagedResource(componentName = "InterceptorProfiler", 
+                 description = "The times and allocations of the interceptors of an endpoint", 
+                 currencyTimeLimit = 15, persistPolicy = "OnUpdate", persistPeriod = 200)
+public class InterceptorProfilerMBeanWrapper implements ManagedComponent {
+    static final String TYPE_VALUE = "Performance.Profiler";
+    
+    private InterceptorProfiler profiler;
+    private Endpoint endpoint;
+    private Bus bus;
+    private boolean client;
+    
+    public InterceptorProfilerMBeanWrapper(InterceptorProfiler p, Endpoint ep, Bus b, boolean c) {
+        profiler = p;
+        endpoint = ep;
+        bus = b;
+        client = c;
+    }
+    
+    @ManagedAttribute(description = "The messages are profiled", persistPolicy = "OnUpdate")
+    public boolean isEnabled() {
+        return profiler.isEnabled();
+    }
+    public void setEnabled(boolean enabled) {
+        profiler.setEnabled(enabled);
+    }
+
+    @ManagedAttribute(description = "The CPU time is measured")
+    public boolean isCpuTimeSupported() {
+        return profiler.isCpuTimeSupported();
+    }
+
+    @ManagedAttribute(description = "The allocated bytes are measured")
+    public boolean isAllocatedBytesSupported() {
+        return profiler.isAllocatedBytesSupported();
+    }
+
+    @ManagedAttribute(description = "The calls and times in microseconds of the phases and interceptors")
+    public String getSummary() {
+        return profiler.toSummary();
+    }
+
+    @ManagedAttribute(description = "The wall time in microseconds in the collapsed stack format")
+    public String getWallTimeStacks() {
+        return profiler.toCollapsedStacks(InterceptorProfiler.WALL_TIME);
+    }
+
+    @ManagedAttribute(description = "The CPU time in microseconds in the collapsed stack format")
+    public String getCpuTimeStacks() {
+        return profiler.toCollapsedStacks(InterceptorProfiler.CPU_TIME);
+    }
+
+    @ManagedAttribute(description = "The allocated bytes in the collapsed stack format")
+    public String getAllocatedBytesStacks() {
+        return profiler.toCollapsedStacks(InterceptorProfiler.ALLOCATED_BYTES);
+    }
+
+    @ManagedOperation(description = "Clears the statistics")
+    public void reset() {
+        profiler.reset();
+    }
+
+    public ObjectName getObjectName() throws JMException {
+        String serviceName = "\"" + endpoint.getService().getName() + "\"";
+        String portName = "\"" + endpoint.getEndpointInfo().getName().getLocalPart() + "\"";
+        
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(ManagementConstants.DEFAULT_DOMAIN_NAME).append(':');
+        buffer.append(ManagementConstants.BUS_ID_PROP).append('=').append(bus.getId()).append(',');
+        buffer.append(ManagementConstants.TYPE_PROP).append('=').append(TYPE_VALUE);
+        buffer.append(client ? ".Client," : ".Server,");
+        buffer.append(ManagementConstants.SERVICE_NAME_PROP).append('=').append(serviceName).append(',');
+        buffer.append(ManagementConstants.PORT_NAME_PROP).append('=').append(portName).append(',');
+        // Added the instance id to make the ObjectName unique
+        buffer.append(ManagementConstants.INSTANCE_ID_PROP).append('=').append(profiler.hashCode());
+        return new ObjectName(buffer.toString());
+    }
+}
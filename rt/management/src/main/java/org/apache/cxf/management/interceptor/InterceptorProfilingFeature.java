@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.management.interceptor;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.common.injection.NoJSR250Annotations;
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.endpoint.Client;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.management.InstrumentationManager;
+import org.apache.cxf.phase.InterceptorProfiler;
+
+/**
+ * Profiles the interceptors of the endpoints it is applied to. The statistics are registered with the
+ * InstrumentationManager of the bus, see {@link InterceptorProfiler}.
+ */
+@NoJSR250Annotations
+public class InterceptorProfilingFeature extends AbstractFeature {
+    private static final Logger LOG = LogUtils.getL7dLogger(InterceptorProfilingFeature.class);
+    
+    private boolean enabled = true;
+    
+    /**
+     * Profiles the messages from the start, the default is true. Otherwise profiling is started 
+     * through JMX.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Override
+    public void initialize(Server server, Bus bus) {
+        profile(server.getEndpoint(), bus, false);
+    }
+    
+    @Override
+    public void initialize(Client client, Bus bus) {
+        profile(client.getEndpoint(), bus, true);
+    }
+    
+    private void profile(Endpoint endpoint, Bus bus, boolean client) {
+        InterceptorProfiler profiler 
+            = new InterceptorProfiler(endpoint.getEndpointInfo().getName().getLocalPart());
+        profiler.setEnabled(enabled);
+        endpoint.put(InterceptorProfiler.PROFILER_PROPERTY, profiler);
+        
+        InstrumentationManager im = bus.getExtension(InstrumentationManager.class);
+        if (im != null) {
+            try {
+                im.register(new InterceptorProfilerMBeanWrapper(profiler, endpoint, bus, client));
+            } catch (JMException jmex) {
+                LOG.log(Level.WARNING, jmex.getMessage(), jmex);
+            }
+        }
+    }
+}
@@ -54,6 +54,7 @@ import org.apache.cxf.helpers.IOUtils;
 import org.apache.cxf.interceptor.Fault;
 import org.apache.cxf.interceptor.Interceptor;
 import org.apache.cxf.io.AbstractWrappedOutputStream;
+import org.apache.cxf.io.BufferPool;
 import org.apache.cxf.io.CopyingOutputStream;
 import org.apache.cxf.io.DelegatingInputStream;
 import org.apache.cxf.message.Attachment;
@@ -694,10 +695,11 @@ public abstract class AbstractHTTPDestination
                 onFirstWrite();
                 written = true;
             }
+            BufferPool pool = BufferPool.getInstance(bus);
             if (wrappedStream != null) {
-                return IOUtils.copy(in, wrappedStream);
+                return IOUtils.copy(in, wrappedStream, IOUtils.DEFAULT_BUFFER_SIZE, pool);
             }
-            return IOUtils.copy(in, this, IOUtils.DEFAULT_BUFFER_SIZE);
+            return IOUtils.copy(in, this, IOUtils.DEFAULT_BUFFER_SIZE, pool);
         }
         
         /**
@@ -55,6 +55,7 @@ import org.apache.cxf.helpers.HttpHeaderHelper;
 import org.apache.cxf.helpers.IOUtils;
 import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
 import org.apache.cxf.io.AbstractThresholdOutputStream;
+import org.apache.cxf.io.BufferPool;
 import org.apache.cxf.io.CacheAndWriteOutputStream;
 import org.apache.cxf.io.CachedOutputStream;
 import org.apache.cxf.message.Exchange;
@@ -608,14 +609,19 @@ public abstract class HTTPConduit
         try {
             if (in != null) {
                 int count = 0;
-                byte buffer[] = new byte[1024];
-                while (in.read(buffer) != -1
-                    && count < 25) {
-                    //don't do anything, we just need to pull off the unread data (like
-                    //closing tags that we didn't need to read
-                    
-                    //however, limit it so we don't read off gigabytes of data we won't use.
-                    ++count;
+                BufferPool pool = BufferPool.getInstance(bus);
+                byte buffer[] = pool.acquire(1024);
+                try {
+                    while (in.read(buffer, 0, 1024) != -1
+                        && count < 25) {
+                        //don't do anything, we just need to pull off the unread data (like
+                        //closing tags that we didn't need to read
+                        
+                        //however, limit it so we don't read off gigabytes of data we won't use.
+                        ++count;
+                    }
+                } finally {
+                    pool.release(buffer);
                 }
             } 
         } finally {
@@ -994,7 +1000,7 @@ public abstract class HTTPConduit
                 InputStream in = inMessage.getContent(InputStream.class);
                 if (in != null) {
                     CachedOutputStream cos = new CachedOutputStream();
-                    IOUtils.copy(in, cos);
+                    IOUtils.copy(in, cos, IOUtils.DEFAULT_BUFFER_SIZE, BufferPool.getInstance(bus));
                     inMessage.setContent(InputStream.class, cos.getInputStream());
                 }
                 incomingObserver.onMessage(inMessage);
@@ -44,6 +44,7 @@ import org.apache.cxf.buslifecycle.BusLifeCycleListener;
 import org.apache.cxf.buslifecycle.BusLifeCycleManager;
 import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.configuration.ConfigurationException;
+import org.apache.cxf.io.BufferPool;
 import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.message.MessageImpl;
@@ -381,7 +382,8 @@ public class JMSConduit extends AbstractConduit implements JMSExchangeSender, Me
             JMSUtils.populateIncomingContext(jmsMessage, inMessage, 
                                              JMSConstants.JMS_CLIENT_RESPONSE_HEADERS, jmsConfig);
         
-            JMSUtils.retrieveAndSetPayload(inMessage, jmsMessage, (String)inMessage.get(Message.ENCODING));
+            JMSUtils.retrieveAndSetPayload(inMessage, jmsMessage, (String)inMessage.get(Message.ENCODING),
+                                           BufferPool.getInstance(bus));
 
             if (exchange.isSynchronous()) {
                 synchronized (exchange) {
@@ -49,6 +49,8 @@ import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.common.util.SOAPConstants;
 import org.apache.cxf.helpers.CastUtils;
 import org.apache.cxf.helpers.HttpHeaderHelper;
+import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
+import org.apache.cxf.io.BufferPool;
 import org.apache.cxf.message.MessageUtils;
 import org.apache.cxf.security.SecurityContext;
 import org.apache.cxf.transport.jms.spec.JMSSpecConstants;
@@ -61,6 +63,9 @@ public final class JMSUtils {
 
     static final Logger LOG = LogUtils.getL7dLogger(JMSUtils.class);
 
+    // The size of the buffer that reads the body of a BytesMessage.
+    private static final int BUFFER_SIZE = 4096;
+
     private static final char[] CORRELATTION_ID_PADDING = {
         '0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '0'
     };
@@ -124,12 +129,25 @@ public final class JMSUtils {
     public static void retrieveAndSetPayload(org.apache.cxf.message.Message inMessage,
                                              Message message, String encoding)
         throws UnsupportedEncodingException {
+        retrieveAndSetPayload(inMessage, message, encoding, BufferPool.getDefault());
+    }
+
+    /**
+     * Sets the payload of the JMS message as the content of the CXF message, the body of a
+     * BytesMessage is read with a buffer taken from the pool.
+     */
+    public static void retrieveAndSetPayload(org.apache.cxf.message.Message inMessage,
+                                             Message message, String encoding, BufferPool pool)
+        throws UnsupportedEncodingException {
         String messageType = null;
         Object converted;
-        byte[] result;
         try {
-            converted = new org.springframework.jms.support.converter.SimpleMessageConverter102()
-                .fromMessage(message);
+            if (message instanceof BytesMessage) {
+                converted = readBytes((BytesMessage)message, pool);
+            } else {
+                converted = new org.springframework.jms.support.converter.SimpleMessageConverter102()
+                    .fromMessage(message);
+            }
         } catch (MessageConversionException e) {
             throw new RuntimeException("Conversion failed", e);
         } catch (JMSException e) {
@@ -138,9 +156,12 @@ public final class JMSUtils {
         if (converted instanceof String) {
             inMessage.setContent(Reader.class, new StringReader((String)converted));
             messageType = "text";
+        } else if (converted instanceof LoadingByteArrayOutputStream) {
+            inMessage.setContent(InputStream.class,
+                                 ((LoadingByteArrayOutputStream)converted).createInputStream());
+            messageType = "byte";
         } else if (converted instanceof byte[]) {
-            result = (byte[])converted;
-            inMessage.setContent(InputStream.class, new ByteArrayInputStream(result));
+            inMessage.setContent(InputStream.class, new ByteArrayInputStream((byte[])converted));
             messageType = "byte";
         } else if (message instanceof MapMessage) {
             messageType = "map";
@@ -160,6 +181,22 @@ public final class JMSUtils {
         headers.put(JMSSpecConstants.JMS_MESSAGE_TYPE, Collections.singletonList(messageType));
     }
 
+    private static LoadingByteArrayOutputStream readBytes(BytesMessage message, BufferPool pool)
+        throws JMSException {
+        LoadingByteArrayOutputStream out = new LoadingByteArrayOutputStream();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try {
+            int n = message.readBytes(buffer);
+            while (n != -1) {
+                out.write(buffer, 0, n);
+                n = message.readBytes(buffer);
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        return out;
+    }
+
     public static void populateIncomingContext(javax.jms.Message message,
                                                org.apache.cxf.message.Message inMessage, 
                                                String messageType, JMSConfiguration jmsConfig)
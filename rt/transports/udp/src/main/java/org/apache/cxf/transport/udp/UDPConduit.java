@@ -40,6 +40,7 @@ import org.apache.cxf.Bus;
 import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.common.util.StringUtils;
 import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
+import org.apache.cxf.io.BufferPool;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.message.MessageImpl;
 import org.apache.cxf.transport.AbstractConduit;
@@ -268,33 +269,38 @@ public class UDPConduit extends AbstractConduit {
             }
             
             if (!message.getExchange().isOneWay()) {
-                byte bytes[] = new byte[64 * 1024];
-                DatagramPacket p = new DatagramPacket(bytes, bytes.length);
-                Object to = message.getContextualProperty(MULTI_RESPONSE_TIMEOUT);
-                Integer i = null;
-                if (to instanceof String) {
-                    i = Integer.parseInt((String)to);
-                } else if (to instanceof Integer) {
-                    i = (Integer)to;
-                }
-                if (i == null || i <= 0 || message.getExchange().isSynchronous()) {
-                    socket.setSoTimeout(30000);
-                    socket.receive(p);
-                    dataReceived(message, IoBuffer.wrap(bytes, 0, p.getLength()), false);
-                } else {
-                    socket.setSoTimeout(i);
-                    boolean found = false;
-                    try {
-                        while (true) {
-                            socket.receive(p);
-                            dataReceived(message, IoBuffer.wrap(bytes, 0, p.getLength()), false);
-                            found = true;
-                        }
-                    } catch (java.net.SocketTimeoutException ex) {
-                        if (!found) {
-                            throw ex;
+                BufferPool pool = BufferPool.getInstance(bus);
+                byte bytes[] = pool.acquire(64 * 1024);
+                try {
+                    DatagramPacket p = new DatagramPacket(bytes, bytes.length);
+                    Object to = message.getContextualProperty(MULTI_RESPONSE_TIMEOUT);
+                    Integer i = null;
+                    if (to instanceof String) {
+                        i = Integer.parseInt((String)to);
+                    } else if (to instanceof Integer) {
+                        i = (Integer)to;
+                    }
+                    if (i == null || i <= 0 || message.getExchange().isSynchronous()) {
+                        socket.setSoTimeout(30000);
+                        socket.receive(p);
+                        dataReceived(message, copyPacket(p), false);
+                    } else {
+                        socket.setSoTimeout(i);
+                        boolean found = false;
+                        try {
+                            while (true) {
+                                socket.receive(p);
+                                dataReceived(message, copyPacket(p), false);
+                                found = true;
+                            }
+                        } catch (java.net.SocketTimeoutException ex) {
+                            if (!found) {
+                                throw ex;
+                            }
                         }
                     }
+                } finally {
+                    pool.release(bytes);
                 }
             }
             socket.close();
@@ -302,6 +308,13 @@ public class UDPConduit extends AbstractConduit {
 
         public void flush() throws IOException {
         }
+        
+        // The receive buffer is reused, the message gets its own copy of the packet.
+        private IoBuffer copyPacket(DatagramPacket p) {
+            byte data[] = new byte[p.getLength()];
+            System.arraycopy(p.getData(), p.getOffset(), data, 0, data.length);
+            return IoBuffer.wrap(data);
+        }
     }
 
     public class UDPConduitOutputStream extends OutputStream {
@@ -34,6 +34,7 @@ import org.apache.cxf.Bus;
 import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.common.util.StringUtils;
 import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
+import org.apache.cxf.io.BufferPool;
 import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.ExchangeImpl;
 import org.apache.cxf.message.Message;
@@ -75,9 +76,17 @@ public class UDPDestination extends AbstractDestination {
                     return;
                 }
                 try {
-                    byte bytes[] = new byte[64 * 1024];
+                    BufferPool pool = BufferPool.getInstance(bus);
+                    byte bytes[] = pool.acquire(64 * 1024);
                     final DatagramPacket p = new DatagramPacket(bytes, bytes.length);
-                    mcast.receive(p);
+                    byte data[];
+                    try {
+                        mcast.receive(p);
+                        data = new byte[p.getLength()];
+                        System.arraycopy(bytes, 0, data, 0, data.length);
+                    } finally {
+                        pool.release(bytes);
+                    }
                     
                     LoadingByteArrayOutputStream out = new LoadingByteArrayOutputStream() {
                         public void close() throws IOException {
@@ -92,7 +101,7 @@ public class UDPDestination extends AbstractDestination {
                     
                     UDPConnectionInfo info = new UDPConnectionInfo(null,
                                                                    out,
-                                                                   new ByteArrayInputStream(bytes, 0, p.getLength()));
+                                                                   new ByteArrayInputStream(data));
                     
                     final MessageImpl m = new MessageImpl();
                     final Exchange exchange = new ExchangeImpl();
@@ -31,13 +31,12 @@ import org.apache.cxf.wsdl.EndpointReferenceUtils;
 import org.jivesoftware.smack.Chat;
 import org.jivesoftware.smack.XMPPException;
 
+/**
+ * This is used by the service to reply to the client. A destination has a single back channel, the chat of a
+ * reply is taken from the exchange of the message.
+ */
 public class XMPPBackChannelConduit implements Conduit {
     private MessageObserver msgObserver;
-    private Chat xmppChat;
-
-    public XMPPBackChannelConduit(Chat chat) {
-        xmppChat = chat;
-    }
 
     @Override
     public MessageObserver getMessageObserver() {
@@ -62,12 +61,15 @@ public class XMPPBackChannelConduit implements Conduit {
      */
     @Override
     public void close(Message msg) throws IOException {
+        Chat xmppChat = msg.getExchange().get(Chat.class);
+        if (xmppChat == null) {
+            throw new IOException("No chat to send the reply to");
+        }
         CachedOutputStream soapResponse = (CachedOutputStream)msg.getContent(OutputStream.class);
         StringBuilder replyMsg = new StringBuilder();
         soapResponse.writeCacheTo(replyMsg);
 
         try {
-            System.out.println("Sending chat response: " + replyMsg.toString());
             xmppChat.sendMessage(replyMsg.toString());
         } catch (XMPPException e) {
             throw new IOException(e);
@@ -22,7 +22,11 @@ package org.apache.cxf.transport.xmpp.chat;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.helpers.IOUtils;
 import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.ExchangeImpl;
 import org.apache.cxf.message.Message;
@@ -31,6 +35,7 @@ import org.apache.cxf.service.model.EndpointInfo;
 import org.apache.cxf.transport.Conduit;
 import org.apache.cxf.transport.Destination;
 import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.xmpp.common.WorkQueueDispatcher;
 import org.apache.cxf.ws.addressing.AttributedURIType;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
 import org.jivesoftware.smack.Chat;
@@ -45,6 +50,9 @@ import org.jivesoftware.smack.XMPPConnection;
  * @author Leon Doud
  */
 public class XMPPDestination implements Destination {
+
+    private static final Logger LOGGER = LogUtils.getLogger(XMPPDestination.class);
+
     private XMPPConnection xmppConnection;
 
     // Values initialized during construction.
@@ -53,6 +61,36 @@ public class XMPPDestination implements Destination {
     // After messages are received they are passed to this observer.
     private MessageObserver msgObserver;
 
+    // Moves processing of received messages off the XMPP reader thread.
+    private WorkQueueDispatcher dispatcher;
+
+    // Shared by all the chats, the chat of a message is put on its exchange.
+    private final XMPPBackChannelConduit backChannel = new XMPPBackChannelConduit();
+    private final MessageListener chatListener = new MessageListener() {
+        @Override
+        public void processMessage(Chat chat, org.jivesoftware.smack.packet.Message message) {
+            if (message.getBody() == null) {
+                // Chat states and other messages without a SOAP envelope.
+                return;
+            }
+            Message cxfMsg = new MessageImpl();
+            cxfMsg.setContent(InputStream.class,
+                              new ByteArrayInputStream(message.getBody().getBytes(IOUtils.UTF8_CHARSET)));
+            cxfMsg.put(Message.ENCODING, "UTF-8");
+
+            Exchange msgExchange = new ExchangeImpl();
+            msgExchange.put(Chat.class, chat);
+            msgExchange.setConduit(backChannel);
+            cxfMsg.setExchange(msgExchange);
+
+            if (dispatcher != null) {
+                dispatcher.dispatch(msgObserver, cxfMsg);
+            } else {
+                msgObserver.onMessage(cxfMsg);
+            }
+        }
+    };
+
     public XMPPDestination(EndpointInfo epInfo) {
         // Initialize the address of the epRefType member.
         AttributedURIType address = new AttributedURIType();
@@ -67,29 +105,24 @@ public class XMPPDestination implements Destination {
         xmppConnection.getChatManager().addChatListener(new ChatManagerListener() {
             @Override
             public void chatCreated(Chat chat, boolean local) {
-                System.out.println("Starting chat with: " + chat.getParticipant());
-                chat.addMessageListener(new MessageListener() {
-
-                    @Override
-                    public void processMessage(Chat chat, org.jivesoftware.smack.packet.Message message) {
-                        System.out.println("Processing chat message: " + message.getBody());
-                        Message cxfMsg = new MessageImpl();
-                        cxfMsg.setContent(InputStream.class, new ByteArrayInputStream(message.getBody()
-                            .getBytes()));
-
-                        Exchange msgExchange = new ExchangeImpl();
-                        msgExchange.setConduit(new XMPPBackChannelConduit(chat));
-                        cxfMsg.setExchange(msgExchange);
-
-                        msgObserver.onMessage(cxfMsg);
-
-                    }
-                });
-
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Starting chat with: " + chat.getParticipant());
+                }
+                chat.addMessageListener(chatListener);
             }
         });
     }
 
+    /**
+     * Received messages are processed by the work queue of this dispatcher. Without a dispatcher they are
+     * processed on the XMPP reader thread.
+     * 
+     * @param workQueueDispatcher Dispatcher for received messages.
+     */
+    public void setDispatcher(WorkQueueDispatcher workQueueDispatcher) {
+        dispatcher = workQueueDispatcher;
+    }
+
     /**
      * Required by the Destination interface.
      * 
@@ -33,6 +33,8 @@ import org.apache.cxf.service.model.EndpointInfo;
 import org.apache.cxf.transport.AbstractTransportFactory;
 import org.apache.cxf.transport.Destination;
 import org.apache.cxf.transport.DestinationFactory;
+import org.apache.cxf.transport.xmpp.common.WorkQueueDispatcher;
+import org.jivesoftware.smack.ConnectionConfiguration;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
 
@@ -49,10 +51,18 @@ public class XMPPTransportFactory extends AbstractTransportFactory implements De
     
     private static final Logger LOGGER = LogUtils.getLogger(XMPPTransportFactory.class);
 
-    // TODO Make these configurable.
+    // Configuration options used to connect to XMPP server.
     private String serviceName = "localhost.localdomain";
     private String username = "service1";
     private String password = "service1";
+    private String host;
+    private int port = 5222;
+
+    // Received messages are processed by a work queue instead of the XMPP reader thread.
+    private boolean useWorkQueue = true;
+    private String workQueueName = WorkQueueDispatcher.DEFAULT_WORK_QUEUE_NAME;
+    private long workQueueTimeout = 1000;
+    private WorkQueueDispatcher dispatcher;
 
     public XMPPTransportFactory() throws XMPPException {
         super();
@@ -69,11 +79,14 @@ public class XMPPTransportFactory extends AbstractTransportFactory implements De
      */
     public Destination getDestination(EndpointInfo endpointInfo) throws IOException {
         XMPPDestination dest = new XMPPDestination(endpointInfo);
+        dest.setDispatcher(getDispatcher());
 
         try {
             String resource = endpointInfo.getService().getName().toString();
 
-            XMPPConnection xmppConnection = new XMPPConnection(serviceName);
+            XMPPConnection xmppConnection = host != null
+                ? new XMPPConnection(new ConnectionConfiguration(host, port, serviceName))
+                : new XMPPConnection(serviceName);
             xmppConnection.connect();
             xmppConnection.login(username, password, resource);
             LOGGER.info("Connected using jid: " + xmppConnection.getUser());
@@ -85,4 +98,86 @@ public class XMPPTransportFactory extends AbstractTransportFactory implements De
 
         return dest;
     }
+
+    /**
+     * Optional configuration of the XMPP service name, the default is localhost.localdomain.
+     * 
+     * @param name The full name of the XMPP server.
+     */
+    public void setServiceName(String name) {
+        serviceName = name;
+    }
+
+    /**
+     * Optional configuration of the username of the services, the default is service1.
+     * 
+     * @param name The username for the XMPP connection.
+     */
+    public void setUsername(String name) {
+        username = name;
+    }
+
+    /**
+     * Optional configuration of the password of the services, the default is service1.
+     * 
+     * @param pwd The password for the XMPP connection.
+     */
+    public void setPassword(String pwd) {
+        password = pwd;
+    }
+
+    /**
+     * Optional configuration of the host of the XMPP server, by default it is found using the DNS SRV records
+     * of the service name.
+     * 
+     * @param hostName Host name or address of the XMPP server.
+     */
+    public void setHost(String hostName) {
+        host = hostName;
+    }
+
+    /**
+     * Optional configuration of the port of the XMPP server, the default is 5222. Only used when the host is
+     * set.
+     * 
+     * @param portNumber Port of the XMPP server.
+     */
+    public void setPort(int portNumber) {
+        port = portNumber;
+    }
+
+    /**
+     * Process received messages on the XMPP reader thread instead of a work queue.
+     * 
+     * @param enable False to process messages on the XMPP reader thread.
+     */
+    public void setUseWorkQueue(boolean enable) {
+        useWorkQueue = enable;
+    }
+
+    /**
+     * Optional configuration for the name of the work queue. If the bus has no work queue with this name the
+     * default work queue is used.
+     * 
+     * @param name Name of the work queue.
+     */
+    public void setWorkQueueName(String name) {
+        workQueueName = name;
+    }
+
+    /**
+     * Optional configuration for how long the XMPP reader thread waits when the work queue is full.
+     * 
+     * @param timeout Milliseconds to wait before the message is rejected or handed to an overflow thread.
+     */
+    public void setWorkQueueTimeout(long timeout) {
+        workQueueTimeout = timeout;
+    }
+
+    private synchronized WorkQueueDispatcher getDispatcher() {
+        if (useWorkQueue && dispatcher == null) {
+            dispatcher = new WorkQueueDispatcher(getBus(), workQueueName, workQueueTimeout);
+        }
+        return useWorkQueue ? dispatcher : null;
+    }
 }
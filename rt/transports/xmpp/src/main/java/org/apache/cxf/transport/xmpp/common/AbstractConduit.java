@@ -21,11 +21,17 @@ package org.apache.cxf.transport.xmpp.common;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.cxf.io.CachedOutputStream;
+import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.transport.Conduit;
 import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayload;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
 import org.jivesoftware.smack.XMPPConnection;
 
@@ -40,6 +46,13 @@ public abstract class AbstractConduit implements Conduit, XMPPConnectionUser {
     // Information about service being called.
     private EndpointReferenceType target;
 
+    // Moves processing of responses off the XMPP reader thread.
+    private WorkQueueDispatcher dispatcher;
+
+    // Envelopes encoded by the interceptors are sent as binary payloads.
+    private boolean binaryPayload;
+    private PayloadCounter payloadCounter;
+
     public AbstractConduit(EndpointReferenceType refType) {
         target = refType;
     }
@@ -54,6 +67,105 @@ public abstract class AbstractConduit implements Conduit, XMPPConnectionUser {
         msgObserver = observer;
     }
 
+    /**
+     * Responses are processed by the work queue of this dispatcher. Without a dispatcher they are processed
+     * on the XMPP reader thread.
+     * 
+     * @param workQueueDispatcher Dispatcher for responses.
+     */
+    public void setDispatcher(WorkQueueDispatcher workQueueDispatcher) {
+        dispatcher = workQueueDispatcher;
+    }
+
+    /**
+     * @param binary True to send envelopes encoded by interceptors, like Fast Infoset or gzip, as binary
+     *            payloads. The receiver must support binary payloads.
+     */
+    public void setBinaryPayload(boolean binary) {
+        binaryPayload = binary;
+    }
+
+    /**
+     * @param counter Counts the bytes of the envelopes, may be null.
+     */
+    public void setPayloadCounter(PayloadCounter counter) {
+        payloadCounter = counter;
+    }
+
+    /**
+     * Encodes the envelope written by the interceptors as a binary payload if binary payloads are enabled
+     * and the interceptors encoded it or asked for an encoded reply.
+     * 
+     * @param msg Message written by the interceptors.
+     * @param envelope The envelope.
+     * @return The payload to send, null to send the envelope as XML.
+     * @throws IOException If the cached envelope can't be read.
+     */
+    protected BinaryPayload createPayload(Message msg, CachedOutputStream envelope) throws IOException {
+        BinaryPayload payload = null;
+        if (binaryPayload && BinaryPayload.isRequired(msg)) {
+            payload = BinaryPayload.create(msg, envelope);
+        }
+        if (payloadCounter != null) {
+            payloadCounter.countSent(envelope.size(), payload != null ? payload.getEncodedLength() : envelope
+                .size());
+        }
+        return payload;
+    }
+
+    /**
+     * Count an envelope that was sent without a payload created by this conduit.
+     */
+    protected void countSent(long envelopeBytes, long stanzaBytes) {
+        if (payloadCounter != null) {
+            payloadCounter.countSent(envelopeBytes, stanzaBytes);
+        }
+    }
+
+    /**
+     * Count an envelope that was received.
+     */
+    protected void countReceived(long envelopeBytes, long stanzaBytes) {
+        if (payloadCounter != null) {
+            payloadCounter.countReceived(envelopeBytes, stanzaBytes);
+        }
+    }
+
+    /**
+     * Pass a response to the message observer. The response of an asynchronous invocation is processed by the
+     * executor of its exchange, like the HTTP conduits do, so the caller isn't blocked and the XMPP reader
+     * thread only hands it over.
+     * 
+     * @param msg Response received from XMPP.
+     */
+    protected void dispatch(final Message msg) {
+        Exchange exchange = msg.getExchange();
+        if (exchange != null && !exchange.isSynchronous()) {
+            final MessageObserver observer = exchange.get(MessageObserver.class);
+            Executor executor = exchange.get(Executor.class);
+            if (observer != null && executor != null) {
+                // Tells the client the response is already on its executor.
+                exchange.put(Executor.class.getName() + ".USING_SPECIFIED", Boolean.TRUE);
+                try {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            observer.onMessage(msg);
+                        }
+                    });
+                    return;
+                } catch (RejectedExecutionException full) {
+                    exchange.remove(Executor.class.getName() + ".USING_SPECIFIED");
+                }
+            }
+        }
+
+        if (dispatcher != null) {
+            dispatcher.dispatch(msgObserver, msg);
+        } else {
+            msgObserver.onMessage(msg);
+        }
+    }
+
     @Override
     public void setXmppConnection(XMPPConnection conn) {
         connection = conn;
@@ -75,9 +187,47 @@ public abstract class AbstractConduit implements Conduit, XMPPConnectionUser {
 
     @Override
     public void prepare(Message msg) throws IOException {
-        msg.setContent(OutputStream.class, new CachedOutputStream());
+        prepareEnvelope(msg, binaryPayload);
     }
 
     @Override
     public abstract void close(Message msg) throws IOException;
+
+    /**
+     * Puts the output stream the interceptors write the envelope into in the message.
+     * 
+     * @param msg Message to be written by the interceptors.
+     * @param binary True if the envelope may be sent as a binary payload, the message then gets the
+     *            protocol headers the interceptors that encode it negotiate with.
+     */
+    public static void prepareEnvelope(Message msg, boolean binary) {
+        CachedOutputStream envelope = new CachedOutputStream();
+        msg.setContent(OutputStream.class, envelope);
+        msg.put(CachedOutputStream.class, envelope);
+        if (binary && msg.get(Message.PROTOCOL_HEADERS) == null) {
+            // The Fast Infoset and gzip interceptors negotiate using headers.
+            msg.put(Message.PROTOCOL_HEADERS,
+                    new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER));
+        }
+    }
+
+    /**
+     * Provides the envelope written by the interceptors. Streams that interceptors wrapped around it, like
+     * the gzip stream, are closed first so they write everything they buffered.
+     * 
+     * @param msg Message written by the interceptors.
+     * @return The envelope, null if the message has none.
+     * @throws IOException If a wrapping stream can't be closed.
+     */
+    public static CachedOutputStream getEnvelope(Message msg) throws IOException {
+        OutputStream out = msg.getContent(OutputStream.class);
+        CachedOutputStream envelope = msg.get(CachedOutputStream.class);
+        if (out == null || out instanceof CachedOutputStream || envelope == null) {
+            return (CachedOutputStream)out;
+        }
+        // The envelope is closed with the wrapping stream, it still has to be read.
+        envelope.holdTempFile();
+        out.close();
+        return envelope;
+    }
 }
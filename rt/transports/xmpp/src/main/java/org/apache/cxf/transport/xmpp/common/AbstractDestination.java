@@ -19,19 +19,35 @@
 
 package org.apache.cxf.transport.xmpp.common;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
 import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
 import org.apache.cxf.service.model.EndpointInfo;
 import org.apache.cxf.transport.Conduit;
 import org.apache.cxf.transport.Destination;
 import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayload;
 import org.apache.cxf.ws.addressing.AttributedURIType;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
 import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smackx.pubsub.PayloadItem;
+import org.jivesoftware.smackx.pubsub.SimplePayload;
 
 public class AbstractDestination implements Destination, XMPPConnectionUser {
 
+    private static final Logger LOGGER = LogUtils.getLogger(AbstractDestination.class);
+
     // XMPP connection that might be shared with other destinations.
     private XMPPConnection connection;
 
@@ -41,6 +57,13 @@ public class AbstractDestination implements Destination, XMPPConnectionUser {
     // After messages are received they are passed to this observer.
     private MessageObserver msgObserver;
 
+    // Moves processing of received messages off the XMPP reader thread.
+    private WorkQueueDispatcher dispatcher;
+
+    // Replies encoded by the interceptors are sent as binary payloads.
+    private boolean binaryPayload;
+    private PayloadCounter payloadCounter;
+
     public AbstractDestination(EndpointInfo epInfo) {
         // Initialize the address of the epRefType member.
         AttributedURIType address = new AttributedURIType();
@@ -58,6 +81,136 @@ public class AbstractDestination implements Destination, XMPPConnectionUser {
         msgObserver = observer;
     }
 
+    /**
+     * Received messages are processed by the work queue of this dispatcher. Without a dispatcher they are
+     * processed on the XMPP reader thread.
+     * 
+     * @param workQueueDispatcher Dispatcher for received messages.
+     */
+    public void setDispatcher(WorkQueueDispatcher workQueueDispatcher) {
+        dispatcher = workQueueDispatcher;
+    }
+
+    /**
+     * @param binary True to send replies encoded by interceptors, like Fast Infoset or gzip, as binary
+     *            payloads.
+     */
+    public void setBinaryPayload(boolean binary) {
+        binaryPayload = binary;
+    }
+
+    public boolean isBinaryPayload() {
+        return binaryPayload;
+    }
+
+    /**
+     * @param counter Counts the bytes of the envelopes, may be null.
+     */
+    public void setPayloadCounter(PayloadCounter counter) {
+        payloadCounter = counter;
+    }
+
+    public PayloadCounter getPayloadCounter() {
+        return payloadCounter;
+    }
+
+    /**
+     * Count an envelope that was received.
+     */
+    protected void countReceived(long envelopeBytes, long stanzaBytes) {
+        if (payloadCounter != null) {
+            payloadCounter.countReceived(envelopeBytes, stanzaBytes);
+        }
+    }
+
+    /**
+     * Pass the one way messages of a pubsub item to the message observer. A batch is split into a message for
+     * each of its payloads.
+     * 
+     * @param item Item received from the pubsub service.
+     */
+    protected void dispatchItem(PayloadItem<SimplePayload> item) {
+        SimplePayload payload = item.getPayload();
+        try {
+            List<SimplePayload> payloads;
+            if (PublishBatcher.isBatch(payload.getElementName(), payload.getNamespace())) {
+                payloads = PublishBatcher.split(payload.toXML());
+            } else {
+                payloads = Collections.singletonList(payload);
+            }
+
+            for (SimplePayload soapMsg : payloads) {
+                Message cxfMsg = new MessageImpl();
+                setContent(cxfMsg, soapMsg);
+
+                Exchange msgExchange = new ExchangeImpl();
+                msgExchange.setOneWay(true);
+                msgExchange.setDestination(this);
+                cxfMsg.setExchange(msgExchange);
+
+                dispatch(cxfMsg);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read payload of item: " + item.getId(), e);
+        }
+    }
+
+    /**
+     * Sets the envelope of a pubsub item as the content of the message. A binary payload is decoded and its
+     * headers are set on the message.
+     * 
+     * @param cxfMsg The received message.
+     * @param item The payload of the pubsub item.
+     * @throws IOException If the binary payload can't be decoded.
+     */
+    private void setContent(Message cxfMsg, SimplePayload item) throws IOException {
+        String xml = item.toXML();
+        if (BinaryPayload.ELEMENT_NAME.equals(item.getElementName())
+            && BinaryPayload.NAMESPACE.equals(item.getNamespace())) {
+            BinaryPayload payload;
+            try {
+                payload = BinaryPayload.parse(xml);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            cxfMsg.setContent(InputStream.class, payload.getInputStream());
+            payload.copyHeadersTo(cxfMsg);
+            countReceived(payload.getLength(), payload.getEncodedLength());
+        } else {
+            byte[] envelope = xml.getBytes(IOUtils.UTF8_CHARSET);
+            cxfMsg.setContent(InputStream.class, new ByteArrayInputStream(envelope));
+            countReceived(envelope.length, envelope.length);
+        }
+        cxfMsg.put(Message.ENCODING, "UTF-8");
+    }
+
+    /**
+     * Pass a received message to the message observer.
+     * 
+     * @param msg Message received from XMPP.
+     */
+    protected void dispatch(Message msg) {
+        if (dispatcher != null) {
+            dispatcher.dispatch(msgObserver, msg);
+        } else {
+            msgObserver.onMessage(msg);
+        }
+    }
+
+    /**
+     * Pass a received message to the message observer, unless the work queue is full.
+     * 
+     * @param msg Message received from XMPP.
+     * @return False if the message wasn't processed because the work queue is full.
+     */
+    protected boolean tryDispatch(Message msg) {
+        if (dispatcher != null) {
+            return dispatcher.tryDispatch(msgObserver, msg);
+        }
+        msgObserver.onMessage(msg);
+        return true;
+    }
+
     /**
      * Save the information to handle shutdown of non-shared connection.
      * 
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.common;
+
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.Packet;
+
+/**
+ * Accepts packets whose ID starts with a prefix. Used to find the replies to packets sent with IDs generated
+ * by this transport.
+ */
+public class PacketIDPrefixFilter implements PacketFilter {
+
+    private String prefix;
+
+    public PacketIDPrefixFilter(String packetIDPrefix) {
+        prefix = packetIDPrefix;
+    }
+
+    @Override
+    public boolean accept(Packet packet) {
+        String packetID = packet.getPacketID();
+        return packetID != null && packetID.startsWith(prefix);
+    }
+
+}
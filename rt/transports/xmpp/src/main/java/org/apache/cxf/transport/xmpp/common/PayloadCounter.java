@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes of the SOAP envelopes sent and received by a transport. The envelope bytes are what the
+ * interceptors wrote, after any Fast Infoset or gzip encoding. The stanza bytes are what is written in the
+ * XMPP stream for them, plain XML or base64 text, before any stream compression.
+ */
+public class PayloadCounter {
+
+    private AtomicLong envelopeBytesSent = new AtomicLong();
+    private AtomicLong stanzaBytesSent = new AtomicLong();
+    private AtomicLong envelopeBytesReceived = new AtomicLong();
+    private AtomicLong stanzaBytesReceived = new AtomicLong();
+
+    public void countSent(long envelopeBytes, long stanzaBytes) {
+        envelopeBytesSent.addAndGet(envelopeBytes);
+        stanzaBytesSent.addAndGet(stanzaBytes);
+    }
+
+    public void countReceived(long envelopeBytes, long stanzaBytes) {
+        envelopeBytesReceived.addAndGet(envelopeBytes);
+        stanzaBytesReceived.addAndGet(stanzaBytes);
+    }
+
+    public long getEnvelopeBytesSent() {
+        return envelopeBytesSent.get();
+    }
+
+    public long getStanzaBytesSent() {
+        return stanzaBytesSent.get();
+    }
+
+    public long getEnvelopeBytesReceived() {
+        return envelopeBytesReceived.get();
+    }
+
+    public long getStanzaBytesReceived() {
+        return stanzaBytesReceived.get();
+    }
+}
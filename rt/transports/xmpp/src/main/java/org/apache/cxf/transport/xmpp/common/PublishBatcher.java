@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.common;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.jivesoftware.smackx.pubsub.SimplePayload;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * Collects the payloads of one way messages and publishes them together as a single pubsub item. A batch is
+ * published when it holds the maximum number of payloads or when the window since its first payload ends.
+ * A batch of one payload is published without the batch element, so subscribers that don't know about
+ * batches still receive it.
+ */
+public abstract class PublishBatcher {
+    public static final String ELEMENT_NAME = "batch";
+    public static final String NAMESPACE = "http://cxf.apache.org/transports/xmpp/batch";
+
+    private static final Logger LOGGER = LogUtils.getLogger(PublishBatcher.class);
+
+    // One daemon thread publishes the batches whose window ended.
+    private static final Timer WINDOW_TIMER = new Timer("xmpp-publish-batch", true);
+
+    // Prefixed so the payloads keep their own default namespace.
+    private static final String START_TAG = "<cxfb:" + ELEMENT_NAME + " xmlns:cxfb=\"" + NAMESPACE + "\">";
+    private static final String END_TAG = "</cxfb:" + ELEMENT_NAME + ">";
+
+    private final int maxItems;
+    private final long windowMillis;
+
+    private List<SimplePayload> batch = new ArrayList<SimplePayload>();
+    private TimerTask windowTask;
+
+    /**
+     * @param items Maximum number of payloads in a batch.
+     * @param window Milliseconds a payload waits for others before its batch is published.
+     */
+    public PublishBatcher(int items, long window) {
+        maxItems = items;
+        windowMillis = window;
+    }
+
+    /**
+     * @param elementName Element name of a received pubsub payload.
+     * @param namespace Namespace of a received pubsub payload.
+     * @return True if the payload is a batch.
+     */
+    public static boolean isBatch(String elementName, String namespace) {
+        return ELEMENT_NAME.equals(elementName) && NAMESPACE.equals(namespace);
+    }
+
+    /**
+     * Splits a received batch into its payloads.
+     * 
+     * @param xml The batch element.
+     * @return The payloads in the order they were added.
+     * @throws IOException If the batch can't be parsed.
+     */
+    public static List<SimplePayload> split(String xml) throws IOException {
+        List<SimplePayload> payloads = new ArrayList<SimplePayload>();
+        try {
+            XmlPullParser parser = new MXParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(new StringReader(xml));
+            parser.nextTag();
+
+            while (parser.nextTag() == XmlPullParser.START_TAG) {
+                String elementName = parser.getName();
+                String namespace = parser.getNamespace();
+                payloads.add(new SimplePayload(elementName, namespace, readElement(parser)));
+            }
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        return payloads;
+    }
+
+    /**
+     * Add a payload to the current batch, the batch is published if it is full.
+     * 
+     * @param payload Payload of a one way message.
+     * @throws IOException If a full batch can't be published.
+     */
+    public void add(SimplePayload payload) throws IOException {
+        List<SimplePayload> full = null;
+        synchronized (this) {
+            batch.add(payload);
+            if (batch.size() >= maxItems) {
+                full = takeBatch();
+            } else if (windowTask == null) {
+                windowTask = new TimerTask() {
+                    @Override
+                    public void run() {
+                        try {
+                            flush();
+                        } catch (IOException e) {
+                            LOGGER.log(Level.SEVERE, "Failed to publish batch", e);
+                        }
+                    }
+                };
+                WINDOW_TIMER.schedule(windowTask, windowMillis);
+            }
+        }
+        if (full != null) {
+            publish(full);
+        }
+    }
+
+    /**
+     * Publish the current batch now.
+     * 
+     * @throws IOException If the batch can't be published.
+     */
+    public void flush() throws IOException {
+        List<SimplePayload> current;
+        synchronized (this) {
+            current = takeBatch();
+        }
+        if (!current.isEmpty()) {
+            publish(current);
+        }
+    }
+
+    /**
+     * Publish a single item.
+     * 
+     * @param payload The payload of the item.
+     * @throws IOException If the item can't be published.
+     */
+    protected abstract void publish(SimplePayload payload) throws IOException;
+
+    private List<SimplePayload> takeBatch() {
+        if (windowTask != null) {
+            windowTask.cancel();
+            windowTask = null;
+        }
+        List<SimplePayload> current = batch;
+        batch = new ArrayList<SimplePayload>();
+        return current;
+    }
+
+    private void publish(List<SimplePayload> payloads) throws IOException {
+        if (payloads.size() == 1) {
+            publish(payloads.get(0));
+            return;
+        }
+
+        StringBuilder xml = new StringBuilder(START_TAG);
+        for (SimplePayload payload : payloads) {
+            xml.append(payload.toXML());
+        }
+        xml.append(END_TAG);
+        publish(new SimplePayload(ELEMENT_NAME, NAMESPACE, xml.toString()));
+    }
+
+    /**
+     * Copies the element the parser is on, as it was written, and leaves the parser on its end tag.
+     */
+    private static String readElement(XmlPullParser parser) throws Exception {
+        StringBuilder element = new StringBuilder();
+        int depth = parser.getDepth();
+        boolean emptyTag = false;
+        while (true) {
+            int eventType = parser.getEventType();
+            if (eventType == XmlPullParser.TEXT) {
+                escape(element, parser.getText());
+            } else if (eventType == XmlPullParser.START_TAG) {
+                emptyTag = parser.isEmptyElementTag();
+                element.append(parser.getText());
+            } else if (eventType == XmlPullParser.END_TAG) {
+                // The end of an empty tag, <tag/>, was already copied with its start.
+                if (!emptyTag) {
+                    element.append(parser.getText());
+                }
+                emptyTag = false;
+                if (parser.getDepth() == depth) {
+                    return element.toString();
+                }
+            }
+            parser.next();
+        }
+    }
+
+    private static void escape(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '&') {
+                out.append("&amp;");
+            } else if (c == '<') {
+                out.append("&lt;");
+            } else if (c == '>') {
+                out.append("&gt;");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.common;
+
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jivesoftware.smack.XMPPConnection;
+
+/**
+ * Limits the rate of stanzas with a token bucket for every key, like the JID of the sender or the connection
+ * that sends. A bucket holds at most the burst size of tokens and is refilled at the rate, a stanza takes a
+ * token. Received stanzas that find their bucket empty are rejected, stanzas to send wait for their token
+ * instead so they are sent in the order they were queued.
+ */
+public class RateLimiter {
+
+    // Buckets that are full again hold no state, they are dropped once there are this many buckets.
+    private static final int PRUNE_SIZE = 1024;
+
+    private final double tokensPerNano;
+    private final int burst;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+
+    // Metrics
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong delayNanos = new AtomicLong();
+
+    /**
+     * @param rate Stanzas per second.
+     * @param burst Stanzas that can be handled at once after a quiet period, at least 1.
+     */
+    public RateLimiter(double rate, int burst) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be above 0: " + rate);
+        }
+        this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+    }
+
+    /**
+     * Takes a token if one is available, for a received stanza.
+     * 
+     * @return False if the stanza is over the rate and should be rejected.
+     */
+    public boolean tryAcquire(String key) {
+        if (getBucket(key).tryTake(System.nanoTime())) {
+            return true;
+        }
+        throttledCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Takes a token, for a stanza to send. When the bucket is empty the caller waits until the tokens for it
+     * and the stanzas queued before it were refilled.
+     * 
+     * @return Nanoseconds the caller waited.
+     * @throws InterruptedException If the caller was interrupted while it waited, the token is lost.
+     */
+    public long acquire(String key) throws InterruptedException {
+        long wait = getBucket(key).reserve(System.nanoTime());
+        if (wait > 0) {
+            throttledCount.incrementAndGet();
+            delayNanos.addAndGet(wait);
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return wait;
+    }
+
+    /**
+     * Takes a token for a stanza sent on a connection, the bucket is that of the JID of the connection.
+     * 
+     * @throws InterruptedIOException If the caller was interrupted while it waited.
+     */
+    public void acquire(XMPPConnection connection) throws InterruptedIOException {
+        try {
+            acquire(connection.getUser());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send on: " + connection.getUser());
+        }
+    }
+
+    /**
+     * @return Number of received stanzas that were rejected and stanzas to send that had to wait.
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * @return Total milliseconds that stanzas to send waited for a token.
+     */
+    public long getDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(delayNanos.get());
+    }
+
+    private Bucket getBucket(String key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= PRUNE_SIZE) {
+                prune(System.nanoTime());
+            }
+            bucket = new Bucket(burst, System.nanoTime());
+            Bucket existing = buckets.putIfAbsent(key, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    private void prune(long now) {
+        for (Iterator<Bucket> i = buckets.values().iterator(); i.hasNext();) {
+            if (i.next().isFull(now)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * The tokens go below 0 when stanzas to send reserve tokens that are still to be refilled.
+     */
+    private final class Bucket {
+        private double tokens;
+        private long lastRefill;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        synchronized boolean tryTake(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return Nanoseconds until the reserved token is refilled, 0 or less if it was available.
+         */
+        synchronized long reserve(long now) {
+            refill(now);
+            tokens--;
+            return tokens >= 0 ? 0 : (long)Math.ceil(-tokens / tokensPerNano);
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= burst;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.common;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.workqueue.AutomaticWorkQueue;
+import org.apache.cxf.workqueue.WorkQueueManager;
+
+/**
+ * Hands messages received by Smack's packet reader thread to a work queue so a slow service doesn't block
+ * every other packet on the XMPP connection. The named work queue is used if it is configured on the bus,
+ * otherwise the default work queue of the bus is used. When the queue is full the reader thread waits up
+ * to the timeout. A request that can be refused is rejected with
+ * {@link #tryDispatch(MessageObserver, Message)}, so the sender can be told to wait. Other messages, like
+ * responses and one way messages, are processed by a few overflow threads. When those are busy too the
+ * reader thread processes the message itself, which holds back further packets until the queue drains.
+ * Without a work queue manager on the bus every message is processed on the reader thread.
+ */
+public class WorkQueueDispatcher {
+
+    public static final String DEFAULT_WORK_QUEUE_NAME = "xmpp-transport";
+
+    private static final Logger LOGGER = LogUtils.getLogger(WorkQueueDispatcher.class);
+
+    private Bus bus;
+    private String workQueueName;
+    private long timeout;
+    private volatile AutomaticWorkQueue workQueue;
+    private int overflowThreads = 4;
+    private ThreadPoolExecutor overflow;
+
+    /**
+     * @param queueBus Bus with the work queue manager.
+     * @param queueName Name of the work queue to use.
+     * @param queueTimeout Milliseconds to wait for room in a full work queue.
+     */
+    public WorkQueueDispatcher(Bus queueBus, String queueName, long queueTimeout) {
+        bus = queueBus;
+        workQueueName = queueName;
+        timeout = queueTimeout;
+    }
+
+    /**
+     * Use a dedicated work queue instead of one from the bus.
+     *
+     * @param queue The work queue, its size bounds the messages waiting to be processed.
+     */
+    public void setWorkQueue(AutomaticWorkQueue queue) {
+        workQueue = queue;
+    }
+
+    /**
+     * @param threads Number of threads that process the messages the full work queue rejected, with 0 they
+     *            are processed by the calling thread.
+     */
+    public synchronized void setOverflowThreads(int threads) {
+        overflowThreads = threads;
+        if (overflow != null && threads > 0) {
+            overflow.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Pass the message to the observer using a work queue thread. When the work queue is full the message is
+     * processed by an overflow thread, or by the calling thread if they are all busy.
+     *
+     * @param observer Observer that processes the message.
+     * @param msg Message received from XMPP.
+     */
+    public void dispatch(final MessageObserver observer, final Message msg) {
+        if (tryDispatch(observer, msg)) {
+            return;
+        }
+        Runnable work = new Runnable() {
+            public void run() {
+                observer.onMessage(msg);
+            }
+        };
+        try {
+            ThreadPoolExecutor executor = getOverflow();
+            if (executor != null) {
+                executor.execute(work);
+                LOGGER.log(Level.WARNING, "Work queue " + workQueueName
+                                          + " is full, processing message on an overflow thread");
+                return;
+            }
+        } catch (RejectedExecutionException full) {
+            // overflow threads are busy too
+        }
+        LOGGER.log(Level.WARNING, "Work queue " + workQueueName
+                                  + " and its overflow threads are busy, processing message on "
+                                  + Thread.currentThread().getName());
+        work.run();
+    }
+
+    /**
+     * Pass the message to the observer using a work queue thread, unless the work queue is full. Without a
+     * work queue the message is processed by the calling thread.
+     *
+     * @param observer Observer that processes the message.
+     * @param msg Message received from XMPP.
+     * @return False if the work queue is full and the message wasn't processed.
+     */
+    public boolean tryDispatch(final MessageObserver observer, final Message msg) {
+        AutomaticWorkQueue queue = getWorkQueue();
+        if (queue == null) {
+            observer.onMessage(msg);
+            return true;
+        }
+
+        try {
+            queue.execute(new Runnable() {
+                public void run() {
+                    observer.onMessage(msg);
+                }
+            }, timeout);
+            return true;
+        } catch (RejectedExecutionException full) {
+            return false;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getOverflow() {
+        if (overflow == null && overflowThreads > 0) {
+            overflow = new ThreadPoolExecutor(0, overflowThreads, 60, TimeUnit.SECONDS,
+                                              new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "xmpp-overflow-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+        return overflowThreads > 0 ? overflow : null;
+    }
+
+    private AutomaticWorkQueue getWorkQueue() {
+        if (workQueue == null && bus != null) {
+            WorkQueueManager mgr = bus.getExtension(WorkQueueManager.class);
+            if (mgr != null) {
+                AutomaticWorkQueue queue = mgr.getNamedWorkQueue(workQueueName);
+                if (queue == null) {
+                    queue = mgr.getAutomaticWorkQueue();
+                }
+                workQueue = queue;
+            }
+        }
+        return workQueue;
+    }
+}
@@ -20,7 +20,9 @@
 package org.apache.cxf.transport.xmpp.connection;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 import org.apache.cxf.Bus;
@@ -28,6 +30,7 @@ import org.apache.cxf.buslifecycle.BusLifeCycleListener;
 import org.apache.cxf.buslifecycle.BusLifeCycleManager;
 import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.service.model.EndpointInfo;
+import org.jivesoftware.smack.ConnectionConfiguration;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
 
@@ -41,6 +44,20 @@ public class BasicConnectionFactory implements XMPPConnectionFactory, BusLifeCyc
     private String xmppUsername;
     private String xmppPassword;
 
+    // Found using DNS SRV records of the service name when not set.
+    private String xmppHost;
+    private int xmppPort = 5222;
+
+    // Negotiate zlib stream compression, XEP-0138.
+    private boolean compressionEnabled;
+    private CountingSocketFactory socketFactory = new CountingSocketFactory();
+
+    // Reconnect connections dropped by the server.
+    private boolean reconnect = true;
+    private long reconnectInitialDelay = 1000;
+    private long reconnectMaxDelay = 60000;
+    private List<ReconnectSupervisor> supervisors = new CopyOnWriteArrayList<ReconnectSupervisor>();
+
     // Listen to this to shutdown connections.
     private Bus bus;
 
@@ -71,6 +88,115 @@ public class BasicConnectionFactory implements XMPPConnectionFactory, BusLifeCyc
         this.xmppPassword = xmppPassword;
     }
 
+    /**
+     * Optional configuration of the host of the XMPP server, by default it is found using the DNS SRV records
+     * of the service name.
+     * 
+     * @param xmppHost Host name or address of the XMPP server.
+     */
+    public void setXmppHost(String xmppHost) {
+        this.xmppHost = xmppHost;
+    }
+
+    /**
+     * Optional configuration of the port of the XMPP server, the default is 5222. Only used when the host is
+     * set.
+     * 
+     * @param xmppPort Port of the XMPP server.
+     */
+    public void setXmppPort(int xmppPort) {
+        this.xmppPort = xmppPort;
+    }
+
+    /**
+     * Optional configuration to compress the XMPP stream with zlib (XEP-0138), the default is false. The
+     * stream is only compressed if the server offers it and jzlib is on the classpath.
+     * 
+     * @param enabled True to ask the server for stream compression.
+     */
+    public void setCompressionEnabled(boolean enabled) {
+        compressionEnabled = enabled;
+    }
+
+    /**
+     * @return Bytes written to the network by all connections, after compression.
+     */
+    public long getBytesSent() {
+        return socketFactory.getBytesSent();
+    }
+
+    /**
+     * @return Bytes read from the network by all connections, before decompression.
+     */
+    public long getBytesReceived() {
+        return socketFactory.getBytesReceived();
+    }
+
+    /**
+     * Optional configuration to reconnect connections that were dropped, the default is true.
+     * 
+     * @param reconnect False to leave dropped connections closed.
+     */
+    public void setReconnect(boolean reconnect) {
+        this.reconnect = reconnect;
+    }
+
+    public boolean isReconnect() {
+        return reconnect;
+    }
+
+    /**
+     * Optional configuration of the milliseconds to wait before the first reconnect attempt, the default is
+     * 1000. The delay doubles after each failed attempt.
+     * 
+     * @param delay Milliseconds before the first attempt.
+     */
+    public void setReconnectInitialDelay(long delay) {
+        reconnectInitialDelay = delay;
+    }
+
+    /**
+     * Optional configuration of the maximum milliseconds between reconnect attempts, the default is 60000.
+     * 
+     * @param delay Maximum milliseconds between attempts.
+     */
+    public void setReconnectMaxDelay(long delay) {
+        reconnectMaxDelay = delay;
+    }
+
+    /**
+     * @return Number of times a dropped connection was reconnected.
+     */
+    public long getReconnectCount() {
+        long count = 0;
+        for (ReconnectSupervisor supervisor : supervisors) {
+            count += supervisor.getReconnectCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of reconnect attempts that failed.
+     */
+    public long getFailedReconnectCount() {
+        long count = 0;
+        for (ReconnectSupervisor supervisor : supervisors) {
+            count += supervisor.getFailedAttemptCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return Milliseconds connections were down, summed over all connections.
+     */
+    public long getTotalOutageMillis() {
+        long millis = 0;
+        for (ReconnectSupervisor supervisor : supervisors) {
+            millis += supervisor.getTotalOutageMillis();
+        }
+        return millis;
+    }
+
     public void setBus(Bus listenForShutdown) {
         bus = listenForShutdown;
         BusLifeCycleManager mgr = bus.getExtension(BusLifeCycleManager.class);
@@ -83,16 +209,61 @@ public class BasicConnectionFactory implements XMPPConnectionFactory, BusLifeCyc
         XMPPConnection xmppConnection = connectionsKeyByResources.get(resourceName);
 
         if (xmppConnection == null) {
-            xmppConnection = new XMPPConnection(xmppServiceName);
-            xmppConnection.connect();
-            xmppConnection.login(xmppUsername, xmppPassword, resourceName);
+            xmppConnection = createConnection(resourceName);
             connectionsKeyByResources.put(resourceName, xmppConnection);
-            LOGGER.info("Logged in with JID: " + xmppConnection.getUser());
         }
 
         return xmppConnection;
     }
 
+    /**
+     * Connects to the XMPP server and logs in using the configured credentials.
+     * 
+     * @param resourceName Resource of the JID used for the login.
+     * @return A new connection that is logged in.
+     * @throws XMPPException If the connection or login fails.
+     */
+    protected XMPPConnection createConnection(String resourceName) throws XMPPException {
+        ConnectionConfiguration config = xmppHost != null
+            ? new ConnectionConfiguration(xmppHost, xmppPort, xmppServiceName)
+            : new ConnectionConfiguration(xmppServiceName);
+        // Smack's reconnection manager is replaced by the supervisor.
+        config.setReconnectionAllowed(!reconnect);
+        config.setCompressionEnabled(compressionEnabled);
+        config.setSocketFactory(socketFactory);
+        XMPPConnection xmppConnection = new XMPPConnection(config);
+        xmppConnection.connect();
+        xmppConnection.login(xmppUsername, xmppPassword, resourceName);
+        LOGGER.info("Logged in with JID: " + xmppConnection.getUser());
+        if (compressionEnabled && !xmppConnection.isUsingCompression()) {
+            LOGGER.warning("Stream compression is not available for: " + xmppConnection.getUser());
+        }
+
+        if (reconnect) {
+            ReconnectSupervisor supervisor = new ReconnectSupervisor(xmppConnection, bus);
+            supervisor.setInitialDelay(reconnectInitialDelay);
+            supervisor.setMaxDelay(reconnectMaxDelay);
+            supervisors.add(supervisor);
+        }
+        return xmppConnection;
+    }
+
+    /**
+     * @return True if the connection was dropped and is being reconnected.
+     */
+    protected boolean isReconnecting(XMPPConnection conn) {
+        for (ReconnectSupervisor supervisor : supervisors) {
+            if (supervisor.getConnection() == conn) {
+                return supervisor.isReconnecting();
+            }
+        }
+        return false;
+    }
+
+    protected Bus getBus() {
+        return bus;
+    }
+
     protected String createResourceName(EndpointInfo epi, Bus theBus) {
         return epi.getService().getName().toString();
     }
@@ -104,6 +275,9 @@ public class BasicConnectionFactory implements XMPPConnectionFactory, BusLifeCyc
 
     @Override
     public void postShutdown() {
+        for (ReconnectSupervisor supervisor : supervisors) {
+            supervisor.stop();
+        }
         for (XMPPConnection conn : connectionsKeyByResources.values()) {
             conn.disconnect();
         }
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.connection;
+
+import java.util.List;
+
+import org.apache.cxf.service.model.EndpointInfo;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+
+/**
+ * A connection factory that keeps several connections for the same endpoint. Users that can spread their
+ * traffic over the connections ask for all of them, other users still get a single connection from
+ * {@link #login(EndpointInfo)}.
+ */
+public interface MultiplexedConnectionFactory extends XMPPConnectionFactory {
+
+    /**
+     * Provides every connection available to the endpoint, all of them already logged in.
+     * 
+     * @return Connections that might be shared, so don't close them.
+     * @throws XMPPException If the login fails.
+     */
+    List<XMPPConnection> loginAll(EndpointInfo epi) throws XMPPException;
+}
@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.service.model.EndpointInfo;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.Packet;
+
+/**
+ * Keeps a pool of logged in connections for every resource name. Each connection of a pool logs in with its
+ * own resource, the resource name followed by the index of the connection, so the XMPP server treats them
+ * as separate streams. Calls to {@link #login(EndpointInfo)} are balanced over the pool and connections
+ * that are no longer connected are replaced, unless they are being reconnected. Connections are created
+ * without holding a lock shared by all resources, only users of the same resource wait for each other.
+ */
+public class PooledConnectionFactory extends BasicConnectionFactory implements MultiplexedConnectionFactory {
+    private static final Logger LOGGER = LogUtils.getLogger(PooledConnectionFactory.class);
+
+    private ConcurrentMap<String, FutureTask<ConnectionPool>> poolsKeyByResources =
+        new ConcurrentHashMap<String, FutureTask<ConnectionPool>>();
+
+    private int poolSize = 4;
+
+    // Metrics
+    private AtomicLong leaseCount = new AtomicLong();
+    private AtomicLong sentPacketCount = new AtomicLong();
+    private AtomicLong replacedConnectionCount = new AtomicLong();
+
+    /**
+     * Optional configuration of the number of connections for each resource, the default is 4.
+     * 
+     * @param size Number of connections for each resource.
+     */
+    public void setPoolSize(int size) {
+        poolSize = size;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Provides the next connection of the pool for the endpoint.
+     */
+    @Override
+    public XMPPConnection login(EndpointInfo epi) throws XMPPException {
+        leaseCount.incrementAndGet();
+        return getPool(createResourceName(epi, getBus())).next();
+    }
+
+    /**
+     * Provides all the connections of the pool for the endpoint.
+     */
+    @Override
+    public List<XMPPConnection> loginAll(EndpointInfo epi) throws XMPPException {
+        leaseCount.incrementAndGet();
+        return getPool(createResourceName(epi, getBus())).all();
+    }
+
+    /**
+     * @return Number of connections created for all resources.
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for (ConnectionPool pool : getPools()) {
+            count += pool.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of connections, for all resources, that are currently connected and logged in.
+     */
+    public int getConnectedCount() {
+        int count = 0;
+        for (ConnectionPool pool : getPools()) {
+            count += pool.connectedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return Fraction of the pooled connections that are connected and logged in.
+     */
+    public double getUtilization() {
+        int total = getPools().size() * poolSize;
+        return total == 0 ? 0 : (double)getConnectedCount() / total;
+    }
+
+    /**
+     * @return Number of times a connection was handed out.
+     */
+    public long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /**
+     * @return Number of packets sent over all pooled connections.
+     */
+    public long getSentPacketCount() {
+        return sentPacketCount.get();
+    }
+
+    /**
+     * @return Number of connections that were replaced because they were no longer connected.
+     */
+    public long getReplacedConnectionCount() {
+        return replacedConnectionCount.get();
+    }
+
+    @Override
+    public void postShutdown() {
+        for (ConnectionPool pool : getPools()) {
+            pool.disconnect();
+        }
+        super.postShutdown();
+    }
+
+    private ConnectionPool getPool(final String resourceName) throws XMPPException {
+        FutureTask<ConnectionPool> creation = poolsKeyByResources.get(resourceName);
+        if (creation == null) {
+            FutureTask<ConnectionPool> newCreation = new FutureTask<ConnectionPool>(
+                new Callable<ConnectionPool>() {
+                    public ConnectionPool call() throws XMPPException {
+                        return new ConnectionPool(resourceName);
+                    }
+                });
+            creation = poolsKeyByResources.putIfAbsent(resourceName, newCreation);
+            if (creation == null) {
+                creation = newCreation;
+                creation.run();
+            }
+        }
+
+        try {
+            return creation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMPPException("Interrupted while connecting resource: " + resourceName, e);
+        } catch (ExecutionException e) {
+            // Allow the next login to try again.
+            poolsKeyByResources.remove(resourceName, creation);
+            if (e.getCause() instanceof XMPPException) {
+                throw (XMPPException)e.getCause();
+            }
+            throw new XMPPException(e.getCause());
+        }
+    }
+
+    private List<ConnectionPool> getPools() {
+        List<ConnectionPool> pools = new ArrayList<ConnectionPool>();
+        for (FutureTask<ConnectionPool> creation : poolsKeyByResources.values()) {
+            if (creation.isDone()) {
+                try {
+                    pools.add(creation.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // Failed pools are not counted.
+                }
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * The connections of one resource.
+     */
+    private class ConnectionPool {
+        private final String resourceName;
+        private final AtomicReferenceArray<XMPPConnection> connections;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+
+        ConnectionPool(String resource) throws XMPPException {
+            resourceName = resource;
+            connections = new AtomicReferenceArray<XMPPConnection>(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                connections.set(i, connect(i));
+            }
+        }
+
+        XMPPConnection next() throws XMPPException {
+            int index = (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % connections.length();
+            return checkAlive(index);
+        }
+
+        List<XMPPConnection> all() throws XMPPException {
+            List<XMPPConnection> all = new ArrayList<XMPPConnection>(connections.length());
+            for (int i = 0; i < connections.length(); i++) {
+                all.add(checkAlive(i));
+            }
+            return Collections.unmodifiableList(all);
+        }
+
+        int size() {
+            return connections.length();
+        }
+
+        int connectedCount() {
+            int count = 0;
+            for (int i = 0; i < connections.length(); i++) {
+                XMPPConnection conn = connections.get(i);
+                if (conn.isConnected() && conn.isAuthenticated()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void disconnect() {
+            for (int i = 0; i < connections.length(); i++) {
+                connections.get(i).disconnect();
+            }
+        }
+
+        private XMPPConnection checkAlive(int index) throws XMPPException {
+            XMPPConnection conn = connections.get(index);
+            if (conn.isConnected() && conn.isAuthenticated() || isReconnecting(conn)) {
+                // A reconnected connection keeps its listeners, so it is not replaced.
+                return conn;
+            }
+
+            // Only one caller replaces the dead connection, the others use the replacement.
+            synchronized (this) {
+                if (connections.get(index) != conn) {
+                    return connections.get(index);
+                }
+                LOGGER.log(Level.WARNING, "Replacing connection that is no longer connected: " + conn.getUser());
+                conn.disconnect();
+                XMPPConnection replacement = connect(index);
+                connections.set(index, replacement);
+                replacedConnectionCount.incrementAndGet();
+                return replacement;
+            }
+        }
+
+        private XMPPConnection connect(int index) throws XMPPException {
+            XMPPConnection conn = createConnection(resourceName + "-" + index);
+            conn.addPacketSendingListener(new PacketListener() {
+                public void processPacket(Packet packet) {
+                    sentPacketCount.incrementAndGet();
+                }
+            }, new PacketFilter() {
+                public boolean accept(Packet packet) {
+                    return true;
+                }
+            });
+            return conn;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.connection;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.workqueue.AutomaticWorkQueue;
+import org.apache.cxf.workqueue.WorkQueueManager;
+import org.jivesoftware.smack.ConnectionListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+
+/**
+ * Reconnects a connection that was dropped by the XMPP server. Attempts are made with an exponential backoff
+ * until the connection is logged in again. The same connection object is reconnected, so packet listeners
+ * stay registered, and Smack notifies every {@link ConnectionListener} of the connection with
+ * {@link ConnectionListener#reconnectionSuccessful()} so users can restore any state kept by the server.
+ */
+public class ReconnectSupervisor implements ConnectionListener {
+    private static final Logger LOGGER = LogUtils.getLogger(ReconnectSupervisor.class);
+
+    // Used when the bus has no work queue.
+    private static final Timer RECONNECT_TIMER = new Timer("xmpp-reconnect", true);
+
+    private XMPPConnection connection;
+    private Bus bus;
+
+    private long initialDelay = 1000;
+    private long maxDelay = 60000;
+
+    private volatile boolean stopped;
+    private volatile long outageStart;
+    private long nextDelay;
+
+    // Metrics
+    private AtomicLong reconnectCount = new AtomicLong();
+    private AtomicLong failedAttemptCount = new AtomicLong();
+    private AtomicLong totalOutageMillis = new AtomicLong();
+    private volatile long lastReconnectMillis;
+
+    /**
+     * @param conn The connection to keep connected.
+     * @param scheduleBus Bus providing the work queue used to schedule attempts, may be null.
+     */
+    public ReconnectSupervisor(XMPPConnection conn, Bus scheduleBus) {
+        connection = conn;
+        bus = scheduleBus;
+        connection.addConnectionListener(this);
+    }
+
+    /**
+     * @param delay Milliseconds to wait before the first attempt.
+     */
+    public void setInitialDelay(long delay) {
+        initialDelay = delay;
+    }
+
+    /**
+     * @param delay Maximum milliseconds between attempts.
+     */
+    public void setMaxDelay(long delay) {
+        maxDelay = delay;
+    }
+
+    /**
+     * Stop reconnecting, used when the connection is closed on purpose.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public XMPPConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return True while the connection is down and attempts are being made.
+     */
+    public boolean isReconnecting() {
+        return outageStart != 0;
+    }
+
+    public long getReconnectCount() {
+        return reconnectCount.get();
+    }
+
+    public long getFailedAttemptCount() {
+        return failedAttemptCount.get();
+    }
+
+    /**
+     * @return Milliseconds the connection was down, over all the outages that ended.
+     */
+    public long getTotalOutageMillis() {
+        return totalOutageMillis.get();
+    }
+
+    /**
+     * @return Milliseconds from losing the connection to being logged in again for the last outage.
+     */
+    public long getLastReconnectMillis() {
+        return lastReconnectMillis;
+    }
+
+    @Override
+    public void connectionClosedOnError(Exception e) {
+        LOGGER.log(Level.WARNING, "Connection lost, reconnecting: " + connection.getUser(), e);
+        synchronized (this) {
+            if (outageStart != 0 || stopped) {
+                return;
+            }
+            outageStart = System.currentTimeMillis();
+            nextDelay = initialDelay;
+        }
+        schedule(initialDelay);
+    }
+
+    @Override
+    public void connectionClosed() {
+        stop();
+    }
+
+    @Override
+    public void reconnectingIn(int seconds) {
+        // Smack's own reconnection manager is not used.
+    }
+
+    @Override
+    public void reconnectionSuccessful() {
+        // Counted by the attempt that reconnected.
+    }
+
+    @Override
+    public void reconnectionFailed(Exception e) {
+        // Smack's own reconnection manager is not used.
+    }
+
+    private void attempt() {
+        if (stopped) {
+            return;
+        }
+        try {
+            // Logs in again with the same credentials and resource,
+            // then notifies the connection listeners.
+            connection.connect();
+        } catch (XMPPException e) {
+            LOGGER.log(Level.FINE, "Reconnect attempt failed", e);
+        }
+
+        if (connection.isConnected() && connection.isAuthenticated()) {
+            long outage = System.currentTimeMillis() - outageStart;
+            lastReconnectMillis = outage;
+            totalOutageMillis.addAndGet(outage);
+            reconnectCount.incrementAndGet();
+            outageStart = 0;
+            LOGGER.info("Reconnected after " + outage + " ms with JID: " + connection.getUser());
+        } else {
+            failedAttemptCount.incrementAndGet();
+            long delay;
+            synchronized (this) {
+                nextDelay = Math.min(nextDelay * 2, maxDelay);
+                delay = nextDelay;
+            }
+            schedule(delay);
+        }
+    }
+
+    private void schedule(long delay) {
+        Runnable task = new Runnable() {
+            public void run() {
+                attempt();
+            }
+        };
+
+        WorkQueueManager mgr = bus != null ? bus.getExtension(WorkQueueManager.class) : null;
+        if (mgr != null) {
+            AutomaticWorkQueue queue = mgr.getAutomaticWorkQueue();
+            queue.schedule(task, delay);
+        } else {
+            final Runnable timerTask = task;
+            RECONNECT_TIMER.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    timerTask.run();
+                }
+            }, delay);
+        }
+    }
+}
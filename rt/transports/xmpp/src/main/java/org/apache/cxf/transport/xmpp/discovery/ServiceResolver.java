@@ -0,0 +1,369 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.jivesoftware.smack.AbstractConnectionListener;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.PacketTypeFilter;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.util.StringUtils;
+import org.jivesoftware.smackx.ServiceDiscoveryManager;
+import org.jivesoftware.smackx.packet.DiscoverItems;
+
+/**
+ * Resolves the logical address of a service, a bare JID or the address of a component, to the full JIDs of
+ * the instances of the service that are currently available. The candidates are the resources that sent an
+ * available presence and the items returned by a disco#items request (XEP-0030) to the address. A candidate
+ * is only used when its disco#info lists the SOAP feature advertised by the IQ destinations.
+ * <p>
+ * Resolved addresses are cached, presence changes of an instance invalidate the addresses it belongs to and
+ * the entries also expire so items that aren't tracked by presence are discovered again.
+ * <p>
+ * Instances that sent an unavailable presence are remembered until they are available again, so the
+ * conduits can fail the requests sent to them right away instead of waiting for the request timeout.
+ */
+public final class ServiceResolver {
+
+    /**
+     * Feature advertised by the IQ destinations, SOAP over XMPP (XEP-0072).
+     */
+    public static final String SOAP_FEATURE = "http://jabber.org/protocol/soap";
+
+    private static final Logger LOGGER = LogUtils.getLogger(ServiceResolver.class);
+
+    private static final Map<XMPPConnection, ServiceResolver> INSTANCES =
+        Collections.synchronizedMap(new WeakHashMap<XMPPConnection, ServiceResolver>());
+
+    private final XMPPConnection connection;
+    private final PacketListener presenceListener;
+
+    // Available resources by bare JID, tracked from presence.
+    private final ConcurrentMap<String, Set<String>> available = new ConcurrentHashMap<String, Set<String>>();
+
+    // Resolved addresses and the result of the disco#info checks.
+    private final ConcurrentMap<String, Resolution> resolved = new ConcurrentHashMap<String, Resolution>();
+    private final ConcurrentMap<String, Boolean> supported = new ConcurrentHashMap<String, Boolean>();
+
+    // Discoveries in progress, the callers resolving the same address wait for the same one.
+    private final ConcurrentMap<String, FutureTask<List<String>>> discoveries =
+        new ConcurrentHashMap<String, FutureTask<List<String>>>();
+
+    // Instances that went offline, tracked from presence.
+    private final Set<String> unavailable = new CopyOnWriteArraySet<String>();
+    private final Set<UnavailableListener> listeners = new CopyOnWriteArraySet<UnavailableListener>();
+
+    private volatile long cacheTimeout = 60000;
+
+    // Metrics
+    private final AtomicLong resolveCount = new AtomicLong();
+    private final AtomicLong discoveryCount = new AtomicLong();
+
+    /**
+     * Notified when an instance of a service sends an unavailable presence.
+     */
+    public interface UnavailableListener {
+
+        /**
+         * @param jid The full JID of the instance that went offline.
+         */
+        void instanceUnavailable(String jid);
+    }
+
+    private static final class Resolution {
+        private final List<String> jids;
+        private final long expires;
+
+        Resolution(List<String> jids, long expires) {
+            this.jids = jids;
+            this.expires = expires;
+        }
+    }
+
+    private ServiceResolver(XMPPConnection conn) {
+        connection = conn;
+
+        presenceListener = new PacketListener() {
+            public void processPacket(Packet packet) {
+                presenceChanged((Presence)packet);
+            }
+        };
+        connection.addPacketListener(presenceListener, new PacketTypeFilter(Presence.class));
+
+        connection.addConnectionListener(new AbstractConnectionListener() {
+            @Override
+            public void reconnectionSuccessful() {
+                // The server sends the presence of the contacts again.
+                available.clear();
+                unavailable.clear();
+                resolved.clear();
+                supported.clear();
+            }
+
+            @Override
+            public void connectionClosed() {
+                synchronized (INSTANCES) {
+                    if (INSTANCES.get(connection) == ServiceResolver.this) {
+                        INSTANCES.remove(connection);
+                    }
+                }
+                connection.removePacketListener(presenceListener);
+                connection.removeConnectionListener(this);
+            }
+        });
+    }
+
+    /**
+     * @param conn A logged in connection.
+     * @return The resolver of the connection.
+     */
+    public static ServiceResolver getInstanceFor(XMPPConnection conn) {
+        synchronized (INSTANCES) {
+            ServiceResolver resolver = INSTANCES.get(conn);
+            if (resolver == null) {
+                resolver = new ServiceResolver(conn);
+                INSTANCES.put(conn, resolver);
+            }
+            return resolver;
+        }
+    }
+
+    /**
+     * Advertise the SOAP feature so the connection is found by the resolvers of the clients.
+     */
+    public static void advertise(XMPPConnection conn) {
+        getDiscoveryManager(conn).addFeature(SOAP_FEATURE);
+    }
+
+    /**
+     * @param timeout Milliseconds a resolved address is used before it is discovered again.
+     */
+    public void setCacheTimeout(long timeout) {
+        cacheTimeout = timeout;
+    }
+
+    /**
+     * @param address A full JID, a bare JID or the address of a component.
+     * @return The full JIDs of the available instances. A full JID, or an address without available
+     *         instances, is returned as is so the server routes the request.
+     */
+    public List<String> resolve(final String address) {
+        resolveCount.incrementAndGet();
+        if (StringUtils.parseResource(address).length() > 0) {
+            return Collections.singletonList(address);
+        }
+
+        Resolution resolution = resolved.get(address);
+        if (resolution != null && resolution.expires >= System.currentTimeMillis()) {
+            return resolution.jids;
+        }
+
+        FutureTask<List<String>> task = new FutureTask<List<String>>(new Callable<List<String>>() {
+            public List<String> call() {
+                Resolution current = resolved.get(address);
+                if (current != null && current.expires >= System.currentTimeMillis()) {
+                    // Discovered by a caller that was done before this one started.
+                    return current.jids;
+                }
+                List<String> jids = discover(address);
+                resolved.put(address, new Resolution(jids, System.currentTimeMillis() + cacheTimeout));
+                return jids;
+            }
+        });
+        FutureTask<List<String>> running = discoveries.putIfAbsent(address, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                discoveries.remove(address, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.singletonList(address);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw (Error)e.getCause();
+        }
+    }
+
+    /**
+     * @param jid A full JID.
+     * @return True if the instance sent an unavailable presence and hasn't been available since.
+     */
+    public boolean isUnavailable(String jid) {
+        return unavailable.contains(jid);
+    }
+
+    /**
+     * @param bareJid The bare JID of a service.
+     * @return The full JIDs of the instances that are available, tracked from presence.
+     */
+    public List<String> getAvailableInstances(String bareJid) {
+        Set<String> resources = available.get(bareJid);
+        return resources == null ? Collections.<String>emptyList() : new ArrayList<String>(resources);
+    }
+
+    public void addUnavailableListener(UnavailableListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeUnavailableListener(UnavailableListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Number of addresses resolved.
+     */
+    public long getResolveCount() {
+        return resolveCount.get();
+    }
+
+    /**
+     * @return Number of addresses that were not cached and were discovered.
+     */
+    public long getDiscoveryCount() {
+        return discoveryCount.get();
+    }
+
+    private List<String> discover(String address) {
+        discoveryCount.incrementAndGet();
+
+        Set<String> candidates = new LinkedHashSet<String>();
+        Set<String> resources = available.get(address);
+        if (resources != null) {
+            candidates.addAll(resources);
+        }
+        try {
+            DiscoverItems items = getDiscoveryManager(connection).discoverItems(address);
+            for (Iterator<DiscoverItems.Item> it = items.getItems(); it.hasNext();) {
+                DiscoverItems.Item item = it.next();
+                if (item.getNode() == null && !address.equals(item.getEntityID())) {
+                    candidates.add(item.getEntityID());
+                }
+            }
+        } catch (XMPPException e) {
+            // Most accounts don't list their resources, presence is enough.
+            LOGGER.log(Level.FINE, "No items discovered for: " + address, e);
+        }
+
+        List<String> jids = new ArrayList<String>();
+        for (String jid : candidates) {
+            if (isSupported(jid)) {
+                jids.add(jid);
+            }
+        }
+        LOGGER.fine("Resolved " + address + " to: " + jids);
+        return jids.isEmpty() ? Collections.singletonList(address) : Collections.unmodifiableList(jids);
+    }
+
+    private boolean isSupported(String jid) {
+        Boolean result = supported.get(jid);
+        if (result == null) {
+            try {
+                result = getDiscoveryManager(connection).discoverInfo(jid).containsFeature(SOAP_FEATURE);
+            } catch (XMPPException e) {
+                LOGGER.log(Level.FINE, "No info discovered for: " + jid, e);
+                result = Boolean.FALSE;
+            }
+            supported.put(jid, result);
+        }
+        return result;
+    }
+
+    private void presenceChanged(Presence presence) {
+        String from = presence.getFrom();
+        if (from == null || StringUtils.parseResource(from).length() == 0) {
+            return;
+        }
+        String bareJid = StringUtils.parseBareAddress(from);
+
+        if (presence.isAvailable()) {
+            unavailable.remove(from);
+            Set<String> resources = available.get(bareJid);
+            if (resources == null) {
+                Set<String> newResources = new CopyOnWriteArraySet<String>();
+                resources = available.putIfAbsent(bareJid, newResources);
+                if (resources == null) {
+                    resources = newResources;
+                }
+            }
+            if (!resources.add(from)) {
+                // Only a status change of a known instance.
+                return;
+            }
+        } else {
+            Set<String> resources = available.get(bareJid);
+            if (resources != null) {
+                resources.remove(from);
+            }
+            supported.remove(from);
+        }
+
+        // The instance may also be listed by other addresses, like the one of a component.
+        resolved.remove(bareJid);
+        for (Map.Entry<String, Resolution> entry : resolved.entrySet()) {
+            if (entry.getValue().jids.contains(from)) {
+                resolved.remove(entry.getKey());
+            }
+        }
+
+        // Notified last, the requests that fail over must not be sent to the instance again.
+        if (!presence.isAvailable() && unavailable.add(from)) {
+            for (UnavailableListener listener : listeners) {
+                listener.instanceUnavailable(from);
+            }
+        }
+    }
+
+    private static ServiceDiscoveryManager getDiscoveryManager(XMPPConnection conn) {
+        // The manager of a connection only exists if the class was loaded before the connection was made.
+        synchronized (ServiceDiscoveryManager.class) {
+            ServiceDiscoveryManager mgr = ServiceDiscoveryManager.getInstanceFor(conn);
+            return mgr != null ? mgr : new ServiceDiscoveryManager(conn);
+        }
+    }
+}
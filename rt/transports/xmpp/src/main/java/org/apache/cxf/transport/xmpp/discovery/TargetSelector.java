@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.discovery;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the JID a request is sent to from the available instances of a service. The requests waiting for a
+ * response are counted per JID for the least outstanding strategy.
+ */
+public class TargetSelector {
+
+    private final LoadBalancingStrategy strategy;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> outstanding =
+        new ConcurrentHashMap<String, AtomicInteger>();
+
+    public TargetSelector(LoadBalancingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public LoadBalancingStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @param jids The available instances, not empty.
+     * @return The JID to send the next request to.
+     */
+    public String select(List<String> jids) {
+        int size = jids.size();
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        if (size == 1 || strategy == LoadBalancingStrategy.ROUND_ROBIN) {
+            return jids.get(start % size);
+        }
+
+        String best = null;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            String jid = jids.get((start + i) % size);
+            int count = getOutstanding(jid);
+            if (count < bestCount) {
+                best = jid;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Record a request sent to the JID.
+     */
+    public void sent(String jid) {
+        AtomicInteger count = outstanding.get(jid);
+        if (count == null) {
+            AtomicInteger newCount = new AtomicInteger();
+            count = outstanding.putIfAbsent(jid, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Record a response, or a timeout, of a request sent to the JID.
+     */
+    public void completed(String jid) {
+        AtomicInteger count = outstanding.get(jid);
+        if (count != null) {
+            count.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return Number of requests sent to the JID that are waiting for a response.
+     */
+    public int getOutstanding(String jid) {
+        AtomicInteger count = outstanding.get(jid);
+        return count == null ? 0 : count.get();
+    }
+}
@@ -20,12 +20,15 @@
 package org.apache.cxf.transport.xmpp.iq;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
 import org.apache.cxf.io.CachedOutputStream;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.transport.Conduit;
 import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.xmpp.common.AbstractConduit;
+import org.apache.cxf.transport.xmpp.common.PayloadCounter;
+import org.apache.cxf.transport.xmpp.common.RateLimiter;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayload;
 import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
 import org.apache.cxf.wsdl.EndpointReferenceUtils;
@@ -33,20 +36,55 @@ import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.packet.IQ;
 
 /**
- * This is used by the service to reply to the client.
+ * This is used by the service to reply to the client. A destination has a back channel for each of its
+ * connections, the request a reply is for is taken from the exchange of the message.
  * 
  * @author Leon Doud
  */
 public class IQBackChannelConduit implements Conduit {
     private MessageObserver msgObserver;
-    private SoapPacket soapMsg;
     private XMPPConnection xmppConn;
+    private boolean binaryPayload;
+    private PayloadCounter payloadCounter;
+    private long streamThreshold;
+    private RateLimiter rateLimiter;
 
-    public IQBackChannelConduit(SoapPacket msg, XMPPConnection connection) {
-        soapMsg = msg;
+    /**
+     * @param connection Connection the requests were received on, the replies are sent on it.
+     */
+    public IQBackChannelConduit(XMPPConnection connection) {
         xmppConn = connection;
     }
 
+    /**
+     * @param binary True to send a reply encoded by interceptors as a binary payload.
+     */
+    public void setBinaryPayload(boolean binary) {
+        binaryPayload = binary;
+    }
+
+    /**
+     * @param counter Counts the bytes of the reply, may be null.
+     */
+    public void setPayloadCounter(PayloadCounter counter) {
+        payloadCounter = counter;
+    }
+
+    /**
+     * @param threshold Size in bytes above which the reply is sent through an In-Band Bytestream, 0 to always
+     *            send it in the IQ packet.
+     */
+    public void setStreamThreshold(long threshold) {
+        streamThreshold = threshold;
+    }
+
+    /**
+     * @param limiter Limits the replies sent on the connection, null to send them right away.
+     */
+    public void setRateLimiter(RateLimiter limiter) {
+        rateLimiter = limiter;
+    }
+
     @Override
     public MessageObserver getMessageObserver() {
         return msgObserver;
@@ -70,18 +108,48 @@ public class IQBackChannelConduit implements Conduit {
      */
     @Override
     public void close(Message msg) throws IOException {
-        CachedOutputStream soapResponse = (CachedOutputStream)msg.getContent(OutputStream.class);
-        StringBuilder replyMsg = new StringBuilder();
-        soapResponse.writeCacheTo(replyMsg);
-
-        SoapPacket responseIQ = new SoapPacket();
-        responseIQ.setType(IQ.Type.RESULT);
-        responseIQ.setPacketID(soapMsg.getPacketID());
-        responseIQ.setFrom(soapMsg.getTo());
-        responseIQ.setTo(soapMsg.getFrom());
-        responseIQ.setEnvelope(replyMsg.toString());
-
-        xmppConn.sendPacket(responseIQ);
+        SoapPacket soapMsg = msg.getExchange().get(SoapPacket.class);
+        if (soapMsg == null) {
+            throw new IOException("No request to send the reply to");
+        }
+        CachedOutputStream soapResponse = AbstractConduit.getEnvelope(msg);
+        if (soapResponse == null) {
+            throw new IOException("No reply was written");
+        }
+        try {
+            if (rateLimiter != null) {
+                rateLimiter.acquire(xmppConn);
+            }
+
+            SoapPacket responseIQ = new SoapPacket();
+            responseIQ.setType(IQ.Type.RESULT);
+            responseIQ.setPacketID(soapMsg.getPacketID());
+            responseIQ.setFrom(soapMsg.getTo());
+            responseIQ.setTo(soapMsg.getFrom());
+            boolean streamed = streamThreshold > 0 && soapResponse.size() > streamThreshold
+                               && IQBytestreamTransfer.canSend(soapMsg.getFrom());
+            if (streamed) {
+                // Large replies don't hold up the other packets on the connection.
+                String streamId = IQBytestreamTransfer.getInstanceFor(xmppConn).send(soapMsg.getFrom(),
+                                                                                     soapResponse);
+                responseIQ.setPayload(BinaryPayload.createStreamed(msg, streamId));
+            } else if (binaryPayload && BinaryPayload.isRequired(msg)) {
+                responseIQ.setPayload(BinaryPayload.create(msg, soapResponse));
+            } else {
+                responseIQ.setEnvelope(soapResponse);
+            }
+            if (payloadCounter != null && streamed) {
+                payloadCounter.countSent(soapResponse.size(), soapResponse.size());
+            } else if (payloadCounter != null) {
+                payloadCounter.countSent(responseIQ.getEnvelopeLength(), responseIQ.getStanzaLength());
+            }
+
+            xmppConn.sendPacket(responseIQ);
+        } finally {
+            // The packet holds a copy of the reply, a temp file holding it can be deleted.
+            soapResponse.releaseTempFileHold();
+            soapResponse.close();
+        }
     }
 
     @Override
@@ -94,7 +162,7 @@ public class IQBackChannelConduit implements Conduit {
      */
     @Override
     public void prepare(Message msg) throws IOException {
-        msg.setContent(OutputStream.class, new CachedOutputStream());
+        AbstractConduit.prepareEnvelope(msg, binaryPayload);
     }
 
 }
@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.io.CachedOutputStream;
+import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
+import org.jivesoftware.smack.AbstractConnectionListener;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.util.StringUtils;
+import org.jivesoftware.smackx.bytestreams.BytestreamListener;
+import org.jivesoftware.smackx.bytestreams.BytestreamRequest;
+import org.jivesoftware.smackx.bytestreams.BytestreamSession;
+import org.jivesoftware.smackx.bytestreams.ibb.InBandBytestreamManager;
+
+/**
+ * Sends large SOAP envelopes through In-Band Bytestreams (XEP-0047) instead of a single IQ packet. Servers
+ * limit the size of a stanza and a large stanza holds up every other packet on the connection, the
+ * bytestream sends the envelope in small blocks that other packets are interleaved with.
+ * <p>
+ * The envelope is written to the bytestream straight from the cached output stream, then the IQ packet is
+ * sent with a payload that refers to the stream. The receiver caches the stream and hands the IQ packet to
+ * its listener once the whole envelope was received.
+ */
+public final class IQBytestreamTransfer {
+
+    /**
+     * Start of the session IDs of the bytestreams opened by the IQ transport, other bytestreams are left for
+     * other listeners.
+     */
+    public static final String SESSION_ID_PREFIX = "cxf-stream-";
+
+    private static final Logger LOGGER = LogUtils.getLogger(IQBytestreamTransfer.class);
+
+    private static final Map<XMPPConnection, IQBytestreamTransfer> INSTANCES =
+        Collections.synchronizedMap(new WeakHashMap<XMPPConnection, IQBytestreamTransfer>());
+
+    // Received streams are read by these threads, a stream only ends when the sender closes it.
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "xmpp-bytestream-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // Drops streams whose IQ packet never arrived.
+    private static final Timer CLEANUP_TIMER = new Timer("xmpp-bytestream-cleanup", true);
+
+    private static final int READ_TIMEOUT = 60000;
+
+    private final InBandBytestreamManager manager;
+    private final ConcurrentMap<String, ReceivedStream> streams = new ConcurrentHashMap<String, ReceivedStream>();
+
+    // Metrics
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+
+    /**
+     * A stream being received and the IQ packet waiting for it.
+     */
+    private static final class ReceivedStream {
+        private CachedOutputStream content;
+        private IOException error;
+        private boolean done;
+        private SoapPacket packet;
+        private PacketListener listener;
+    }
+
+    private IQBytestreamTransfer(final XMPPConnection connection) {
+        manager = InBandBytestreamManager.getByteStreamManager(connection);
+        manager.addIncomingBytestreamListener(new BytestreamListener() {
+            public void incomingBytestreamRequest(BytestreamRequest request) {
+                if (request.getSessionID() != null && request.getSessionID().startsWith(SESSION_ID_PREFIX)) {
+                    accept(request);
+                }
+            }
+        });
+
+        connection.addConnectionListener(new AbstractConnectionListener() {
+            @Override
+            public void connectionClosed() {
+                INSTANCES.remove(connection);
+            }
+        });
+    }
+
+    /**
+     * @param conn A logged in connection.
+     * @return The transfer of the connection, it accepts the bytestreams of the IQ transport from then on.
+     */
+    public static IQBytestreamTransfer getInstanceFor(XMPPConnection conn) {
+        synchronized (INSTANCES) {
+            IQBytestreamTransfer transfer = INSTANCES.get(conn);
+            if (transfer == null) {
+                transfer = new IQBytestreamTransfer(conn);
+                INSTANCES.put(conn, transfer);
+            }
+            return transfer;
+        }
+    }
+
+    /**
+     * @param jid The JID the envelope is sent to.
+     * @return True if the envelope can be sent through a bytestream, which needs the full JID of the receiver.
+     */
+    public static boolean canSend(String jid) {
+        return jid != null && StringUtils.parseResource(jid).length() > 0;
+    }
+
+    /**
+     * Writes the envelope to a new bytestream and closes it, the caller waits until the receiver acknowledged
+     * every block.
+     * 
+     * @param jid Full JID of the receiver.
+     * @param envelope The envelope written by the interceptors.
+     * @return The session ID of the bytestream, to send in the payload of the IQ packet.
+     * @throws IOException If the bytestream couldn't be opened or written.
+     */
+    public String send(String jid, CachedOutputStream envelope) throws IOException {
+        String sessionId = SESSION_ID_PREFIX + StringUtils.randomString(16);
+        BytestreamSession session;
+        try {
+            session = manager.establishSession(jid, sessionId);
+        } catch (XMPPException e) {
+            throw new IOException(e);
+        }
+        try {
+            OutputStream out = session.getOutputStream();
+            envelope.writeCacheTo(out);
+            out.flush();
+        } finally {
+            session.close();
+        }
+        sentCount.incrementAndGet();
+        return sessionId;
+    }
+
+    /**
+     * Hands the packet to the listener once the envelope it refers to was received. The listener is called
+     * right away if the stream already ended, otherwise by the thread that reads the stream.
+     */
+    public void deliver(SoapPacket packet, PacketListener listener) {
+        String sessionId = packet.getPayload().getStreamId();
+        ReceivedStream stream = getStream(sessionId);
+        synchronized (stream) {
+            if (!stream.done) {
+                stream.packet = packet;
+                stream.listener = listener;
+                return;
+            }
+        }
+        streams.remove(sessionId);
+        packet.getPayload().setStreamContent(stream.content, stream.error);
+        listener.processPacket(packet);
+    }
+
+    /**
+     * @param blockSize Bytes in a block of the bytestreams that are opened, at most 65535.
+     */
+    public void setBlockSize(int blockSize) {
+        manager.setDefaultBlockSize(blockSize);
+    }
+
+    /**
+     * @return Number of envelopes sent through bytestreams.
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return Number of envelopes received through bytestreams.
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    private ReceivedStream getStream(String sessionId) {
+        ReceivedStream stream = streams.get(sessionId);
+        if (stream == null) {
+            ReceivedStream newStream = new ReceivedStream();
+            stream = streams.putIfAbsent(sessionId, newStream);
+            if (stream == null) {
+                stream = newStream;
+            }
+        }
+        return stream;
+    }
+
+    private void accept(final BytestreamRequest request) {
+        final String sessionId = request.getSessionID();
+        getStream(sessionId);
+        READERS.execute(new Runnable() {
+            public void run() {
+                read(sessionId, request);
+            }
+        });
+    }
+
+    private void read(final String sessionId, BytestreamRequest request) {
+        CachedOutputStream content = null;
+        IOException error = null;
+        try {
+            final BytestreamSession session = request.accept();
+            // Smack only sees the close of the sender without a read timeout, a stream that stalls is
+            // closed by the timer instead.
+            final AtomicBoolean timedOut = new AtomicBoolean();
+            TimerTask timeout = new TimerTask() {
+                public void run() {
+                    timedOut.set(true);
+                    try {
+                        session.close();
+                    } catch (IOException e) {
+                        // the reader fails anyway
+                    }
+                }
+            };
+            CLEANUP_TIMER.schedule(timeout, READ_TIMEOUT);
+            content = new CachedOutputStream();
+            try {
+                IOUtils.copyAndCloseInput(session.getInputStream(), content);
+            } finally {
+                timeout.cancel();
+            }
+            if (timedOut.get()) {
+                content.close();
+                content = null;
+                throw new SocketTimeoutException("Bytestream not closed by the sender within " + READ_TIMEOUT
+                                                 + " ms");
+            }
+            content.lockOutputStream();
+            receivedCount.incrementAndGet();
+        } catch (IOException e) {
+            error = e;
+        } catch (XMPPException e) {
+            error = new IOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = new IOException(e);
+        }
+        if (error != null) {
+            LOGGER.log(Level.WARNING, "Failed to receive bytestream: " + sessionId, error);
+        }
+
+        ReceivedStream stream = getStream(sessionId);
+        SoapPacket packet;
+        PacketListener listener;
+        synchronized (stream) {
+            stream.content = content;
+            stream.error = error;
+            stream.done = true;
+            packet = stream.packet;
+            listener = stream.listener;
+        }
+        if (packet != null) {
+            streams.remove(sessionId);
+            packet.getPayload().setStreamContent(content, error);
+            listener.processPacket(packet);
+        } else {
+            CLEANUP_TIMER.schedule(new TimerTask() {
+                public void run() {
+                    streams.remove(sessionId);
+                }
+            }, READ_TIMEOUT);
+        }
+    }
+}
@@ -19,78 +19,294 @@
 
 package org.apache.cxf.transport.xmpp.iq;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.AbstractMap;
-import java.util.HashMap;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.interceptor.Fault;
 import org.apache.cxf.io.CachedOutputStream;
 import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.message.MessageImpl;
 import org.apache.cxf.transport.xmpp.common.AbstractConduit;
+import org.apache.cxf.transport.xmpp.common.RateLimiter;
+import org.apache.cxf.transport.xmpp.discovery.LoadBalancingStrategy;
+import org.apache.cxf.transport.xmpp.discovery.ServiceResolver;
+import org.apache.cxf.transport.xmpp.discovery.TargetSelector;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayload;
 import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
+import org.jivesoftware.smack.AbstractConnectionListener;
+import org.jivesoftware.smack.ConnectionListener;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.XMPPConnection;
-import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.XMPPError;
+import org.jivesoftware.smack.util.StringUtils;
 
-public class IQClientConduit extends AbstractConduit implements PacketListener {
+/**
+ * Sends requests as IQ packets and correlates the responses. When the instance a request was sent to goes
+ * offline, the request fails right away with a {@link ConnectException} that is set on the request message.
+ * The FailoverFeature of the clustering module then sends it to another instance, the
+ * {@link PresenceFailoverStrategy} picks an instance of the same service that is still available.
+ */
+public class IQClientConduit extends AbstractConduit implements PacketListener,
+    IQExchangeCorrelationTable.TimeoutListener, ServiceResolver.UnavailableListener {
+
+    /**
+     * Message or exchange property that overrides the request timeout, in milliseconds, of a single call.
+     */
+    public static final String REQUEST_TIMEOUT = "org.apache.cxf.transport.xmpp.iq.requestTimeout";
+
+    /**
+     * Start of the IDs of all packets sent by IQ conduits.
+     */
+    public static final String PACKET_ID_PREFIX = "cxf-";
+
+    /**
+     * Exchange property with the full JID the request was sent to.
+     */
+    public static final String TARGET_JID = "org.apache.cxf.transport.xmpp.iq.targetJid";
 
     private static final Logger LOGGER = LogUtils.getLogger(IQClientConduit.class);
 
     // Messages sent to the service are stored in this table based on
     // their PacketId so they can be retrieved when a response is received.
-    private AbstractMap<String, Exchange> exchangeCorrelationTable = new HashMap<String, Exchange>();
+    private IQExchangeCorrelationTable exchangeCorrelationTable = new IQExchangeCorrelationTable(this);
+
+    // Default is the same as the synchronous timeout of the client.
+    private long requestTimeout = 60000;
+
+    // Responses are routed to this conduit using the prefix of the packet ID.
+    private final String packetIDPrefix = PACKET_ID_PREFIX + StringUtils.randomString(6) + "-";
+    private final AtomicLong packetCount = new AtomicLong();
+
+    // Requests are balanced over all the connections given to the conduit.
+    private final List<XMPPConnection> connections = new CopyOnWriteArrayList<XMPPConnection>();
+    private final AtomicInteger nextConnection = new AtomicInteger();
+
+    // Resend the requests of a connection once it is reconnected, removed when the conduit is closed.
+    private final Map<XMPPConnection, ConnectionListener> reconnectListeners =
+        new ConcurrentHashMap<XMPPConnection, ConnectionListener>();
+
+    // Off by default, a service may process a request twice if only its response was lost.
+    private boolean resendOnReconnect;
+    private final AtomicLong resentCount = new AtomicLong();
+
+    // Requests failed because their target went offline.
+    private final AtomicLong unavailableCount = new AtomicLong();
+
+    // Null when the requests are sent to the address of the target without discovery.
+    private TargetSelector targetSelector;
+    private long discoveryCacheTimeout = 60000;
+
+    // Envelopes above this size are sent through a bytestream, 0 never does.
+    private long streamThreshold;
+
+    // Null when the requests are sent right away.
+    private RateLimiter rateLimiter;
 
     public IQClientConduit(EndpointReferenceType target) {
         super(target);
     }
 
+    /**
+     * @param timeout Milliseconds to wait for a response before the call fails.
+     */
+    public void setRequestTimeout(long timeout) {
+        requestTimeout = timeout;
+    }
+
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * @param resend True to send the requests still waiting for a response again once a lost connection is
+     *            reconnected. Only enable this when the services can safely receive a request twice.
+     */
+    public void setResendOnReconnect(boolean resend) {
+        resendOnReconnect = resend;
+    }
+
+    public boolean isResendOnReconnect() {
+        return resendOnReconnect;
+    }
+
+    /**
+     * Resolve the address of the target to the available instances of the service and spread the requests
+     * over them. The address is a bare JID that the instances log in with using different resources, or the
+     * address of a component that lists the instances.
+     * 
+     * @param strategy How an instance is picked for a request, null to send the requests to the address.
+     */
+    public void setLoadBalancing(LoadBalancingStrategy strategy) {
+        targetSelector = strategy == null ? null : new TargetSelector(strategy);
+    }
+
+    public LoadBalancingStrategy getLoadBalancing() {
+        return targetSelector == null ? null : targetSelector.getStrategy();
+    }
+
+    /**
+     * @param timeout Milliseconds the resolved instances are used before they are discovered again, changes
+     *            in presence are applied right away.
+     */
+    public void setDiscoveryCacheTimeout(long timeout) {
+        discoveryCacheTimeout = timeout;
+    }
+
+    /**
+     * @return Number of requests sent to the JID that are waiting for a response, only counted when load
+     *         balancing is used.
+     */
+    public int getOutstandingCount(String jid) {
+        return targetSelector == null ? 0 : targetSelector.getOutstanding(jid);
+    }
+
+    /**
+     * @param threshold Size in bytes above which an envelope is sent through an In-Band Bytestream instead of
+     *            the IQ packet, 0 to always send it in the packet. Only used when the target is a full JID.
+     */
+    public void setStreamThreshold(long threshold) {
+        streamThreshold = threshold;
+    }
+
+    public long getStreamThreshold() {
+        return streamThreshold;
+    }
+
+    /**
+     * @param limiter Limits the requests sent on every connection, requests over the limit wait until they
+     *            can be sent. Null to send them right away.
+     */
+    public void setRateLimiter(RateLimiter limiter) {
+        rateLimiter = limiter;
+    }
+
+    /**
+     * @return Number of requests sent again after a reconnect.
+     */
+    public long getResentCount() {
+        return resentCount.get();
+    }
+
+    /**
+     * @return Number of requests that failed because the instance they were sent to went offline.
+     */
+    public long getUnavailableCount() {
+        return unavailableCount.get();
+    }
+
+    /**
+     * @return Number of requests sent that are still waiting for a response.
+     */
+    public long getInFlightCount() {
+        return exchangeCorrelationTable.getInFlightCount();
+    }
+
+    /**
+     * @return Number of requests that received a response.
+     */
+    public long getCompletedCount() {
+        return exchangeCorrelationTable.getCompletedCount();
+    }
+
+    /**
+     * @return Number of requests that failed because no response was received in time.
+     */
+    public long getExpiredCount() {
+        return exchangeCorrelationTable.getExpiredCount();
+    }
+
     @Override
-    public void setXmppConnection(XMPPConnection newConnection) {
+    public void setXmppConnection(final XMPPConnection newConnection) {
         super.setXmppConnection(newConnection);
-        newConnection.addPacketListener(this, new PacketFilter() {
+        connections.add(newConnection);
+
+        // Only the responses to packets sent by this conduit are passed to it.
+        IQPacketDemultiplexer.getInstanceFor(newConnection).addResponseListener(packetIDPrefix, this);
+        ServiceResolver.getInstanceFor(newConnection).addUnavailableListener(this);
+
+        ConnectionListener listener = new AbstractConnectionListener() {
             @Override
-            public boolean accept(Packet anyPacket) {
-                return true;
+            public void reconnectionSuccessful() {
+                if (resendOnReconnect) {
+                    resendPending(newConnection);
+                }
             }
-        });
+        };
+        ConnectionListener previous = reconnectListeners.put(newConnection, listener);
+        if (previous != null) {
+            newConnection.removeConnectionListener(previous);
+        }
+        newConnection.addConnectionListener(listener);
     }
 
     @Override
     public void close(Message msg) throws IOException {
         // Take the contents of the cached buffer
         // and write them to the service using XMPP.
-        CachedOutputStream output = (CachedOutputStream)msg.getContent(OutputStream.class);
+        CachedOutputStream output = getEnvelope(msg);
 
         // Null indicates this message represents the reply from the service.
         // This means that the request was already sent to the service and a response was received.
         if (output != null) {
-            StringBuilder soapEnvelope = new StringBuilder();
-            output.writeCacheTo(soapEnvelope);
+            String fullJid = getTargetJid();
+            XMPPConnection conn = getSendConnection();
+            if (ServiceResolver.getInstanceFor(conn).isUnavailable(fullJid)) {
+                // Fails over right away instead of waiting on the request timeout.
+                throw new ConnectException("Service instance is offline: " + fullJid);
+            }
+            if (rateLimiter != null) {
+                // Waits before the request timeout starts.
+                rateLimiter.acquire(conn);
+            }
 
             SoapPacket soapOverXmpp = new SoapPacket();
-            soapOverXmpp.setEnvelope(soapEnvelope.toString());
-
-            // TODO Target JID will have to become dynamic.
-            // Pass "getTarget().getAddress().getValue()" to the
-            // discovery implementation class and have it return
-            // the dynamic endpoint address as a full JID.
-            String fullJid = getTarget().getAddress().getValue();
-            LOGGER.info("Sending message to JID: " + fullJid);
+            soapOverXmpp.setPacketID(packetIDPrefix + packetCount.incrementAndGet());
+            if (streamThreshold > 0 && output.size() > streamThreshold
+                && IQBytestreamTransfer.canSend(fullJid)) {
+                // The envelope goes first so the receiver has it when the packet arrives.
+                String streamId = IQBytestreamTransfer.getInstanceFor(conn).send(fullJid, output);
+                soapOverXmpp.setPayload(BinaryPayload.createStreamed(msg, streamId));
+                countSent(output.size(), output.size());
+            } else {
+                BinaryPayload payload = createPayload(msg, output);
+                if (payload != null) {
+                    soapOverXmpp.setPayload(payload);
+                } else {
+                    soapOverXmpp.setEnvelope(output);
+                }
+            }
+
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Sending message to JID: " + fullJid);
+            }
             soapOverXmpp.setTo(fullJid);
 
             // Save the message so it can be used when the response is received.
-            exchangeCorrelationTable.put(soapOverXmpp.getPacketID(), msg.getExchange());
+            msg.getExchange().put(TARGET_JID, fullJid);
+            msg.getExchange().put(XMPPConnection.class, conn);
+            if (targetSelector != null) {
+                targetSelector.sent(fullJid);
+            }
+            exchangeCorrelationTable.put(soapOverXmpp.getPacketID(), msg.getExchange(), soapOverXmpp, conn,
+                                         getTimeout(msg));
 
             // Send the message to the service.
-            getXmppConnection().sendPacket(soapOverXmpp);
+            conn.sendPacket(soapOverXmpp);
         }
     }
 
@@ -100,18 +316,179 @@ public class IQClientConduit extends AbstractConduit implements PacketListener {
      */
     @Override
     public void processPacket(Packet xmppResponse) {
-        Message responseMsg = new MessageImpl();
-        SoapPacket soapMsg = (SoapPacket)xmppResponse;
-        responseMsg.setContent(InputStream.class, new ByteArrayInputStream(soapMsg.getChildElementXML()
-            .getBytes()));
-
-        // TODO Fix this to handle error replies from XMPP server.
-        // TODO Fix this to handle exchanges that don't exist.
         Exchange msgExchange = exchangeCorrelationTable.remove(xmppResponse.getPacketID());
+        if (msgExchange == null) {
+            LOGGER.log(Level.WARNING, "Dropping response without a waiting request, packet ID: "
+                                      + xmppResponse.getPacketID());
+            return;
+        }
+        completed(msgExchange);
+
+        Message responseMsg = new MessageImpl();
+        if (xmppResponse instanceof SoapPacket) {
+            SoapPacket soapMsg = (SoapPacket)xmppResponse;
+            try {
+                responseMsg.setContent(InputStream.class, soapMsg.getEnvelopeInputStream());
+                countReceived(soapMsg.getEnvelopeLength(), soapMsg.getStanzaLength());
+            } catch (IOException e) {
+                responseMsg.setContent(Exception.class, new Fault(e));
+            }
+            responseMsg.put(Message.ENCODING, SoapPacket.ENCODING);
+            if (soapMsg.getPayload() != null) {
+                soapMsg.getPayload().copyHeadersTo(responseMsg);
+            }
+        } else {
+            // An error reply without a SOAP fault, for example the service is not available.
+            IQ errorReply = (IQ)xmppResponse;
+            if (isOffline(errorReply.getError())) {
+                failOver(msgExchange, new ConnectException("Service instance is offline: "
+                                                           + errorReply.getFrom()));
+                return;
+            }
+            String error = errorReply.getError() != null ? errorReply.getError().toString() : "unknown";
+            responseMsg.setContent(Exception.class,
+                                   new Fault(new IOException("XMPP error reply to packet "
+                                                             + xmppResponse.getPacketID() + ": " + error)));
+        }
         msgExchange.setInMessage(responseMsg);
 
-        // TODO Fix this so the response is processed by a different thread.
-        getMessageObserver().onMessage(responseMsg);
+        dispatch(responseMsg);
+    }
+
+    /**
+     * Triggered by the correlation table when a response did not arrive in time. The client is woken up with
+     * a fault instead of waiting on a response that will never arrive.
+     */
+    @Override
+    public void exchangeExpired(String packetId, Exchange exchange) {
+        LOGGER.log(Level.WARNING, "No response received for packet ID: " + packetId);
+        completed(exchange);
+
+        Message faultMsg = new MessageImpl();
+        faultMsg.setContent(Exception.class,
+                            new Fault(new SocketTimeoutException("No response for IQ packet: " + packetId)));
+        exchange.setInMessage(faultMsg);
+
+        dispatch(faultMsg);
+    }
+
+    /**
+     * Triggered by the presence of an instance going offline. The requests sent to it are failed over instead
+     * of waiting on responses that will never arrive.
+     */
+    @Override
+    public void instanceUnavailable(String jid) {
+        Map<String, Exchange> exchanges = exchangeCorrelationTable.removeSentTo(jid);
+        for (Map.Entry<String, Exchange> entry : exchanges.entrySet()) {
+            LOGGER.log(Level.WARNING, "Service instance " + jid + " went offline, failing packet ID: "
+                                      + entry.getKey());
+            unavailableCount.incrementAndGet();
+            completed(entry.getValue());
+            failOver(entry.getValue(), new ConnectException("Service instance went offline: " + jid));
+        }
     }
 
+    /**
+     * Fails every request that is still waiting on a response.
+     */
+    @Override
+    public void close() {
+        for (XMPPConnection conn : connections) {
+            IQPacketDemultiplexer.getInstanceFor(conn).removeResponseListener(packetIDPrefix, this);
+            ServiceResolver.getInstanceFor(conn).removeUnavailableListener(this);
+        }
+        for (Map.Entry<XMPPConnection, ConnectionListener> entry : reconnectListeners.entrySet()) {
+            entry.getKey().removeConnectionListener(entry.getValue());
+        }
+        reconnectListeners.clear();
+        exchangeCorrelationTable.shutdown();
+    }
+
+    /**
+     * Fails a request with a fault that is also set on the request message. The conduit selector only looks
+     * there, so the FailoverFeature can send the request again.
+     */
+    private void failOver(Exchange exchange, IOException cause) {
+        Fault fault = new Fault(cause);
+        if (exchange.getOutMessage() != null) {
+            exchange.getOutMessage().setContent(Exception.class, fault);
+        }
+
+        Message faultMsg = new MessageImpl();
+        faultMsg.setContent(Exception.class, fault);
+        exchange.setInMessage(faultMsg);
+
+        dispatch(faultMsg);
+    }
+
+    /**
+     * @return True if the error is the reply of the server to a packet sent to a resource that is offline.
+     */
+    private static boolean isOffline(XMPPError error) {
+        return error != null
+               && (XMPPError.Condition.service_unavailable.toString().equals(error.getCondition())
+                   || XMPPError.Condition.recipient_unavailable.toString().equals(error.getCondition()));
+    }
+
+    /**
+     * Sends the requests that were sent on a reconnected connection and have no response again, the requests
+     * sent on the other connections weren't lost. The packet IDs are unchanged so a late response to the
+     * first request and the response to the new one are correlated the same way, the second one is dropped.
+     */
+    private void resendPending(XMPPConnection conn) {
+        for (Packet request : exchangeCorrelationTable.getPendingRequests(conn)) {
+            LOGGER.info("Sending again after reconnect, packet ID: " + request.getPacketID());
+            conn.sendPacket(request);
+            resentCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The full JID of the instance that receives the request, or the address of the target when load
+     *         balancing isn't used.
+     */
+    private String getTargetJid() {
+        String address = getTarget().getAddress().getValue();
+        if (targetSelector == null) {
+            return address;
+        }
+        ServiceResolver resolver = ServiceResolver.getInstanceFor(getXmppConnection());
+        resolver.setCacheTimeout(discoveryCacheTimeout);
+        return targetSelector.select(resolver.resolve(address));
+    }
+
+    private void completed(Exchange exchange) {
+        Object jid = exchange.get(TARGET_JID);
+        if (targetSelector != null && jid != null) {
+            targetSelector.completed((String)jid);
+        }
+    }
+
+    /**
+     * Picks the next connection that is still connected, round robin.
+     */
+    private XMPPConnection getSendConnection() {
+        int size = connections.size();
+        if (size <= 1) {
+            return getXmppConnection();
+        }
+        int start = nextConnection.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            XMPPConnection conn = connections.get((start + i) % size);
+            if (conn.isConnected()) {
+                return conn;
+            }
+        }
+        return getXmppConnection();
+    }
+
+    private long getTimeout(Message msg) {
+        Object timeout = msg.getContextualProperty(REQUEST_TIMEOUT);
+        if (timeout instanceof Number) {
+            return ((Number)timeout).longValue();
+        } else if (timeout instanceof String) {
+            return Long.parseLong((String)timeout);
+        }
+        return requestTimeout;
+    }
 }
@@ -19,8 +19,14 @@
 
 package org.apache.cxf.transport.xmpp.iq;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
 
 import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.ExchangeImpl;
@@ -28,11 +34,13 @@ import org.apache.cxf.message.Message;
 import org.apache.cxf.message.MessageImpl;
 import org.apache.cxf.service.model.EndpointInfo;
 import org.apache.cxf.transport.xmpp.common.AbstractDestination;
+import org.apache.cxf.transport.xmpp.common.RateLimiter;
 import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.XMPPConnection;
-import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.XMPPError;
 
 /**
  * Listens for XMPP IQ packets targeted for this service. Any IQ packets received are used to create CXF
@@ -42,36 +50,144 @@ import org.jivesoftware.smack.packet.Packet;
  */
 public class IQDestination extends AbstractDestination implements PacketListener {
 
+    private static final Logger LOGGER = LogUtils.getLogger(IQDestination.class);
+
+    // The destination can listen on several connections, replies are sent
+    // using the connection of the JID the request was sent to.
+    private ConcurrentMap<String, XMPPConnection> connectionsKeyByJid =
+        new ConcurrentHashMap<String, XMPPConnection>();
+
+    // Replies above this size are sent through a bytestream, 0 never does.
+    private long streamThreshold;
+
+    // Back channels keyed by the JID of their connection, the request is put on the exchange.
+    private ConcurrentMap<String, IQBackChannelConduit> backChannelsKeyByJid =
+        new ConcurrentHashMap<String, IQBackChannelConduit>();
+
+    // Null when the requests of the senders aren't limited.
+    private RateLimiter inboundLimiter;
+    private RateLimiter outboundLimiter;
+
     public IQDestination(EndpointInfo epInfo) {
         super(epInfo);
     }
 
+    /**
+     * @param threshold Size in bytes above which a reply is sent through an In-Band Bytestream instead of the
+     *            IQ packet, 0 to always send it in the packet.
+     */
+    public void setStreamThreshold(long threshold) {
+        streamThreshold = threshold;
+    }
+
+    /**
+     * @param limiter Limits the requests of every sender JID, a request over the limit gets a
+     *            resource-constraint error reply. Null to accept every request.
+     */
+    public void setInboundRateLimiter(RateLimiter limiter) {
+        inboundLimiter = limiter;
+    }
+
+    /**
+     * @param limiter Limits the replies sent on every connection, replies over the limit wait. Null to send
+     *            them right away.
+     */
+    public void setOutboundRateLimiter(RateLimiter limiter) {
+        outboundLimiter = limiter;
+    }
+
     @Override
     public void setXmppConnection(XMPPConnection newConnection) {
         super.setXmppConnection(newConnection);
+        connectionsKeyByJid.put(newConnection.getUser(), newConnection);
 
-        newConnection.addPacketListener(this, new PacketFilter() {
-            @Override
-            public boolean accept(Packet anyPacket) {
-                return true;
-            }
-        });
+        // Only the requests sent to this connection's JID are passed to the destination.
+        IQPacketDemultiplexer.getInstanceFor(newConnection).addRequestListener(newConnection.getUser(), this);
+    }
+
+    @Override
+    public void shutdown() {
+        for (XMPPConnection conn : connectionsKeyByJid.values()) {
+            IQPacketDemultiplexer.getInstanceFor(conn).removeRequestListener(conn.getUser(), this);
+        }
+        connectionsKeyByJid.clear();
+        backChannelsKeyByJid.clear();
     }
 
     @Override
     public void processPacket(Packet msg) {
         SoapPacket soapMsg = (SoapPacket)msg;
+        XMPPConnection replyConnection = connectionsKeyByJid.get(soapMsg.getTo());
+        if (replyConnection == null) {
+            replyConnection = getXmppConnection();
+        }
+        if (inboundLimiter != null && !inboundLimiter.tryAcquire(soapMsg.getFrom())) {
+            LOGGER.warning("Rejecting request over the rate limit from: " + soapMsg.getFrom());
+            replyConnection.sendPacket(createThrottledReply(soapMsg));
+            return;
+        }
 
         Message cxfMsg = new MessageImpl();
-        cxfMsg.setContent(InputStream.class,
-                          new ByteArrayInputStream(soapMsg.getChildElementXML().getBytes()));
+        try {
+            cxfMsg.setContent(InputStream.class, soapMsg.getEnvelopeInputStream());
+            countReceived(soapMsg.getEnvelopeLength(), soapMsg.getStanzaLength());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read SOAP envelope of packet: " + soapMsg.getPacketID(), e);
+            return;
+        }
+        cxfMsg.put(Message.ENCODING, SoapPacket.ENCODING);
+        if (soapMsg.getPayload() != null) {
+            soapMsg.getPayload().copyHeadersTo(cxfMsg);
+        }
 
         Exchange msgExchange = new ExchangeImpl();
-        msgExchange.setConduit(new IQBackChannelConduit(soapMsg, getXmppConnection()));
+        msgExchange.put(SoapPacket.class, soapMsg);
+        msgExchange.setConduit(getBackChannel(replyConnection));
         cxfMsg.setExchange(msgExchange);
 
-        // TODO Fix this so a different thread is used.
-        getMessageObserver().onMessage(cxfMsg);
+        if (!tryDispatch(cxfMsg)) {
+            // Tells the sender to wait instead of processing the request on the XMPP reader thread.
+            LOGGER.warning("Rejecting request, the work queue is full, from: " + soapMsg.getFrom());
+            replyConnection.sendPacket(createThrottledReply(soapMsg));
+        }
+    }
+
+    /**
+     * @return The back channel of the connection, it is created the first time it is needed.
+     */
+    private IQBackChannelConduit getBackChannel(XMPPConnection conn) {
+        IQBackChannelConduit backChannel = backChannelsKeyByJid.get(conn.getUser());
+        if (backChannel == null) {
+            backChannel = new IQBackChannelConduit(conn);
+            backChannel.setBinaryPayload(isBinaryPayload());
+            backChannel.setPayloadCounter(getPayloadCounter());
+            backChannel.setStreamThreshold(streamThreshold);
+            backChannel.setRateLimiter(outboundLimiter);
+            IQBackChannelConduit existing = backChannelsKeyByJid.putIfAbsent(conn.getUser(), backChannel);
+            if (existing != null) {
+                backChannel = existing;
+            }
+        }
+        return backChannel;
+    }
+
+    /**
+     * @return An error reply that tells the sender to wait before it sends again. The request isn't copied
+     *         into the reply.
+     */
+    private static IQ createThrottledReply(SoapPacket request) {
+        IQ reply = new IQ() {
+            @Override
+            public String getChildElementXML() {
+                return null;
+            }
+        };
+        reply.setType(IQ.Type.ERROR);
+        reply.setPacketID(request.getPacketID());
+        reply.setFrom(request.getTo());
+        reply.setTo(request.getFrom());
+        reply.setError(new XMPPError(XMPPError.Condition.resource_constraint));
+        return reply;
     }
 
 }
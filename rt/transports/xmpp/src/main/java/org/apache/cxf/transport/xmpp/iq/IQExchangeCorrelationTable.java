@@ -0,0 +1,306 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.message.Exchange;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.packet.Packet;
+
+/**
+ * Correlates IQ requests with their responses using the packet ID. Entries are kept in a concurrent map so
+ * the caller threads and the Smack listener thread never block each other. Every entry has a deadline that
+ * is tracked by a hashed timer wheel, entries that are not answered in time are handed to the
+ * {@link TimeoutListener}. The wheel only references the table weakly, so the wheel of a table that is
+ * no longer used stops turning even if {@link #shutdown()} is never called.
+ */
+public class IQExchangeCorrelationTable {
+
+    private static final Logger LOGGER = LogUtils.getLogger(IQExchangeCorrelationTable.class);
+
+    // One daemon thread drives the timer wheels of all the tables.
+    private static final ScheduledExecutorService WHEEL_TIMER =
+        new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "xmpp-iq-timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private static final long DEFAULT_TICK_MILLIS = 100;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final ConcurrentMap<String, PendingExchange> pending =
+        new ConcurrentHashMap<String, PendingExchange>();
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    // The timer wheel, each bucket holds the exchanges that expire during a tick.
+    private final List<Queue<PendingExchange>> buckets;
+    private final long tickMillis;
+    private final AtomicLong currentTick = new AtomicLong();
+    private final Future<?> tickTask;
+
+    private final TimeoutListener timeoutListener;
+
+    /**
+     * Notified when an exchange did not receive a response before its deadline.
+     */
+    public interface TimeoutListener {
+
+        /**
+         * @param packetId The ID of the IQ packet that was sent.
+         * @param exchange The exchange that will not receive a response.
+         */
+        void exchangeExpired(String packetId, Exchange exchange);
+    }
+
+    public IQExchangeCorrelationTable(TimeoutListener listener) {
+        this(listener, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public IQExchangeCorrelationTable(TimeoutListener listener, long tick, int wheelSize) {
+        timeoutListener = listener;
+        tickMillis = tick;
+        buckets = new ArrayList<Queue<PendingExchange>>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ConcurrentLinkedQueue<PendingExchange>());
+        }
+
+        Tick turn = new Tick(this);
+        tickTask = WHEEL_TIMER.scheduleAtFixedRate(turn, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        turn.task = tickTask;
+    }
+
+    /**
+     * Store an exchange until its response arrives or its deadline passes.
+     *
+     * @param packetId The ID of the IQ packet being sent.
+     * @param exchange The exchange waiting on the response.
+     * @param timeout Milliseconds to wait for the response.
+     */
+    public void put(String packetId, Exchange exchange, long timeout) {
+        put(packetId, exchange, null, null, timeout);
+    }
+
+    /**
+     * Store an exchange and the request that was sent for it, so the request can be sent again.
+     *
+     * @param packetId The ID of the IQ packet being sent.
+     * @param exchange The exchange waiting on the response.
+     * @param request The packet sent, may be null.
+     * @param connection The connection the packet was sent on, may be null.
+     * @param timeout Milliseconds to wait for the response.
+     */
+    public void put(String packetId, Exchange exchange, Packet request, XMPPConnection connection,
+                    long timeout) {
+        PendingExchange entry = new PendingExchange(packetId, exchange, request, connection,
+                                                    System.currentTimeMillis() + timeout);
+        pending.put(packetId, entry);
+        schedule(entry, timeout);
+    }
+
+    /**
+     * Removes the exchange for a response.
+     *
+     * @param packetId The ID of the IQ response.
+     * @return The waiting exchange or null if it already expired or was never sent.
+     */
+    public Exchange remove(String packetId) {
+        PendingExchange entry = pending.remove(packetId);
+        if (entry == null) {
+            return null;
+        }
+        completedCount.incrementAndGet();
+        return entry.exchange;
+    }
+
+    /**
+     * Removes the exchanges of the requests that were sent to a JID, they will not receive a response.
+     *
+     * @param jid The address the requests were sent to.
+     * @return The waiting exchanges by the ID of their packet, only the ones stored with their request.
+     */
+    public Map<String, Exchange> removeSentTo(String jid) {
+        Map<String, Exchange> removed = new HashMap<String, Exchange>();
+        for (PendingExchange entry : pending.values()) {
+            if (entry.request != null && jid.equals(entry.request.getTo())
+                && pending.remove(entry.packetId, entry)) {
+                removed.put(entry.packetId, entry.exchange);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Stops the timer and fails every exchange still waiting on a response.
+     */
+    public void shutdown() {
+        tickTask.cancel(false);
+        for (PendingExchange entry : pending.values()) {
+            expire(entry);
+        }
+    }
+
+    /**
+     * @param connection The connection the requests were sent on.
+     * @return The requests that were stored with their exchange and are still waiting for a response.
+     */
+    public List<Packet> getPendingRequests(XMPPConnection connection) {
+        List<Packet> requests = new ArrayList<Packet>();
+        for (PendingExchange entry : pending.values()) {
+            if (entry.request != null && entry.connection == connection) {
+                requests.add(entry.request);
+            }
+        }
+        return requests;
+    }
+
+    public long getInFlightCount() {
+        return pending.size();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    private void schedule(PendingExchange entry, long delay) {
+        // At least one tick past the current one, its bucket may be expiring right now.
+        long ticks = Math.max(1, (delay + tickMillis - 1) / tickMillis);
+        long target = currentTick.get() + ticks;
+        Queue<PendingExchange> bucket = buckets.get((int)(target % buckets.size()));
+        bucket.add(entry);
+
+        // The timer reached the target tick while the entry was added. If it
+        // didn't take the entry, the entry would wait for the next turn of the wheel.
+        if (currentTick.get() >= target && bucket.remove(entry)) {
+            long left = entry.deadline - System.currentTimeMillis();
+            if (left > 0) {
+                schedule(entry, left);
+            } else {
+                expire(entry);
+            }
+        }
+    }
+
+    private void expireBucket() {
+        long tick = currentTick.incrementAndGet();
+        Queue<PendingExchange> bucket = buckets.get((int)(tick % buckets.size()));
+        long now = System.currentTimeMillis();
+
+        // Drain the bucket, including entries added while it expires. The ones
+        // that belong to a later turn of the wheel are put back afterwards.
+        List<PendingExchange> later = new ArrayList<PendingExchange>();
+        PendingExchange entry;
+        while ((entry = bucket.poll()) != null) {
+            if (pending.get(entry.packetId) != entry) {
+                // Already answered.
+                continue;
+            }
+            if (entry.deadline > now) {
+                later.add(entry);
+            } else {
+                expire(entry);
+            }
+        }
+        for (PendingExchange e : later) {
+            schedule(e, e.deadline - now);
+        }
+    }
+
+    private void expire(PendingExchange entry) {
+        if (pending.remove(entry.packetId, entry)) {
+            expiredCount.incrementAndGet();
+            try {
+                timeoutListener.exchangeExpired(entry.packetId, entry.exchange);
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Failed to expire the exchange of packet: " + entry.packetId, ex);
+            }
+        }
+    }
+
+    /**
+     * Turns the wheel of a table until the table is shut down or garbage collected.
+     */
+    private static class Tick implements Runnable {
+        private final WeakReference<IQExchangeCorrelationTable> table;
+        private volatile Future<?> task;
+
+        Tick(IQExchangeCorrelationTable t) {
+            table = new WeakReference<IQExchangeCorrelationTable>(t);
+        }
+
+        public void run() {
+            IQExchangeCorrelationTable t = table.get();
+            if (t == null) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+                return;
+            }
+            try {
+                t.expireBucket();
+            } catch (RuntimeException ex) {
+                // an exception would stop the task from running again
+                LOGGER.log(Level.WARNING, "Failed to expire exchanges", ex);
+            }
+        }
+    }
+
+    private static class PendingExchange {
+        private final String packetId;
+        private final Exchange exchange;
+        private final Packet request;
+        private final XMPPConnection connection;
+        private final long deadline;
+
+        PendingExchange(String id, Exchange ex, Packet req, XMPPConnection conn, long expires) {
+            packetId = id;
+            exchange = ex;
+            request = req;
+            connection = conn;
+            deadline = expires;
+        }
+    }
+}
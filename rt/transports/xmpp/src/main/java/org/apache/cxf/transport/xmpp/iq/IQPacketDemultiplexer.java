@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.transport.xmpp.common.PacketIDPrefixFilter;
+import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
+import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacketFilter;
+import org.jivesoftware.smack.AbstractConnectionListener;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.filter.AndFilter;
+import org.jivesoftware.smack.filter.IQTypeFilter;
+import org.jivesoftware.smack.filter.OrFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+
+/**
+ * Single packet listener per XMPP connection that routes SOAP packets to the IQ destinations and conduits
+ * sharing the connection. Requests are routed by the JID they were sent to and responses by the packet ID
+ * prefix of the conduit that sent the request. Every other stanza is rejected by the filter, so presence,
+ * roster and pubsub traffic never reaches the IQ transport. A packet whose envelope is sent through a
+ * bytestream is passed on once the {@link IQBytestreamTransfer} received the envelope.
+ */
+public final class IQPacketDemultiplexer implements PacketListener {
+
+    private static final Logger LOGGER = LogUtils.getLogger(IQPacketDemultiplexer.class);
+
+    private static final Map<XMPPConnection, IQPacketDemultiplexer> INSTANCES =
+        new WeakHashMap<XMPPConnection, IQPacketDemultiplexer>();
+
+    // Destinations keyed by the full JID their requests are sent to.
+    private final ConcurrentMap<String, PacketListener> requestListeners =
+        new ConcurrentHashMap<String, PacketListener>();
+
+    // Conduits keyed by the prefix of the packet IDs they send.
+    private final ConcurrentMap<String, PacketListener> responseListeners =
+        new ConcurrentHashMap<String, PacketListener>();
+
+    // Receives the envelopes sent through bytestreams.
+    private final IQBytestreamTransfer bytestreamTransfer;
+
+    private IQPacketDemultiplexer(XMPPConnection connection) {
+        bytestreamTransfer = IQBytestreamTransfer.getInstanceFor(connection);
+    }
+
+    /**
+     * Provides the demultiplexer of a connection, it is created the first time it is needed.
+     * 
+     * @param connection The XMPP connection.
+     * @return The demultiplexer listening to the connection.
+     */
+    public static IQPacketDemultiplexer getInstanceFor(final XMPPConnection connection) {
+        synchronized (INSTANCES) {
+            IQPacketDemultiplexer demux = INSTANCES.get(connection);
+            if (demux == null) {
+                final IQPacketDemultiplexer listener = new IQPacketDemultiplexer(connection);
+                demux = listener;
+                connection.addPacketListener(listener, new OrFilter(
+                    new SoapPacketFilter(null, IQ.Type.GET, IQ.Type.SET, IQ.Type.RESULT, IQ.Type.ERROR),
+                    new AndFilter(new IQTypeFilter(IQ.Type.ERROR),
+                                  new PacketIDPrefixFilter(IQClientConduit.PACKET_ID_PREFIX))));
+                connection.addConnectionListener(new AbstractConnectionListener() {
+                    @Override
+                    public void connectionClosed() {
+                        synchronized (INSTANCES) {
+                            if (INSTANCES.get(connection) == listener) {
+                                INSTANCES.remove(connection);
+                            }
+                        }
+                        connection.removePacketListener(listener);
+                        connection.removeConnectionListener(this);
+                    }
+                });
+                INSTANCES.put(connection, demux);
+            }
+            return demux;
+        }
+    }
+
+    /**
+     * @param jid Full JID that requests for the listener are sent to.
+     * @param listener Listener for the requests.
+     */
+    public void addRequestListener(String jid, PacketListener listener) {
+        PacketListener previous = requestListeners.put(jid, listener);
+        if (previous != null && previous != listener) {
+            LOGGER.log(Level.WARNING, "Replaced the destination for requests sent to: " + jid);
+        }
+    }
+
+    public void removeRequestListener(String jid, PacketListener listener) {
+        requestListeners.remove(jid, listener);
+    }
+
+    /**
+     * @param packetIDPrefix Prefix of the IDs of the packets sent by the listener.
+     * @param listener Listener for the responses.
+     */
+    public void addResponseListener(String packetIDPrefix, PacketListener listener) {
+        responseListeners.put(packetIDPrefix, listener);
+    }
+
+    public void removeResponseListener(String packetIDPrefix, PacketListener listener) {
+        responseListeners.remove(packetIDPrefix, listener);
+    }
+
+    @Override
+    public void processPacket(Packet packet) {
+        IQ iq = (IQ)packet;
+        PacketListener listener = null;
+        if (iq.getType() == IQ.Type.GET || iq.getType() == IQ.Type.SET) {
+            if (packet.getTo() != null) {
+                listener = requestListeners.get(packet.getTo());
+            }
+        } else if (packet.getPacketID() != null) {
+            String packetID = packet.getPacketID();
+            listener = responseListeners.get(packetID.substring(0, packetID.lastIndexOf('-') + 1));
+        }
+
+        if (listener != null && isStreamed(packet)) {
+            bytestreamTransfer.deliver((SoapPacket)packet, listener);
+        } else if (listener != null) {
+            listener.processPacket(packet);
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("No listener for packet: " + packet.getPacketID());
+        }
+    }
+
+    private static boolean isStreamed(Packet packet) {
+        return packet instanceof SoapPacket && ((SoapPacket)packet).getPayload() != null
+               && ((SoapPacket)packet).getPayload().getStreamId() != null;
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.cxf.transport.xmpp.iq;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.annotation.Resource;
@@ -32,10 +33,19 @@ import org.apache.cxf.transport.Conduit;
 import org.apache.cxf.transport.ConduitInitiator;
 import org.apache.cxf.transport.Destination;
 import org.apache.cxf.transport.DestinationFactory;
+import org.apache.cxf.transport.xmpp.common.PayloadCounter;
+import org.apache.cxf.transport.xmpp.common.RateLimiter;
+import org.apache.cxf.transport.xmpp.common.WorkQueueDispatcher;
+import org.apache.cxf.transport.xmpp.connection.MultiplexedConnectionFactory;
 import org.apache.cxf.transport.xmpp.connection.XMPPConnectionFactory;
 import org.apache.cxf.transport.xmpp.connection.XMPPTransportFactory;
+import org.apache.cxf.transport.xmpp.discovery.LoadBalancingStrategy;
+import org.apache.cxf.transport.xmpp.discovery.ServiceResolver;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayload;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayloadProvider;
 import org.apache.cxf.transport.xmpp.smackx.soap.SoapProvider;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
+import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.provider.ProviderManager;
 
@@ -56,6 +66,32 @@ public class IQTransportFactory extends AbstractTransportFactory implements Dest
     private XMPPConnectionFactory destinationConnectionFactory;
     private XMPPConnectionFactory conduitConnectionFactory;
 
+    // Received messages are processed by a work queue instead of the XMPP reader thread.
+    private boolean useWorkQueue = true;
+    private String workQueueName = WorkQueueDispatcher.DEFAULT_WORK_QUEUE_NAME;
+    private long workQueueTimeout = 1000;
+    private WorkQueueDispatcher dispatcher;
+
+    // Envelopes encoded by interceptors, like Fast Infoset or gzip, are sent as binary payloads.
+    private boolean binaryPayload;
+    private PayloadCounter payloadCounter = new PayloadCounter();
+
+    // Requests are sent to the address of the target unless a strategy is set.
+    private LoadBalancingStrategy loadBalancing;
+    private long discoveryCacheTimeout = 60000;
+
+    // Large envelopes are sent through In-Band Bytestreams when a threshold is set.
+    private long streamThreshold;
+    private int streamBlockSize = 4096;
+
+    // The stanza rates aren't limited unless a rate is set.
+    private double inboundRate;
+    private int inboundBurst = 10;
+    private double outboundRate;
+    private int outboundBurst = 10;
+    private volatile RateLimiter inboundLimiter;
+    private volatile RateLimiter outboundLimiter;
+
     public IQTransportFactory() throws XMPPException {
         super();
         setTransportIds(DEFAULT_NAMESPACES);
@@ -66,6 +102,8 @@ public class IQTransportFactory extends AbstractTransportFactory implements Dest
                                                     xmppSoapFeature);
         ProviderManager.getInstance().addIQProvider("Envelope", "http://schemas.xmlsoap.org/soap/envelope/",
                                                     xmppSoapFeature);
+        ProviderManager.getInstance().addIQProvider(BinaryPayload.ELEMENT_NAME, BinaryPayload.NAMESPACE,
+                                                    new BinaryPayloadProvider());
     }
 
     /**
@@ -81,9 +119,19 @@ public class IQTransportFactory extends AbstractTransportFactory implements Dest
      */
     public Destination getDestination(EndpointInfo endpointInfo) throws IOException {
         IQDestination dest = new IQDestination(endpointInfo);
+        dest.setDispatcher(getDispatcher());
+        dest.setBinaryPayload(binaryPayload);
+        dest.setPayloadCounter(payloadCounter);
+        dest.setStreamThreshold(streamThreshold);
+        dest.setInboundRateLimiter(getInboundLimiter());
+        dest.setOutboundRateLimiter(getOutboundLimiter());
 
         try {
-            dest.setXmppConnection(destinationConnectionFactory.login(endpointInfo));
+            for (XMPPConnection conn : login(destinationConnectionFactory, endpointInfo)) {
+                dest.setXmppConnection(conn);
+                ServiceResolver.advertise(conn);
+                IQBytestreamTransfer.getInstanceFor(conn).setBlockSize(streamBlockSize);
+            }
         } catch (XMPPException e) {
             throw new IOException(e);
         }
@@ -108,9 +156,19 @@ public class IQTransportFactory extends AbstractTransportFactory implements Dest
     public Conduit getConduit(EndpointInfo endpointInfo, EndpointReferenceType endpointType)
         throws IOException {
         IQClientConduit conduit = new IQClientConduit(endpointType);
+        conduit.setDispatcher(getDispatcher());
+        conduit.setBinaryPayload(binaryPayload);
+        conduit.setPayloadCounter(payloadCounter);
+        conduit.setLoadBalancing(loadBalancing);
+        conduit.setDiscoveryCacheTimeout(discoveryCacheTimeout);
+        conduit.setStreamThreshold(streamThreshold);
+        conduit.setRateLimiter(getOutboundLimiter());
 
         try {
-            conduit.setXmppConnection(conduitConnectionFactory.login(endpointInfo));
+            for (XMPPConnection conn : login(conduitConnectionFactory, endpointInfo)) {
+                conduit.setXmppConnection(conn);
+                IQBytestreamTransfer.getInstanceFor(conn).setBlockSize(streamBlockSize);
+            }
         } catch (XMPPException e) {
             throw new IOException(e);
         }
@@ -118,6 +176,18 @@ public class IQTransportFactory extends AbstractTransportFactory implements Dest
         return conduit;
     }
 
+    /**
+     * A factory with several connections for the endpoint provides all of them, so the traffic can be spread
+     * over them.
+     */
+    private static List<XMPPConnection> login(XMPPConnectionFactory factory, EndpointInfo endpointInfo)
+        throws XMPPException {
+        if (factory instanceof MultiplexedConnectionFactory) {
+            return ((MultiplexedConnectionFactory)factory).loginAll(endpointInfo);
+        }
+        return Collections.singletonList(factory.login(endpointInfo));
+    }
+
     @Override
     public void setDestinationConnectionFactory(XMPPConnectionFactory factory) {
         destinationConnectionFactory = factory;
@@ -127,4 +197,183 @@ public class IQTransportFactory extends AbstractTransportFactory implements Dest
     public void setConduitConnectionFactory(XMPPConnectionFactory factory) {
         conduitConnectionFactory = factory;
     }
+
+    /**
+     * Process received messages on the XMPP reader thread instead of a work queue.
+     * 
+     * @param enable False to process messages on the XMPP reader thread.
+     */
+    public void setUseWorkQueue(boolean enable) {
+        useWorkQueue = enable;
+    }
+
+    /**
+     * Optional configuration for the name of the work queue. If the bus has no work queue with this name the
+     * default work queue is used.
+     * 
+     * @param name Name of the work queue.
+     */
+    public void setWorkQueueName(String name) {
+        workQueueName = name;
+    }
+
+    /**
+     * Optional configuration for how long the XMPP reader thread waits when the work queue is full.
+     * 
+     * @param timeout Milliseconds to wait before the message is rejected or handed to an overflow thread.
+     */
+    public void setWorkQueueTimeout(long timeout) {
+        workQueueTimeout = timeout;
+    }
+
+    /**
+     * Optional configuration to send envelopes that were encoded by interceptors as base64 binary payloads,
+     * the default is false. Add the FastInfosetFeature or GZIPFeature to the endpoints to encode the
+     * envelopes, the headers they use to negotiate the encoding are sent with the payload. All the endpoints
+     * that receive the messages must use a version of the transport that supports binary payloads.
+     * 
+     * @param enable True to send encoded envelopes as binary payloads.
+     */
+    public void setBinaryPayload(boolean enable) {
+        binaryPayload = enable;
+    }
+
+    /**
+     * @return Byte counts of the envelopes sent and received by the conduits and destinations of this
+     *         factory.
+     */
+    public PayloadCounter getPayloadCounter() {
+        return payloadCounter;
+    }
+
+    /**
+     * Optional configuration to spread the requests of the clients over the available instances of their
+     * services. The address of a service is resolved to the full JIDs of its instances using presence and
+     * service discovery, the instances advertise the SOAP feature. The default is null, which sends the
+     * requests to the address of the service.
+     * 
+     * @param strategy ROUND_ROBIN or LEAST_OUTSTANDING.
+     */
+    public void setLoadBalancing(LoadBalancingStrategy strategy) {
+        loadBalancing = strategy;
+    }
+
+    /**
+     * Optional configuration for how long the instances of a service are used before they are discovered
+     * again, the default is 60000. Instances that go offline are removed right away.
+     * 
+     * @param timeout Milliseconds before the instances are discovered again.
+     */
+    public void setDiscoveryCacheTimeout(long timeout) {
+        discoveryCacheTimeout = timeout;
+    }
+
+    /**
+     * Optional configuration to send large envelopes through In-Band Bytestreams (XEP-0047). The envelope is
+     * sent in blocks, so it isn't limited by the maximum stanza size of the server and the other packets on
+     * the connection aren't held up. Only requests to a full JID are streamed, the replies always go to one.
+     * The default is 0, which sends every envelope in its IQ packet. All the endpoints that receive the
+     * messages must use a version of the transport that supports bytestreams.
+     * 
+     * @param threshold Size in bytes above which an envelope is streamed.
+     */
+    public void setStreamThreshold(long threshold) {
+        streamThreshold = threshold;
+    }
+
+    /**
+     * Optional configuration for the size of the blocks of the bytestreams, the default is 4096.
+     * 
+     * @param blockSize Bytes in a block, at most 65535.
+     */
+    public void setStreamBlockSize(int blockSize) {
+        streamBlockSize = blockSize;
+    }
+
+    /**
+     * Optional configuration to limit the rate of the requests every sender JID can send to the services.
+     * A request over the limit isn't processed, the sender gets a resource-constraint error reply that
+     * tells it to wait. The default is 0, which accepts every request.
+     * 
+     * @param rate Requests per second from a sender JID.
+     */
+    public void setInboundRateLimit(double rate) {
+        inboundRate = rate;
+    }
+
+    /**
+     * Optional configuration for the number of requests a sender JID can send at once after a quiet period,
+     * the default is 10.
+     * 
+     * @param burst Requests above the rate that are accepted.
+     */
+    public void setInboundBurst(int burst) {
+        inboundBurst = burst;
+    }
+
+    /**
+     * Optional configuration to limit the rate of the stanzas sent on every connection, so the XMPP server
+     * doesn't throttle or disconnect the connection. Requests and replies over the limit are queued until
+     * they can be sent, none are dropped. The default is 0, which sends them right away.
+     * 
+     * @param rate Stanzas per second on a connection.
+     */
+    public void setOutboundRateLimit(double rate) {
+        outboundRate = rate;
+    }
+
+    /**
+     * Optional configuration for the number of stanzas a connection can send at once after a quiet period,
+     * the default is 10.
+     * 
+     * @param burst Stanzas above the rate that are sent right away.
+     */
+    public void setOutboundBurst(int burst) {
+        outboundBurst = burst;
+    }
+
+    /**
+     * @return Number of requests that were rejected because their sender was over the inbound rate limit.
+     */
+    public long getInboundThrottledCount() {
+        RateLimiter limiter = inboundLimiter;
+        return limiter == null ? 0 : limiter.getThrottledCount();
+    }
+
+    /**
+     * @return Number of stanzas that waited because their connection was over the outbound rate limit.
+     */
+    public long getOutboundThrottledCount() {
+        RateLimiter limiter = outboundLimiter;
+        return limiter == null ? 0 : limiter.getThrottledCount();
+    }
+
+    /**
+     * @return Total milliseconds that stanzas waited because of the outbound rate limit.
+     */
+    public long getOutboundDelayMillis() {
+        RateLimiter limiter = outboundLimiter;
+        return limiter == null ? 0 : limiter.getDelayMillis();
+    }
+
+    private synchronized RateLimiter getInboundLimiter() {
+        if (inboundRate > 0 && inboundLimiter == null) {
+            inboundLimiter = new RateLimiter(inboundRate, inboundBurst);
+        }
+        return inboundRate > 0 ? inboundLimiter : null;
+    }
+
+    private synchronized RateLimiter getOutboundLimiter() {
+        if (outboundRate > 0 && outboundLimiter == null) {
+            outboundLimiter = new RateLimiter(outboundRate, outboundBurst);
+        }
+        return outboundRate > 0 ? outboundLimiter : null;
+    }
+
+    private synchronized WorkQueueDispatcher getDispatcher() {
+        if (useWorkQueue && dispatcher == null) {
+            dispatcher = new WorkQueueDispatcher(getBus(), workQueueName, workQueueTimeout);
+        }
+        return useWorkQueue ? dispatcher : null;
+    }
 }
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.apache.cxf.clustering.FailoverStrategy;
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.transport.xmpp.discovery.ServiceResolver;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.util.StringUtils;
+
+/**
+ * Failover strategy for the IQ conduits that picks another instance of the same service from the presence
+ * received on the connection. Use it with the FailoverFeature of the clustering module:
+ *
+ * <pre>
+ * FailoverFeature failover = new FailoverFeature();
+ * failover.setStrategy(new PresenceFailoverStrategy());
+ * </pre>
+ *
+ * When the address of the client is a full JID the request is sent to the other available resources of the
+ * bare JID, in the order they became available. When the address is a bare JID, or the address of a
+ * component, the request is sent to the address once more, the instance that went offline is no longer one
+ * of the instances it is resolved to or routed to by the server.
+ */
+public class PresenceFailoverStrategy implements FailoverStrategy {
+
+    private static final Logger LOGGER = LogUtils.getLogger(PresenceFailoverStrategy.class);
+
+    public List<String> getAlternateAddresses(Exchange exchange) {
+        Endpoint endpoint = exchange.getEndpoint();
+        String failedJid = (String)exchange.get(IQClientConduit.TARGET_JID);
+        XMPPConnection conn = exchange.get(XMPPConnection.class);
+        if (endpoint == null || failedJid == null || conn == null) {
+            // The request was never sent by an IQ conduit.
+            return new ArrayList<String>();
+        }
+
+        String address = endpoint.getEndpointInfo().getAddress();
+        if (StringUtils.parseResource(address).length() == 0) {
+            return new ArrayList<String>(Collections.singletonList(address));
+        }
+
+        ServiceResolver resolver = ServiceResolver.getInstanceFor(conn);
+        String bareJid = StringUtils.parseBareAddress(address);
+        Set<String> candidates = new LinkedHashSet<String>(resolver.getAvailableInstances(bareJid));
+        for (String jid : resolver.resolve(bareJid)) {
+            // Instances listed by disco#items, the bare JID itself is returned when there are none.
+            if (StringUtils.parseResource(jid).length() > 0) {
+                candidates.add(jid);
+            }
+        }
+        candidates.remove(failedJid);
+
+        List<String> alternates = new ArrayList<String>();
+        for (String jid : candidates) {
+            if (!resolver.isUnavailable(jid)) {
+                alternates.add(jid);
+            }
+        }
+        LOGGER.info("Instances of " + bareJid + " available after " + failedJid + " failed: " + alternates);
+        return alternates;
+    }
+
+    public String selectAlternateAddress(List<String> addresses) {
+        return addresses == null || addresses.isEmpty() ? null : addresses.remove(0);
+    }
+
+    /**
+     * @return Null, the alternates are addresses.
+     */
+    public List<Endpoint> getAlternateEndpoints(Exchange exchange) {
+        return null;
+    }
+
+    public Endpoint selectAlternateEndpoint(List<Endpoint> alternates) {
+        return null;
+    }
+}
@@ -20,26 +20,51 @@
 package org.apache.cxf.transport.xmpp.pep;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.io.CachedOutputStream;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.transport.xmpp.common.AbstractConduit;
+import org.apache.cxf.transport.xmpp.common.PublishBatcher;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayload;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
 import org.jivesoftware.smackx.PEPManager;
 import org.jivesoftware.smackx.packet.PEPSoapPacket;
+import org.jivesoftware.smackx.pubsub.SimplePayload;
 
 public class PEPClientConduit extends AbstractConduit {
-    
+
+    private static final Logger LOGGER = LogUtils.getLogger(PEPClientConduit.class);
+
     private PEPManager pepMgr;
     private String nodeName;
 
+    // Null when every message is published on its own.
+    private PublishBatcher batcher;
+
     public PEPClientConduit(EndpointReferenceType type, PEPManager mgr, String name) {
         super(type);
         pepMgr = mgr;
         nodeName = name;
     }
 
+    /**
+     * Publish the messages in batches, a batch is a single item that holds several messages.
+     * 
+     * @param maxItems Maximum number of messages in a batch.
+     * @param window Milliseconds a message waits for others before its batch is published.
+     */
+    public void setBatching(int maxItems, long window) {
+        batcher = new PublishBatcher(maxItems, window) {
+            @Override
+            protected void publish(SimplePayload payload) throws IOException {
+                publishItem(payload);
+            }
+        };
+    }
+
     @Override
     public void prepare(Message msg) throws IOException {
         super.prepare(msg);
@@ -48,14 +73,45 @@ public class PEPClientConduit extends AbstractConduit {
 
     @Override
     public void close(Message msg) throws IOException {
-        CachedOutputStream output = (CachedOutputStream)msg.getContent(OutputStream.class);
+        CachedOutputStream output = getEnvelope(msg);
         if (output != null) {
-            StringBuilder soapEnvelope = new StringBuilder();
-            output.writeCacheTo(soapEnvelope);
+            SimplePayload payload;
+            BinaryPayload binary = createPayload(msg, output);
+            if (binary != null) {
+                payload = new SimplePayload(BinaryPayload.ELEMENT_NAME, BinaryPayload.NAMESPACE,
+                                            binary.toXML());
+            } else {
+                StringBuilder soapEnvelope = new StringBuilder();
+                output.writeCacheTo(soapEnvelope);
+                payload = new SimplePayload("Envelope", "http://www.w3.org/2003/05/soap-envelope",
+                                            soapEnvelope.toString());
+            }
 
-            PEPSoapPacket packet = new PEPSoapPacket(nodeName);
-            packet.setItemDetailsXML(soapEnvelope.toString());
-            pepMgr.publish(packet);
+            if (batcher != null) {
+                batcher.add(payload);
+            } else {
+                publishItem(payload);
+            }
         }
     }
+
+    /**
+     * Publishes the messages still waiting in a batch.
+     */
+    @Override
+    public void close() {
+        if (batcher != null) {
+            try {
+                batcher.flush();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to publish the last batch", e);
+            }
+        }
+    }
+
+    private void publishItem(SimplePayload payload) {
+        PEPSoapPacket packet = new PEPSoapPacket(nodeName);
+        packet.setItemDetailsXML(payload.toXML());
+        pepMgr.publish(packet);
+    }
 }
@@ -19,13 +19,8 @@
 
 package org.apache.cxf.transport.xmpp.pep;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.util.List;
 
-import org.apache.cxf.message.Exchange;
-import org.apache.cxf.message.ExchangeImpl;
-import org.apache.cxf.message.MessageImpl;
 import org.apache.cxf.service.model.EndpointInfo;
 import org.apache.cxf.transport.xmpp.common.AbstractDestination;
 import org.jivesoftware.smack.PacketListener;
@@ -69,18 +64,7 @@ public class PEPDestination extends AbstractDestination implements PacketListene
     public void invokeSoapMessages(List<PayloadItem<SimplePayload>> items) {
 
         for (PayloadItem<SimplePayload> pi : items) {
-            SimplePayload soapMsg = pi.getPayload();
-
-            org.apache.cxf.message.Message cxfMsg = new MessageImpl();
-            cxfMsg.setContent(InputStream.class, new ByteArrayInputStream(soapMsg.toXML().getBytes()));
-
-            Exchange msgExchange = new ExchangeImpl();
-            msgExchange.setOneWay(true);
-            msgExchange.setDestination(this);
-            cxfMsg.setExchange(msgExchange);
-
-            // TODO Fix this so a different thread is used.
-            getMessageObserver().onMessage(cxfMsg);
+            dispatchItem(pi);
         }
     }
         
@@ -32,6 +32,8 @@ import org.apache.cxf.transport.Conduit;
 import org.apache.cxf.transport.ConduitInitiator;
 import org.apache.cxf.transport.Destination;
 import org.apache.cxf.transport.DestinationFactory;
+import org.apache.cxf.transport.xmpp.common.PayloadCounter;
+import org.apache.cxf.transport.xmpp.common.WorkQueueDispatcher;
 import org.apache.cxf.transport.xmpp.connection.XMPPConnectionFactory;
 import org.apache.cxf.transport.xmpp.connection.XMPPTransportFactory;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
@@ -58,6 +60,20 @@ public class PEPTransportFactory extends AbstractTransportFactory implements Des
 
     private XMPPConnectionFactory destinationConnectionFactory;
     private XMPPConnectionFactory conduitConnectionFactory;
+
+    // Received messages are processed by a work queue instead of the XMPP reader thread.
+    private boolean useWorkQueue = true;
+    private String workQueueName = WorkQueueDispatcher.DEFAULT_WORK_QUEUE_NAME;
+    private long workQueueTimeout = 1000;
+    private WorkQueueDispatcher dispatcher;
+
+    // Envelopes encoded by interceptors, like Fast Infoset or gzip, are sent as binary payloads.
+    private boolean binaryPayload;
+    private PayloadCounter payloadCounter = new PayloadCounter();
+
+    // Publishing one way messages in batches is off unless the batch size is above one.
+    private int batchSize = 1;
+    private long batchWindow = 100;
     
     private PEPSoapProvider soapProvider = new PEPSoapProvider();
     private PEPProvider pepProvider = new PEPProvider();
@@ -83,7 +99,10 @@ public class PEPTransportFactory extends AbstractTransportFactory implements Des
         String nodeName = endpointInfo.getService().getName().toString();
         pepProvider.registerPEPParserExtension(nodeName, soapProvider);
        
-        PEPDestination dest = new PEPDestination(endpointInfo);       
+        PEPDestination dest = new PEPDestination(endpointInfo);
+        dest.setDispatcher(getDispatcher());
+        dest.setBinaryPayload(binaryPayload);
+        dest.setPayloadCounter(payloadCounter);
         
         try {            
             XMPPConnection conn = destinationConnectionFactory.login(endpointInfo);
@@ -128,6 +147,11 @@ public class PEPTransportFactory extends AbstractTransportFactory implements Des
                         
             PEPManager mgr = new PEPManager(conn);
             PEPClientConduit conduit = new PEPClientConduit(endpointType, mgr, nodeName);
+            conduit.setBinaryPayload(binaryPayload);
+            conduit.setPayloadCounter(payloadCounter);
+            if (batchSize > 1) {
+                conduit.setBatching(batchSize, batchWindow);
+            }
             conduit.setXmppConnection(conn);
            
             return conduit;
@@ -147,4 +171,79 @@ public class PEPTransportFactory extends AbstractTransportFactory implements Des
     public void setConduitConnectionFactory(XMPPConnectionFactory factory) {
         conduitConnectionFactory = factory;
     }
+
+    /**
+     * Process received messages on the XMPP reader thread instead of a work queue.
+     * 
+     * @param enable False to process messages on the XMPP reader thread.
+     */
+    public void setUseWorkQueue(boolean enable) {
+        useWorkQueue = enable;
+    }
+
+    /**
+     * Optional configuration for the name of the work queue. If the bus has no work queue with this name the
+     * default work queue is used.
+     * 
+     * @param name Name of the work queue.
+     */
+    public void setWorkQueueName(String name) {
+        workQueueName = name;
+    }
+
+    /**
+     * Optional configuration for how long the XMPP reader thread waits when the work queue is full.
+     * 
+     * @param timeout Milliseconds to wait before the message is rejected or handed to an overflow thread.
+     */
+    public void setWorkQueueTimeout(long timeout) {
+        workQueueTimeout = timeout;
+    }
+
+    /**
+     * Optional configuration to send envelopes that were encoded by interceptors as base64 binary payloads,
+     * the default is false. Add the FastInfosetFeature or GZIPFeature to the endpoints to encode the
+     * envelopes, the headers they use to negotiate the encoding are sent with the payload. All the endpoints
+     * that receive the messages must use a version of the transport that supports binary payloads.
+     * 
+     * @param enable True to send encoded envelopes as binary payloads.
+     */
+    public void setBinaryPayload(boolean enable) {
+        binaryPayload = enable;
+    }
+
+    /**
+     * @return Byte counts of the envelopes sent and received by the conduits and destinations of this
+     *         factory.
+     */
+    public PayloadCounter getPayloadCounter() {
+        return payloadCounter;
+    }
+
+    /**
+     * Optional configuration to publish messages in batches. Messages are collected until the batch holds
+     * this many or the batch window ends, then they are published as a single item. The default is 1, which
+     * publishes every message on its own.
+     * 
+     * @param size Maximum number of messages in a batch.
+     */
+    public void setBatchSize(int size) {
+        batchSize = size;
+    }
+
+    /**
+     * Optional configuration for how long the first message of a batch waits for others, the default is 100.
+     * 
+     * @param window Milliseconds before a batch that isn't full is published.
+     */
+    public void setBatchWindow(long window) {
+        batchWindow = window;
+    }
+
+    private synchronized WorkQueueDispatcher getDispatcher() {
+        if (useWorkQueue && dispatcher == null) {
+            dispatcher = new WorkQueueDispatcher(getBus(), workQueueName, workQueueTimeout);
+        }
+        return useWorkQueue ? dispatcher : null;
+    }
 }
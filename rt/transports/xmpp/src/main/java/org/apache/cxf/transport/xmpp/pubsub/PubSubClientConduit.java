@@ -20,11 +20,15 @@
 package org.apache.cxf.transport.xmpp.pubsub;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.io.CachedOutputStream;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.transport.xmpp.common.AbstractConduit;
+import org.apache.cxf.transport.xmpp.common.PublishBatcher;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayload;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smackx.pubsub.LeafNode;
@@ -33,8 +37,13 @@ import org.jivesoftware.smackx.pubsub.SimplePayload;
 
 public class PubSubClientConduit extends AbstractConduit {
 
+    private static final Logger LOGGER = LogUtils.getLogger(PubSubClientConduit.class);
+
     private LeafNode targetNode;
 
+    // Null when every message is published on its own.
+    private PublishBatcher batcher;
+
     public PubSubClientConduit(EndpointReferenceType type) {
         super(type);
     }
@@ -43,6 +52,21 @@ public class PubSubClientConduit extends AbstractConduit {
         targetNode = node;
     }
 
+    /**
+     * Publish the messages in batches, a batch is a single item that holds several messages.
+     * 
+     * @param maxItems Maximum number of messages in a batch.
+     * @param window Milliseconds a message waits for others before its batch is published.
+     */
+    public void setBatching(int maxItems, long window) {
+        batcher = new PublishBatcher(maxItems, window) {
+            @Override
+            protected void publish(SimplePayload payload) throws IOException {
+                publishItem(payload);
+            }
+        };
+    }
+
     @Override
     public void prepare(Message msg) throws IOException {
         super.prepare(msg);
@@ -51,20 +75,48 @@ public class PubSubClientConduit extends AbstractConduit {
 
     @Override
     public void close(Message msg) throws IOException {
-        CachedOutputStream output = (CachedOutputStream)msg.getContent(OutputStream.class);
+        CachedOutputStream output = getEnvelope(msg);
         if (targetNode != null && output != null) {
-            StringBuilder soapEnvelope = new StringBuilder();
-            output.writeCacheTo(soapEnvelope);
+            SimplePayload payload;
+            BinaryPayload binary = createPayload(msg, output);
+            if (binary != null) {
+                payload = new SimplePayload(BinaryPayload.ELEMENT_NAME, BinaryPayload.NAMESPACE,
+                                            binary.toXML());
+            } else {
+                StringBuilder soapEnvelope = new StringBuilder();
+                output.writeCacheTo(soapEnvelope);
+                payload = new SimplePayload("Envelope", "http://www.w3.org/2003/05/soap-envelope",
+                                            soapEnvelope.toString());
+            }
 
-            SimplePayload payload = new SimplePayload("Envelope", "http://www.w3.org/2003/05/soap-envelope",
-                                                      soapEnvelope.toString());
+            if (batcher != null) {
+                batcher.add(payload);
+            } else {
+                publishItem(payload);
+            }
+        }
+    }
 
-            PayloadItem<SimplePayload> pi = new PayloadItem<SimplePayload>(payload);
+    /**
+     * Publishes the messages still waiting in a batch.
+     */
+    @Override
+    public void close() {
+        if (batcher != null) {
             try {
-                targetNode.send(pi);
-            } catch (XMPPException e) {
-                throw new IOException(e);
+                batcher.flush();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to publish the last batch", e);
             }
         }
     }
+
+    private void publishItem(SimplePayload payload) throws IOException {
+        PayloadItem<SimplePayload> pi = new PayloadItem<SimplePayload>(payload);
+        try {
+            targetNode.send(pi);
+        } catch (XMPPException e) {
+            throw new IOException(e);
+        }
+    }
 }
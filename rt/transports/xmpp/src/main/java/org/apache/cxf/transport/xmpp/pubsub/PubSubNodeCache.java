@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.pubsub;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jivesoftware.smack.AbstractConnectionListener;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.PacketExtensionFilter;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smackx.Form;
+import org.jivesoftware.smackx.pubsub.Affiliation;
+import org.jivesoftware.smackx.pubsub.EventElement;
+import org.jivesoftware.smackx.pubsub.EventElementType;
+import org.jivesoftware.smackx.pubsub.Node;
+import org.jivesoftware.smackx.pubsub.PubSubManager;
+
+/**
+ * Caches the pubsub nodes and the affiliations of one connection, so a node is looked up once and the
+ * affiliations are fetched once instead of for every node notification. Deleted nodes are removed from the
+ * cache and the affiliations are fetched again after subscription events or a reconnect.
+ */
+final class PubSubNodeCache {
+
+    private static final Map<XMPPConnection, PubSubNodeCache> INSTANCES =
+        Collections.synchronizedMap(new WeakHashMap<XMPPConnection, PubSubNodeCache>());
+
+    private final XMPPConnection connection;
+
+    // Replaced when a node is deleted because the manager caches every node it looked up.
+    private volatile PubSubManager manager;
+    private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+
+    // Nodes the user is affiliated with, null until fetched from the server.
+    private Set<String> affiliatedNodes;
+
+    // Nodes being subscribed to, duplicate notifications for them are ignored.
+    private final ConcurrentMap<String, Boolean> subscribing = new ConcurrentHashMap<String, Boolean>();
+
+    // Metrics
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong serverRequestCount = new AtomicLong();
+
+    private PubSubNodeCache(XMPPConnection conn) {
+        connection = conn;
+        manager = new PubSubManager(conn);
+
+        connection.addPacketListener(new PacketListener() {
+            public void processPacket(Packet packet) {
+                EventElement event = (EventElement)packet.getExtension("event",
+                                                                       "http://jabber.org/protocol/pubsub#event");
+                if (event != null && event.getEvent() != null) {
+                    nodeChanged(event.getEventType(), event.getEvent().getNode());
+                }
+            }
+        }, new PacketExtensionFilter("event", "http://jabber.org/protocol/pubsub#event"));
+
+        connection.addConnectionListener(new AbstractConnectionListener() {
+            @Override
+            public void reconnectionSuccessful() {
+                invalidateAffiliations();
+            }
+
+            @Override
+            public void connectionClosed() {
+                INSTANCES.remove(connection);
+            }
+        });
+    }
+
+    /**
+     * @param conn A logged in connection.
+     * @return The cache of the connection.
+     */
+    static PubSubNodeCache getInstanceFor(XMPPConnection conn) {
+        synchronized (INSTANCES) {
+            PubSubNodeCache cache = INSTANCES.get(conn);
+            if (cache == null) {
+                cache = new PubSubNodeCache(conn);
+                INSTANCES.put(conn, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @param nodeName Name of an existing node.
+     * @return The node, only looked up on the server the first time.
+     * @throws XMPPException If the node doesn't exist.
+     */
+    Node getNode(String nodeName) throws XMPPException {
+        lookupCount.incrementAndGet();
+        Node node = nodes.get(nodeName);
+        if (node == null) {
+            serverRequestCount.incrementAndGet();
+            node = manager.getNode(nodeName);
+            nodes.put(nodeName, node);
+        }
+        return node;
+    }
+
+    Node createNode(String nodeName, Form config) throws XMPPException {
+        serverRequestCount.incrementAndGet();
+        Node node = manager.createNode(nodeName, config);
+        nodes.put(nodeName, node);
+        return node;
+    }
+
+    /**
+     * @return True if the user is affiliated with the node. The affiliations are fetched when they aren't
+     *         cached.
+     */
+    synchronized boolean isAffiliated(String nodeName) {
+        lookupCount.incrementAndGet();
+        if (affiliatedNodes == null) {
+            affiliatedNodes = new HashSet<String>();
+            serverRequestCount.incrementAndGet();
+            try {
+                List<Affiliation> affiliations = manager.getAffiliations();
+                for (Affiliation aff : affiliations) {
+                    affiliatedNodes.add(aff.getNodeId());
+                }
+            } catch (XMPPException e) {
+                // No affiliations causes an exception. :(
+                // An empty list would have been nicer.
+            }
+        }
+        return affiliatedNodes.contains(nodeName);
+    }
+
+    /**
+     * Record a subscription made by this connection.
+     */
+    synchronized void subscribed(String nodeName) {
+        if (affiliatedNodes != null) {
+            affiliatedNodes.add(nodeName);
+        }
+    }
+
+    /**
+     * Coalesces duplicate notifications for the same node.
+     * 
+     * @return True if the caller should subscribe to the node, false if another caller is doing it.
+     */
+    boolean startSubscribing(String nodeName) {
+        return subscribing.putIfAbsent(nodeName, Boolean.TRUE) == null;
+    }
+
+    void endSubscribing(String nodeName) {
+        subscribing.remove(nodeName);
+    }
+
+    /**
+     * Fetch the affiliations again on the next check.
+     */
+    synchronized void invalidateAffiliations() {
+        affiliatedNodes = null;
+    }
+
+    /**
+     * @return Number of node lookups and affiliation checks made.
+     */
+    long getLookupCount() {
+        return lookupCount.get();
+    }
+
+    /**
+     * @return Number of requests sent to the pubsub service.
+     */
+    long getServerRequestCount() {
+        return serverRequestCount.get();
+    }
+
+    private void nodeChanged(EventElementType type, String nodeName) {
+        if (type == EventElementType.delete) {
+            nodes.remove(nodeName);
+            manager = new PubSubManager(connection);
+            invalidateAffiliations();
+        } else if (type == EventElementType.subscription) {
+            invalidateAffiliations();
+        }
+    }
+}
@@ -20,7 +20,10 @@
 package org.apache.cxf.transport.xmpp.pubsub;
 
 import java.util.Collection;
-import java.util.List;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,6 +35,7 @@ import org.apache.cxf.feature.AbstractFeature;
 import org.apache.cxf.transport.Conduit;
 import org.apache.cxf.transport.Destination;
 import org.apache.cxf.transport.xmpp.connection.XMPPConnectionFactory;
+import org.jivesoftware.smack.AbstractConnectionListener;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.Roster;
 import org.jivesoftware.smack.RosterEntry;
@@ -45,11 +49,9 @@ import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.provider.ProviderManager;
 import org.jivesoftware.smackx.Form;
 import org.jivesoftware.smackx.FormField;
-import org.jivesoftware.smackx.pubsub.Affiliation;
 import org.jivesoftware.smackx.pubsub.ConfigureForm;
 import org.jivesoftware.smackx.pubsub.LeafNode;
 import org.jivesoftware.smackx.pubsub.Node;
-import org.jivesoftware.smackx.pubsub.PubSubManager;
 import org.jivesoftware.smackx.pubsub.listener.ItemEventListener;
 
 public class PubSubServiceNode extends AbstractFeature {
@@ -58,10 +60,35 @@ public class PubSubServiceNode extends AbstractFeature {
 
     private XMPPConnectionFactory connectionFactory;
 
+    // Node caches of the connections used by this feature.
+    private Set<PubSubNodeCache> caches = new CopyOnWriteArraySet<PubSubNodeCache>();
+
     public void setConnectionFactory(XMPPConnectionFactory factory) {
         connectionFactory = factory;
     }
 
+    /**
+     * @return Number of node lookups and affiliation checks, most are answered by the cache.
+     */
+    public long getNodeLookupCount() {
+        long count = 0;
+        for (PubSubNodeCache cache : caches) {
+            count += cache.getLookupCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of node lookups and affiliation requests sent to the pubsub service.
+     */
+    public long getServerRequestCount() {
+        long count = 0;
+        for (PubSubNodeCache cache : caches) {
+            count += cache.getServerRequestCount();
+        }
+        return count;
+    }
+
     @Override
     public void initialize(Bus bus) {
         // Doesn't work on a bus
@@ -85,6 +112,8 @@ public class PubSubServiceNode extends AbstractFeature {
             if (dest instanceof ItemEventListener<?>) {
                 final ItemEventListener<?> listener = (ItemEventListener<?>)dest;
                 final XMPPConnection connection = connectionFactory.login(server.getEndpoint().getEndpointInfo());
+                final Set<String> subscribedNodes = new CopyOnWriteArraySet<String>();
+                caches.add(PubSubNodeCache.getInstanceFor(connection));
                 
                 // Listen for notification of new nodes.
                 connection.addPacketListener(new PacketListener() {                    
@@ -94,6 +123,7 @@ public class PubSubServiceNode extends AbstractFeature {
                         NodeNotificationPacket notification = (NodeNotificationPacket)p;
                         if (serviceName.equals(notification.getServiceName())) {
                             subscribeToNode(notification.getNodeName(), listener, connection);
+                            subscribedNodes.add(notification.getNodeName());
                         }                        
                     }
                 }, new PacketFilter() {
@@ -102,6 +132,18 @@ public class PubSubServiceNode extends AbstractFeature {
                         return p instanceof NodeNotificationPacket;
                     }
                 });
+
+                // The server may drop the subscriptions of a JID that went offline,
+                // the item listeners are still registered on the connection.
+                connection.addConnectionListener(new AbstractConnectionListener() {
+                    @Override
+                    public void reconnectionSuccessful() {
+                        PubSubNodeCache.getInstanceFor(connection).invalidateAffiliations();
+                        for (String nodeName : subscribedNodes) {
+                            subscribeToNode(nodeName, null, connection);
+                        }
+                    }
+                });
               
             } else {
                 LOGGER.log(Level.WARNING, "This feature is only for PubSubDestinations");
@@ -120,6 +162,7 @@ public class PubSubServiceNode extends AbstractFeature {
             if (conduit instanceof PubSubClientConduit) {
 
                 final XMPPConnection connection = connectionFactory.login(client.getEndpoint().getEndpointInfo());
+                caches.add(PubSubNodeCache.getInstanceFor(connection));
                 
                 // Create a node name based on the service name.
                 String fullJID = connection.getUser();
@@ -136,12 +179,18 @@ public class PubSubServiceNode extends AbstractFeature {
                     packet.setNodeName(nodeName);
                     packet.setServiceName(serviceName);
                     packet.setType(Type.GET);
+
+                    // Presence updates of an available JID don't notify it again.
+                    final Set<String> notifiedJids =
+                        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
                     
                     connection.getRoster().addRosterListener(new RosterListener() {
                         
                         @Override
                         public void presenceChanged(Presence p) {
-                            if (p.isAvailable()) {
+                            if (!p.isAvailable()) {
+                                notifiedJids.remove(p.getFrom());
+                            } else if (notifiedJids.add(p.getFrom())) {
                                 packet.setTo(p.getFrom());
                                 connection.sendPacket(packet);
                                 LOGGER.log(Level.INFO, "Sent node notification to presence: " + p.getFrom());
@@ -172,9 +221,11 @@ public class PubSubServiceNode extends AbstractFeature {
                         // all the available presences until you find the one you want.
                         
                         Presence p = roster.getPresence(entry.getUser());
-                        packet.setTo(p.getFrom());
-                        connection.sendPacket(packet);
-                        LOGGER.log(Level.INFO, "Sent node notification to roster entry: " + p.getFrom());
+                        if (notifiedJids.add(p.getFrom())) {
+                            packet.setTo(p.getFrom());
+                            connection.sendPacket(packet);
+                            LOGGER.log(Level.INFO, "Sent node notification to roster entry: " + p.getFrom());
+                        }
                     }
                     
                 } else {
@@ -189,7 +240,7 @@ public class PubSubServiceNode extends AbstractFeature {
     }
     
     private Node findOrCreateNode(String serviceName, XMPPConnection connection) {
-        PubSubManager mgr = new PubSubManager(connection);
+        PubSubNodeCache mgr = PubSubNodeCache.getInstanceFor(connection);
         Node pubSubNode = null;
         try {            
             pubSubNode = mgr.getNode(serviceName);
@@ -214,33 +265,33 @@ public class PubSubServiceNode extends AbstractFeature {
         return pubSubNode;
     }
 
-        
+
+    /**
+     * Subscribes to the node if the user isn't subscribed to it yet. Notifications for a node that is already
+     * being subscribed to are ignored.
+     * 
+     * @param listener Listener to add to the node, null if it was already added.
+     */
     private void subscribeToNode(String nodeName, ItemEventListener<?> listener, XMPPConnection connection) {
-        PubSubManager mgr = new PubSubManager(connection);
+        PubSubNodeCache cache = PubSubNodeCache.getInstanceFor(connection);
+        if (!cache.startSubscribing(nodeName)) {
+            return;
+        }
         try {
-            boolean alreadySubscribed = false;
-            try {
-                List<Affiliation> affiliations = mgr.getAffiliations();
-                for (Affiliation aff : affiliations) {
-                    
-                    if (nodeName.equals(aff.getNodeId())) {
-                        alreadySubscribed = true;
-                    }
+            if (!cache.isAffiliated(nodeName)) {
+                LeafNode node = (LeafNode)cache.getNode(nodeName);
+                if (listener != null) {
+                    node.addItemEventListener(listener);
                 }
-            } catch (XMPPException e) {
-                // No affiliations causes an exception. :(
-                // An empty list would have been nicer.
-            }
-            
-            if (!alreadySubscribed) {                
-                LeafNode node = (LeafNode)mgr.getNode(nodeName);
-                node.addItemEventListener(listener);
                 node.subscribe(connection.getUser());
+                cache.subscribed(nodeName);
                 LOGGER.info("Subscribed to: " + nodeName + " as user: " + connection.getUser());
             }
             
         } catch (XMPPException e) {
             LOGGER.log(Level.SEVERE, "Unable to subscribe to node", e);
+        } finally {
+            cache.endSubscribing(nodeName);
         }
     }
 }
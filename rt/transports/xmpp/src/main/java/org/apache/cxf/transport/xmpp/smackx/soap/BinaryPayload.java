@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.smackx.soap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.cxf.common.util.Base64Exception;
+import org.apache.cxf.common.util.Base64Utility;
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.helpers.HttpHeaderHelper;
+import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
+import org.apache.cxf.io.CachedOutputStream;
+import org.apache.cxf.message.Message;
+import org.jivesoftware.smack.util.StringUtils;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * A SOAP envelope that isn't plain XML, for example Fast Infoset or gzip, carried as base64 text. The
+ * content type and encoding headers set by the interceptors travel with the payload so the interceptors of
+ * the receiver, like {@link org.apache.cxf.interceptor.FIStaxInInterceptor} and
+ * {@link org.apache.cxf.transport.common.gzip.GZIPInInterceptor}, treat it the same way as an HTTP message.
+ * <p>
+ * A large envelope is sent through a bytestream instead, the payload is then empty and only refers to the
+ * stream by its session ID.
+ */
+public final class BinaryPayload {
+    public static final String ELEMENT_NAME = "payload";
+    public static final String NAMESPACE = "http://cxf.apache.org/transports/xmpp/payload";
+
+    private static final String CONTENT_TYPE = "contentType";
+    private static final String CONTENT_ENCODING = "contentEncoding";
+    private static final String ACCEPT = "accept";
+    private static final String ACCEPT_ENCODING = "acceptEncoding";
+    private static final String STREAM_ID = "sid";
+
+    // Attribute name to header name.
+    private static final Map<String, String> HEADERS = new LinkedHashMap<String, String>();
+    static {
+        HEADERS.put(CONTENT_ENCODING, HttpHeaderHelper.CONTENT_ENCODING);
+        HEADERS.put(ACCEPT, "Accept");
+        HEADERS.put(ACCEPT_ENCODING, HttpHeaderHelper.ACCEPT_ENCODING);
+    }
+
+    private final Map<String, String> attributes;
+    private final String encoded;
+    private byte[] decoded;
+
+    // Content received through the bytestream, or the reason it wasn't.
+    private CachedOutputStream streamed;
+    private IOException streamError;
+
+    private BinaryPayload(Map<String, String> attrs, String base64) {
+        attributes = attrs;
+        encoded = base64;
+    }
+
+    /**
+     * @param msg Message written by the interceptors.
+     * @return True if the interceptors encoded the envelope or asked for an encoded reply.
+     */
+    public static boolean isRequired(Message msg) {
+        String contentType = (String)msg.get(Message.CONTENT_TYPE);
+        if (contentType != null && contentType.contains("fastinfoset")) {
+            return true;
+        }
+        Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>)msg.get(Message.PROTOCOL_HEADERS));
+        if (headers != null) {
+            for (String header : HEADERS.values()) {
+                List<String> values = HttpHeaderHelper.getHeader(headers, header);
+                if (values != null && !values.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the envelope and the headers of the message.
+     * 
+     * @param msg Message written by the interceptors.
+     * @param envelope The envelope as written by the interceptors.
+     * @return Payload that can be sent.
+     * @throws IOException If the cached envelope can't be read.
+     */
+    public static BinaryPayload create(Message msg, CachedOutputStream envelope) throws IOException {
+        Map<String, String> attrs = getHeaderAttributes(msg);
+
+        envelope.flush();
+        String base64;
+        if (envelope.size() == 0) {
+            base64 = "";
+        } else if (envelope.getOut() instanceof LoadingByteArrayOutputStream) {
+            LoadingByteArrayOutputStream bytes = (LoadingByteArrayOutputStream)envelope.getOut();
+            base64 = new String(Base64Utility.encodeChunk(bytes.getRawBytes(), 0, bytes.size()));
+        } else {
+            base64 = Base64Utility.encode(envelope.getBytes());
+        }
+        return new BinaryPayload(attrs, base64);
+    }
+
+    /**
+     * Refers to an envelope that is sent through a bytestream.
+     * 
+     * @param msg Message written by the interceptors.
+     * @param streamId Session ID of the bytestream.
+     * @return Payload that can be sent.
+     */
+    public static BinaryPayload createStreamed(Message msg, String streamId) {
+        Map<String, String> attrs = getHeaderAttributes(msg);
+        attrs.put(STREAM_ID, streamId);
+        return new BinaryPayload(attrs, "");
+    }
+
+    private static Map<String, String> getHeaderAttributes(Message msg) {
+        Map<String, String> attrs = new LinkedHashMap<String, String>();
+        String contentType = (String)msg.get(Message.CONTENT_TYPE);
+        if (contentType != null) {
+            attrs.put(CONTENT_TYPE, contentType);
+        }
+        Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>)msg.get(Message.PROTOCOL_HEADERS));
+        if (headers != null) {
+            for (Map.Entry<String, String> header : HEADERS.entrySet()) {
+                List<String> values = HttpHeaderHelper.getHeader(headers, header.getValue());
+                if (values != null && !values.isEmpty()) {
+                    attrs.put(header.getKey(), values.get(0));
+                }
+            }
+        }
+        return attrs;
+    }
+
+    /**
+     * @param parser Parser positioned on the start of the payload element.
+     * @return The received payload, the parser is left on the end of the payload element.
+     * @throws Exception If the payload can't be parsed.
+     */
+    public static BinaryPayload parse(XmlPullParser parser) throws Exception {
+        Map<String, String> attrs = new LinkedHashMap<String, String>();
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            attrs.put(parser.getAttributeName(i), parser.getAttributeValue(i));
+        }
+        return new BinaryPayload(attrs, parser.nextText());
+    }
+
+    /**
+     * @param xml The payload element, as received in a pubsub item.
+     * @return The received payload.
+     * @throws Exception If the payload can't be parsed.
+     */
+    public static BinaryPayload parse(String xml) throws Exception {
+        XmlPullParser parser = new MXParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(xml));
+        parser.nextTag();
+        return parse(parser);
+    }
+
+    /**
+     * Sets the content type and headers of a received message, the same way an HTTP destination does.
+     * 
+     * @param msg The received message.
+     */
+    public void copyHeadersTo(Message msg) {
+        Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>)msg.get(Message.PROTOCOL_HEADERS));
+        if (headers == null) {
+            headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+            msg.put(Message.PROTOCOL_HEADERS, headers);
+        }
+        for (Map.Entry<String, String> header : HEADERS.entrySet()) {
+            String value = attributes.get(header.getKey());
+            if (value != null) {
+                headers.put(header.getValue(), new ArrayList<String>(Collections.singletonList(value)));
+            }
+        }
+        if (attributes.containsKey(CONTENT_TYPE)) {
+            msg.put(Message.CONTENT_TYPE, attributes.get(CONTENT_TYPE));
+        }
+        if (attributes.containsKey(ACCEPT)) {
+            msg.put(Message.ACCEPT_CONTENT_TYPE, attributes.get(ACCEPT));
+        }
+    }
+
+    /**
+     * @return Session ID of the bytestream that carries the envelope, null if the envelope is in the payload.
+     */
+    public String getStreamId() {
+        return attributes.get(STREAM_ID);
+    }
+
+    /**
+     * @param content The envelope received through the bytestream.
+     * @param error Why the envelope wasn't received, null if it was.
+     */
+    public synchronized void setStreamContent(CachedOutputStream content, IOException error) {
+        streamed = content;
+        streamError = error;
+    }
+
+    /**
+     * @return The envelope as written by the interceptors of the sender.
+     * @throws IOException If the base64 text is invalid or the bytestream failed.
+     */
+    public InputStream getInputStream() throws IOException {
+        CachedOutputStream content = getStreamContent();
+        if (content != null) {
+            return content.getInputStream();
+        }
+        return new ByteArrayInputStream(getBytes());
+    }
+
+    /**
+     * @return Size of the envelope in bytes.
+     * @throws IOException If the base64 text is invalid or the bytestream failed.
+     */
+    public long getLength() throws IOException {
+        CachedOutputStream content = getStreamContent();
+        if (content != null) {
+            return content.size();
+        }
+        return getBytes().length;
+    }
+
+    /**
+     * @return Size of the base64 text.
+     */
+    public int getEncodedLength() {
+        return encoded.length();
+    }
+
+    public String toXML() {
+        StringBuilder xml = new StringBuilder(encoded.length() + 128);
+        xml.append('<').append(ELEMENT_NAME).append(" xmlns=\"").append(NAMESPACE).append('"');
+        for (Map.Entry<String, String> attr : attributes.entrySet()) {
+            xml.append(' ').append(attr.getKey()).append("=\"")
+                .append(StringUtils.escapeForXML(attr.getValue())).append('"');
+        }
+        xml.append('>').append(encoded).append("</").append(ELEMENT_NAME).append('>');
+        return xml.toString();
+    }
+
+    private synchronized CachedOutputStream getStreamContent() throws IOException {
+        if (streamError != null) {
+            throw streamError;
+        }
+        return streamed;
+    }
+
+    private synchronized byte[] getBytes() throws IOException {
+        if (decoded == null) {
+            try {
+                decoded = Base64Utility.decode(encoded);
+            } catch (Base64Exception e) {
+                throw new IOException(e);
+            }
+            if (decoded == null && encoded.length() > 0) {
+                throw new IOException("Invalid base64 payload");
+            } else if (decoded == null) {
+                decoded = new byte[0];
+            }
+        }
+        return decoded;
+    }
+}
@@ -19,10 +19,27 @@
 
 package org.apache.cxf.transport.xmpp.smackx.soap;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
+import org.apache.cxf.io.CachedOutputStream;
 import org.jivesoftware.smack.packet.IQ;
 
+/**
+ * IQ packet that carries a SOAP envelope. Received envelopes are kept as the UTF-8 bytes captured by the
+ * {@link SoapProvider} and are only turned into a String if the packet itself is written as XML. An envelope
+ * that isn't plain XML is carried as a {@link BinaryPayload} instead.
+ */
 public class SoapPacket extends IQ  {
+    public static final String ENCODING = "UTF-8";
+
     private String soapEnvelope;
+    private CachedOutputStream soapEnvelopeBytes;
+    private String soapNamespace;
+    private BinaryPayload binaryPayload;
 
     /**
      * {@inheritDoc}
@@ -34,8 +51,79 @@ public class SoapPacket extends IQ  {
         return "http://www.w3.org/2003/05/soap-envelope";
     }
 
+    /**
+     * @return Namespace of the received SOAP envelope, which identifies the SOAP version.
+     */
+    public String getEnvelopeNamespace() {
+        return soapNamespace;
+    }
+
+    void setEnvelopeNamespace(String namespace) {
+        soapNamespace = namespace;
+    }
+
     public void setEnvelope(String envelope) {
         soapEnvelope = envelope;
+        soapEnvelopeBytes = null;
+        binaryPayload = null;
+    }
+
+    /**
+     * Carry the envelope as a binary payload instead of XML.
+     * 
+     * @param payload The encoded envelope.
+     */
+    public void setPayload(BinaryPayload payload) {
+        soapEnvelope = null;
+        soapEnvelopeBytes = null;
+        binaryPayload = payload;
+    }
+
+    /**
+     * @return The binary payload, null if the envelope is carried as XML.
+     */
+    public BinaryPayload getPayload() {
+        return binaryPayload;
+    }
+
+    /**
+     * Use the UTF-8 encoded envelope written by the interceptors. The bytes are decoded straight into the
+     * String that Smack writes to the connection.
+     * 
+     * @param envelope The SOAP envelope encoded as UTF-8.
+     * @throws IOException If the cached envelope can't be read.
+     */
+    public void setEnvelope(CachedOutputStream envelope) throws IOException {
+        soapEnvelope = toString(envelope);
+        soapEnvelopeBytes = null;
+        binaryPayload = null;
+    }
+
+    /**
+     * Keep the UTF-8 encoded envelope captured while parsing.
+     * 
+     * @param envelope The SOAP envelope encoded as UTF-8, no longer written to.
+     */
+    void setEnvelopeBytes(CachedOutputStream envelope) {
+        soapEnvelope = null;
+        soapEnvelopeBytes = envelope;
+        binaryPayload = null;
+    }
+
+    /**
+     * Provides the envelope for CXF to parse, without copying the received bytes.
+     * 
+     * @return The SOAP envelope encoded as UTF-8.
+     * @throws IOException If the cached envelope can't be read.
+     */
+    public InputStream getEnvelopeInputStream() throws IOException {
+        if (binaryPayload != null) {
+            return binaryPayload.getInputStream();
+        }
+        if (soapEnvelopeBytes != null) {
+            return soapEnvelopeBytes.getInputStream();
+        }
+        return new ByteArrayInputStream(soapEnvelope.getBytes(IOUtils.UTF8_CHARSET));
     }
 
     /**
@@ -45,7 +133,51 @@ public class SoapPacket extends IQ  {
      */
     @Override
     public String getChildElementXML() {
+        if (binaryPayload != null) {
+            return binaryPayload.toXML();
+        }
+        if (soapEnvelope == null && soapEnvelopeBytes != null) {
+            try {
+                soapEnvelope = toString(soapEnvelopeBytes);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
         return soapEnvelope;
     }
 
+    /**
+     * @return Size in bytes of the envelope.
+     * @throws IOException If the cached envelope can't be read.
+     */
+    public long getEnvelopeLength() throws IOException {
+        if (binaryPayload != null) {
+            return binaryPayload.getLength();
+        }
+        if (soapEnvelopeBytes != null) {
+            return soapEnvelopeBytes.size();
+        }
+        return soapEnvelope == null ? 0 : soapEnvelope.length();
+    }
+
+    /**
+     * @return Size of the envelope as written in the XMPP stream, before any stream compression.
+     * @throws IOException If the cached envelope can't be read.
+     */
+    public long getStanzaLength() throws IOException {
+        if (binaryPayload != null) {
+            return binaryPayload.getEncodedLength();
+        }
+        return getEnvelopeLength();
+    }
+
+    private static String toString(CachedOutputStream envelope) throws IOException {
+        envelope.flush();
+        if (envelope.getOut() instanceof LoadingByteArrayOutputStream) {
+            LoadingByteArrayOutputStream bytes = (LoadingByteArrayOutputStream)envelope.getOut();
+            return IOUtils.newStringFromBytes(bytes.getRawBytes(), ENCODING, 0, bytes.size());
+        }
+        return IOUtils.toString(envelope.getInputStream(), ENCODING);
+    }
+
 }
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.smackx.soap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+
+/**
+ * Accepts SOAP packets of the given IQ types. Optionally only envelopes of one SOAP version are accepted.
+ */
+public class SoapPacketFilter implements PacketFilter {
+
+    private Set<IQ.Type> iqTypes;
+    private String soapNamespace;
+
+    /**
+     * @param namespace Namespace of the SOAP envelope, null accepts any SOAP version.
+     * @param types IQ types that are accepted.
+     */
+    public SoapPacketFilter(String namespace, IQ.Type... types) {
+        soapNamespace = namespace;
+        iqTypes = new HashSet<IQ.Type>(Arrays.asList(types));
+    }
+
+    @Override
+    public boolean accept(Packet packet) {
+        if (!(packet instanceof SoapPacket)) {
+            return false;
+        }
+        SoapPacket soapMsg = (SoapPacket)packet;
+        return iqTypes.contains(soapMsg.getType())
+               && (soapNamespace == null || soapNamespace.equals(soapMsg.getEnvelopeNamespace()));
+    }
+
+}
@@ -19,20 +19,45 @@
 
 package org.apache.cxf.transport.xmpp.smackx.soap;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.io.CachedOutputStream;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.provider.IQProvider;
 import org.xmlpull.v1.XmlPullParser;
 
+/**
+ * Parses SOAP envelopes out of IQ packets. The envelope is written once, as UTF-8, into a cached output stream
+ * that CXF reads directly.
+ */
 public class SoapProvider implements IQProvider {
 
     @Override
     public IQ parseIQ(XmlPullParser parser) throws Exception {
-        StringBuilder request = new StringBuilder();
+        String soapNamespace = parser.getNamespace();
+        CachedOutputStream envelope = new CachedOutputStream();
+        Writer request = new OutputStreamWriter(envelope, IOUtils.UTF8_CHARSET);
 
         boolean endOfSoapMsg = false;
+        boolean emptyTag = false;
         while (!endOfSoapMsg) {
-            // Append the current text.
-            request.append(parser.getText());
+            // Append the current text. Tags are copied as they were received,
+            // text has its entities resolved by the parser so it is escaped again.
+            // The end of an empty tag, <tag/>, was already copied with its start.
+            int eventType = parser.getEventType();
+            if (eventType == XmlPullParser.TEXT) {
+                writeEscaped(request, parser.getText());
+            } else if (eventType == XmlPullParser.START_TAG) {
+                emptyTag = parser.isEmptyElementTag();
+                request.write(parser.getText());
+            } else if (eventType != XmlPullParser.END_TAG || !emptyTag) {
+                request.write(parser.getText());
+            } else {
+                emptyTag = false;
+            }
 
             // If </Envelope> then stop parsing.
             if ("Envelope".equals(parser.getName())
@@ -48,9 +73,39 @@ public class SoapProvider implements IQProvider {
             }
         }
 
+        request.flush();
+        envelope.lockOutputStream();
+
         SoapPacket packet = new SoapPacket();
-        packet.setEnvelope(request.toString());
+        packet.setEnvelopeBytes(envelope);
+        packet.setEnvelopeNamespace(soapNamespace);
         return packet;
     }
 
+    private static void writeEscaped(Writer out, String text) throws IOException {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity = null;
+            switch (text.charAt(i)) {
+            case '&':
+                entity = "&amp;";
+                break;
+            case '<':
+                entity = "&lt;";
+                break;
+            case '>':
+                entity = "&gt;";
+                break;
+            default:
+                break;
+            }
+            if (entity != null) {
+                out.write(text, start, i - start);
+                out.write(entity);
+                start = i + 1;
+            }
+        }
+        out.write(text, start, text.length() - start);
+    }
+
 }
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.cxf.transport.xmpp.iq.IQTransportFactory;
+import org.apache.cxf.transport.xmpp.loopback.LoopbackXMPPServer;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.ConnectionListener;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+
+/**
+ * Runs the tests against a {@link LoopbackXMPPServer}, the connections made by a test are closed after it.
+ */
+public abstract class AbstractXMPPTester extends Assert {
+
+    protected static final String ENVELOPE =
+        "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+        + "<echo xmlns=\"http://test\"/></soap:Body></soap:Envelope>";
+
+    protected static LoopbackXMPPServer xmppServer;
+
+    private final List<XMPPConnection> connections = new CopyOnWriteArrayList<XMPPConnection>();
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        // Registers the providers of the SOAP packets.
+        new IQTransportFactory();
+        xmppServer = new LoopbackXMPPServer();
+        xmppServer.start();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        xmppServer.stop();
+    }
+
+    @After
+    public void disconnect() {
+        for (XMPPConnection conn : connections) {
+            if (conn.isConnected()) {
+                conn.disconnect();
+            }
+        }
+        connections.clear();
+    }
+
+    /**
+     * @return A logged in connection with an available presence.
+     */
+    protected TestConnection connect(String username, String resource) throws XMPPException {
+        ConnectionConfiguration config = new ConnectionConfiguration(xmppServer.getHost(), xmppServer.getPort(),
+                                                                     xmppServer.getDomain());
+        config.setReconnectionAllowed(false);
+        TestConnection conn = new TestConnection(config);
+        connections.add(conn);
+        conn.connect();
+        conn.login(username, username, resource);
+        return conn;
+    }
+
+    /**
+     * A connection that can pretend it was reconnected and tells which listeners are added to it.
+     */
+    public static class TestConnection extends XMPPConnection {
+
+        public TestConnection(ConnectionConfiguration config) {
+            super(config);
+        }
+
+        public void fireReconnectionSuccessful() {
+            for (ConnectionListener listener : getConnectionListeners()) {
+                listener.reconnectionSuccessful();
+            }
+        }
+
+        public int getConnectionListenerCount() {
+            return getConnectionListeners().size();
+        }
+
+        public boolean hasPacketListener(PacketListener listener) {
+            return getPacketListeners().containsKey(listener);
+        }
+
+        public int getPacketListenerCount() {
+            return getPacketListeners().size();
+        }
+    }
+}
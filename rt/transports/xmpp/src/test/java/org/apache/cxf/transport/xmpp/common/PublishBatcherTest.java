@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.common;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.io.CachedOutputStream;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.service.model.EndpointInfo;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.xmpp.smackx.soap.BinaryPayload;
+import org.jivesoftware.smackx.pubsub.PayloadItem;
+import org.jivesoftware.smackx.pubsub.SimplePayload;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PublishBatcherTest extends Assert {
+
+    private static final SimplePayload FIRST =
+        new SimplePayload("echo", "urn:test", "<echo xmlns=\"urn:test\">a &lt; b &amp; c</echo>");
+    private static final SimplePayload SECOND =
+        new SimplePayload("Envelope", "http://schemas.xmlsoap.org/soap/envelope/",
+                          "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                          + "<soap:Body><ping xmlns=\"urn:test\"><empty/><ping>nested</ping></ping>"
+                          + "</soap:Body></soap:Envelope>");
+
+    private BlockingQueue<SimplePayload> published = new LinkedBlockingQueue<SimplePayload>();
+
+    @Test
+    public void testSinglePayload() throws Exception {
+        PublishBatcher batcher = new Recorder(3, 10000);
+        batcher.add(FIRST);
+        assertNull(published.poll());
+
+        batcher.flush();
+        // published as is, without the batch element
+        assertSame(FIRST, published.poll());
+        batcher.flush();
+        assertNull(published.poll());
+    }
+
+    @Test
+    public void testFullBatch() throws Exception {
+        PublishBatcher batcher = new Recorder(3, 10000);
+        batcher.add(FIRST);
+        batcher.add(SECOND);
+        assertNull(published.poll());
+        batcher.add(FIRST);
+
+        SimplePayload batch = published.poll();
+        assertNotNull(batch);
+        assertTrue(PublishBatcher.isBatch(batch.getElementName(), batch.getNamespace()));
+        List<SimplePayload> payloads = PublishBatcher.split(batch.toXML());
+        assertEquals(3, payloads.size());
+        assertPayload(FIRST, payloads.get(0));
+        assertPayload(SECOND, payloads.get(1));
+        assertPayload(FIRST, payloads.get(2));
+
+        // the next batch starts empty
+        batcher.flush();
+        assertNull(published.poll());
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        PublishBatcher batcher = new Recorder(10, 50);
+        batcher.add(FIRST);
+        batcher.add(SECOND);
+
+        SimplePayload batch = published.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(2, PublishBatcher.split(batch.toXML()).size());
+        assertNull(published.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testDispatchItem() throws Exception {
+        EndpointInfo ei = new EndpointInfo();
+        ei.setAddress("xmpp:pubsub:test");
+        AbstractDestination destination = new AbstractDestination(ei);
+        final BlockingQueue<Message> received = new LinkedBlockingQueue<Message>();
+        destination.setMessageObserver(new MessageObserver() {
+            public void onMessage(Message message) {
+                received.add(message);
+            }
+        });
+
+        Message msg = new MessageImpl();
+        msg.put(Message.CONTENT_TYPE, "application/fastinfoset");
+        CachedOutputStream envelope = new CachedOutputStream();
+        envelope.write("binary".getBytes("UTF-8"));
+        BinaryPayload binary = BinaryPayload.create(msg, envelope);
+        SimplePayload third = new SimplePayload(BinaryPayload.ELEMENT_NAME, BinaryPayload.NAMESPACE,
+                                                binary.toXML());
+
+        PublishBatcher batcher = new Recorder(3, 10000);
+        batcher.add(FIRST);
+        batcher.add(SECOND);
+        batcher.add(third);
+        destination.dispatchItem(new PayloadItem<SimplePayload>("item-1", published.poll()));
+
+        // a message for each payload of the batch, in order
+        assertEquals(3, received.size());
+        assertMessage(FIRST.toXML(), received.poll());
+        assertMessage(SECOND.toXML(), received.poll());
+        Message binaryMsg = received.poll();
+        assertMessage("binary", binaryMsg);
+        assertEquals("application/fastinfoset", binaryMsg.get(Message.CONTENT_TYPE));
+
+        // an item without a batch is a single message
+        destination.dispatchItem(new PayloadItem<SimplePayload>("item-2", FIRST));
+        assertEquals(1, received.size());
+        assertMessage(FIRST.toXML(), received.poll());
+    }
+
+    private static void assertPayload(SimplePayload expected, SimplePayload actual) {
+        assertEquals(expected.getElementName(), actual.getElementName());
+        assertEquals(expected.getNamespace(), actual.getNamespace());
+        assertEquals(expected.toXML(), actual.toXML());
+    }
+
+    private static void assertMessage(String envelope, Message msg) throws Exception {
+        assertTrue(msg.getExchange().isOneWay());
+        assertEquals(envelope, IOUtils.toString(msg.getContent(InputStream.class), "UTF-8"));
+    }
+
+    private class Recorder extends PublishBatcher {
+        Recorder(int items, long window) {
+            super(items, window);
+        }
+
+        @Override
+        protected void publish(SimplePayload payload) {
+            published.add(payload);
+        }
+    }
+}
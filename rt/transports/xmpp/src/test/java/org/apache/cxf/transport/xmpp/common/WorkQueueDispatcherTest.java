@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.common;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.workqueue.AutomaticWorkQueueImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkQueueDispatcherTest extends Assert {
+
+    private AutomaticWorkQueueImpl queue;
+    private CountDownLatch release = new CountDownLatch(1);
+    private BlockingQueue<Thread> threads = new LinkedBlockingQueue<Thread>();
+    private WorkQueueDispatcher dispatcher;
+    private MessageObserver observer = new MessageObserver() {
+        public void onMessage(Message message) {
+            threads.add(Thread.currentThread());
+        }
+    };
+
+    @Before
+    public void setUp() {
+        queue = new AutomaticWorkQueueImpl(1, 1, 1, 1, 60000, "test");
+        dispatcher = new WorkQueueDispatcher(null, "test", 10);
+        dispatcher.setWorkQueue(queue);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        queue.shutdown(false);
+    }
+
+    @Test
+    public void testDispatch() throws Exception {
+        assertTrue(dispatcher.tryDispatch(observer, new MessageImpl()));
+        Thread thread = threads.poll(5, TimeUnit.SECONDS);
+        assertNotNull(thread);
+        assertNotSame(Thread.currentThread(), thread);
+    }
+
+    @Test
+    public void testWorkQueueFull() throws Exception {
+        fillQueue();
+        assertFalse(dispatcher.tryDispatch(observer, new MessageImpl()));
+        assertNull(threads.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        fillQueue();
+        dispatcher.dispatch(observer, new MessageImpl());
+        Thread thread = threads.poll(5, TimeUnit.SECONDS);
+        assertNotNull(thread);
+        assertTrue(thread.getName().startsWith("xmpp-overflow-"));
+    }
+
+    @Test
+    public void testOverflowBusy() throws Exception {
+        fillQueue();
+        dispatcher.setOverflowThreads(0);
+        // never dropped, processed by the calling thread
+        dispatcher.dispatch(observer, new MessageImpl());
+        assertSame(Thread.currentThread(), threads.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNoWorkQueue() throws Exception {
+        dispatcher = new WorkQueueDispatcher(null, "test", 10);
+        assertTrue(dispatcher.tryDispatch(observer, new MessageImpl()));
+        assertSame(Thread.currentThread(), threads.poll(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Keeps the thread of the work queue busy and fills its queue.
+     */
+    private void fillQueue() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        queue.execute(blocking);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        queue.execute(blocking);
+    }
+}
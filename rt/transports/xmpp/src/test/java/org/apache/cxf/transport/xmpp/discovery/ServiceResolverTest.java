@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.discovery;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.transport.xmpp.AbstractXMPPTester;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServiceResolverTest extends AbstractXMPPTester {
+
+    private String service;
+    private TestConnection first;
+    private TestConnection second;
+    private TestConnection client;
+    private ServiceResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        service = "service@" + xmppServer.getDomain();
+        client = connect("client", "test");
+        resolver = ServiceResolver.getInstanceFor(client);
+        first = connect("service", "first");
+        ServiceResolver.advertise(first);
+        second = connect("service", "second");
+        ServiceResolver.advertise(second);
+        // an instance without the SOAP feature isn't used
+        connect("service", "other");
+        waitForInstances(3);
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        assertSame(resolver, ServiceResolver.getInstanceFor(client));
+        List<String> jids = resolver.resolve(service);
+        assertEquals(2, jids.size());
+        assertTrue(jids.contains(first.getUser()));
+        assertTrue(jids.contains(second.getUser()));
+
+        // cached
+        assertEquals(jids, resolver.resolve(service));
+        assertEquals(1, resolver.getDiscoveryCount());
+        assertEquals(2, resolver.getResolveCount());
+
+        // a full JID is used as is
+        assertEquals(first.getUser(), resolver.resolve(first.getUser()).get(0));
+        assertEquals(1, resolver.getDiscoveryCount());
+    }
+
+    @Test
+    public void testNoInstances() throws Exception {
+        // the server routes the request
+        String unknown = "unknown@" + xmppServer.getDomain();
+        assertEquals(1, resolver.resolve(unknown).size());
+        assertEquals(unknown, resolver.resolve(unknown).get(0));
+    }
+
+    @Test
+    public void testPresenceChanges() throws Exception {
+        final BlockingQueue<String> unavailable = new LinkedBlockingQueue<String>();
+        resolver.addUnavailableListener(new ServiceResolver.UnavailableListener() {
+            public void instanceUnavailable(String jid) {
+                unavailable.add(jid);
+            }
+        });
+        assertEquals(2, resolver.resolve(service).size());
+        String secondJid = second.getUser();
+
+        // the requests to an instance that went offline fail right away
+        second.disconnect();
+        assertEquals(secondJid, unavailable.poll(5, TimeUnit.SECONDS));
+        assertTrue(resolver.isUnavailable(secondJid));
+        assertFalse(resolver.isUnavailable(first.getUser()));
+        List<String> jids = resolver.resolve(service);
+        assertEquals(1, jids.size());
+        assertEquals(first.getUser(), jids.get(0));
+
+        // and are sent to it again once it is back
+        TestConnection back = connect("service", "second");
+        ServiceResolver.advertise(back);
+        waitForInstances(3);
+        assertFalse(resolver.isUnavailable(secondJid));
+        assertEquals(2, resolver.resolve(service).size());
+        assertEquals(3, resolver.getDiscoveryCount());
+    }
+
+    @Test
+    public void testConnectionClosed() throws Exception {
+        TestConnection other = connect("client", "other");
+        int packetListeners = other.getPacketListenerCount();
+        int connectionListeners = other.getConnectionListenerCount();
+        ServiceResolver.getInstanceFor(other);
+        assertEquals(packetListeners + 1, other.getPacketListenerCount());
+        assertEquals(connectionListeners + 1, other.getConnectionListenerCount());
+
+        other.disconnect();
+        assertEquals(connectionListeners, other.getConnectionListenerCount());
+    }
+
+    private void waitForInstances(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (resolver.getAvailableInstances(service).size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, resolver.getAvailableInstances(service).size());
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.service.model.EndpointInfo;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.xmpp.AbstractXMPPTester;
+import org.apache.cxf.wsdl.EndpointReferenceUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IQBytestreamTransferTest extends AbstractXMPPTester {
+
+    private static final long TIMEOUT = 10000;
+    private static final long THRESHOLD = 1024;
+
+    private TestConnection service;
+    private TestConnection client;
+    private IQDestination destination;
+    private IQClientConduit conduit;
+    private BlockingQueue<Message> requests = new LinkedBlockingQueue<Message>();
+    private BlockingQueue<Message> responses = new LinkedBlockingQueue<Message>();
+
+    @Before
+    public void setUp() throws Exception {
+        service = connect("service", "soap");
+        client = connect("client", "test");
+
+        EndpointInfo endpointInfo = new EndpointInfo();
+        endpointInfo.setAddress(service.getUser());
+        destination = new IQDestination(endpointInfo);
+        destination.setStreamThreshold(THRESHOLD);
+        destination.setMessageObserver(new MessageObserver() {
+            public void onMessage(Message message) {
+                requests.add(message);
+            }
+        });
+        destination.setXmppConnection(service);
+
+        conduit = new IQClientConduit(EndpointReferenceUtils.getEndpointReference(service.getUser()));
+        conduit.setStreamThreshold(THRESHOLD);
+        conduit.setMessageObserver(new MessageObserver() {
+            public void onMessage(Message message) {
+                responses.add(message);
+            }
+        });
+        conduit.setXmppConnection(client);
+    }
+
+    @After
+    public void tearDown() {
+        conduit.close();
+        destination.shutdown();
+    }
+
+    @Test
+    public void testStreamedRoundTrip() throws Exception {
+        IQBytestreamTransfer clientTransfer = IQBytestreamTransfer.getInstanceFor(client);
+        IQBytestreamTransfer serviceTransfer = IQBytestreamTransfer.getInstanceFor(service);
+        // several blocks per envelope
+        clientTransfer.setBlockSize(4096);
+        serviceTransfer.setBlockSize(4096);
+        long clientSent = clientTransfer.getSentCount();
+        long serviceReceived = serviceTransfer.getReceivedCount();
+        long serviceSent = serviceTransfer.getSentCount();
+        long clientReceived = clientTransfer.getReceivedCount();
+
+        // the bytes written by the sender are received as they are
+        String request = createEnvelope("request", 20000);
+        send(request);
+        Message received = requests.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("No request received", received);
+        assertEquals(request, IOUtils.toString(received.getContent(InputStream.class), "UTF-8"));
+        assertEquals(clientSent + 1, clientTransfer.getSentCount());
+        assertEquals(serviceReceived + 1, serviceTransfer.getReceivedCount());
+
+        String reply = createEnvelope("reply", 30000);
+        reply(received, reply);
+        Message response = responses.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("No response received", response);
+        assertEquals(reply, IOUtils.toString(response.getContent(InputStream.class), "UTF-8"));
+        assertEquals(serviceSent + 1, serviceTransfer.getSentCount());
+        assertEquals(clientReceived + 1, clientTransfer.getReceivedCount());
+    }
+
+    @Test
+    public void testBelowThreshold() throws Exception {
+        IQBytestreamTransfer clientTransfer = IQBytestreamTransfer.getInstanceFor(client);
+        IQBytestreamTransfer serviceTransfer = IQBytestreamTransfer.getInstanceFor(service);
+        long clientSent = clientTransfer.getSentCount();
+        long serviceSent = serviceTransfer.getSentCount();
+
+        send(ENVELOPE);
+        Message received = requests.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("No request received", received);
+        // parsed from the packet, the bytes aren't kept
+        assertTrue(IOUtils.toString(received.getContent(InputStream.class)).contains("echo"));
+
+        reply(received, ENVELOPE);
+        Message response = responses.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("No response received", response);
+        assertTrue(IOUtils.toString(response.getContent(InputStream.class)).contains("echo"));
+
+        // sent in the IQ packets
+        assertEquals(clientSent, clientTransfer.getSentCount());
+        assertEquals(serviceSent, serviceTransfer.getSentCount());
+    }
+
+    @Test
+    public void testCanSend() {
+        assertTrue(IQBytestreamTransfer.canSend("service@localhost/soap"));
+        assertFalse(IQBytestreamTransfer.canSend("service@localhost"));
+        assertFalse(IQBytestreamTransfer.canSend(null));
+    }
+
+    private void send(String envelope) throws IOException {
+        Message msg = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+        exchange.setOutMessage(msg);
+        msg.setExchange(exchange);
+        conduit.prepare(msg);
+        write(msg, envelope);
+        conduit.close(msg);
+    }
+
+    private void reply(Message request, String envelope) throws IOException {
+        Exchange exchange = request.getExchange();
+        Conduit backChannel = exchange.getConduit(request);
+        Message msg = new MessageImpl();
+        exchange.setOutMessage(msg);
+        msg.setExchange(exchange);
+        backChannel.prepare(msg);
+        write(msg, envelope);
+        backChannel.close(msg);
+    }
+
+    private static void write(Message msg, String envelope) throws IOException {
+        OutputStream out = msg.getContent(OutputStream.class);
+        out.write(envelope.getBytes("UTF-8"));
+        out.flush();
+    }
+
+    /**
+     * @return An envelope of about the given size, the text has characters that are escaped in XML.
+     */
+    private static String createEnvelope(String name, int size) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < size; i++) {
+            text.append("<line n=\"").append(i).append("\">a &amp; b &lt; c \u00e9</line>");
+        }
+        return "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body><" + name
+               + " xmlns=\"http://test\">" + text + "</" + name + "></soap:Body></soap:Envelope>";
+    }
+}
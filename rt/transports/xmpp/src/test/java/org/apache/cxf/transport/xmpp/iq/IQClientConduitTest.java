@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.io.CachedOutputStream;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.xmpp.AbstractXMPPTester;
+import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
+import org.apache.cxf.wsdl.EndpointReferenceUtils;
+import org.jivesoftware.smack.PacketCollector;
+import org.jivesoftware.smack.filter.PacketTypeFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.XMPPError;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IQClientConduitTest extends AbstractXMPPTester {
+
+    private static final long TIMEOUT = 5000;
+
+    private TestConnection service;
+    private PacketCollector requests;
+    private IQClientConduit conduit;
+    private BlockingQueue<Message> responses = new LinkedBlockingQueue<Message>();
+
+    @Before
+    public void setUp() throws Exception {
+        service = connect("service", "soap");
+        requests = service.createPacketCollector(new PacketTypeFilter(SoapPacket.class));
+        conduit = new IQClientConduit(EndpointReferenceUtils.getEndpointReference(service.getUser()));
+        conduit.setMessageObserver(new MessageObserver() {
+            public void onMessage(Message message) {
+                responses.add(message);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        conduit.close();
+        requests.cancel();
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        conduit.setXmppConnection(connect("client", "test"));
+        Exchange exchange = send();
+        reply(receive());
+
+        Message response = responses.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(response);
+        assertSame(exchange.getInMessage(), response);
+        assertTrue(IOUtils.toString(response.getContent(InputStream.class)).contains("echo"));
+        assertEquals(1, conduit.getCompletedCount());
+        assertEquals(0, conduit.getInFlightCount());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        conduit.setXmppConnection(connect("client", "test"));
+        conduit.setRequestTimeout(100);
+        send();
+        SoapPacket request = receive();
+
+        Message fault = responses.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(fault);
+        assertTrue(fault.getContent(Exception.class).getCause() instanceof SocketTimeoutException);
+        assertEquals(1, conduit.getExpiredCount());
+
+        // the late response is dropped
+        reply(request);
+        assertNull(responses.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, conduit.getCompletedCount());
+    }
+
+    @Test
+    public void testResourceConstraintReply() throws Exception {
+        conduit.setXmppConnection(connect("client", "test"));
+        Exchange exchange = send();
+        SoapPacket request = receive();
+
+        IQ error = new IQ() {
+            public String getChildElementXML() {
+                return null;
+            }
+        };
+        error.setType(IQ.Type.ERROR);
+        error.setPacketID(request.getPacketID());
+        error.setTo(request.getFrom());
+        error.setError(new XMPPError(XMPPError.Condition.resource_constraint));
+        service.sendPacket(error);
+
+        // fails right away, the instance is online so it doesn't fail over
+        Message fault = responses.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(fault);
+        assertTrue(fault.getContent(Exception.class).getMessage().contains("resource-constraint"));
+        assertNull(exchange.getOutMessage().getContent(Exception.class));
+    }
+
+    @Test
+    public void testResendAfterReconnect() throws Exception {
+        TestConnection first = connect("client", "first");
+        TestConnection second = connect("client", "second");
+        conduit.setXmppConnection(first);
+        conduit.setXmppConnection(second);
+        conduit.setResendOnReconnect(true);
+        int listeners = first.getConnectionListenerCount();
+
+        // balanced over the connections
+        send();
+        send();
+        SoapPacket request1 = receive();
+        SoapPacket request2 = receive();
+        assertFalse(request1.getFrom().equals(request2.getFrom()));
+        SoapPacket sentOnFirst = first.getUser().equals(request1.getFrom()) ? request1 : request2;
+
+        // only the request sent on the reconnected connection is sent again
+        first.fireReconnectionSuccessful();
+        SoapPacket resent = receive();
+        assertEquals(sentOnFirst.getPacketID(), resent.getPacketID());
+        assertEquals(first.getUser(), resent.getFrom());
+        assertNull(requests.nextResult(300));
+        assertEquals(1, conduit.getResentCount());
+
+        // the listener of the conduit is removed, the shared ones stay
+        conduit.close();
+        assertEquals(listeners - 1, first.getConnectionListenerCount());
+    }
+
+    @Test
+    public void testInstanceUnavailable() throws Exception {
+        conduit.setXmppConnection(connect("client", "test"));
+        Exchange exchange = send();
+        receive();
+
+        service.disconnect();
+        Message fault = responses.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(fault);
+        assertTrue(fault.getContent(Exception.class).getCause() instanceof ConnectException);
+        // set on the request so the FailoverFeature sends it again
+        assertSame(fault.getContent(Exception.class), exchange.getOutMessage().getContent(Exception.class));
+        assertEquals(1, conduit.getUnavailableCount());
+        assertEquals(0, conduit.getInFlightCount());
+
+        try {
+            send();
+            fail("Sent to an instance that is offline");
+        } catch (ConnectException ex) {
+            // expected
+        }
+    }
+
+    private Exchange send() throws IOException {
+        Message msg = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+        exchange.setOutMessage(msg);
+        msg.setExchange(exchange);
+        CachedOutputStream out = new CachedOutputStream();
+        out.write(ENVELOPE.getBytes("UTF-8"));
+        msg.setContent(OutputStream.class, out);
+        conduit.close(msg);
+        return exchange;
+    }
+
+    private SoapPacket receive() {
+        SoapPacket request = (SoapPacket)requests.nextResult(TIMEOUT);
+        assertNotNull("No request received", request);
+        return request;
+    }
+
+    private void reply(SoapPacket request) {
+        SoapPacket response = new SoapPacket();
+        response.setType(IQ.Type.RESULT);
+        response.setPacketID(request.getPacketID());
+        response.setTo(request.getFrom());
+        response.setEnvelope(ENVELOPE);
+        service.sendPacket(response);
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.service.model.EndpointInfo;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.xmpp.AbstractXMPPTester;
+import org.apache.cxf.transport.xmpp.common.RateLimiter;
+import org.apache.cxf.transport.xmpp.common.WorkQueueDispatcher;
+import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
+import org.apache.cxf.workqueue.AutomaticWorkQueueImpl;
+import org.jivesoftware.smack.PacketCollector;
+import org.jivesoftware.smack.filter.PacketIDFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.XMPPError;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IQDestinationTest extends AbstractXMPPTester {
+
+    private static final long TIMEOUT = 5000;
+
+    private TestConnection service;
+    private TestConnection client;
+    private IQDestination destination;
+    private BlockingQueue<Message> received = new LinkedBlockingQueue<Message>();
+    private int packetCount;
+
+    @Before
+    public void setUp() throws Exception {
+        service = connect("service", "soap");
+        client = connect("client", "test");
+        EndpointInfo endpointInfo = new EndpointInfo();
+        endpointInfo.setAddress(service.getUser());
+        destination = new IQDestination(endpointInfo);
+        destination.setMessageObserver(new MessageObserver() {
+            public void onMessage(Message message) {
+                received.add(message);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        destination.shutdown();
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        destination.setXmppConnection(service);
+        sendRequest();
+
+        Message request = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(request);
+        assertNotNull(request.getExchange().getConduit(request));
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        destination.setInboundRateLimiter(new RateLimiter(0.01, 1));
+        destination.setXmppConnection(service);
+
+        assertNull(sendRequest().nextResult(300));
+        assertNotNull(received.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        assertThrottled(sendRequest().nextResult(TIMEOUT));
+        assertNull(received.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testWorkQueueFull() throws Exception {
+        AutomaticWorkQueueImpl queue = new AutomaticWorkQueueImpl(1, 1, 1, 1, 60000, "test");
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        try {
+            // one running and one queued
+            queue.execute(blocking);
+            assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            queue.execute(blocking);
+            WorkQueueDispatcher dispatcher = new WorkQueueDispatcher(null, "test", 10);
+            dispatcher.setWorkQueue(queue);
+            destination.setDispatcher(dispatcher);
+            destination.setXmppConnection(service);
+
+            // the sender is told to wait, the request isn't processed on the reader thread
+            assertThrottled(sendRequest().nextResult(TIMEOUT));
+            assertNull(received.poll(300, TimeUnit.MILLISECONDS));
+        } finally {
+            release.countDown();
+            queue.shutdown(false);
+        }
+    }
+
+    @Test
+    public void testSharedBackChannel() throws Exception {
+        destination.setXmppConnection(service);
+        TestConnection other = connect("client", "other");
+        PacketCollector replies1 = sendRequest(client, service.getUser());
+        PacketCollector replies2 = sendRequest(other, service.getUser());
+        Message request1 = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        Message request2 = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(request1);
+        assertNotNull(request2);
+        if (!client.getUser().equals(request1.getExchange().get(SoapPacket.class).getFrom())) {
+            // received in the other order
+            Message swap = request1;
+            request1 = request2;
+            request2 = swap;
+        }
+        Conduit backChannel = request1.getExchange().getConduit(request1);
+        assertSame(backChannel, request2.getExchange().getConduit(request2));
+
+        // the reply address is taken from the exchange, not from the last request
+        reply(request2, "second");
+        reply(request1, "first");
+        assertReply(replies1.nextResult(TIMEOUT), client, service, "first");
+        assertReply(replies2.nextResult(TIMEOUT), other, service, "second");
+    }
+
+    @Test
+    public void testBackChannelPerConnection() throws Exception {
+        TestConnection second = connect("service", "second");
+        destination.setXmppConnection(service);
+        destination.setXmppConnection(second);
+        PacketCollector replies1 = sendRequest(client, service.getUser());
+        Message request1 = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(request1);
+        PacketCollector replies2 = sendRequest(client, second.getUser());
+        Message request2 = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(request2);
+        assertNotSame(request1.getExchange().getConduit(request1), request2.getExchange().getConduit(request2));
+
+        // replied on the connection the request was sent to
+        reply(request1, "first");
+        reply(request2, "second");
+        assertReply(replies1.nextResult(TIMEOUT), client, service, "first");
+        assertReply(replies2.nextResult(TIMEOUT), client, second, "second");
+
+        // a later request on the connection gets the same back channel
+        sendRequest(client, second.getUser());
+        Message request3 = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(request3);
+        assertSame(request2.getExchange().getConduit(request2), request3.getExchange().getConduit(request3));
+    }
+
+    private PacketCollector sendRequest() {
+        return sendRequest(client, service.getUser());
+    }
+
+    private PacketCollector sendRequest(TestConnection from, String to) {
+        SoapPacket request = new SoapPacket();
+        request.setType(IQ.Type.SET);
+        request.setPacketID("cxf-test-" + ++packetCount);
+        request.setTo(to);
+        request.setEnvelope(ENVELOPE);
+        PacketCollector replies = from.createPacketCollector(new PacketIDFilter(request.getPacketID()));
+        from.sendPacket(request);
+        return replies;
+    }
+
+    private static void reply(Message request, String body) throws IOException {
+        Exchange exchange = request.getExchange();
+        Message reply = new MessageImpl();
+        exchange.setOutMessage(reply);
+        reply.setExchange(exchange);
+        Conduit backChannel = exchange.getConduit(request);
+        backChannel.prepare(reply);
+        reply.getContent(OutputStream.class).write(ENVELOPE.replace("echo", body).getBytes("UTF-8"));
+        backChannel.close(reply);
+    }
+
+    private static void assertReply(Packet reply, TestConnection client, TestConnection service, String body)
+        throws IOException {
+        assertNotNull("No reply received", reply);
+        assertEquals(IQ.Type.RESULT, ((IQ)reply).getType());
+        assertEquals(client.getUser(), reply.getTo());
+        assertEquals(service.getUser(), reply.getFrom());
+        assertTrue(IOUtils.toString(((SoapPacket)reply).getEnvelopeInputStream()).contains(body));
+    }
+
+    private static void assertThrottled(Packet reply) {
+        assertNotNull("No reply received", reply);
+        assertEquals(IQ.Type.ERROR, ((IQ)reply).getType());
+        assertEquals(XMPPError.Condition.resource_constraint.toString(), reply.getError().getCondition());
+        assertEquals(XMPPError.Type.WAIT, reply.getError().getType());
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.packet.Packet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IQExchangeCorrelationTableTest extends Assert {
+
+    private BlockingQueue<String> expired = new LinkedBlockingQueue<String>();
+    private IQExchangeCorrelationTable table;
+
+    @After
+    public void tearDown() {
+        if (table != null) {
+            table.shutdown();
+        }
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        table = new IQExchangeCorrelationTable(new Recorder(), 10, 8);
+        Exchange exchange = new ExchangeImpl();
+        table.put("cxf-a-1", exchange, 50);
+        assertEquals(1, table.getInFlightCount());
+
+        assertEquals("cxf-a-1", expired.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, table.getExpiredCount());
+        assertEquals(0, table.getInFlightCount());
+
+        // a late response finds no exchange
+        assertNull(table.remove("cxf-a-1"));
+        assertEquals(0, table.getCompletedCount());
+    }
+
+    @Test
+    public void testExpiryAfterRotation() throws Exception {
+        // the timeout is longer than a turn of the wheel
+        table = new IQExchangeCorrelationTable(new Recorder(), 10, 4);
+        long start = System.currentTimeMillis();
+        table.put("cxf-a-1", new ExchangeImpl(), 200);
+
+        assertEquals("cxf-a-1", expired.poll(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    @Test
+    public void testPutWhileTicking() throws Exception {
+        // a turn of the wheel takes 5 seconds, an entry that misses its
+        // bucket would wait that long
+        table = new IQExchangeCorrelationTable(new Recorder(), 1, 5000);
+        final int threads = 4;
+        final int entries = 2000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final String prefix = "cxf-" + t + "-";
+            new Thread() {
+                public void run() {
+                    for (int x = 0; x < entries; x++) {
+                        table.put(prefix + x, new ExchangeImpl(), 1 + x % 3);
+                        if (x % 50 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                    done.countDown();
+                }
+            } .start();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (table.getExpiredCount() < threads * entries && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(threads * entries, table.getExpiredCount());
+        assertEquals(0, table.getInFlightCount());
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        table = new IQExchangeCorrelationTable(new Recorder(), 10, 8);
+        Exchange exchange = new ExchangeImpl();
+        table.put("cxf-a-1", exchange, 50);
+
+        assertSame(exchange, table.remove("cxf-a-1"));
+        assertNull(expired.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, table.getCompletedCount());
+        assertEquals(0, table.getExpiredCount());
+    }
+
+    @Test
+    public void testListenerException() throws Exception {
+        table = new IQExchangeCorrelationTable(new IQExchangeCorrelationTable.TimeoutListener() {
+            public void exchangeExpired(String packetId, Exchange exchange) {
+                expired.add(packetId);
+                throw new IllegalStateException("expected");
+            }
+        }, 10, 8);
+        table.put("cxf-a-1", new ExchangeImpl(), 20);
+        assertEquals("cxf-a-1", expired.poll(5, TimeUnit.SECONDS));
+
+        // the timer still runs, for this table and for new ones
+        table.put("cxf-a-2", new ExchangeImpl(), 20);
+        assertEquals("cxf-a-2", expired.poll(5, TimeUnit.SECONDS));
+
+        IQExchangeCorrelationTable other = new IQExchangeCorrelationTable(new Recorder(), 10, 8);
+        try {
+            other.put("cxf-b-1", new ExchangeImpl(), 20);
+            assertEquals("cxf-b-1", expired.poll(5, TimeUnit.SECONDS));
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    public void testPendingRequests() throws Exception {
+        table = new IQExchangeCorrelationTable(new Recorder());
+        XMPPConnection first = new XMPPConnection("localhost");
+        XMPPConnection second = new XMPPConnection("localhost");
+        Packet request1 = createRequest("cxf-a-1");
+        Packet request2 = createRequest("cxf-a-2");
+        table.put("cxf-a-1", new ExchangeImpl(), request1, first, 10000);
+        table.put("cxf-a-2", new ExchangeImpl(), request2, second, 10000);
+        table.put("cxf-a-3", new ExchangeImpl(), 10000);
+
+        List<Packet> pending = table.getPendingRequests(first);
+        assertEquals(1, pending.size());
+        assertSame(request1, pending.get(0));
+
+        table.remove("cxf-a-2");
+        assertTrue(table.getPendingRequests(second).isEmpty());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        table = new IQExchangeCorrelationTable(new Recorder());
+        table.put("cxf-a-1", new ExchangeImpl(), 10000);
+        table.shutdown();
+
+        assertEquals("cxf-a-1", expired.poll());
+        assertEquals(0, table.getInFlightCount());
+    }
+
+    private static Packet createRequest(String packetId) {
+        SoapPacket packet = new SoapPacket();
+        packet.setPacketID(packetId);
+        packet.setTo("service@localhost/soap");
+        return packet;
+    }
+
+    private class Recorder implements IQExchangeCorrelationTable.TimeoutListener {
+        public void exchangeExpired(String packetId, Exchange exchange) {
+            expired.add(packetId);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.iq;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.cxf.transport.xmpp.AbstractXMPPTester;
+import org.apache.cxf.transport.xmpp.smackx.soap.SoapPacket;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.XMPPError;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IQPacketDemultiplexerTest extends AbstractXMPPTester {
+
+    private TestConnection connection;
+    private IQPacketDemultiplexer demux;
+    private Recorder first = new Recorder();
+    private Recorder second = new Recorder();
+
+    @Before
+    public void setUp() throws Exception {
+        connection = connect("demux", "test");
+        demux = IQPacketDemultiplexer.getInstanceFor(connection);
+    }
+
+    @Test
+    public void testRequestsByJid() {
+        demux.addRequestListener("service@localhost/first", first);
+        demux.addRequestListener("service@localhost/second", second);
+
+        demux.processPacket(createPacket(IQ.Type.SET, "cxf-abc-1", "service@localhost/first"));
+        demux.processPacket(createPacket(IQ.Type.GET, "cxf-abc-2", "service@localhost/second"));
+        demux.processPacket(createPacket(IQ.Type.SET, "cxf-abc-3", "service@localhost/third"));
+        assertEquals(1, first.packets.size());
+        assertEquals("cxf-abc-1", first.packets.get(0).getPacketID());
+        assertEquals(1, second.packets.size());
+        assertEquals("cxf-abc-2", second.packets.get(0).getPacketID());
+
+        demux.removeRequestListener("service@localhost/first", first);
+        demux.processPacket(createPacket(IQ.Type.SET, "cxf-abc-4", "service@localhost/first"));
+        assertEquals(1, first.packets.size());
+    }
+
+    @Test
+    public void testResponsesByPacketIDPrefix() {
+        demux.addResponseListener("cxf-abc-", first);
+        demux.addResponseListener("cxf-def-", second);
+
+        demux.processPacket(createPacket(IQ.Type.RESULT, "cxf-abc-1", "client@localhost/a"));
+        demux.processPacket(createPacket(IQ.Type.RESULT, "cxf-def-1", "client@localhost/a"));
+        demux.processPacket(createPacket(IQ.Type.RESULT, "cxf-xyz-1", "client@localhost/a"));
+
+        // an error reply of the server without a SOAP envelope
+        IQ error = createPacket(IQ.Type.ERROR, "cxf-def-2", "client@localhost/a");
+        error.setError(new XMPPError(XMPPError.Condition.recipient_unavailable));
+        demux.processPacket(error);
+
+        assertEquals(1, first.packets.size());
+        assertEquals("cxf-abc-1", first.packets.get(0).getPacketID());
+        assertEquals(2, second.packets.size());
+        assertSame(error, second.packets.get(1));
+
+        // a response is never routed by its JID
+        demux.addRequestListener("client@localhost/a", first);
+        demux.removeResponseListener("cxf-abc-", first);
+        demux.processPacket(createPacket(IQ.Type.RESULT, "cxf-abc-2", "client@localhost/a"));
+        assertEquals(1, first.packets.size());
+    }
+
+    @Test
+    public void testReceived() throws Exception {
+        demux.addRequestListener(connection.getUser(), first);
+        TestConnection client = connect("client", "test");
+        client.sendPacket(createPacket(IQ.Type.SET, "cxf-abc-1", connection.getUser()));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (first.packets.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, first.packets.size());
+        assertEquals(client.getUser(), first.packets.get(0).getFrom());
+    }
+
+    @Test
+    public void testConnectionClosed() throws Exception {
+        assertSame(demux, IQPacketDemultiplexer.getInstanceFor(connection));
+        assertTrue(connection.hasPacketListener(demux));
+        int listeners = connection.getConnectionListenerCount();
+
+        connection.disconnect();
+        assertFalse(connection.hasPacketListener(demux));
+        assertTrue(connection.getConnectionListenerCount() < listeners);
+    }
+
+    private static IQ createPacket(IQ.Type type, String packetId, String to) {
+        SoapPacket packet = new SoapPacket();
+        packet.setType(type);
+        packet.setPacketID(packetId);
+        packet.setTo(to);
+        packet.setEnvelope(ENVELOPE);
+        return packet;
+    }
+
+    private static class Recorder implements PacketListener {
+        private final List<Packet> packets = new CopyOnWriteArrayList<Packet>();
+
+        public void processPacket(Packet packet) {
+            packets.add(packet);
+        }
+    }
+}
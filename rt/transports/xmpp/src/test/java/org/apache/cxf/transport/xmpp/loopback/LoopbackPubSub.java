@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.loopback;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jivesoftware.smack.util.StringUtils;
+
+/**
+ * The publish-subscribe service of the {@link LoopbackXMPPServer}. Every node is a leaf node with the default
+ * configuration, items aren't stored and are sent to the subscribers when they are published. It also
+ * publishes the personal events of an account, to every other available client.
+ */
+final class LoopbackPubSub {
+
+    private static final String EVENT_NAMESPACE = LoopbackXMPPServer.PUBSUB_NAMESPACE + "#event";
+    private static final String OWNER_NAMESPACE = LoopbackXMPPServer.PUBSUB_NAMESPACE + "#owner";
+
+    private final LoopbackXMPPServer server;
+    private final String address;
+
+    // Node owners and subscribers, both by bare JID.
+    private final ConcurrentMap<String, String> owners = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, Set<String>> subscribers =
+        new ConcurrentHashMap<String, Set<String>>();
+
+    private final AtomicLong ids = new AtomicLong();
+
+    LoopbackPubSub(LoopbackXMPPServer server, String address) {
+        this.server = server;
+        this.address = address;
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    /**
+     * Handles a stanza sent to the pubsub service.
+     */
+    void handle(LoopbackSession session, XmlElement stanza) {
+        XmlElement query = stanza.getFirstChild();
+        String type = stanza.getAttribute("type");
+        if (!"iq".equals(stanza.getName()) || "result".equals(type) || "error".equals(type)) {
+            return;
+        } else if (query == null) {
+            server.sendError(session, stanza, "modify", "bad-request");
+        } else if (LoopbackXMPPServer.DISCO_INFO_NAMESPACE.equals(query.getNamespace())) {
+            discoInfo(session, stanza, query.getAttribute("node"));
+        } else if (LoopbackXMPPServer.DISCO_ITEMS_NAMESPACE.equals(query.getNamespace())) {
+            StringBuilder items = new StringBuilder("<query xmlns='")
+                .append(LoopbackXMPPServer.DISCO_ITEMS_NAMESPACE).append("'>");
+            for (String node : owners.keySet()) {
+                items.append("<item jid='").append(address).append("' node='")
+                    .append(StringUtils.escapeForXML(node)).append("'/>");
+            }
+            server.sendResult(session, stanza, items.append("</query>").toString());
+        } else if (LoopbackXMPPServer.PUBSUB_NAMESPACE.equals(query.getNamespace())
+                   || OWNER_NAMESPACE.equals(query.getNamespace())) {
+            pubSub(session, stanza, query);
+        } else {
+            server.sendError(session, stanza, "cancel", "feature-not-implemented");
+        }
+    }
+
+    /**
+     * Handles a personal event published by an account, it is sent to every other available client from
+     * the bare JID of the publisher.
+     */
+    void handlePersonal(LoopbackSession session, XmlElement iq) {
+        XmlElement publish = iq.getFirstChild().getChild("publish", null);
+        if (publish == null || !"set".equals(iq.getAttribute("type"))) {
+            server.sendError(session, iq, "cancel", "feature-not-implemented");
+            return;
+        }
+        server.sendResult(session, iq, null);
+        String event = event(null, publish);
+        for (LoopbackSession other : server.getAvailableSessions(session)) {
+            other.send(message(session.getBareJid(), other.getFullJid(), event));
+        }
+    }
+
+    private void discoInfo(LoopbackSession session, XmlElement iq, String node) {
+        StringBuilder info = new StringBuilder("<query xmlns='")
+            .append(LoopbackXMPPServer.DISCO_INFO_NAMESPACE).append('\'');
+        if (node == null) {
+            info.append("><identity category='pubsub' type='service'/>");
+        } else if (owners.containsKey(node)) {
+            info.append(" node='").append(StringUtils.escapeForXML(node))
+                .append("'><identity category='pubsub' type='leaf'/>");
+        } else {
+            server.sendError(session, iq, "cancel", "item-not-found");
+            return;
+        }
+        info.append("<feature var='").append(LoopbackXMPPServer.PUBSUB_NAMESPACE).append("'/></query>");
+        server.sendResult(session, iq, info.toString());
+    }
+
+    private void pubSub(LoopbackSession session, XmlElement iq, XmlElement query) {
+        XmlElement action = query.getFirstChild();
+        if (action == null) {
+            server.sendError(session, iq, "modify", "bad-request");
+            return;
+        }
+        String node = action.getAttribute("node");
+        String name = action.getName();
+        String bareJid = session.getBareJid();
+        if ("create".equals(name)) {
+            if (node == null) {
+                node = "node" + ids.incrementAndGet();
+            }
+            if (owners.putIfAbsent(node, bareJid) != null) {
+                server.sendError(session, iq, "cancel", "conflict");
+                return;
+            }
+            subscribers.put(node, new CopyOnWriteArraySet<String>());
+            server.sendResult(session, iq, pubSubElement(LoopbackXMPPServer.PUBSUB_NAMESPACE, "<create node='"
+                                                         + StringUtils.escapeForXML(node) + "'/>"));
+        } else if ("subscriptions".equals(name) || "affiliations".equals(name)) {
+            server.sendResult(session, iq, pubSubElement(query.getNamespace(), list(name, bareJid, node)));
+        } else if (node == null || !owners.containsKey(node)) {
+            server.sendError(session, iq, "cancel", "item-not-found");
+        } else if ("subscribe".equals(name)) {
+            String jid = action.getAttribute("jid") != null ? action.getAttribute("jid") : bareJid;
+            subscribers.get(node).add(StringUtils.parseBareAddress(jid));
+            server.sendResult(session, iq, pubSubElement(LoopbackXMPPServer.PUBSUB_NAMESPACE,
+                                                         subscription(node, jid, "subscribed")));
+        } else if ("unsubscribe".equals(name)) {
+            subscribers.get(node).remove(bareJid);
+            server.sendResult(session, iq, null);
+        } else if ("publish".equals(name)) {
+            publish(session, iq, node, action);
+        } else if ("delete".equals(name) && OWNER_NAMESPACE.equals(query.getNamespace())) {
+            if (!bareJid.equals(owners.get(node))) {
+                server.sendError(session, iq, "auth", "forbidden");
+                return;
+            }
+            owners.remove(node);
+            notify(subscribers.remove(node), event(node, null));
+            server.sendResult(session, iq, null);
+        } else {
+            server.sendError(session, iq, "cancel", "feature-not-implemented");
+        }
+    }
+
+    private void publish(LoopbackSession session, XmlElement iq, String node, XmlElement publish) {
+        XmlElement published = newIds(publish);
+        StringBuilder ack = new StringBuilder("<publish node='" + StringUtils.escapeForXML(node) + "'>");
+        for (XmlElement item : published.getChildren()) {
+            ack.append("<item id='").append(StringUtils.escapeForXML(item.getAttribute("id"))).append("'/>");
+        }
+        server.sendResult(session, iq, pubSubElement(LoopbackXMPPServer.PUBSUB_NAMESPACE,
+                                                     ack.append("</publish>").toString()));
+        notify(subscribers.get(node), event(node, published));
+    }
+
+    private void notify(Set<String> jids, String event) {
+        if (jids != null) {
+            for (String jid : jids) {
+                server.send(jid, message(address, jid, event));
+            }
+        }
+    }
+
+    /**
+     * @return The items of a publish request, the items without an ID are given one.
+     */
+    private XmlElement newIds(XmlElement publish) {
+        for (XmlElement item : publish.getChildren()) {
+            if (item.getAttribute("id") == null) {
+                item.getAttributes().put("id", "item" + ids.incrementAndGet());
+            }
+        }
+        return publish;
+    }
+
+    private static String message(String from, String to, String childXml) {
+        return "<message from='" + StringUtils.escapeForXML(from) + "' to='" + StringUtils.escapeForXML(to)
+               + "'>" + childXml + "</message>";
+    }
+
+    /**
+     * @param items The published items, null if the node was deleted.
+     */
+    private static String event(String node, XmlElement items) {
+        String nodeName = node != null ? node : items.getAttribute("node");
+        StringBuilder out = new StringBuilder(256);
+        out.append("<event xmlns='").append(EVENT_NAMESPACE).append("'>");
+        if (items == null) {
+            out.append("<delete node='").append(StringUtils.escapeForXML(nodeName)).append("'/>");
+        } else {
+            out.append("<items node='").append(StringUtils.escapeForXML(nodeName)).append("'>");
+            for (XmlElement item : items.getChildren()) {
+                out.append("<item id='").append(StringUtils.escapeForXML(item.getAttribute("id")))
+                    .append("'>").append(item.getInnerXml()).append("</item>");
+            }
+            out.append("</items>");
+        }
+        return out.append("</event>").toString();
+    }
+
+    /**
+     * @return The subscriptions or affiliations of an account, of a single node if it isn't null.
+     */
+    private String list(String name, String bareJid, String node) {
+        StringBuilder out = new StringBuilder("<" + name + ">");
+        for (Map.Entry<String, Set<String>> entry : subscribers.entrySet()) {
+            if (node != null && !node.equals(entry.getKey())) {
+                continue;
+            }
+            boolean owner = bareJid.equals(owners.get(entry.getKey()));
+            boolean subscribed = entry.getValue().contains(bareJid);
+            if ("subscriptions".equals(name) && subscribed) {
+                out.append(subscription(entry.getKey(), bareJid, "subscribed"));
+            } else if ("affiliations".equals(name) && (owner || subscribed)) {
+                out.append("<affiliation node='").append(StringUtils.escapeForXML(entry.getKey()))
+                    .append("' affiliation='").append(owner ? "owner" : "member").append("'/>");
+            }
+        }
+        return out.append("</").append(name).append('>').toString();
+    }
+
+    private static String subscription(String node, String jid, String state) {
+        return "<subscription node='" + StringUtils.escapeForXML(node) + "' jid='"
+               + StringUtils.escapeForXML(jid) + "' subscription='" + state + "'/>";
+    }
+
+    private static String pubSubElement(String namespace, String childXml) {
+        return "<pubsub xmlns='" + namespace + "'>" + childXml + "</pubsub>";
+    }
+}
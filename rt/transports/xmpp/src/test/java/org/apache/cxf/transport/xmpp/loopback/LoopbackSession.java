@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.loopback;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.helpers.IOUtils;
+import org.jivesoftware.smack.util.StringUtils;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * One client connection to the {@link LoopbackXMPPServer}. The session reads the stream of the client on its
+ * own thread, authenticates the client with SASL PLAIN, binds its resource and passes every stanza after
+ * that to the server for routing.
+ */
+final class LoopbackSession implements Runnable {
+
+    private static final Logger LOGGER = LogUtils.getLogger(LoopbackSession.class);
+
+    private static final String STREAM_NAMESPACE = "http://etherx.jabber.org/streams";
+    private static final String SASL_NAMESPACE = "urn:ietf:params:xml:ns:xmpp-sasl";
+    private static final String BIND_NAMESPACE = "urn:ietf:params:xml:ns:xmpp-bind";
+    private static final String SESSION_NAMESPACE = "urn:ietf:params:xml:ns:xmpp-session";
+
+    private final LoopbackXMPPServer server;
+    private final Socket socket;
+    private final Writer writer;
+
+    private String username;
+    private volatile String fullJid;
+    private volatile boolean closed;
+
+    // Set once the client sent its presence and requested its roster.
+    private volatile String presence;
+    private volatile boolean rosterRequested;
+
+    LoopbackSession(LoopbackXMPPServer server, Socket socket) throws IOException {
+        this.server = server;
+        this.socket = socket;
+        writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), IOUtils.UTF8_CHARSET));
+    }
+
+    public void run() {
+        try {
+            XmlPullParser parser = new MXParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                     IOUtils.UTF8_CHARSET)));
+            // A new stream is opened inside the first one after authentication.
+            int stanzaDepth = -1;
+            int eventType = parser.getEventType();
+            while (!closed && eventType != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    if ("stream".equals(parser.getName()) && STREAM_NAMESPACE.equals(parser.getNamespace())) {
+                        stanzaDepth = parser.getDepth() + 1;
+                        openStream();
+                    } else if (parser.getDepth() == stanzaDepth) {
+                        process(XmlElement.parse(parser));
+                    }
+                } else if (eventType == XmlPullParser.END_TAG && parser.getDepth() == stanzaDepth - 1) {
+                    break;
+                }
+                eventType = parser.next();
+            }
+        } catch (Exception e) {
+            if (!closed) {
+                LOGGER.log(Level.FINE, "Stream of " + fullJid + " failed", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    String getFullJid() {
+        return fullJid;
+    }
+
+    String getBareJid() {
+        return username + "@" + server.getDomain();
+    }
+
+    boolean isBound() {
+        return fullJid != null;
+    }
+
+    /**
+     * @return The last available presence sent by the client, null if it isn't available.
+     */
+    String getPresence() {
+        return presence;
+    }
+
+    void setPresence(String xml) {
+        presence = xml;
+    }
+
+    boolean isRosterRequested() {
+        return rosterRequested;
+    }
+
+    void setRosterRequested(boolean requested) {
+        rosterRequested = requested;
+    }
+
+    /**
+     * Writes XML to the client, a client that can't be written to is disconnected.
+     */
+    void send(String xml) {
+        try {
+            synchronized (writer) {
+                writer.write(xml);
+                writer.flush();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            synchronized (writer) {
+                writer.write("</stream:stream>");
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // Already closed by the client.
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+        server.sessionClosed(this);
+    }
+
+    private void openStream() {
+        StringBuilder out = new StringBuilder(512);
+        out.append("<?xml version='1.0' encoding='UTF-8'?>")
+            .append("<stream:stream xmlns='jabber:client' xmlns:stream='").append(STREAM_NAMESPACE)
+            .append("' id='").append(StringUtils.randomString(10))
+            .append("' from='").append(server.getDomain())
+            .append("' version='1.0'><stream:features>");
+        if (username == null) {
+            out.append("<mechanisms xmlns='").append(SASL_NAMESPACE)
+                .append("'><mechanism>PLAIN</mechanism></mechanisms>");
+        } else {
+            out.append("<bind xmlns='").append(BIND_NAMESPACE).append("'/>");
+            out.append("<session xmlns='").append(SESSION_NAMESPACE).append("'/>");
+        }
+        out.append("</stream:features>");
+        send(out.toString());
+    }
+
+    private void process(XmlElement element) {
+        if ("auth".equals(element.getName()) && SASL_NAMESPACE.equals(element.getNamespace())) {
+            authenticate(element);
+        } else if (username == null) {
+            send("<failure xmlns='" + SASL_NAMESPACE + "'><not-authorized/></failure>");
+            close();
+        } else if ("iq".equals(element.getName()) && element.getChild("bind", BIND_NAMESPACE) != null) {
+            bind(element);
+        } else if ("iq".equals(element.getName()) && element.getChild("session", SESSION_NAMESPACE) != null) {
+            send("<iq type='result' id='" + element.getAttribute("id") + "'/>");
+        } else if (isBound()) {
+            server.route(this, element);
+        }
+    }
+
+    private void authenticate(XmlElement auth) {
+        // PLAIN is authorization ID, authentication ID and password separated by NUL.
+        String[] credentials = new String(StringUtils.decodeBase64(auth.getText().trim()),
+                                          IOUtils.UTF8_CHARSET).split("\u0000", -1);
+        if (!"PLAIN".equals(auth.getAttribute("mechanism")) || credentials.length != 3
+            || !server.authenticate(credentials[1], credentials[2])) {
+            send("<failure xmlns='" + SASL_NAMESPACE + "'><not-authorized/></failure>");
+            return;
+        }
+        username = credentials[1];
+        send("<success xmlns='" + SASL_NAMESPACE + "'/>");
+    }
+
+    private void bind(XmlElement iq) {
+        XmlElement resource = iq.getChild("bind", BIND_NAMESPACE).getChild("resource", null);
+        String resourceName = resource != null && resource.getText().length() > 0
+            ? resource.getText() : StringUtils.randomString(8);
+        fullJid = getBareJid() + "/" + resourceName;
+        server.bind(this);
+
+        StringBuilder out = new StringBuilder(256);
+        out.append("<iq type='result' id='").append(StringUtils.escapeForXML(iq.getAttribute("id")))
+            .append("'><bind xmlns='").append(BIND_NAMESPACE).append("'><jid>")
+            .append(StringUtils.escapeForXML(fullJid)).append("</jid></bind></iq>");
+        send(out.toString());
+    }
+}
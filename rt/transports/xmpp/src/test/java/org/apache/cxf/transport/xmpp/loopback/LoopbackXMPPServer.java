@@ -0,0 +1,419 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.loopback;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.jivesoftware.smack.util.StringUtils;
+
+/**
+ * An in-process stand-in for an XMPP server, so the XMPP transports can be tested and measured without an
+ * external server. It implements just enough of the protocol for Smack clients:
+ * <ul>
+ * <li>SASL PLAIN authentication, resource binding and sessions.</li>
+ * <li>Routing of IQ and message stanzas between the connected clients.</li>
+ * <li>Presence broadcast, every account is in the roster of every other account.</li>
+ * <li>A publish-subscribe service (XEP-0060) at pubsub.<i>domain</i> and personal eventing (XEP-0163).</li>
+ * <li>Service discovery (XEP-0030) of the server, the pubsub nodes and the resources of an account.</li>
+ * </ul>
+ * There is no TLS, no stream compression, no offline storage and nothing is persisted.
+ */
+public class LoopbackXMPPServer {
+
+    static final String DISCO_INFO_NAMESPACE = "http://jabber.org/protocol/disco#info";
+    static final String DISCO_ITEMS_NAMESPACE = "http://jabber.org/protocol/disco#items";
+    static final String PUBSUB_NAMESPACE = "http://jabber.org/protocol/pubsub";
+
+    private static final Logger LOGGER = LogUtils.getLogger(LoopbackXMPPServer.class);
+
+    private static final String ROSTER_NAMESPACE = "jabber:iq:roster";
+    private static final String STANZA_ERROR_NAMESPACE = "urn:ietf:params:xml:ns:xmpp-stanzas";
+
+    private final String domain;
+    private final LoopbackPubSub pubSub;
+
+    // Passwords of the accounts, when empty any username and password can log in.
+    private final Map<String, String> users = new ConcurrentHashMap<String, String>();
+
+    // Sessions keyed by full JID, and every bare JID that ever logged in.
+    private final ConcurrentMap<String, LoopbackSession> sessions =
+        new ConcurrentHashMap<String, LoopbackSession>();
+    private final Set<String> accounts = new CopyOnWriteArraySet<String>();
+
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final AtomicInteger pushCount = new AtomicInteger();
+    private final AtomicLong stanzaCount = new AtomicLong();
+
+    public LoopbackXMPPServer() {
+        this("localhost");
+    }
+
+    /**
+     * @param domain The service name the clients connect to.
+     */
+    public LoopbackXMPPServer(String domain) {
+        this.domain = domain;
+        pubSub = new LoopbackPubSub(this, "pubsub." + domain);
+    }
+
+    /**
+     * Only lets the added accounts log in, by default any username and password are accepted.
+     */
+    public void addUser(String username, String password) {
+        users.put(username, password);
+    }
+
+    /**
+     * Listens on the loopback interface.
+     * 
+     * @param port Port to listen on, 0 for any free port.
+     * @throws IOException If the port can't be used.
+     */
+    public synchronized void start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        running = true;
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "xmpp-loopback-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Listens on any free port of the loopback interface.
+     */
+    public void start() throws IOException {
+        start(0);
+    }
+
+    /**
+     * Disconnects every client and stops listening.
+     */
+    public synchronized void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Nothing to do
+        }
+        for (LoopbackSession session : sessions.values()) {
+            session.close();
+        }
+    }
+
+    public String getHost() {
+        return "127.0.0.1";
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * @return Address of the publish-subscribe service.
+     */
+    public String getPubSubDomain() {
+        return pubSub.getAddress();
+    }
+
+    /**
+     * @return Number of clients that are connected and bound to a resource.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return Number of stanzas received from the clients after they were bound.
+     */
+    public long getStanzaCount() {
+        return stanzaCount.get();
+    }
+
+    boolean authenticate(String username, String password) {
+        return users.isEmpty() || password.equals(users.get(username));
+    }
+
+    /**
+     * A client bound a resource, a client already bound to it is disconnected.
+     */
+    void bind(LoopbackSession session) {
+        LoopbackSession previous = sessions.put(session.getFullJid(), session);
+        if (previous != null && previous != session) {
+            previous.close();
+        }
+        if (accounts.add(session.getBareJid())) {
+            // Add the new account to the rosters of the other accounts.
+            for (LoopbackSession other : sessions.values()) {
+                if (other.isRosterRequested() && !other.getBareJid().equals(session.getBareJid())) {
+                    other.send("<iq type='set' id='push" + pushCount.incrementAndGet() + "' to='"
+                               + StringUtils.escapeForXML(other.getFullJid()) + "'><query xmlns='"
+                               + ROSTER_NAMESPACE + "'>" + rosterItem(session.getBareJid())
+                               + "</query></iq>");
+                }
+            }
+        }
+    }
+
+    void sessionClosed(LoopbackSession session) {
+        if (session.getFullJid() == null || !sessions.remove(session.getFullJid(), session)) {
+            return;
+        }
+        if (session.getPresence() != null) {
+            broadcast(session, "<presence type='unavailable' from='"
+                               + StringUtils.escapeForXML(session.getFullJid()) + "'/>");
+        }
+    }
+
+    /**
+     * Routes a stanza sent by a bound client.
+     */
+    void route(LoopbackSession session, XmlElement stanza) {
+        stanzaCount.incrementAndGet();
+        String to = stanza.getAttribute("to");
+        if ("presence".equals(stanza.getName())) {
+            presence(session, stanza, to);
+        } else if (pubSub.getAddress().equals(to)) {
+            pubSub.handle(session, stanza);
+        } else if (to == null || to.equals(domain) || to.equals(session.getBareJid())) {
+            if ("iq".equals(stanza.getName())) {
+                handleServerIQ(session, stanza);
+            }
+        } else if ("iq".equals(stanza.getName()) && StringUtils.parseResource(to).length() == 0
+                   && isDiscoItems(stanza)) {
+            // The server answers for the resources of an account.
+            sendResult(session, stanza, discoItems(to));
+        } else {
+            deliver(session, stanza, to);
+        }
+    }
+
+    /**
+     * Sends a stanza to the session of a full JID, or to a session of a bare JID.
+     * 
+     * @return False if there is no session to deliver it to.
+     */
+    boolean send(String to, String xml) {
+        LoopbackSession target = findSession(to);
+        if (target == null) {
+            return false;
+        }
+        target.send(xml);
+        return true;
+    }
+
+    /**
+     * Sends a stanza to every session that sent an available presence, except the sender.
+     */
+    void broadcast(LoopbackSession sender, String xml) {
+        for (LoopbackSession other : sessions.values()) {
+            if (other != sender && other.getPresence() != null) {
+                other.send(xml);
+            }
+        }
+    }
+
+    /**
+     * @return The sessions that sent an available presence, except the sender.
+     */
+    List<LoopbackSession> getAvailableSessions(LoopbackSession sender) {
+        List<LoopbackSession> available = new ArrayList<LoopbackSession>();
+        for (LoopbackSession other : sessions.values()) {
+            if (other != sender && other.getPresence() != null) {
+                available.add(other);
+            }
+        }
+        return available;
+    }
+
+    void sendResult(LoopbackSession session, XmlElement iq, String childXml) {
+        StringBuilder out = new StringBuilder(256);
+        out.append("<iq type='result'");
+        XmlElement.appendAttribute(out, "id", iq.getAttribute("id"));
+        XmlElement.appendAttribute(out, "from", iq.getAttribute("to"));
+        XmlElement.appendAttribute(out, "to", session.getFullJid());
+        out.append('>').append(childXml == null ? "" : childXml).append("</iq>");
+        session.send(out.toString());
+    }
+
+    /**
+     * Replies to a request with an error, results and errors aren't answered.
+     */
+    void sendError(LoopbackSession session, XmlElement iq, String type, String condition) {
+        if ("result".equals(iq.getAttribute("type")) || "error".equals(iq.getAttribute("type"))) {
+            return;
+        }
+        StringBuilder out = new StringBuilder(256);
+        out.append("<iq type='error'");
+        XmlElement.appendAttribute(out, "id", iq.getAttribute("id"));
+        String from = iq.getAttribute("to") != null ? iq.getAttribute("to") : domain;
+        XmlElement.appendAttribute(out, "from", from);
+        XmlElement.appendAttribute(out, "to", session.getFullJid());
+        out.append("><error type='").append(type).append("'><").append(condition).append(" xmlns='")
+            .append(STANZA_ERROR_NAMESPACE).append("'/></error></iq>");
+        session.send(out.toString());
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(new LoopbackSession(this, socket),
+                                           "xmpp-loopback-session-" + sessionCount.incrementAndGet());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.log(Level.WARNING, "Failed to accept a client", e);
+                }
+            }
+        }
+    }
+
+    private void presence(LoopbackSession session, XmlElement presence, String to) {
+        String type = presence.getAttribute("type");
+        if (to != null && !to.equals(session.getBareJid())) {
+            if ("subscribe".equals(type)) {
+                // Every account is subscribed to every other account already.
+                session.send("<presence type='subscribed' from='" + StringUtils.escapeForXML(to) + "' to='"
+                             + StringUtils.escapeForXML(session.getBareJid()) + "'/>");
+            } else if (type == null || "unavailable".equals(type)) {
+                deliver(session, presence, to);
+            }
+        } else if (type == null) {
+            boolean initial = session.getPresence() == null;
+            session.setPresence(presence.toXml(session.getFullJid(), null));
+            broadcast(session, session.getPresence());
+            if (initial) {
+                for (LoopbackSession other : getAvailableSessions(session)) {
+                    session.send(other.getPresence());
+                }
+            }
+        } else if ("unavailable".equals(type)) {
+            session.setPresence(null);
+            broadcast(session, presence.toXml(session.getFullJid(), null));
+        }
+    }
+
+    private void handleServerIQ(LoopbackSession session, XmlElement iq) {
+        String type = iq.getAttribute("type");
+        XmlElement query = iq.getFirstChild();
+        if ("result".equals(type) || "error".equals(type)) {
+            return;
+        } else if (query == null) {
+            sendError(session, iq, "modify", "bad-request");
+        } else if (ROSTER_NAMESPACE.equals(query.getNamespace())) {
+            if ("get".equals(type)) {
+                session.setRosterRequested(true);
+                StringBuilder roster = new StringBuilder("<query xmlns='" + ROSTER_NAMESPACE + "'>");
+                for (String account : accounts) {
+                    if (!account.equals(session.getBareJid())) {
+                        roster.append(rosterItem(account));
+                    }
+                }
+                sendResult(session, iq, roster.append("</query>").toString());
+            } else {
+                sendResult(session, iq, null);
+            }
+        } else if (DISCO_INFO_NAMESPACE.equals(query.getNamespace())) {
+            sendResult(session, iq, "<query xmlns='" + DISCO_INFO_NAMESPACE + "'>"
+                                    + "<identity category='server' type='im' name='loopback'/>"
+                                    + "<feature var='" + DISCO_INFO_NAMESPACE + "'/>"
+                                    + "<feature var='" + DISCO_ITEMS_NAMESPACE + "'/>"
+                                    + "<feature var='" + PUBSUB_NAMESPACE + "#publish'/></query>");
+        } else if (DISCO_ITEMS_NAMESPACE.equals(query.getNamespace())) {
+            String to = iq.getAttribute("to");
+            sendResult(session, iq, to == null || to.equals(domain)
+                ? "<query xmlns='" + DISCO_ITEMS_NAMESPACE + "'><item jid='" + pubSub.getAddress()
+                  + "'/></query>"
+                : discoItems(to));
+        } else if (PUBSUB_NAMESPACE.equals(query.getNamespace())) {
+            pubSub.handlePersonal(session, iq);
+        } else if ("urn:xmpp:ping".equals(query.getNamespace())) {
+            sendResult(session, iq, null);
+        } else {
+            sendError(session, iq, "cancel", "feature-not-implemented");
+        }
+    }
+
+    private void deliver(LoopbackSession session, XmlElement stanza, String to) {
+        if (!send(to, stanza.toXml(session.getFullJid(), to)) && "iq".equals(stanza.getName())) {
+            sendError(session, stanza, "cancel", "service-unavailable");
+        }
+    }
+
+    private LoopbackSession findSession(String jid) {
+        if (StringUtils.parseResource(jid).length() > 0) {
+            return sessions.get(jid);
+        }
+        for (LoopbackSession session : sessions.values()) {
+            if (session.getBareJid().equals(jid)) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    private String discoItems(String bareJid) {
+        StringBuilder items = new StringBuilder("<query xmlns='" + DISCO_ITEMS_NAMESPACE + "'>");
+        for (LoopbackSession session : sessions.values()) {
+            if (session.getBareJid().equals(bareJid)) {
+                items.append("<item jid='").append(StringUtils.escapeForXML(session.getFullJid()))
+                    .append("'/>");
+            }
+        }
+        return items.append("</query>").toString();
+    }
+
+    private static boolean isDiscoItems(XmlElement iq) {
+        XmlElement query = iq.getFirstChild();
+        return query != null && DISCO_ITEMS_NAMESPACE.equals(query.getNamespace());
+    }
+
+    private static String rosterItem(String bareJid) {
+        return "<item jid='" + StringUtils.escapeForXML(bareJid) + "' subscription='both'/>";
+    }
+}
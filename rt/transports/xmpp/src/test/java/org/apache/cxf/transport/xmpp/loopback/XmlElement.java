@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.loopback;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jivesoftware.smack.util.StringUtils;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * An element read from an XMPP stream. The children are kept both parsed, so the server can look at them,
+ * and as XML, so the server can pass them on. Namespaces are declared where they change, prefixed elements
+ * aren't supported.
+ */
+final class XmlElement {
+
+    private final String name;
+    private final String namespace;
+    private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+    private final List<XmlElement> children = new ArrayList<XmlElement>();
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder innerXml = new StringBuilder();
+    private String xml;
+
+    private XmlElement(String name, String namespace) {
+        this.name = name;
+        this.namespace = namespace;
+    }
+
+    /**
+     * @param parser Parser positioned on the start tag of the element.
+     * @return The element, the parser is left on its end tag.
+     */
+    static XmlElement parse(XmlPullParser parser) throws Exception {
+        return parse(parser, "jabber:client");
+    }
+
+    /**
+     * @param parentNamespace Namespace of the parent, the element only declares its own if it differs.
+     */
+    private static XmlElement parse(XmlPullParser parser, String parentNamespace) throws Exception {
+        XmlElement element = new XmlElement(parser.getName(), parser.getNamespace());
+        StringBuilder startTag = new StringBuilder(64).append('<').append(element.name);
+        if (!element.namespace.equals(parentNamespace)) {
+            appendAttribute(startTag, "xmlns", element.namespace);
+        }
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            String attrName = parser.getAttributePrefix(i) == null
+                ? parser.getAttributeName(i)
+                : parser.getAttributePrefix(i) + ":" + parser.getAttributeName(i);
+            element.attributes.put(attrName, parser.getAttributeValue(i));
+            appendAttribute(startTag, attrName, parser.getAttributeValue(i));
+        }
+
+        int eventType = parser.next();
+        while (eventType != XmlPullParser.END_TAG) {
+            if (eventType == XmlPullParser.START_TAG) {
+                XmlElement child = parse(parser, element.namespace);
+                element.children.add(child);
+                element.innerXml.append(child.xml);
+            } else if (eventType == XmlPullParser.TEXT) {
+                element.text.append(parser.getText());
+                element.innerXml.append(StringUtils.escapeForXML(parser.getText()));
+            }
+            eventType = parser.next();
+        }
+        element.xml = element.innerXml.length() == 0
+            ? startTag.append("/>").toString()
+            : startTag.append('>').append(element.innerXml).append("</").append(element.name).append('>')
+                .toString();
+        return element;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getNamespace() {
+        return namespace;
+    }
+
+    String getAttribute(String attrName) {
+        return attributes.get(attrName);
+    }
+
+    Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    String getText() {
+        return text.toString();
+    }
+
+    List<XmlElement> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return The first child with the name, any namespace if it is null.
+     */
+    XmlElement getChild(String childName, String childNamespace) {
+        for (XmlElement child : children) {
+            if (child.name.equals(childName)
+                && (childNamespace == null || childNamespace.equals(child.namespace))) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The first child element, null if there is none.
+     */
+    XmlElement getFirstChild() {
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    /**
+     * @return The children of the element as XML.
+     */
+    String getInnerXml() {
+        return innerXml.toString();
+    }
+
+    /**
+     * @return The element as XML.
+     */
+    String toXml() {
+        return xml;
+    }
+
+    /**
+     * Writes the element with other routing attributes, the children are unchanged.
+     * 
+     * @param from The from attribute.
+     * @param to The to attribute, null to leave it out.
+     */
+    String toXml(String from, String to) {
+        StringBuilder out = new StringBuilder(innerXml.length() + 128);
+        out.append('<').append(name);
+        for (Map.Entry<String, String> attr : attributes.entrySet()) {
+            if (!"from".equals(attr.getKey()) && !"to".equals(attr.getKey())) {
+                appendAttribute(out, attr.getKey(), attr.getValue());
+            }
+        }
+        appendAttribute(out, "from", from);
+        appendAttribute(out, "to", to);
+        out.append('>').append(innerXml).append("</").append(name).append('>');
+        return out.toString();
+    }
+
+    static void appendAttribute(StringBuilder out, String attrName, String value) {
+        if (value != null) {
+            out.append(' ').append(attrName).append("=\"").append(StringUtils.escapeForXML(value))
+                .append('"');
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.pubsub;
+
+import org.apache.cxf.transport.xmpp.AbstractXMPPTester;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smackx.pubsub.LeafNode;
+import org.jivesoftware.smackx.pubsub.Node;
+import org.jivesoftware.smackx.pubsub.PubSubManager;
+import org.junit.Test;
+
+public class PubSubNodeCacheTest extends AbstractXMPPTester {
+
+    @Test
+    public void testNodeLookup() throws Exception {
+        TestConnection owner = connect("owner", "soap");
+        TestConnection user = connect("user", "soap");
+        PubSubNodeCache.getInstanceFor(owner).createNode("lookup", null);
+
+        PubSubNodeCache cache = PubSubNodeCache.getInstanceFor(user);
+        assertSame(cache, PubSubNodeCache.getInstanceFor(user));
+        Node node = cache.getNode("lookup");
+        assertSame(node, cache.getNode("lookup"));
+        assertEquals(2, cache.getLookupCount());
+        assertEquals(1, cache.getServerRequestCount());
+    }
+
+    @Test
+    public void testAffiliations() throws Exception {
+        TestConnection owner = connect("owner", "soap");
+        PubSubNodeCache cache = PubSubNodeCache.getInstanceFor(owner);
+        cache.createNode("owned", null);
+        assertTrue(cache.isAffiliated("owned"));
+        assertFalse(cache.isAffiliated("other"));
+        // created and fetched the affiliations once
+        assertEquals(2, cache.getServerRequestCount());
+
+        cache.subscribed("other");
+        assertTrue(cache.isAffiliated("other"));
+        assertEquals(2, cache.getServerRequestCount());
+
+        // fetched again after a reconnect
+        owner.fireReconnectionSuccessful();
+        assertTrue(cache.isAffiliated("owned"));
+        assertFalse(cache.isAffiliated("other"));
+        assertEquals(3, cache.getServerRequestCount());
+    }
+
+    @Test
+    public void testDeletedNode() throws Exception {
+        TestConnection owner = connect("owner", "soap");
+        TestConnection user = connect("user", "soap");
+        new PubSubManager(owner).createNode("deleted");
+
+        PubSubNodeCache cache = PubSubNodeCache.getInstanceFor(user);
+        LeafNode node = (LeafNode)cache.getNode("deleted");
+        node.subscribe(user.getUser());
+        cache.subscribed("deleted");
+        assertTrue(cache.isAffiliated("deleted"));
+
+        // the subscriber is notified of the deletion
+        new PubSubManager(owner).deleteNode("deleted");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.isAffiliated("deleted") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(cache.isAffiliated("deleted"));
+        try {
+            cache.getNode("deleted");
+            fail("The deleted node must be looked up again");
+        } catch (XMPPException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSubscribing() throws Exception {
+        PubSubNodeCache cache = PubSubNodeCache.getInstanceFor(connect("user", "soap"));
+        assertTrue(cache.startSubscribing("node"));
+        assertFalse(cache.startSubscribing("node"));
+        assertTrue(cache.startSubscribing("other"));
+        cache.endSubscribing("node");
+        assertTrue(cache.startSubscribing("node"));
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.transport.xmpp.smackx.soap;
+
+import java.io.StringReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.cxf.helpers.DOMUtils;
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.io.CachedOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+
+public class SoapProviderTest extends Assert {
+
+    private static final String SOAP11 = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String SOAP12 = "http://www.w3.org/2003/05/soap-envelope";
+
+    @Test
+    public void testEscapedText() throws Exception {
+        SoapPacket packet = parse(SOAP11, "<text>1 &lt; 2 &amp;&amp; 3 &gt; 2 &quot;</text>");
+        String envelope = read(packet);
+        // the parser resolved the entities, the markup characters are escaped again
+        assertTrue(envelope, envelope.contains("<text>1 &lt; 2 &amp;&amp; 3 &gt; 2 \"</text>"));
+        assertEquals("1 < 2 && 3 > 2 \"", getBodyChild(packet, "text").getTextContent());
+    }
+
+    @Test
+    public void testEmptyElements() throws Exception {
+        SoapPacket packet = parse(SOAP11, "<a><b/><c attr=\"x\"/><d></d></a>");
+        String envelope = read(packet);
+        // an empty tag isn't closed a second time
+        assertTrue(envelope, envelope.contains("<a><b/><c attr=\"x\"/><d></d></a>"));
+        Element a = getBodyChild(packet, "a");
+        assertEquals(3, a.getChildNodes().getLength());
+        assertEquals("x", ((Element)a.getChildNodes().item(1)).getAttribute("attr"));
+    }
+
+    @Test
+    public void testUtf8() throws Exception {
+        SoapPacket packet = parse(SOAP12, "<text>h\u00e9llo \u20ac \ud83d\ude00</text>");
+        assertEquals(SOAP12, packet.getEnvelopeNamespace());
+        assertEquals("h\u00e9llo \u20ac \ud83d\ude00", getBodyChild(packet, "text").getTextContent());
+        // the envelope is kept as UTF-8 bytes
+        assertEquals(read(packet).getBytes("UTF-8").length, packet.getEnvelopeLength());
+    }
+
+    @Test
+    public void testStopsAtEndOfEnvelope() throws Exception {
+        XmlPullParser parser = createParser("<iq type='set'>" + envelope(SOAP11, "<echo/>")
+                                            + "<other/></iq>");
+        SoapPacket packet = (SoapPacket)new SoapProvider().parseIQ(parser);
+        assertEquals(XmlPullParser.END_TAG, parser.getEventType());
+        assertEquals("Envelope", parser.getName());
+        assertEquals(SOAP11, packet.getEnvelopeNamespace());
+        assertFalse(read(packet).contains("other"));
+        assertEquals(read(packet), packet.getChildElementXML());
+    }
+
+    @Test
+    public void testSetEnvelope() throws Exception {
+        String envelope = envelope(SOAP11, "<text>h\u00e9llo</text>");
+        CachedOutputStream out = new CachedOutputStream();
+        out.write(envelope.getBytes("UTF-8"));
+        SoapPacket packet = new SoapPacket();
+        packet.setEnvelope(out);
+        assertEquals(envelope, packet.getChildElementXML());
+        assertEquals(envelope, IOUtils.toString(packet.getEnvelopeInputStream(), "UTF-8"));
+    }
+
+    private static String envelope(String ns, String body) {
+        return "<soap:Envelope xmlns:soap=\"" + ns + "\"><soap:Body>" + body + "</soap:Body></soap:Envelope>";
+    }
+
+    private static SoapPacket parse(String ns, String body) throws Exception {
+        return (SoapPacket)new SoapProvider().parseIQ(createParser(envelope(ns, body)));
+    }
+
+    /**
+     * A parser set up like the one of Smack, positioned on the start of the envelope.
+     */
+    private static XmlPullParser createParser(String xml) throws Exception {
+        XmlPullParser parser = new MXParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(xml));
+        while (parser.next() != XmlPullParser.START_TAG || !"Envelope".equals(parser.getName())) {
+            assertNotSame(XmlPullParser.END_DOCUMENT, parser.getEventType());
+        }
+        return parser;
+    }
+
+    private static String read(SoapPacket packet) throws Exception {
+        return IOUtils.toString(packet.getEnvelopeInputStream(), "UTF-8");
+    }
+
+    private static Element getBodyChild(SoapPacket packet, String name) throws Exception {
+        Document doc = DOMUtils.readXml(packet.getEnvelopeInputStream());
+        Element body = DOMUtils.getFirstElement(doc.getDocumentElement());
+        Element child = DOMUtils.getFirstElement(body);
+        assertEquals(name, child.getLocalName());
+        return child;
+    }
+}